@@ -8,6 +8,10 @@ import net.dv8tion.jda.api.utils.cache.CacheFlag;
 import me.kmathers.sudobot.config.Config;
 import me.kmathers.sudobot.listeners.CommandListener;
 import me.kmathers.sudobot.listeners.PresenceListener;
+import me.kmathers.sudobot.listeners.QuillJobListener;
+import me.kmathers.sudobot.quill.interpreter.DiscordQuillInterpreter;
+import me.kmathers.sudobot.services.QuillWorkerPool;
+import me.kmathers.sudobot.tasks.QuillWarmupTask;
 import me.kmathers.sudobot.tasks.WakaTimeUpdateTask;
 
 import java.util.concurrent.Executors;
@@ -19,6 +23,17 @@ public class Main {
     
     public static void main(String[] args) {
         try {
+            // Warm up the Quill pipeline in the background while connecting.
+            // Worker processes warm themselves up, so start them now instead.
+            if (Config.QUILL_WARMUP && Config.QUILL_OUT_OF_PROCESS) {
+                QuillWorkerPool.start();
+            } else if (Config.QUILL_WARMUP) {
+                Thread warmup = new Thread(null, new QuillWarmupTask(), "quill-warmup",
+                        DiscordQuillInterpreter.stackSizeFor(Config.QUILL_MAX_CALL_DEPTH));
+                warmup.setDaemon(true);
+                warmup.start();
+            }
+
             @SuppressWarnings("unused")
             JDA jda = JDABuilder.createDefault(TOKEN)
                     .enableIntents(
@@ -37,6 +52,7 @@ public class Main {
                     )
                     .addEventListeners(new CommandListener())
                     .addEventListeners(new PresenceListener())
+                    .addEventListeners(new QuillJobListener())
                     .disableCache(CacheFlag.FORUM_TAGS)
                     .enableCache(CacheFlag.ACTIVITY)
                     .setMemberCachePolicy(MemberCachePolicy.ONLINE)
@@ -1,10 +1,13 @@
 package me.kmathers.sudobot.commands;
 
-import me.kmathers.sudobot.quill.interpreter.DiscordQuillInterpreter;
-import me.kmathers.sudobot.quill.lexer.QuillLexer;
-import me.kmathers.sudobot.quill.parser.AST;
-import me.kmathers.sudobot.quill.parser.QuillParser;
-import me.kmathers.sudobot.quill.simulation.DiscordSimulationContext;
+import me.kmathers.sudobot.config.Config;
+import me.kmathers.sudobot.quill.interpreter.CancellationToken;
+import me.kmathers.sudobot.quill.interpreter.MemoryMeter;
+import me.kmathers.sudobot.quill.worker.ScriptRequest;
+import me.kmathers.sudobot.quill.worker.ScriptResult;
+import me.kmathers.sudobot.quill.worker.ScriptRunner;
+import me.kmathers.sudobot.services.QuillExecutionService;
+import me.kmathers.sudobot.services.QuillWorkerPool;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 
@@ -17,7 +20,9 @@ import java.util.regex.Pattern;
 public class QuillCommand {
     
     private static final Pattern CODE_BLOCK_PATTERN = Pattern.compile("```(?:quill)?\\n?(.*?)```", Pattern.DOTALL);
-    private static final Pattern PLAYER_INSTRUCTION_PATTERN = Pattern.compile("PLAYER\\s+(\\w+)\\s+AT\\s+([\\d.]+)\\s+([\\d.]+)\\s+([\\d.]+)", Pattern.CASE_INSENSITIVE);
+    
+    // One warm interpreter per worker thread, for scripts run in this process
+    private static final ScriptRunner RUNNER = new ScriptRunner(Config.QUILL_WORKER_THREADS, Config.QUILL_MAX_CALL_DEPTH);
     
     public void execute(MessageReceivedEvent event, String messageContent) {
         List<String> codeBlocks = extractCodeBlocks(messageContent);
@@ -39,112 +44,112 @@ public class QuillCommand {
         String instructions = messageContent;
         String mainCode = codeBlocks.get(codeBlocks.size() - 1);
         
-        DiscordSimulationContext context = new DiscordSimulationContext();
+        // Run on a Quill worker so the JDA event thread is free for other commands
+        QuillExecutionService.Submission submission = QuillExecutionService.submit(
+            event.getMessageIdLong(),
+            event.getAuthor().getIdLong(),
+            event.getChannel().getIdLong(),
+            token -> runScript(event, instructions, mainCode, token));
         
-        try {
-            processPlayerInstructions(instructions, context);
-            
-            DiscordQuillInterpreter interpreter = new DiscordQuillInterpreter(context);
-            
-            QuillLexer lexer = new QuillLexer(mainCode);
-            List<QuillLexer.Token> tokens = lexer.tokenize();
-            
-            QuillParser parser = new QuillParser(tokens);
-            AST.Program program = parser.parse();
-            
-            interpreter.execute(program);
-            
-            processQueuedEvents(interpreter, context);
-            
-            sendSuccessEmbed(event, context);
-            
-        } catch (QuillLexer.LexerException e) {
-            sendErrorEmbed(event, "Lexer Error", formatLexerError(e));
-        } catch (QuillParser.ParseException e) {
-            sendErrorEmbed(event, "Parser Error", formatParserError(e));
-        } catch (RuntimeException e) {
-            sendErrorEmbed(event, "Runtime Error", formatRuntimeError(e));
-        } catch (Exception e) {
-            sendErrorEmbed(event, "Unknown Error", 
-                "An unexpected error occurred:\n```\n" + e.getMessage() + "\n```");
+        long waitSeconds = (submission.getWaitMillis() + 999) / 1000;
+        switch (submission.getStatus()) {
+            case DELAYED:
+                EmbedBuilder embed = new EmbedBuilder()
+                        .setTitle("Quill Script Delayed")
+                        .setColor(new Color(254, 231, 92))
+                        .setDescription("You've used most of your Quill compute quota. " +
+                            "Your script will start in about " + waitSeconds + " seconds.");
+                event.getChannel().sendMessageEmbeds(embed.build()).queue();
+                break;
+            case BUSY:
+                sendErrorEmbed(event, "Busy", 
+                    "Too many Quill scripts are waiting right now (" + QuillExecutionService.getQueueDepth() + 
+                    " queued, at most " + Config.QUILL_QUEUE_PER_USER + " per user). Please try again in a moment.");
+                break;
+            case OVER_QUOTA:
+                sendErrorEmbed(event, "Quota Exceeded", 
+                    "You've used up your Quill compute quota. Please try again in " + waitSeconds + " seconds.");
+                break;
+            default:
+                break;
         }
     }
     
     /**
-     * Extract all code blocks from the message content
+     * Run a script, in this process or on a worker process, then report the result
      */
-    private List<String> extractCodeBlocks(String content) {
-        List<String> blocks = new ArrayList<>();
-        Matcher matcher = CODE_BLOCK_PATTERN.matcher(content);
+    private void runScript(MessageReceivedEvent event, String instructions, String mainCode, CancellationToken token) {
+        ScriptRequest request = new ScriptRequest(instructions, mainCode, Config.QUILL_AUTO_MEMOIZE, Config.QUILL_JIT_THRESHOLD,
+                Config.QUILL_MEMORY_BUDGET_MB * 1024L * 1024);
         
-        while (matcher.find()) {
-            blocks.add(matcher.group(1).trim());
-        }
+        ScriptResult result = Config.QUILL_OUT_OF_PROCESS
+                ? QuillWorkerPool.execute(request, token)
+                : RUNNER.run(request, token);
         
-        return blocks;
+        switch (result.getStatus()) {
+            case SUCCESS:
+                sendSuccessEmbed(event, result);
+                break;
+            case LEXER_ERROR:
+                sendErrorEmbed(event, "Lexer Error", formatLexerError(result.getMessage()));
+                break;
+            case PARSE_ERROR:
+                sendErrorEmbed(event, "Parser Error", formatParserError(result.getMessage()));
+                break;
+            case CANCELLED:
+                sendErrorEmbed(event, "Execution Cancelled", result.getMessage());
+                break;
+            case RUNTIME_ERROR:
+                sendErrorEmbed(event, "Runtime Error", formatRuntimeError(result, mainCode));
+                break;
+            default:
+                sendErrorEmbed(event, "Unknown Error", 
+                    "An unexpected error occurred:\n```\n" + result.getMessage() + "\n```");
+                break;
+        }
     }
     
     /**
-     * Process PLAYER instructions to spawn mock players
+     * Extract all code blocks from the message content
      */
-    private void processPlayerInstructions(String instructions, DiscordSimulationContext context) {
-        Matcher matcher = PLAYER_INSTRUCTION_PATTERN.matcher(instructions);
+    private List<String> extractCodeBlocks(String content) {
+        List<String> blocks = new ArrayList<>();
+        Matcher matcher = CODE_BLOCK_PATTERN.matcher(content);
         
         while (matcher.find()) {
-            String playerName = matcher.group(1);
-            double x = Double.parseDouble(matcher.group(2));
-            double y = Double.parseDouble(matcher.group(3));
-            double z = Double.parseDouble(matcher.group(4));
-            
-            context.spawnPlayer(playerName, x, y, z);
-        }
-    }
-    
-    /**
-     * Process any events that were queued during script execution
-     */
-    private void processQueuedEvents(DiscordQuillInterpreter interpreter, DiscordSimulationContext context) {
-        int maxEventIterations = 100;
-        int iterations = 0;
-        
-        while (context.hasPendingEvents() && iterations < maxEventIterations) {
-            DiscordSimulationContext.SimulatedEvent event = context.getNextEvent();
-            if (event != null) {
-                interpreter.triggerEvent(event.getEventName(), event.getContext());
-            }
-            iterations++;
+            blocks.add(matcher.group(1).trim());
         }
         
-        if (iterations >= maxEventIterations) {
-            context.log("[WARNING] Event processing stopped after " + maxEventIterations + " iterations");
-        }
+        return blocks;
     }
     
     /**
      * Send success embed with execution results
      */
-    private void sendSuccessEmbed(MessageReceivedEvent event, DiscordSimulationContext context) {
+    private void sendSuccessEmbed(MessageReceivedEvent event, ScriptResult result) {
         EmbedBuilder embed = new EmbedBuilder()
                 .setTitle("Quill Execution Complete")
                 .setColor(new Color(87, 242, 135));
         
-        List<String> logs = context.getLogs();
+        List<String> logs = result.getLogs();
         if (!logs.isEmpty()) {
             StringBuilder logOutput = new StringBuilder();
-            int lineCount = 0;
             for (String log : logs) {
-                if (lineCount >= 20) {
-                    logOutput.append("... (").append(logs.size() - 20).append(" more lines)");
-                    break;
-                }
                 logOutput.append(log).append("\n");
-                lineCount++;
+            }
+            List<String> tail = result.getLogTail();
+            long skipped = result.getLogCount() - logs.size() - tail.size();
+            if (skipped > 0) {
+                logOutput.append("... (").append(skipped).append(" more lines)\n");
+            }
+            for (String log : tail) {
+                logOutput.append(log).append("\n");
             }
             
             embed.addField("Execution Logs", "```\n" + logOutput.toString() + "```", false);
         }
         
-        List<String> messages = context.getMessageHistory();
+        List<String> messages = result.getMessages();
         if (!messages.isEmpty()) {
             StringBuilder msgOutput = new StringBuilder();
             for (String msg : messages) {
@@ -153,9 +158,9 @@ public class QuillCommand {
             embed.addField("Messages", "```\n" + msgOutput.toString() + "```", false);
         }
         
-        if (!context.getAllPlayers().isEmpty()) {
+        if (!result.getPlayers().isEmpty()) {
             StringBuilder playerStates = new StringBuilder();
-            for (DiscordSimulationContext.MockPlayer player : context.getAllPlayers()) {
+            for (ScriptResult.PlayerState player : result.getPlayers()) {
                 playerStates.append(String.format(
                     "%s | HP: %.1f | Pos: (%.1f, %.1f, %.1f) | Mode: %s\n",
                     player.getName(),
@@ -169,9 +174,9 @@ public class QuillCommand {
             embed.addField("Player States", "```\n" + playerStates.toString() + "```", false);
         }
         
-        if (context.getAllWorlds().size() > 1 || context.getDefaultWorld().getTime() != 0) {
+        if (!result.getWorlds().isEmpty()) {
             StringBuilder worldStates = new StringBuilder();
-            for (DiscordSimulationContext.MockWorld world : context.getAllWorlds()) {
+            for (ScriptResult.WorldState world : result.getWorlds()) {
                 worldStates.append(String.format(
                     "%s | Time: %d | Weather: %s\n",
                     world.getName(),
@@ -182,7 +187,16 @@ public class QuillCommand {
             embed.addField("World States", "```\n" + worldStates.toString() + "```", false);
         }
         
-        embed.setFooter("Executed " + logs.size() + " operations");
+        if (result.getMemoSummary() != null) {
+            embed.addField("Memoization", result.getMemoSummary(), false);
+        }
+        
+        if (result.getJitSummary() != null) {
+            embed.addField("JIT", result.getJitSummary(), false);
+        }
+        
+        embed.setFooter("Executed " + result.getLogCount() + " operations • Peak memory " + 
+                MemoryMeter.format(result.getPeakMemory()));
         
         event.getChannel().sendMessageEmbeds(embed.build()).queue();
     }
@@ -202,8 +216,8 @@ public class QuillCommand {
     /**
      * Format lexer error message
      */
-    private String formatLexerError(QuillLexer.LexerException e) {
-        return "Failed to tokenize the code:\n```\n" + e.getMessage() + "\n```\n\n" +
+    private String formatLexerError(String message) {
+        return "Failed to tokenize the code:\n```\n" + message + "\n```\n\n" +
                "Check for:\n" +
                "• Unclosed strings\n" +
                "• Invalid characters\n" +
@@ -213,8 +227,8 @@ public class QuillCommand {
     /**
      * Format parser error message
      */
-    private String formatParserError(QuillParser.ParseException e) {
-        return "Failed to parse the code:\n```\n" + e.getMessage() + "\n```\n\n" +
+    private String formatParserError(String message) {
+        return "Failed to parse the code:\n```\n" + message + "\n```\n\n" +
                "Check for:\n" +
                "• Missing semicolons\n" +
                "• Unmatched brackets/parentheses\n" +
@@ -224,18 +238,45 @@ public class QuillCommand {
     /**
      * Format runtime error message
      */
-    private String formatRuntimeError(RuntimeException e) {
-        String message = e.getMessage();
+    private String formatRuntimeError(ScriptResult result, String source) {
+        StringBuilder details = new StringBuilder();
+        details.append("Error during script execution:\n```\n").append(result.getMessage()).append("\n```\n");
+        
+        if (result.hasLocation()) {
+            details.append("**Line ").append(result.getLine())
+                   .append(", column ").append(result.getColumn()).append("**\n");
+            
+            String[] lines = source.split("\n", -1);
+            if (result.getLine() <= lines.length) {
+                String sourceLine = lines[result.getLine() - 1].replace("\t", " ");
+                int caret = Math.max(0, Math.min(result.getColumn() - 1, sourceLine.length()));
+                details.append("```\n").append(sourceLine).append("\n")
+                       .append(" ".repeat(caret)).append("^\n```\n");
+            }
+        }
         
-        if (message == null) {
-            message = "Unknown runtime error occurred";
+        List<String> callStack = result.getCallStack();
+        if (!callStack.isEmpty()) {
+            details.append("Call stack:\n```\n");
+            int shown = 0;
+            for (String frame : callStack) {
+                if (shown >= 10) {
+                    details.append("... (").append(callStack.size() - 10).append(" more frames)\n");
+                    break;
+                }
+                details.append("at ").append(frame).append("\n");
+                shown++;
+            }
+            details.append("```\n");
         }
         
-        return "Error during script execution:\n```\n" + message + "\n```\n\n" +
-               "Common causes:\n" +
-               "• Undefined variables\n" +
-               "• Type mismatches\n" +
-               "• Division by zero\n" +
-               "• Invalid function arguments";
+        details.append("\n")
+               .append("Common causes:\n")
+               .append("• Undefined variables\n")
+               .append("• Type mismatches\n")
+               .append("• Division by zero\n")
+               .append("• Invalid function arguments");
+        
+        return details.toString();
     }
 }
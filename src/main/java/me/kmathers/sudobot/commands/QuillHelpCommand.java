@@ -25,7 +25,12 @@ public class QuillHelpCommand {
                 )
                 .addField(
                         "Built-in Utility Functions",
-                        "```\nlog\nlen\nappend\nremove\ncontains\nsplit\njoin\nto_string\nto_number\nto_boolean\ntype_of\nrange\nrandom\nround\nfloor\nceil\nabs\nsqrt\npow\nrandom_choice\nmin\nmax\nsum\navg\nget_player\nget_online_players\n```",
+                        "```\nlog\nlen\nappend\nremove\ncontains\nset\nadd\nhas\nunion\nintersect\nsplit\njoin\nto_string\nto_number\nto_boolean\ntype_of\nrange\nrandom\nround\nfloor\nceil\nabs\nsqrt\npow\nrandom_choice\nmin\nmax\nsum\navg\nget_player\nget_online_players\n```",
+                        false
+                )
+                .addField(
+                        "Built-in Sequence Functions",
+                        "```\nmap\nfilter\ntake\nreduce\nany\nall\n```",
                         false
                 )
                 .addField(
@@ -38,6 +43,11 @@ public class QuillHelpCommand {
                         "```\nset_block\nget_block\nbreak_block\nset_time\nget_time\nset_weather\nget_weather\nbroadcast\ncreate_world\nget_world\nspawn_entity\ndistance\n```",
                         false
                 )
+                .addField(
+                        "Stopping a Script",
+                        "React to your `&&quill` message with ❌, or delete it, to stop the script while it's queued or running",
+                        false
+                )
                 .setFooter("All functions use the same syntax as Quill");
         
         event.getChannel().sendMessageEmbeds(embed.build()).queue();
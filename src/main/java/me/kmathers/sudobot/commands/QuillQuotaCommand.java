@@ -0,0 +1,112 @@
+package me.kmathers.sudobot.commands;
+
+import me.kmathers.sudobot.config.Config;
+import me.kmathers.sudobot.services.QuillExecutionService;
+import me.kmathers.sudobot.services.QuillQuotas;
+import me.kmathers.sudobot.services.QuillWorkerPool;
+import me.kmathers.sudobot.services.TokenBucket;
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+
+import java.awt.Color;
+import java.util.List;
+
+public class QuillQuotaCommand {
+
+    private static final int MAX_ROWS = 10;
+
+    public void execute(MessageReceivedEvent event, String args) {
+        if (!isAdmin(event)) {
+            sendEmbed(event, "Error", new Color(237, 66, 69), "Only server managers can view Quill quotas.");
+            return;
+        }
+
+        String[] parts = args.trim().split("\\s+");
+        if (parts[0].equalsIgnoreCase("reset")) {
+            List<User> mentioned = event.getMessage().getMentions().getUsers();
+            if (mentioned.isEmpty()) {
+                sendEmbed(event, "Error", new Color(237, 66, 69),
+                    "Please mention a user!\n\n**Usage:** `&&quillquota reset @user`");
+                return;
+            }
+
+            User user = mentioned.get(0);
+            boolean reset = QuillQuotas.resetUser(user.getIdLong());
+            sendEmbed(event, "Quill Quota Reset", new Color(87, 242, 135), reset
+                ? "Refilled the quota for " + user.getAsMention() + "."
+                : user.getAsMention() + " hasn't used any of their quota.");
+            return;
+        }
+
+        EmbedBuilder embed = new EmbedBuilder()
+                .setTitle("Quill Quotas")
+                .setColor(new Color(0, 161, 155))
+                .setDescription(QuillExecutionService.getSummary())
+                .addField("Users", formatQuotas(QuillQuotas.getActiveUsers(), "<@%d>", true), false)
+                .addField("Channels", formatQuotas(QuillQuotas.getActiveChannels(), "<#%d>", false), false)
+                .setFooter(String.format("Per user: %.0fs CPU / %.0f fuel burst, per channel: %.0fs CPU / %.0f fuel burst",
+                        Config.QUILL_USER_CPU_BURST_MS / 1000, Config.QUILL_USER_FUEL_BURST,
+                        Config.QUILL_CHANNEL_CPU_BURST_MS / 1000, Config.QUILL_CHANNEL_FUEL_BURST));
+
+        if (Config.QUILL_OUT_OF_PROCESS) {
+            embed.addField("Worker Processes", QuillWorkerPool.getSummary(), false);
+        }
+
+        event.getChannel().sendMessageEmbeds(embed.build()).queue();
+    }
+
+    private boolean isAdmin(MessageReceivedEvent event) {
+        if (event.getAuthor().getIdLong() == Config.TARGET_USER_ID) {
+            return true;
+        }
+        Member member = event.getMember();
+        return member != null && member.hasPermission(Permission.MANAGE_SERVER);
+    }
+
+    private String formatQuotas(List<QuillQuotas.Quota> quotas, String mention, boolean showQueued) {
+        if (quotas.isEmpty()) {
+            return "All quotas are full";
+        }
+
+        StringBuilder rows = new StringBuilder();
+        for (int i = 0; i < quotas.size() && i < MAX_ROWS; i++) {
+            QuillQuotas.Quota quota = quotas.get(i);
+            rows.append(String.format(mention, quota.getId()))
+                .append(" — CPU ").append(formatBucket(quota.getCpu(), 1000, "s"))
+                .append(", fuel ").append(formatBucket(quota.getFuel(), 1, ""));
+
+            long waitSeconds = (quota.waitNanos() + 999_999_999L) / 1_000_000_000L;
+            if (waitSeconds > 0) {
+                rows.append(", waiting ").append(waitSeconds).append("s");
+            }
+            if (showQueued) {
+                int queued = QuillExecutionService.getQueueDepth(quota.getId());
+                if (queued > 0) {
+                    rows.append(", ").append(queued).append(" queued");
+                }
+            }
+            rows.append("\n");
+        }
+
+        if (quotas.size() > MAX_ROWS) {
+            rows.append("... (").append(quotas.size() - MAX_ROWS).append(" more)");
+        }
+        return rows.toString();
+    }
+
+    private String formatBucket(TokenBucket bucket, double scale, String unit) {
+        return String.format("%.0f%s/%.0f%s", bucket.getAvailable() / scale, unit, bucket.getCapacity() / scale, unit);
+    }
+
+    private void sendEmbed(MessageReceivedEvent event, String title, Color color, String description) {
+        EmbedBuilder embed = new EmbedBuilder()
+                .setTitle(title)
+                .setColor(color)
+                .setDescription(description);
+
+        event.getChannel().sendMessageEmbeds(embed.build()).queue();
+    }
+}
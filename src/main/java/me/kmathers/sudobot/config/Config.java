@@ -10,5 +10,34 @@ public class Config {
     public static final String GITHUB_API_URL = "https://api.github.com";
     
     public static final String WAKATIME_API_URL = "https://wakatime.com/api/v1";
+
+    public static final int QUILL_MAX_CALL_DEPTH = 1000;
+    public static final boolean QUILL_AUTO_MEMOIZE = false;
+    public static final int QUILL_JIT_THRESHOLD = 100;
+    public static final int QUILL_WORKER_THREADS = 4;
+    public static final int QUILL_QUEUE_CAPACITY = 16;
+    public static final int QUILL_TIMEOUT_SECONDS = 15;
+    public static final int QUILL_QUEUE_PER_USER = 3;
+    public static final int QUILL_MEMORY_BUDGET_MB = 32;
+
+    // Compute quotas: burst capacity and refill per second, for CPU milliseconds and interpreter fuel
+    public static final double QUILL_USER_CPU_BURST_MS = 20_000;
+    public static final double QUILL_USER_CPU_REFILL_MS = 200;
+    public static final double QUILL_USER_FUEL_BURST = 2_000_000;
+    public static final double QUILL_USER_FUEL_REFILL = 20_000;
+    public static final double QUILL_CHANNEL_CPU_BURST_MS = 60_000;
+    public static final double QUILL_CHANNEL_CPU_REFILL_MS = 600;
+    public static final double QUILL_CHANNEL_FUEL_BURST = 6_000_000;
+    public static final double QUILL_CHANNEL_FUEL_REFILL = 60_000;
+    public static final int QUILL_QUOTA_MAX_DELAY_SECONDS = 30;
+
+    // Run the bundled Quill corpus at startup so the first commands aren't slow
+    public static final boolean QUILL_WARMUP = true;
+    public static final int QUILL_WARMUP_MAX_ITERATIONS = 50;
+
+    // Run scripts in separate worker JVMs so a runaway script can't exhaust the bot's heap
+    public static final boolean QUILL_OUT_OF_PROCESS = false;
+    public static final int QUILL_PROCESS_WORKERS = Math.min(QUILL_WORKER_THREADS, Runtime.getRuntime().availableProcessors());
+    public static final int QUILL_WORKER_HEAP_MB = 256;
 }
 
@@ -69,6 +69,9 @@ public class CommandListener extends ListenerAdapter {
             case "quilldocs":
                 new QuillDocsCommand().execute(event, args);
                 break;
+            case "quillquota":
+                new QuillQuotaCommand().execute(event, args);
+                break;
             default:
                 new DefaultCommand().execute(event);
                 break;
@@ -0,0 +1,30 @@
+package me.kmathers.sudobot.listeners;
+
+import net.dv8tion.jda.api.entities.emoji.Emoji;
+import net.dv8tion.jda.api.events.message.MessageDeleteEvent;
+import net.dv8tion.jda.api.events.message.react.MessageReactionAddEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import me.kmathers.sudobot.services.QuillExecutionService;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Cancels Quill scripts when their message is deleted or their author reacts with ❌.
+ */
+public class QuillJobListener extends ListenerAdapter {
+
+    private static final Emoji CANCEL_EMOJI = Emoji.fromUnicode("❌");
+
+    @Override
+    public void onMessageDelete(@NotNull MessageDeleteEvent event) {
+        QuillExecutionService.cancel(event.getMessageIdLong(), "The script's message was deleted");
+    }
+
+    @Override
+    public void onMessageReactionAdd(@NotNull MessageReactionAddEvent event) {
+        if (!event.getEmoji().equals(CANCEL_EMOJI)) {
+            return;
+        }
+
+        QuillExecutionService.cancel(event.getMessageIdLong(), event.getUserIdLong(), "Cancelled by the script's author");
+    }
+}
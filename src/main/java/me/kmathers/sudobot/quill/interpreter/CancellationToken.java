@@ -0,0 +1,85 @@
+package me.kmathers.sudobot.quill.interpreter;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cooperative cancellation flag for a running script.
+ * Set from any thread; the interpreter checks it at loop back-edges and
+ * function calls and stops by throwing {@link CancelledException}, which
+ * Quill try/catch blocks cannot intercept. Each check also burns one unit
+ * of fuel, which gives a measure of how much work the script did.
+ * Work done elsewhere (for example in a worker process) is added with
+ * {@link #addUsage(long, long)}.
+ */
+public class CancellationToken {
+    private volatile String reason;
+    private final LongAdder fuel = new LongAdder();
+    private final LongAdder cpuNanos = new LongAdder();
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    public void cancel(String reason) {
+        synchronized (this) {
+            if (this.reason != null) {
+                return;
+            }
+            this.reason = reason;
+        }
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Run a callback when the token is cancelled, or straight away if it already is.
+     */
+    public void onCancel(Runnable listener) {
+        listeners.add(listener);
+        if (isCancelled() && listeners.remove(listener)) {
+            listener.run();
+        }
+    }
+
+    public void removeOnCancel(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    public boolean isCancelled() {
+        return reason != null;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public long getFuel() {
+        return fuel.sum();
+    }
+
+    /**
+     * CPU time reported through {@link #addUsage(long, long)}; the running thread's own time isn't included.
+     */
+    public long getCpuNanos() {
+        return cpuNanos.sum();
+    }
+
+    public void addUsage(long fuel, long cpuNanos) {
+        this.fuel.add(fuel);
+        this.cpuNanos.add(cpuNanos);
+    }
+
+    public void check() {
+        fuel.increment();
+        String cancelled = reason;
+        if (cancelled != null) {
+            throw new CancelledException(cancelled);
+        }
+    }
+
+    public static class CancelledException extends RuntimeException {
+        public CancelledException(String message) {
+            super(message, null, false, false);
+        }
+    }
+}
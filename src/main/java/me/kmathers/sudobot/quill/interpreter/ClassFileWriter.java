@@ -0,0 +1,391 @@
+package me.kmathers.sudobot.quill.interpreter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal JVM class file emitter used by the Quill JIT.
+ * Writes version 49 class files so no StackMapTable is needed; the JVM
+ * verifies them by type inference instead. Only the handful of constant
+ * pool entries and instructions the compiler uses are supported.
+ */
+class ClassFileWriter {
+    // Opcodes used by QuillCompiler
+    static final int ACONST_NULL = 0x01, ICONST_0 = 0x03, ICONST_1 = 0x04;
+    static final int DCONST_0 = 0x0e, DCONST_1 = 0x0f, BIPUSH = 0x10, SIPUSH = 0x11;
+    static final int LDC = 0x12, LDC_W = 0x13, LDC2_W = 0x14;
+    static final int ILOAD = 0x15, DLOAD = 0x18, ALOAD = 0x19, ISTORE = 0x36, DSTORE = 0x39;
+    static final int DALOAD = 0x31, AASTORE = 0x53;
+    static final int POP = 0x57, POP2 = 0x58, DUP = 0x59;
+    static final int DADD = 0x63, DSUB = 0x67, DMUL = 0x6b, DREM = 0x73, DNEG = 0x77;
+    static final int IAND = 0x7e, IOR = 0x80, IXOR = 0x82, DCMPL = 0x97, DCMPG = 0x98;
+    static final int IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IFGE = 0x9c, IFGT = 0x9d, IFLE = 0x9e;
+    static final int IF_ICMPEQ = 0x9f, IF_ICMPNE = 0xa0, GOTO = 0xa7;
+    static final int IRETURN = 0xac, DRETURN = 0xaf, ARETURN = 0xb0, RETURN = 0xb1;
+    static final int INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8;
+    static final int ANEWARRAY = 0xbd, WIDE = 0xc4;
+
+    static final int ACC_PUBLIC = 0x0001, ACC_STATIC = 0x0008, ACC_FINAL = 0x0010, ACC_SUPER = 0x0020;
+
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    private final List<byte[]> pool = new ArrayList<>();
+    private final Map<String, Integer> poolIndex = new HashMap<>();
+    private int poolSize = 1;
+
+    private final int thisClass;
+    private final int superClass;
+    private final int[] interfaces;
+    private final List<MethodWriter> methods = new ArrayList<>();
+
+    ClassFileWriter(String name, String superName, String... interfaceNames) {
+        this.thisClass = classRef(name);
+        this.superClass = classRef(superName);
+        this.interfaces = new int[interfaceNames.length];
+        for (int i = 0; i < interfaceNames.length; i++) {
+            interfaces[i] = classRef(interfaceNames[i]);
+        }
+    }
+
+    MethodWriter method(int access, String name, String descriptor) {
+        MethodWriter method = new MethodWriter(access, utf8(name), utf8(descriptor), descriptor);
+        methods.add(method);
+        return method;
+    }
+
+    byte[] toByteArray() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            int utf8Code = utf8("Code");
+
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(poolSize);
+            for (byte[] entry : pool) {
+                out.write(entry);
+            }
+
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.length);
+            for (int iface : interfaces) {
+                out.writeShort(iface);
+            }
+
+            out.writeShort(0); // fields
+            out.writeShort(methods.size());
+            for (MethodWriter method : methods) {
+                method.write(out, utf8Code);
+            }
+            out.writeShort(0); // attributes
+
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // === Constant Pool ===
+
+    private int constant(String key, int slots, ConstantWriter writer) {
+        Integer existing = poolIndex.get(key);
+        if (existing != null) {
+            return existing;
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            writer.write(new DataOutputStream(bytes));
+            pool.add(bytes.toByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        int index = poolSize;
+        poolSize += slots;
+        poolIndex.put(key, index);
+        return index;
+    }
+
+    private interface ConstantWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    int utf8(String value) {
+        return constant("U" + value, 1, out -> {
+            out.writeByte(1);
+            out.writeUTF(value);
+        });
+    }
+
+    int classRef(String internalName) {
+        int name = utf8(internalName);
+        return constant("C" + internalName, 1, out -> {
+            out.writeByte(7);
+            out.writeShort(name);
+        });
+    }
+
+    int stringConstant(String value) {
+        int utf = utf8(value);
+        return constant("S" + value, 1, out -> {
+            out.writeByte(8);
+            out.writeShort(utf);
+        });
+    }
+
+    int intConstant(int value) {
+        return constant("I" + value, 1, out -> {
+            out.writeByte(3);
+            out.writeInt(value);
+        });
+    }
+
+    int doubleConstant(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        return constant("D" + bits, 2, out -> {
+            out.writeByte(6);
+            out.writeLong(bits);
+        });
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descIndex = utf8(descriptor);
+        int nameAndType = constant("N" + name + ":" + descriptor, 1, out -> {
+            out.writeByte(12);
+            out.writeShort(nameIndex);
+            out.writeShort(descIndex);
+        });
+        return constant("M" + owner + "." + name + ":" + descriptor, 1, out -> {
+            out.writeByte(10);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    /**
+     * Number of local variable/operand stack slots a descriptor's
+     * arguments and return value take.
+     */
+    static int[] slotCounts(String descriptor) {
+        int args = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            char c = descriptor.charAt(i);
+            if (c == 'D' || c == 'J') {
+                args += 2;
+                i++;
+            } else if (c == 'L') {
+                args += 1;
+                i = descriptor.indexOf(';', i) + 1;
+            } else if (c == '[') {
+                while (descriptor.charAt(i) == '[') i++;
+                if (descriptor.charAt(i) == 'L') {
+                    i = descriptor.indexOf(';', i);
+                }
+                args += 1;
+                i++;
+            } else {
+                args += 1;
+                i++;
+            }
+        }
+        char ret = descriptor.charAt(i + 1);
+        int result = ret == 'V' ? 0 : (ret == 'D' || ret == 'J') ? 2 : 1;
+        return new int[] { args, result };
+    }
+
+    // === Methods ===
+
+    static class Label {
+        private int position = -1;
+        private final List<int[]> fixups = new ArrayList<>(); // {instruction start, offset position}
+    }
+
+    class MethodWriter {
+        private final int access;
+        private final int name;
+        private final int descriptor;
+        private final ByteArrayOutputStream code = new ByteArrayOutputStream();
+        private final List<Label> labels = new ArrayList<>();
+        private int stack;
+        private int maxStack;
+        private int maxLocals;
+
+        private MethodWriter(int access, int name, int descriptor, String descriptorText) {
+            this.access = access;
+            this.name = name;
+            this.descriptor = descriptor;
+            this.maxLocals = slotCounts(descriptorText)[0] + ((access & ACC_STATIC) != 0 ? 0 : 1);
+        }
+
+        private void adjust(int delta) {
+            stack += delta;
+            if (stack > maxStack) {
+                maxStack = stack;
+            }
+        }
+
+        private void u1(int value) {
+            code.write(value & 0xff);
+        }
+
+        private void u2(int value) {
+            code.write((value >> 8) & 0xff);
+            code.write(value & 0xff);
+        }
+
+        int size() {
+            return code.size();
+        }
+
+        /**
+         * Emit a single-byte instruction that changes the stack depth by delta.
+         */
+        void op(int opcode, int delta) {
+            u1(opcode);
+            adjust(delta);
+        }
+
+        void intConst(int value) {
+            if (value >= -1 && value <= 5) {
+                u1(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                u1(BIPUSH);
+                u1(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                u1(SIPUSH);
+                u2(value);
+            } else {
+                u1(LDC_W);
+                u2(intConstant(value));
+            }
+            adjust(1);
+        }
+
+        void doubleConst(double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            if (bits == 0L) {
+                u1(DCONST_0);
+            } else if (value == 1.0) {
+                u1(DCONST_1);
+            } else {
+                u1(LDC2_W);
+                u2(doubleConstant(value));
+            }
+            adjust(2);
+        }
+
+        void stringConst(String value) {
+            u1(LDC_W);
+            u2(stringConstant(value));
+            adjust(1);
+        }
+
+        /**
+         * Emit a load or store of a local variable slot.
+         */
+        void local(int opcode, int slot) {
+            if (slot > 255) {
+                u1(WIDE);
+                u1(opcode);
+                u2(slot);
+            } else {
+                u1(opcode);
+                u1(slot);
+            }
+
+            int width = (opcode == DLOAD || opcode == DSTORE) ? 2 : 1;
+            boolean load = opcode == ILOAD || opcode == DLOAD || opcode == ALOAD;
+            adjust(load ? width : -width);
+            maxLocals = Math.max(maxLocals, slot + width);
+        }
+
+        void invoke(int opcode, String owner, String methodName, String methodDescriptor) {
+            u1(opcode);
+            u2(methodRef(owner, methodName, methodDescriptor));
+            int[] slots = slotCounts(methodDescriptor);
+            adjust(-slots[0] - (opcode == INVOKESTATIC ? 0 : 1) + slots[1]);
+        }
+
+        void newArray(String elementClass) {
+            u1(ANEWARRAY);
+            u2(classRef(elementClass));
+            adjust(0);
+        }
+
+        Label newLabel() {
+            Label label = new Label();
+            labels.add(label);
+            return label;
+        }
+
+        void mark(Label label) {
+            label.position = code.size();
+        }
+
+        /**
+         * Emit a branch; delta is the stack change of the branch instruction itself.
+         */
+        void jump(int opcode, Label target, int delta) {
+            int start = code.size();
+            u1(opcode);
+            target.fixups.add(new int[] { start, code.size() });
+            u2(0);
+            adjust(delta);
+        }
+
+        /**
+         * The compiler tracks stack depth along straight-line code; after an
+         * unconditional jump or return it resets the depth for the next block.
+         */
+        void setStack(int depth) {
+            stack = depth;
+        }
+
+        int getStack() {
+            return stack;
+        }
+
+        private void write(DataOutputStream out, int codeAttribute) throws IOException {
+            byte[] bytes = code.toByteArray();
+            if (bytes.length > MAX_CODE_LENGTH) {
+                throw new IllegalStateException("Method too large to compile");
+            }
+
+            for (Label label : labels) {
+                for (int[] fixup : label.fixups) {
+                    int offset = label.position - fixup[0];
+                    if (label.position < 0 || offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                        throw new IllegalStateException("Branch target out of range");
+                    }
+                    bytes[fixup[1]] = (byte) (offset >> 8);
+                    bytes[fixup[1] + 1] = (byte) offset;
+                }
+            }
+
+            out.writeShort(access);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1);
+            out.writeShort(codeAttribute);
+            out.writeInt(12 + bytes.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.writeShort(0); // exception table
+            out.writeShort(0); // attributes
+        }
+    }
+}
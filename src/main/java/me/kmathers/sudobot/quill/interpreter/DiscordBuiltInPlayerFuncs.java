@@ -1,6 +1,7 @@
 package me.kmathers.sudobot.quill.interpreter;
 
 import me.kmathers.sudobot.quill.simulation.DiscordSimulationContext;
+import me.kmathers.sudobot.quill.simulation.LogTemplate;
 import me.kmathers.sudobot.quill.simulation.DiscordSimulationContext.MockPlayer;
 import me.kmathers.sudobot.quill.interpreter.QuillValue.*;
 
@@ -21,24 +22,24 @@ public class DiscordBuiltInPlayerFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 2 && args.size() != 4) {
-                throw new RuntimeException("teleport() requires 2 or 4 arguments, got " + args.size());
+                throw new QuillRuntimeError("teleport() requires 2 or 4 arguments, got " + args.size());
             }
 
             if (!args.get(0).isPlayer()) {
-                throw new RuntimeException("teleport() expects player as first argument, got " + args.get(0).getType());
+                throw new QuillRuntimeError("teleport() expects player as first argument, got " + args.get(0).getType());
             }
 
             MockPlayer player = (MockPlayer) args.get(0).getValue();
 
             if (args.size() == 2) {
-                throw new RuntimeException("teleport() with location object not yet supported");
+                throw new QuillRuntimeError("teleport() with location object not yet supported");
             } else {
                 double x = args.get(1).asNumber();
                 double y = args.get(2).asNumber();
                 double z = args.get(3).asNumber();
 
                 player.teleport(x, y, z);
-                context.log("[TELEPORT] " + player.getName() + " teleported to (" + x + ", " + y + ", " + z + ")");
+                context.log(LogTemplate.TELEPORT).str(player.getName()).num(x).num(y).num(z);
             }
 
             return new BooleanValue(true);
@@ -55,11 +56,11 @@ public class DiscordBuiltInPlayerFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() < 2 || args.size() > 3) {
-                throw new RuntimeException("give() requires 2 or 3 arguments, got " + args.size());
+                throw new QuillRuntimeError("give() requires 2 or 3 arguments, got " + args.size());
             }
 
             if (!args.get(0).isPlayer()) {
-                throw new RuntimeException("give() expects player as first argument, got " + args.get(0).getType());
+                throw new QuillRuntimeError("give() expects player as first argument, got " + args.get(0).getType());
             }
 
             MockPlayer player = (MockPlayer) args.get(0).getValue();
@@ -67,7 +68,7 @@ public class DiscordBuiltInPlayerFuncs {
             int amount = args.size() == 3 ? (int) args.get(2).asNumber() : 1;
 
             player.giveItem(itemId, amount);
-            context.log("[GIVE] " + player.getName() + " received " + amount + "x " + itemId);
+            context.log(LogTemplate.GIVE).str(player.getName()).integer(amount).str(itemId);
 
             return new BooleanValue(true);
         }
@@ -83,11 +84,11 @@ public class DiscordBuiltInPlayerFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() < 2 || args.size() > 3) {
-                throw new RuntimeException("remove_item() requires 2 or 3 arguments, got " + args.size());
+                throw new QuillRuntimeError("remove_item() requires 2 or 3 arguments, got " + args.size());
             }
 
             if (!args.get(0).isPlayer()) {
-                throw new RuntimeException("remove_item() expects player as first argument, got " + args.get(0).getType());
+                throw new QuillRuntimeError("remove_item() expects player as first argument, got " + args.get(0).getType());
             }
 
             MockPlayer player = (MockPlayer) args.get(0).getValue();
@@ -95,7 +96,7 @@ public class DiscordBuiltInPlayerFuncs {
             int amount = args.size() == 3 ? (int) args.get(2).asNumber() : 1;
 
             player.removeItem(itemId, amount);
-            context.log("[REMOVE_ITEM] " + player.getName() + " lost " + amount + "x " + itemId);
+            context.log(LogTemplate.REMOVE_ITEM).str(player.getName()).integer(amount).str(itemId);
 
             return new NumberValue(amount);
         }
@@ -111,22 +112,22 @@ public class DiscordBuiltInPlayerFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 2) {
-                throw new RuntimeException("set_health() requires 2 arguments, got " + args.size());
+                throw new QuillRuntimeError("set_health() requires 2 arguments, got " + args.size());
             }
 
             if (!args.get(0).isPlayer()) {
-                throw new RuntimeException("set_health() expects player as first argument, got " + args.get(0).getType());
+                throw new QuillRuntimeError("set_health() expects player as first argument, got " + args.get(0).getType());
             }
 
             MockPlayer player = (MockPlayer) args.get(0).getValue();
             double health = args.get(1).asNumber();
 
             if (health < 0 || health > 20) {
-                throw new RuntimeException("set_health() expects health between 0 and 20, got " + health);
+                throw new QuillRuntimeError("set_health() expects health between 0 and 20, got " + health);
             }
 
             player.setHealth(health);
-            context.log("[HEALTH] " + player.getName() + " health set to " + health);
+            context.log(LogTemplate.HEALTH).str(player.getName()).num(health);
 
             return new BooleanValue(true);
         }
@@ -142,22 +143,22 @@ public class DiscordBuiltInPlayerFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 2) {
-                throw new RuntimeException("set_hunger() requires 2 arguments, got " + args.size());
+                throw new QuillRuntimeError("set_hunger() requires 2 arguments, got " + args.size());
             }
 
             if (!args.get(0).isPlayer()) {
-                throw new RuntimeException("set_hunger() expects player as first argument, got " + args.get(0).getType());
+                throw new QuillRuntimeError("set_hunger() expects player as first argument, got " + args.get(0).getType());
             }
 
             MockPlayer player = (MockPlayer) args.get(0).getValue();
             int hunger = (int) args.get(1).asNumber();
 
             if (hunger < 0 || hunger > 20) {
-                throw new RuntimeException("set_hunger() expects hunger between 0 and 20, got " + hunger);
+                throw new QuillRuntimeError("set_hunger() expects hunger between 0 and 20, got " + hunger);
             }
 
             player.setHunger(hunger);
-            context.log("[HUNGER] " + player.getName() + " hunger set to " + hunger);
+            context.log(LogTemplate.HUNGER).str(player.getName()).integer(hunger);
 
             return new BooleanValue(true);
         }
@@ -173,11 +174,11 @@ public class DiscordBuiltInPlayerFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 2) {
-                throw new RuntimeException("set_gamemode() requires 2 arguments, got " + args.size());
+                throw new QuillRuntimeError("set_gamemode() requires 2 arguments, got " + args.size());
             }
 
             if (!args.get(0).isPlayer()) {
-                throw new RuntimeException("set_gamemode() expects player as first argument, got " + args.get(0).getType());
+                throw new QuillRuntimeError("set_gamemode() expects player as first argument, got " + args.get(0).getType());
             }
 
             MockPlayer player = (MockPlayer) args.get(0).getValue();
@@ -185,11 +186,11 @@ public class DiscordBuiltInPlayerFuncs {
 
             java.util.Set<String> validModes = java.util.Set.of("adventure", "creative", "spectator", "survival");
             if (!validModes.contains(gamemode)) {
-                throw new RuntimeException("set_gamemode() expects one of [adventure, creative, spectator, survival], got " + gamemode);
+                throw new QuillRuntimeError("set_gamemode() expects one of [adventure, creative, spectator, survival], got " + gamemode);
             }
 
             player.setGamemode(gamemode);
-            context.log("[GAMEMODE] " + player.getName() + " gamemode set to " + gamemode);
+            context.log(LogTemplate.GAMEMODE).str(player.getName()).str(gamemode);
 
             return new BooleanValue(true);
         }
@@ -205,21 +206,41 @@ public class DiscordBuiltInPlayerFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 1) {
-                throw new RuntimeException("heal() requires 1 argument, got " + args.size());
+                throw new QuillRuntimeError("heal() requires 1 argument, got " + args.size());
             }
 
             if (!args.get(0).isPlayer()) {
-                throw new RuntimeException("heal() expects player argument, got " + args.get(0).getType());
+                throw new QuillRuntimeError("heal() expects player argument, got " + args.get(0).getType());
             }
 
             MockPlayer player = (MockPlayer) args.get(0).getValue();
             player.heal(player.getMaxHealth());
-            context.log("[HEAL] " + player.getName() + " healed to full health");
+            context.log(LogTemplate.HEAL).str(player.getName());
 
             return new BooleanValue(true);
         }
     }
 
+    public static class HealAllFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        private final DiscordSimulationContext context;
+        
+        public HealAllFunction(DiscordSimulationContext context) {
+            this.context = context;
+        }
+        
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() > 1) {
+                throw new QuillRuntimeError("heal_all() requires 0 or 1 arguments, got " + args.size());
+            }
+
+            int healed = args.isEmpty() ? context.healAll() : context.healAll(args.get(0).asNumber());
+            context.log(LogTemplate.HEAL_ALL).integer(healed);
+
+            return new NumberValue(healed);
+        }
+    }
+
     public static class KillFunction implements DiscordQuillInterpreter.BuiltInFunction {
         private final DiscordSimulationContext context;
         
@@ -230,16 +251,16 @@ public class DiscordBuiltInPlayerFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 1) {
-                throw new RuntimeException("kill() requires 1 argument, got " + args.size());
+                throw new QuillRuntimeError("kill() requires 1 argument, got " + args.size());
             }
 
             if (!args.get(0).isPlayer()) {
-                throw new RuntimeException("kill() expects player argument, got " + args.get(0).getType());
+                throw new QuillRuntimeError("kill() expects player argument, got " + args.get(0).getType());
             }
 
             MockPlayer player = (MockPlayer) args.get(0).getValue();
             player.setHealth(0);
-            context.log("[KILL] " + player.getName() + " was killed");
+            context.log(LogTemplate.KILL).str(player.getName());
 
             return new BooleanValue(true);
         }
@@ -255,11 +276,11 @@ public class DiscordBuiltInPlayerFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 2) {
-                throw new RuntimeException("sendmessage() requires 2 arguments, got " + args.size());
+                throw new QuillRuntimeError("sendmessage() requires 2 arguments, got " + args.size());
             }
 
             if (!args.get(0).isPlayer()) {
-                throw new RuntimeException("sendmessage() expects player as first argument, got " + args.get(0).getType());
+                throw new QuillRuntimeError("sendmessage() expects player as first argument, got " + args.get(0).getType());
             }
 
             MockPlayer player = (MockPlayer) args.get(0).getValue();
@@ -275,11 +296,11 @@ public class DiscordBuiltInPlayerFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 1) {
-                throw new RuntimeException("get_health() requires 1 argument, got " + args.size());
+                throw new QuillRuntimeError("get_health() requires 1 argument, got " + args.size());
             }
 
             if (!args.get(0).isPlayer()) {
-                throw new RuntimeException("get_health() expects player argument, got " + args.get(0).getType());
+                throw new QuillRuntimeError("get_health() expects player argument, got " + args.get(0).getType());
             }
 
             MockPlayer player = (MockPlayer) args.get(0).getValue();
@@ -291,11 +312,11 @@ public class DiscordBuiltInPlayerFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 1) {
-                throw new RuntimeException("get_hunger() requires 1 argument, got " + args.size());
+                throw new QuillRuntimeError("get_hunger() requires 1 argument, got " + args.size());
             }
 
             if (!args.get(0).isPlayer()) {
-                throw new RuntimeException("get_hunger() expects player argument, got " + args.get(0).getType());
+                throw new QuillRuntimeError("get_hunger() expects player argument, got " + args.get(0).getType());
             }
 
             MockPlayer player = (MockPlayer) args.get(0).getValue();
@@ -307,11 +328,11 @@ public class DiscordBuiltInPlayerFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 1) {
-                throw new RuntimeException("get_name() requires 1 argument, got " + args.size());
+                throw new QuillRuntimeError("get_name() requires 1 argument, got " + args.size());
             }
 
             if (!args.get(0).isPlayer()) {
-                throw new RuntimeException("get_name() expects player argument, got " + args.get(0).getType());
+                throw new QuillRuntimeError("get_name() expects player argument, got " + args.get(0).getType());
             }
 
             MockPlayer player = (MockPlayer) args.get(0).getValue();
@@ -323,11 +344,11 @@ public class DiscordBuiltInPlayerFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 1) {
-                throw new RuntimeException("get_location() requires 1 argument, got " + args.size());
+                throw new QuillRuntimeError("get_location() requires 1 argument, got " + args.size());
             }
 
             if (!args.get(0).isPlayer()) {
-                throw new RuntimeException("get_location() expects player argument, got " + args.get(0).getType());
+                throw new QuillRuntimeError("get_location() expects player argument, got " + args.get(0).getType());
             }
 
             MockPlayer player = (MockPlayer) args.get(0).getValue();
@@ -344,11 +365,11 @@ public class DiscordBuiltInPlayerFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 1) {
-                throw new RuntimeException("get_gamemode() requires 1 argument, got " + args.size());
+                throw new QuillRuntimeError("get_gamemode() requires 1 argument, got " + args.size());
             }
 
             if (!args.get(0).isPlayer()) {
-                throw new RuntimeException("get_gamemode() expects player argument, got " + args.get(0).getType());
+                throw new QuillRuntimeError("get_gamemode() expects player argument, got " + args.get(0).getType());
             }
 
             MockPlayer player = (MockPlayer) args.get(0).getValue();
@@ -366,18 +387,18 @@ public class DiscordBuiltInPlayerFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 2) {
-                throw new RuntimeException("set_flying() requires 2 arguments, got " + args.size());
+                throw new QuillRuntimeError("set_flying() requires 2 arguments, got " + args.size());
             }
 
             if (!args.get(0).isPlayer()) {
-                throw new RuntimeException("set_flying() expects player as first argument, got " + args.get(0).getType());
+                throw new QuillRuntimeError("set_flying() expects player as first argument, got " + args.get(0).getType());
             }
 
             MockPlayer player = (MockPlayer) args.get(0).getValue();
             boolean flying = args.get(1).asBoolean();
 
             player.setFlying(flying);
-            context.log("[FLYING] " + player.getName() + " flying set to " + flying);
+            context.log(LogTemplate.FLYING).str(player.getName()).bool(flying);
 
             return new BooleanValue(true);
         }
@@ -393,20 +414,70 @@ public class DiscordBuiltInPlayerFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 2) {
-                throw new RuntimeException("damage() requires 2 arguments, got " + args.size());
+                throw new QuillRuntimeError("damage() requires 2 arguments, got " + args.size());
             }
 
             if (!args.get(0).isPlayer()) {
-                throw new RuntimeException("damage() expects player as first argument, got " + args.get(0).getType());
+                throw new QuillRuntimeError("damage() expects player as first argument, got " + args.get(0).getType());
             }
 
             MockPlayer player = (MockPlayer) args.get(0).getValue();
             double damage = args.get(1).asNumber();
 
             player.damage(damage);
-            context.log("[DAMAGE] " + player.getName() + " took " + damage + " damage");
+            context.log(LogTemplate.DAMAGE).str(player.getName()).num(damage);
+
+            return new BooleanValue(true);
+        }
+    }
+
+    public static class AddPotionEffectFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        private final DiscordSimulationContext context;
+        
+        public AddPotionEffectFunction(DiscordSimulationContext context) {
+            this.context = context;
+        }
+        
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() != 3 && args.size() != 4) {
+                throw new QuillRuntimeError("add_potion_effect() requires 3 or 4 arguments, got " + args.size());
+            }
+
+            if (!args.get(0).isPlayer()) {
+                throw new QuillRuntimeError("add_potion_effect() expects player as first argument, got " + args.get(0).getType());
+            }
 
+            MockPlayer player = (MockPlayer) args.get(0).getValue();
+            String type = args.get(1).asString();
+            int duration = (int) args.get(2).asNumber();
+            int amplifier = args.size() == 4 ? (int) args.get(3).asNumber() : 0;
+
+            if (duration < 1) {
+                throw new QuillRuntimeError("add_potion_effect() expects a duration of at least 1 tick, got " + duration);
+            }
+            if (amplifier < 0) {
+                throw new QuillRuntimeError("add_potion_effect() expects an amplifier of 0 or more, got " + amplifier);
+            }
+
+            context.addPotionEffect(player, type, duration, amplifier);
             return new BooleanValue(true);
         }
     }
+
+    public static class HasPotionEffectFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() != 2) {
+                throw new QuillRuntimeError("has_potion_effect() requires 2 arguments, got " + args.size());
+            }
+
+            if (!args.get(0).isPlayer()) {
+                throw new QuillRuntimeError("has_potion_effect() expects player as first argument, got " + args.get(0).getType());
+            }
+
+            MockPlayer player = (MockPlayer) args.get(0).getValue();
+            return new BooleanValue(player.hasPotionEffect(args.get(1).asString()));
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,218 @@
+package me.kmathers.sudobot.quill.interpreter;
+
+import me.kmathers.sudobot.quill.interpreter.DiscordQuillInterpreter.Callback;
+import me.kmathers.sudobot.quill.interpreter.QuillValue.*;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Discord-compatible built-in sequence functions.
+ * map, filter and take return lazy lists that are evaluated in a single
+ * fused pass when consumed; reduce, any and all consume them directly.
+ */
+public class DiscordBuiltInSequenceFuncs {
+
+    /**
+     * Iterate over a list, set or lazy list. A lazy list keeps its elements
+     * once a pass has seen all of them.
+     */
+    static Iterator<QuillValue> iterate(QuillValue source, String caller) {
+        if (source instanceof LazyListValue) {
+            return ((LazyListValue) source).iterator();
+        } else if (source.isList()) {
+            return source.asList().iterator();
+        } else if (source.isSet()) {
+            return source.asSet().iterator();
+        } else {
+            throw new QuillRuntimeError(caller + "() expects list or set as first argument, got " + source.getType());
+        }
+    }
+
+    /**
+     * Like {@link #iterate}, but a lazy source is fused into the calling
+     * stage's pass without keeping its elements.
+     */
+    static Iterator<QuillValue> stage(QuillValue source, String caller) {
+        if (source instanceof LazyListValue) {
+            return ((LazyListValue) source).pipeline();
+        }
+        return iterate(source, caller);
+    }
+
+    public static class MapFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() != 2) {
+                throw new QuillRuntimeError("map() requires 2 arguments, got " + args.size());
+            }
+
+            QuillValue source = args.get(0);
+            iterate(source, "map");
+            Callback fn = interpreter.callback(args.get(1), 1, "map");
+
+            return new LazyListValue(() -> {
+                Iterator<QuillValue> it = stage(source, "map");
+                return new Iterator<QuillValue>() {
+                    @Override
+                    public boolean hasNext() {
+                        return it.hasNext();
+                    }
+
+                    @Override
+                    public QuillValue next() {
+                        return fn.invoke(it.next());
+                    }
+                };
+            });
+        }
+    }
+
+    public static class FilterFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() != 2) {
+                throw new QuillRuntimeError("filter() requires 2 arguments, got " + args.size());
+            }
+
+            QuillValue source = args.get(0);
+            iterate(source, "filter");
+            Callback fn = interpreter.callback(args.get(1), 1, "filter");
+
+            return new LazyListValue(() -> {
+                Iterator<QuillValue> it = stage(source, "filter");
+                return new Iterator<QuillValue>() {
+                    private QuillValue pending;
+
+                    @Override
+                    public boolean hasNext() {
+                        while (pending == null && it.hasNext()) {
+                            QuillValue item = it.next();
+                            if (fn.invoke(item).isTruthy()) {
+                                pending = item;
+                            }
+                        }
+                        return pending != null;
+                    }
+
+                    @Override
+                    public QuillValue next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        QuillValue item = pending;
+                        pending = null;
+                        return item;
+                    }
+                };
+            });
+        }
+    }
+
+    public static class TakeFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() != 2) {
+                throw new QuillRuntimeError("take() requires 2 arguments, got " + args.size());
+            }
+
+            QuillValue source = args.get(0);
+            iterate(source, "take");
+            int limit = (int) args.get(1).asNumber();
+
+            if (limit < 0) {
+                throw new QuillRuntimeError("take() expects a non-negative count, got " + limit);
+            }
+
+            return new LazyListValue(() -> {
+                Iterator<QuillValue> it = stage(source, "take");
+                return new Iterator<QuillValue>() {
+                    private int taken = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return taken < limit && it.hasNext();
+                    }
+
+                    @Override
+                    public QuillValue next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        taken++;
+                        return it.next();
+                    }
+                };
+            });
+        }
+    }
+
+    public static class ReduceFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() < 2 || args.size() > 3) {
+                throw new QuillRuntimeError("reduce() requires 2 or 3 arguments, got " + args.size());
+            }
+
+            Iterator<QuillValue> it = iterate(args.get(0), "reduce");
+            Callback fn = interpreter.callback(args.get(1), 2, "reduce");
+
+            QuillValue accumulator;
+            if (args.size() == 3) {
+                accumulator = args.get(2);
+            } else if (it.hasNext()) {
+                accumulator = it.next();
+            } else {
+                throw new QuillRuntimeError("reduce() of empty list requires an initial value");
+            }
+
+            while (it.hasNext()) {
+                accumulator = fn.invoke(accumulator, it.next());
+            }
+            return accumulator;
+        }
+    }
+
+    public static class AnyFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() < 1 || args.size() > 2) {
+                throw new QuillRuntimeError("any() requires 1 or 2 arguments, got " + args.size());
+            }
+
+            Iterator<QuillValue> it = iterate(args.get(0), "any");
+            Callback fn = args.size() == 2 ? interpreter.callback(args.get(1), 1, "any") : null;
+
+            while (it.hasNext()) {
+                QuillValue item = it.next();
+                QuillValue result = fn != null ? fn.invoke(item) : item;
+                if (result.isTruthy()) {
+                    return new BooleanValue(true);
+                }
+            }
+            return new BooleanValue(false);
+        }
+    }
+
+    public static class AllFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() < 1 || args.size() > 2) {
+                throw new QuillRuntimeError("all() requires 1 or 2 arguments, got " + args.size());
+            }
+
+            Iterator<QuillValue> it = iterate(args.get(0), "all");
+            Callback fn = args.size() == 2 ? interpreter.callback(args.get(1), 1, "all") : null;
+
+            while (it.hasNext()) {
+                QuillValue item = it.next();
+                QuillValue result = fn != null ? fn.invoke(item) : item;
+                if (!result.isTruthy()) {
+                    return new BooleanValue(false);
+                }
+            }
+            return new BooleanValue(true);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package me.kmathers.sudobot.quill.interpreter;
 
 import me.kmathers.sudobot.quill.simulation.DiscordSimulationContext;
+import me.kmathers.sudobot.quill.simulation.LogTemplate;
 import me.kmathers.sudobot.quill.interpreter.QuillValue.*;
 
 import java.util.*;
@@ -22,10 +23,12 @@ public class DiscordBuiltInUtilFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 1) {
-                throw new RuntimeException("log() requires 1 argument, got " + args.size());
+                throw new QuillRuntimeError("log() requires 1 argument, got " + args.size());
             }
             
-            context.log("[LOG] " + args.get(0).toString());
+            // Rendering a lazy sequence can log too, so finish it before starting this entry
+            String text = args.get(0).toString();
+            context.log(LogTemplate.LOG).str(text);
             return new BooleanValue(true);
         }
     }
@@ -34,7 +37,7 @@ public class DiscordBuiltInUtilFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 1) {
-                throw new RuntimeException("len() requires 1 argument, got " + args.size());
+                throw new QuillRuntimeError("len() requires 1 argument, got " + args.size());
             }
 
             QuillValue val = args.get(0);
@@ -44,8 +47,10 @@ public class DiscordBuiltInUtilFuncs {
                 return new NumberValue(val.asString().length());
             } else if (val.isMap()) {
                 return new NumberValue(val.asMap().size());
+            } else if (val.isSet()) {
+                return new NumberValue(val.asSet().size());
             } else {
-                throw new RuntimeException("len() expects list, string, or map, got " + val.getType());
+                throw new QuillRuntimeError("len() expects list, string, map, or set, got " + val.getType());
             }
         }
     }
@@ -54,14 +59,15 @@ public class DiscordBuiltInUtilFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 2) {
-                throw new RuntimeException("append() requires 2 arguments, got " + args.size());
+                throw new QuillRuntimeError("append() requires 2 arguments, got " + args.size());
             }
 
             if (!args.get(0).isList()) {
-                throw new RuntimeException("append() expects list as first argument, got " + args.get(0).getType());
+                throw new QuillRuntimeError("append() expects list as first argument, got " + args.get(0).getType());
             }
 
             args.get(0).asList().add(args.get(1));
+            MemoryMeter.charge(MemoryMeter.REFERENCE_BYTES);
             return new BooleanValue(true);
         }
     }
@@ -70,22 +76,26 @@ public class DiscordBuiltInUtilFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 2) {
-                throw new RuntimeException("remove() requires 2 arguments, got " + args.size());
+                throw new QuillRuntimeError("remove() requires 2 arguments, got " + args.size());
+            }
+
+            if (args.get(0).isSet()) {
+                return new BooleanValue(args.get(0).asSet().remove(args.get(1)));
             }
 
             if (!args.get(0).isList()) {
-                throw new RuntimeException("remove() expects list as first argument, got " + args.get(0).getType());
+                throw new QuillRuntimeError("remove() expects list or set as first argument, got " + args.get(0).getType());
             }
 
             if (!args.get(1).isNumber()) {
-                throw new RuntimeException("remove() expects number as second argument, got " + args.get(1).getType());
+                throw new QuillRuntimeError("remove() expects number as second argument, got " + args.get(1).getType());
             }
 
             List<QuillValue> list = args.get(0).asList();
             int index = (int) args.get(1).asNumber();
 
             if (index < 0 || index >= list.size()) {
-                throw new RuntimeException("Index " + index + " out of bounds for list of size " + list.size());
+                throw new QuillRuntimeError("Index " + index + " out of bounds for list of size " + list.size());
             }
 
             list.remove(index);
@@ -97,33 +107,122 @@ public class DiscordBuiltInUtilFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 2) {
-                throw new RuntimeException("contains() requires 2 arguments, got " + args.size());
+                throw new QuillRuntimeError("contains() requires 2 arguments, got " + args.size());
             }
 
             QuillValue container = args.get(0);
             QuillValue searchItem = args.get(1);
 
-            if (container.isList()) {
-                for (QuillValue item : container.asList()) {
-                    if (valuesEqual(item, searchItem)) {
-                        return new BooleanValue(true);
-                    }
-                }
-                return new BooleanValue(false);
+            if (container.isSet()) {
+                return new BooleanValue(container.asSet().contains(searchItem));
+            } else if (container.isList()) {
+                return new BooleanValue(container.asList().contains(searchItem));
             } else if (container.isString()) {
                 return new BooleanValue(container.asString().contains(searchItem.asString()));
             } else {
-                throw new RuntimeException("contains() expects list or string, got " + container.getType());
+                throw new QuillRuntimeError("contains() expects list, set, or string, got " + container.getType());
             }
         }
+    }
+
+    public static class SetFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() > 1) {
+                throw new QuillRuntimeError("set() requires 0 or 1 arguments, got " + args.size());
+            }
+
+            if (args.isEmpty()) {
+                return new SetValue();
+            }
 
-        private boolean valuesEqual(QuillValue a, QuillValue b) {
-            if (a.getType() != b.getType()) return false;
-            if (a.isNumber()) return a.asNumber() == b.asNumber();
-            if (a.isString()) return a.asString().equals(b.asString());
-            if (a.isBoolean()) return a.asBoolean() == b.asBoolean();
-            if (a.isNull()) return b.isNull();
-            return a.getValue() == b.getValue();
+            QuillValue source = args.get(0);
+            if (source.isList()) {
+                return new SetValue(new LinkedHashSet<>(source.asList()));
+            } else if (source.isSet()) {
+                return new SetValue(new LinkedHashSet<>(source.asSet()));
+            } else {
+                throw new QuillRuntimeError("set() expects list or set, got " + source.getType());
+            }
+        }
+    }
+
+    public static class AddFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() != 2) {
+                throw new QuillRuntimeError("add() requires 2 arguments, got " + args.size());
+            }
+
+            if (!args.get(0).isSet()) {
+                throw new QuillRuntimeError("add() expects set as first argument, got " + args.get(0).getType());
+            }
+
+            boolean added = args.get(0).asSet().add(args.get(1));
+            if (added) {
+                MemoryMeter.charge(MemoryMeter.ENTRY_BYTES);
+            }
+            return new BooleanValue(added);
+        }
+    }
+
+    public static class HasFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() != 2) {
+                throw new QuillRuntimeError("has() requires 2 arguments, got " + args.size());
+            }
+
+            if (!args.get(0).isSet()) {
+                throw new QuillRuntimeError("has() expects set as first argument, got " + args.get(0).getType());
+            }
+
+            return new BooleanValue(args.get(0).asSet().contains(args.get(1)));
+        }
+    }
+
+    public static class UnionFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() != 2) {
+                throw new QuillRuntimeError("union() requires 2 arguments, got " + args.size());
+            }
+
+            if (!args.get(0).isSet() || !args.get(1).isSet()) {
+                throw new QuillRuntimeError("union() expects two sets, got " + args.get(0).getType() + " and " + args.get(1).getType());
+            }
+
+            Set<QuillValue> result = new LinkedHashSet<>(args.get(0).asSet());
+            result.addAll(args.get(1).asSet());
+            return new SetValue(result);
+        }
+    }
+
+    public static class IntersectFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() != 2) {
+                throw new QuillRuntimeError("intersect() requires 2 arguments, got " + args.size());
+            }
+
+            if (!args.get(0).isSet() || !args.get(1).isSet()) {
+                throw new QuillRuntimeError("intersect() expects two sets, got " + args.get(0).getType() + " and " + args.get(1).getType());
+            }
+
+            Set<QuillValue> a = args.get(0).asSet();
+            Set<QuillValue> b = args.get(1).asSet();
+
+            // Walk the smaller set and probe the larger one
+            Set<QuillValue> smaller = a.size() <= b.size() ? a : b;
+            Set<QuillValue> larger = smaller == a ? b : a;
+
+            Set<QuillValue> result = new LinkedHashSet<>();
+            for (QuillValue item : smaller) {
+                if (larger.contains(item)) {
+                    result.add(item);
+                }
+            }
+            return new SetValue(result);
         }
     }
 
@@ -131,7 +230,7 @@ public class DiscordBuiltInUtilFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 2) {
-                throw new RuntimeException("split() requires 2 arguments, got " + args.size());
+                throw new QuillRuntimeError("split() requires 2 arguments, got " + args.size());
             }
 
             String str = args.get(0).asString();
@@ -149,7 +248,7 @@ public class DiscordBuiltInUtilFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 2) {
-                throw new RuntimeException("join() requires 2 arguments, got " + args.size());
+                throw new QuillRuntimeError("join() requires 2 arguments, got " + args.size());
             }
 
             List<QuillValue> list = args.get(0).asList();
@@ -167,7 +266,7 @@ public class DiscordBuiltInUtilFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 1) {
-                throw new RuntimeException("to_string() requires 1 argument, got " + args.size());
+                throw new QuillRuntimeError("to_string() requires 1 argument, got " + args.size());
             }
 
             return new StringValue(args.get(0).toString());
@@ -178,7 +277,7 @@ public class DiscordBuiltInUtilFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 1) {
-                throw new RuntimeException("to_number() requires 1 argument, got " + args.size());
+                throw new QuillRuntimeError("to_number() requires 1 argument, got " + args.size());
             }
 
             QuillValue val = args.get(0);
@@ -189,12 +288,12 @@ public class DiscordBuiltInUtilFuncs {
                 try {
                     return new NumberValue(Double.parseDouble(val.asString()));
                 } catch (NumberFormatException e) {
-                    throw new RuntimeException("Cannot convert string '" + val.asString() + "' to number");
+                    throw new QuillRuntimeError("Cannot convert string '" + val.asString() + "' to number");
                 }
             } else if (val.isBoolean()) {
                 return new NumberValue(val.asBoolean() ? 1.0 : 0.0);
             } else {
-                throw new RuntimeException("Cannot convert " + val.getType() + " to number");
+                throw new QuillRuntimeError("Cannot convert " + val.getType() + " to number");
             }
         }
     }
@@ -203,7 +302,7 @@ public class DiscordBuiltInUtilFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 1) {
-                throw new RuntimeException("to_boolean() requires 1 argument, got " + args.size());
+                throw new QuillRuntimeError("to_boolean() requires 1 argument, got " + args.size());
             }
 
             return new BooleanValue(args.get(0).isTruthy());
@@ -214,7 +313,7 @@ public class DiscordBuiltInUtilFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 1) {
-                throw new RuntimeException("type_of() requires 1 argument, got " + args.size());
+                throw new QuillRuntimeError("type_of() requires 1 argument, got " + args.size());
             }
 
             return new StringValue(args.get(0).getType().toString().toLowerCase());
@@ -225,12 +324,15 @@ public class DiscordBuiltInUtilFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 2) {
-                throw new RuntimeException("range() requires 2 arguments, got " + args.size());
+                throw new QuillRuntimeError("range() requires 2 arguments, got " + args.size());
             }
 
             int start = (int) args.get(0).asNumber();
             int end = (int) args.get(1).asNumber();
 
+            // Charge for the numbers up front so an enormous range is refused before it's built
+            MemoryMeter.charge(Math.abs((long) end - start) * MemoryMeter.VALUE_BYTES);
+
             List<QuillValue> values = new ArrayList<>();
             if (start <= end) {
                 for (int i = start; i < end; i++) {
@@ -252,7 +354,7 @@ public class DiscordBuiltInUtilFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() < 1 || args.size() > 2) {
-                throw new RuntimeException("random() requires 1 or 2 arguments, got " + args.size());
+                throw new QuillRuntimeError("random() requires 1 or 2 arguments, got " + args.size());
             }
 
             double min = 0;
@@ -274,7 +376,7 @@ public class DiscordBuiltInUtilFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 1) {
-                throw new RuntimeException("round() requires 1 argument, got " + args.size());
+                throw new QuillRuntimeError("round() requires 1 argument, got " + args.size());
             }
 
             return new NumberValue(Math.round(args.get(0).asNumber()));
@@ -285,7 +387,7 @@ public class DiscordBuiltInUtilFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 1) {
-                throw new RuntimeException("floor() requires 1 argument, got " + args.size());
+                throw new QuillRuntimeError("floor() requires 1 argument, got " + args.size());
             }
 
             return new NumberValue(Math.floor(args.get(0).asNumber()));
@@ -296,7 +398,7 @@ public class DiscordBuiltInUtilFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 1) {
-                throw new RuntimeException("ceil() requires 1 argument, got " + args.size());
+                throw new QuillRuntimeError("ceil() requires 1 argument, got " + args.size());
             }
 
             return new NumberValue(Math.ceil(args.get(0).asNumber()));
@@ -307,7 +409,7 @@ public class DiscordBuiltInUtilFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 1) {
-                throw new RuntimeException("abs() requires 1 argument, got " + args.size());
+                throw new QuillRuntimeError("abs() requires 1 argument, got " + args.size());
             }
 
             return new NumberValue(Math.abs(args.get(0).asNumber()));
@@ -318,7 +420,7 @@ public class DiscordBuiltInUtilFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 1) {
-                throw new RuntimeException("sqrt() requires 1 argument, got " + args.size());
+                throw new QuillRuntimeError("sqrt() requires 1 argument, got " + args.size());
             }
 
             return new NumberValue(Math.sqrt(args.get(0).asNumber()));
@@ -329,7 +431,7 @@ public class DiscordBuiltInUtilFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 2) {
-                throw new RuntimeException("pow() requires 2 arguments, got " + args.size());
+                throw new QuillRuntimeError("pow() requires 2 arguments, got " + args.size());
             }
 
             return new NumberValue(Math.pow(args.get(0).asNumber(), args.get(1).asNumber()));
@@ -342,13 +444,13 @@ public class DiscordBuiltInUtilFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 1) {
-                throw new RuntimeException("random_choice() requires 1 argument, got " + args.size());
+                throw new QuillRuntimeError("random_choice() requires 1 argument, got " + args.size());
             }
 
             List<QuillValue> list = args.get(0).asList();
 
             if (list.isEmpty()) {
-                throw new RuntimeException("random_choice() requires non-empty list");
+                throw new QuillRuntimeError("random_choice() requires non-empty list");
             }
 
             int index = random.nextInt(list.size());
@@ -360,13 +462,13 @@ public class DiscordBuiltInUtilFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() < 1) {
-                throw new RuntimeException("min() requires at least 1 argument");
+                throw new QuillRuntimeError("min() requires at least 1 argument");
             }
 
             if (args.size() == 1 && args.get(0).isList()) {
                 List<QuillValue> list = args.get(0).asList();
                 if (list.isEmpty()) {
-                    throw new RuntimeException("min() requires non-empty list");
+                    throw new QuillRuntimeError("min() requires non-empty list");
                 }
 
                 double min = Double.POSITIVE_INFINITY;
@@ -388,13 +490,13 @@ public class DiscordBuiltInUtilFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() < 1) {
-                throw new RuntimeException("max() requires at least 1 argument");
+                throw new QuillRuntimeError("max() requires at least 1 argument");
             }
 
             if (args.size() == 1 && args.get(0).isList()) {
                 List<QuillValue> list = args.get(0).asList();
                 if (list.isEmpty()) {
-                    throw new RuntimeException("max() requires non-empty list");
+                    throw new QuillRuntimeError("max() requires non-empty list");
                 }
 
                 double max = Double.NEGATIVE_INFINITY;
@@ -416,11 +518,11 @@ public class DiscordBuiltInUtilFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 1) {
-                throw new RuntimeException("sum() requires 1 argument, got " + args.size());
+                throw new QuillRuntimeError("sum() requires 1 argument, got " + args.size());
             }
 
             if (!args.get(0).isList()) {
-                throw new RuntimeException("sum() expects list, got " + args.get(0).getType());
+                throw new QuillRuntimeError("sum() expects list, got " + args.get(0).getType());
             }
 
             double sum = 0;
@@ -435,12 +537,12 @@ public class DiscordBuiltInUtilFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 1) {
-                throw new RuntimeException("avg() requires 1 argument, got " + args.size());
+                throw new QuillRuntimeError("avg() requires 1 argument, got " + args.size());
             }
 
             List<QuillValue> list = args.get(0).asList();
             if (list.isEmpty()) {
-                throw new RuntimeException("avg() requires non-empty list");
+                throw new QuillRuntimeError("avg() requires non-empty list");
             }
 
             double sum = 0;
@@ -461,13 +563,13 @@ public class DiscordBuiltInUtilFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 1) {
-                throw new RuntimeException("get_player() requires 1 argument, got " + args.size());
+                throw new QuillRuntimeError("get_player() requires 1 argument, got " + args.size());
             }
             
             String playerName = args.get(0).asString();
             
             if (!context.hasPlayer(playerName)) {
-                throw new RuntimeException("Player '" + playerName + "' not found");
+                throw new QuillRuntimeError("Player '" + playerName + "' not found");
             }
             
             DiscordSimulationContext.MockPlayer player = context.getPlayer(playerName);
@@ -485,7 +587,7 @@ public class DiscordBuiltInUtilFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 0) {
-                throw new RuntimeException("get_online_players() requires 0 arguments, got " + args.size());
+                throw new QuillRuntimeError("get_online_players() requires 0 arguments, got " + args.size());
             }
             
             List<QuillValue> players = new ArrayList<>();
@@ -496,4 +598,35 @@ public class DiscordBuiltInUtilFuncs {
             return new ListValue(players);
         }
     }
+
+    /**
+     * Queue an event to be handled after the script finishes. Data with x/y/z,
+     * a location or a player only reaches handlers whose scope contains it.
+     */
+    public static class QueueEventFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        private final DiscordSimulationContext context;
+        
+        public QueueEventFunction(DiscordSimulationContext context) {
+            this.context = context;
+        }
+        
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() != 1 && args.size() != 2) {
+                throw new QuillRuntimeError("queue_event() requires 1 or 2 arguments, got " + args.size());
+            }
+            
+            String eventName = args.get(0).asString();
+            Map<String, QuillValue> data = new HashMap<>();
+            if (args.size() == 2) {
+                if (!args.get(1).isMap()) {
+                    throw new QuillRuntimeError("queue_event() expects a map of event data, got " + args.get(1).getType());
+                }
+                data.putAll(args.get(1).asMap());
+            }
+            
+            context.queueEvent(eventName, data);
+            return NullValue.INSTANCE;
+        }
+    }
 }
\ No newline at end of file
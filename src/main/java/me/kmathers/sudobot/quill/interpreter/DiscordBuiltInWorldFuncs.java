@@ -1,11 +1,16 @@
 package me.kmathers.sudobot.quill.interpreter;
 
+import me.kmathers.sudobot.quill.simulation.BlockClipboard;
+import me.kmathers.sudobot.quill.simulation.BlockRegistry;
 import me.kmathers.sudobot.quill.simulation.DiscordSimulationContext;
+import me.kmathers.sudobot.quill.simulation.LogTemplate;
+import me.kmathers.sudobot.quill.simulation.DiscordSimulationContext.MockEntity;
+import me.kmathers.sudobot.quill.simulation.DiscordSimulationContext.MockPlayer;
 import me.kmathers.sudobot.quill.simulation.DiscordSimulationContext.MockWorld;
 import me.kmathers.sudobot.quill.interpreter.QuillValue.*;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.HashMap;
 
 /**
@@ -24,17 +29,17 @@ public class DiscordBuiltInWorldFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 4) {
-                throw new RuntimeException("set_block() requires 4 arguments, got " + args.size());
+                throw new QuillRuntimeError("set_block() requires 4 arguments, got " + args.size());
             }
 
             double x = args.get(0).asNumber();
             double y = args.get(1).asNumber();
             double z = args.get(2).asNumber();
-            String blockType = args.get(3).asString();
+            short blockType = context.getBlockTypes().idOf(args.get(3).asString());
 
             MockWorld world = context.getDefaultWorld();
             world.setBlock(x, y, z, blockType);
-            context.log("[BLOCK] Set block at (" + x + ", " + y + ", " + z + ") to " + blockType);
+            context.log(LogTemplate.BLOCK).num(x).num(y).num(z).block(blockType);
 
             return new BooleanValue(true);
         }
@@ -50,7 +55,7 @@ public class DiscordBuiltInWorldFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 3) {
-                throw new RuntimeException("get_block() requires 3 arguments, got " + args.size());
+                throw new QuillRuntimeError("get_block() requires 3 arguments, got " + args.size());
             }
 
             double x = args.get(0).asNumber();
@@ -58,9 +63,9 @@ public class DiscordBuiltInWorldFuncs {
             double z = args.get(2).asNumber();
 
             MockWorld world = context.getDefaultWorld();
-            String blockType = world.getBlock(x, y, z);
+            short blockType = world.getBlock(x, y, z);
 
-            return new StringValue(blockType);
+            return new StringValue(context.getBlockTypes().nameOf(blockType));
         }
     }
 
@@ -74,7 +79,7 @@ public class DiscordBuiltInWorldFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 3) {
-                throw new RuntimeException("break_block() requires 3 arguments, got " + args.size());
+                throw new QuillRuntimeError("break_block() requires 3 arguments, got " + args.size());
             }
 
             double x = args.get(0).asNumber();
@@ -82,13 +87,157 @@ public class DiscordBuiltInWorldFuncs {
             double z = args.get(2).asNumber();
 
             MockWorld world = context.getDefaultWorld();
-            world.setBlock(x, y, z, "air");
-            context.log("[BREAK] Broke block at (" + x + ", " + y + ", " + z + ")");
+            world.setBlock(x, y, z, BlockRegistry.AIR);
+            context.log(LogTemplate.BREAK).num(x).num(y).num(z);
 
             return new BooleanValue(true);
         }
     }
 
+    // === Bulk Block Operations ===
+
+    /**
+     * Block bounds {x1, y1, z1, x2, y2, z2} from a scope or region argument at
+     * {@code start}, or from six numbers starting there. Returns null if the
+     * arguments are neither.
+     */
+    private static int[] regionBounds(List<QuillValue> args, int start) {
+        QuillValue first = args.get(start);
+        if (first.isScope()) {
+            ScopeContext.Region region = ((ScopeValue) first).getScope().getRegion();
+            return blockBounds(region.getX1(), region.getY1(), region.getZ1(),
+                    region.getX2(), region.getY2(), region.getZ2());
+        }
+        if (first.isRegion()) {
+            RegionValue region = first.asRegion();
+            return blockBounds(region.getX1(), region.getY1(), region.getZ1(),
+                    region.getX2(), region.getY2(), region.getZ2());
+        }
+        if (args.size() >= start + 6) {
+            return blockBounds(args.get(start).asNumber(), args.get(start + 1).asNumber(), args.get(start + 2).asNumber(),
+                    args.get(start + 3).asNumber(), args.get(start + 4).asNumber(), args.get(start + 5).asNumber());
+        }
+        return null;
+    }
+
+    private static int[] blockBounds(double x1, double y1, double z1, double x2, double y2, double z2) {
+        return new int[] {
+            Math.min(MockWorld.blockCoord(x1), MockWorld.blockCoord(x2)),
+            Math.min(MockWorld.blockCoord(y1), MockWorld.blockCoord(y2)),
+            Math.min(MockWorld.blockCoord(z1), MockWorld.blockCoord(z2)),
+            Math.max(MockWorld.blockCoord(x1), MockWorld.blockCoord(x2)),
+            Math.max(MockWorld.blockCoord(y1), MockWorld.blockCoord(y2)),
+            Math.max(MockWorld.blockCoord(z1), MockWorld.blockCoord(z2))
+        };
+    }
+
+    public static class FillFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        private final DiscordSimulationContext context;
+        
+        public FillFunction(DiscordSimulationContext context) {
+            this.context = context;
+        }
+        
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() != 2 && args.size() != 7) {
+                throw new QuillRuntimeError("fill() requires a region and a block type, got " + args.size() + " arguments");
+            }
+
+            int[] b = regionBounds(args, 0);
+            if (b == null) {
+                throw new QuillRuntimeError("fill() expects a scope or region, got " + args.get(0).getType());
+            }
+            short blockType = context.getBlockTypes().idOf(args.get(args.size() - 1).asString());
+
+            long count = context.getDefaultWorld().getBlocks().fill(b[0], b[1], b[2], b[3], b[4], b[5], blockType);
+            context.log(LogTemplate.FILL).integer(b[0]).integer(b[1]).integer(b[2])
+                    .integer(b[3]).integer(b[4]).integer(b[5]).block(blockType).integer(count);
+
+            return new NumberValue(count);
+        }
+    }
+
+    public static class ReplaceFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        private final DiscordSimulationContext context;
+        
+        public ReplaceFunction(DiscordSimulationContext context) {
+            this.context = context;
+        }
+        
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() != 3 && args.size() != 8) {
+                throw new QuillRuntimeError("replace() requires a region and 2 block types, got " + args.size() + " arguments");
+            }
+
+            int[] b = regionBounds(args, 0);
+            if (b == null) {
+                throw new QuillRuntimeError("replace() expects a scope or region, got " + args.get(0).getType());
+            }
+            short from = context.getBlockTypes().idOf(args.get(args.size() - 2).asString());
+            short to = context.getBlockTypes().idOf(args.get(args.size() - 1).asString());
+
+            long count = context.getDefaultWorld().getBlocks().replace(b[0], b[1], b[2], b[3], b[4], b[5], from, to);
+            context.log(LogTemplate.REPLACE).integer(count).block(from).block(to)
+                    .integer(b[0]).integer(b[1]).integer(b[2]).integer(b[3]).integer(b[4]).integer(b[5]);
+
+            return new NumberValue(count);
+        }
+    }
+
+    public static class CopyRegionFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        private final DiscordSimulationContext context;
+        
+        public CopyRegionFunction(DiscordSimulationContext context) {
+            this.context = context;
+        }
+        
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() != 1 && args.size() != 6) {
+                throw new QuillRuntimeError("copy_region() requires a region or 6 coordinates, got " + args.size() + " arguments");
+            }
+
+            int[] b = regionBounds(args, 0);
+            if (b == null) {
+                throw new QuillRuntimeError("copy_region() expects a scope or region, got " + args.get(0).getType());
+            }
+
+            BlockClipboard clipboard = context.getDefaultWorld().getBlocks().copy(b[0], b[1], b[2], b[3], b[4], b[5]);
+            context.log(LogTemplate.COPY).integer(b[0]).integer(b[1]).integer(b[2])
+                    .integer(b[3]).integer(b[4]).integer(b[5]).integer(clipboard.getBlockCount());
+
+            return new ClipboardValue(clipboard);
+        }
+    }
+
+    public static class PasteRegionFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        private final DiscordSimulationContext context;
+        
+        public PasteRegionFunction(DiscordSimulationContext context) {
+            this.context = context;
+        }
+        
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() != 4) {
+                throw new QuillRuntimeError("paste_region() requires 4 arguments, got " + args.size());
+            }
+
+            BlockClipboard clipboard = args.get(0).asClipboard();
+            int x = MockWorld.blockCoord(args.get(1).asNumber());
+            int y = MockWorld.blockCoord(args.get(2).asNumber());
+            int z = MockWorld.blockCoord(args.get(3).asNumber());
+
+            long count = context.getDefaultWorld().getBlocks().paste(clipboard, x, y, z);
+            context.log(LogTemplate.PASTE).integer(clipboard.getSizeX()).integer(clipboard.getSizeY())
+                    .integer(clipboard.getSizeZ()).integer(x).integer(y).integer(z);
+
+            return new NumberValue(count);
+        }
+    }
+
     public static class SetTimeFunction implements DiscordQuillInterpreter.BuiltInFunction {
         private final DiscordSimulationContext context;
         
@@ -99,18 +248,18 @@ public class DiscordBuiltInWorldFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 1) {
-                throw new RuntimeException("set_time() requires 1 argument, got " + args.size());
+                throw new QuillRuntimeError("set_time() requires 1 argument, got " + args.size());
             }
 
             long time = (long) args.get(0).asNumber();
 
             if (time < 0 || time > 24000) {
-                throw new RuntimeException("set_time() expects time between 0 and 24000, got " + time);
+                throw new QuillRuntimeError("set_time() expects time between 0 and 24000, got " + time);
             }
 
             MockWorld world = context.getDefaultWorld();
             world.setTime(time);
-            context.log("[TIME] World time set to " + time);
+            context.log(LogTemplate.TIME).integer(time);
 
             return new BooleanValue(true);
         }
@@ -126,7 +275,7 @@ public class DiscordBuiltInWorldFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 0) {
-                throw new RuntimeException("get_time() requires 0 arguments, got " + args.size());
+                throw new QuillRuntimeError("get_time() requires 0 arguments, got " + args.size());
             }
 
             MockWorld world = context.getDefaultWorld();
@@ -143,20 +292,23 @@ public class DiscordBuiltInWorldFuncs {
         
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
-            if (args.size() != 1) {
-                throw new RuntimeException("set_weather() requires 1 argument, got " + args.size());
+            if (args.size() != 1 && args.size() != 2) {
+                throw new QuillRuntimeError("set_weather() requires 1 or 2 arguments, got " + args.size());
             }
 
             String weather = args.get(0).asString().toLowerCase();
 
             java.util.Set<String> validWeather = java.util.Set.of("clear", "rain", "thunder");
             if (!validWeather.contains(weather)) {
-                throw new RuntimeException("set_weather() expects one of [clear, rain, thunder], got " + weather);
+                throw new QuillRuntimeError("set_weather() expects one of [clear, rain, thunder], got " + weather);
             }
 
-            MockWorld world = context.getDefaultWorld();
-            world.setWeather(weather);
-            context.log("[WEATHER] Weather set to " + weather);
+            long duration = args.size() == 2 ? (long) args.get(1).asNumber() : 0;
+            if (duration < 0) {
+                throw new QuillRuntimeError("set_weather() expects a duration of 0 or more ticks, got " + duration);
+            }
+
+            context.setWeather(context.getDefaultWorld(), weather, duration);
 
             return new BooleanValue(true);
         }
@@ -172,7 +324,7 @@ public class DiscordBuiltInWorldFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 0) {
-                throw new RuntimeException("get_weather() requires 0 arguments, got " + args.size());
+                throw new QuillRuntimeError("get_weather() requires 0 arguments, got " + args.size());
             }
 
             MockWorld world = context.getDefaultWorld();
@@ -180,6 +332,121 @@ public class DiscordBuiltInWorldFuncs {
         }
     }
 
+    // === Ticks and Scheduling ===
+
+    public static class TickFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        private final DiscordSimulationContext context;
+
+        public TickFunction(DiscordSimulationContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() > 1) {
+                throw new QuillRuntimeError("tick() requires 0 or 1 arguments, got " + args.size());
+            }
+
+            long ticks = args.isEmpty() ? 1 : (long) args.get(0).asNumber();
+            if (ticks < 0) {
+                throw new QuillRuntimeError("tick() expects 0 or more ticks, got " + ticks);
+            }
+
+            return new NumberValue(context.tick(ticks));
+        }
+    }
+
+    public static class GetTickFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        private final DiscordSimulationContext context;
+
+        public GetTickFunction(DiscordSimulationContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() != 0) {
+                throw new QuillRuntimeError("get_tick() requires 0 arguments, got " + args.size());
+            }
+            return new NumberValue(context.getCurrentTick());
+        }
+    }
+
+    /**
+     * Wrap a script callback as a task. Errors are logged like event handler
+     * errors so one failing task doesn't stop the others due that tick.
+     */
+    private static Runnable scriptTask(DiscordSimulationContext context, DiscordQuillInterpreter.Callback callback) {
+        return () -> {
+            try {
+                callback.invoke();
+            } catch (CancellationToken.CancelledException e) {
+                throw e;
+            } catch (QuillRuntimeError e) {
+                context.log(LogTemplate.TASK_ERROR).str(e.getLocatedMessage());
+            } catch (Exception e) {
+                context.log(LogTemplate.TASK_ERROR).str(e.getMessage());
+            }
+        };
+    }
+
+    public static class ScheduleFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        private final DiscordSimulationContext context;
+
+        public ScheduleFunction(DiscordSimulationContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() != 2) {
+                throw new QuillRuntimeError("schedule() requires 2 arguments, got " + args.size());
+            }
+
+            long delay = (long) args.get(0).asNumber();
+            DiscordQuillInterpreter.Callback callback = interpreter.callback(args.get(1), 0, "schedule");
+            return new NumberValue(context.schedule(delay, scriptTask(context, callback)));
+        }
+    }
+
+    public static class RepeatFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        private final DiscordSimulationContext context;
+
+        public RepeatFunction(DiscordSimulationContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() != 2) {
+                throw new QuillRuntimeError("repeat() requires 2 arguments, got " + args.size());
+            }
+
+            long period = (long) args.get(0).asNumber();
+            if (period < 1) {
+                throw new QuillRuntimeError("repeat() expects a period of at least 1 tick, got " + period);
+            }
+            DiscordQuillInterpreter.Callback callback = interpreter.callback(args.get(1), 0, "repeat");
+            return new NumberValue(context.repeat(period, scriptTask(context, callback)));
+        }
+    }
+
+    public static class CancelTaskFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        private final DiscordSimulationContext context;
+
+        public CancelTaskFunction(DiscordSimulationContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() != 1) {
+                throw new QuillRuntimeError("cancel_task() requires 1 argument, got " + args.size());
+            }
+            return new BooleanValue(context.cancelTask((long) args.get(0).asNumber()));
+        }
+    }
+
     public static class BroadcastFunction implements DiscordQuillInterpreter.BuiltInFunction {
         private final DiscordSimulationContext context;
         
@@ -190,11 +457,11 @@ public class DiscordBuiltInWorldFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 1) {
-                throw new RuntimeException("broadcast() requires 1 argument, got " + args.size());
+                throw new QuillRuntimeError("broadcast() requires 1 argument, got " + args.size());
             }
 
             String message = args.get(0).asString();
-            context.log("[BROADCAST] " + message);
+            context.log(LogTemplate.BROADCAST).str(message);
 
             for (DiscordSimulationContext.MockPlayer player : context.getAllPlayers()) {
                 context.addMessage(player.getName(), message);
@@ -214,13 +481,13 @@ public class DiscordBuiltInWorldFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 1) {
-                throw new RuntimeException("create_world() requires 1 argument, got " + args.size());
+                throw new QuillRuntimeError("create_world() requires 1 argument, got " + args.size());
             }
 
             String worldName = args.get(0).asString();
             MockWorld world = context.createWorld(worldName);
 
-            return new WorldValue(world);
+            return new WorldValue(world.getView());
         }
     }
 
@@ -234,35 +501,16 @@ public class DiscordBuiltInWorldFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() < 0 || args.size() > 1) {
-                throw new RuntimeException("get_world() requires 0 or 1 arguments, got " + args.size());
+                throw new QuillRuntimeError("get_world() requires 0 or 1 arguments, got " + args.size());
             }
 
             String worldName = args.isEmpty() ? "world" : args.get(0).asString();
             MockWorld world = context.getWorld(worldName);
 
-            return new WorldValue(world);
+            return new WorldValue(world.getView());
         }
     }
 
-    public static class WorldValue extends QuillValue {
-        private final MockWorld world;
-        
-        public WorldValue(MockWorld world) {
-            this.world = world;
-        }
-        
-        @Override
-        public ValueType getType() { return ValueType.WORLD; }
-        
-        @Override
-        public Object getValue() { return world; }
-        
-        public MockWorld getWorld() { return world; }
-        
-        @Override
-        public String toString() { return "World(" + world.getName() + ")"; }
-    }
-
     public static class SpawnEntityFunction implements DiscordQuillInterpreter.BuiltInFunction {
         private final DiscordSimulationContext context;
         
@@ -273,7 +521,7 @@ public class DiscordBuiltInWorldFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 4) {
-                throw new RuntimeException("spawn_entity() requires 4 arguments, got " + args.size());
+                throw new QuillRuntimeError("spawn_entity() requires 4 arguments, got " + args.size());
             }
 
             String entityType = args.get(0).asString();
@@ -281,15 +529,218 @@ public class DiscordBuiltInWorldFuncs {
             double y = args.get(2).asNumber();
             double z = args.get(3).asNumber();
 
-            context.log("[ENTITY] Spawned " + entityType + " at (" + x + ", " + y + ", " + z + ")");
+            return entityValue(context.spawnEntity(entityType, x, y, z));
+        }
+    }
+
+    // === Spatial Queries ===
+
+    /**
+     * Position {x, y, z} from a player, location or {x, y, z} map argument.
+     */
+    private static double[] position(QuillValue value, String function) {
+        if (value.isPlayer()) {
+            MockPlayer player = (MockPlayer) value.getValue();
+            return new double[] { player.getX(), player.getY(), player.getZ() };
+        }
+        if (value.isLocation()) {
+            return new double[] { value.asLocation().getX(), value.asLocation().getY(), value.asLocation().getZ() };
+        }
+        if (value.isMap()) {
+            MapValue map = (MapValue) value;
+            if (map.has("x") && map.has("y") && map.has("z")) {
+                return new double[] { map.get("x").asNumber(), map.get("y").asNumber(), map.get("z").asNumber() };
+            }
+        }
+        throw new QuillRuntimeError(function + "() expects a player, location or {x, y, z} map, got " + value.getType());
+    }
+
+    /**
+     * World a {@link #position} argument is in: a player's or location's own, otherwise the default world.
+     */
+    private static MockWorld worldOf(QuillValue value, DiscordSimulationContext context) {
+        if (value.isPlayer() && ((MockPlayer) value.getValue()).getWorld() != null) {
+            return ((MockPlayer) value.getValue()).getWorld();
+        }
+        if (value.isLocation() && value.asLocation().getWorld() != null) {
+            return value.asLocation().getWorld().getState();
+        }
+        return context.getDefaultWorld();
+    }
+
+    private static MapValue entityValue(MockEntity entity) {
+        MapValue map = new MapValue(new HashMap<>());
+        map.put("type", new StringValue(entity.getType()));
+        map.put("x", new NumberValue(entity.getX()));
+        map.put("y", new NumberValue(entity.getY()));
+        map.put("z", new NumberValue(entity.getZ()));
+        map.put("health", new NumberValue(entity.getHealth()));
+        return map;
+    }
+
+    public static class GetNearbyEntitiesFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        private final DiscordSimulationContext context;
 
-            Map<String, Object> entityData = new HashMap<>();
-            entityData.put("type", entityType);
-            entityData.put("x", x);
-            entityData.put("y", y);
-            entityData.put("z", z);
+        public GetNearbyEntitiesFunction(DiscordSimulationContext context) {
+            this.context = context;
+        }
 
-            return new MapValue(new HashMap<>());
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() != 2) {
+                throw new QuillRuntimeError("get_nearby_entities() requires 2 arguments, got " + args.size());
+            }
+
+            double[] at = position(args.get(0), "get_nearby_entities");
+            double radius = args.get(1).asNumber();
+
+            List<QuillValue> entities = new ArrayList<>();
+            for (MockEntity entity : context.getNearbyEntities(at[0], at[1], at[2], radius)) {
+                entities.add(entityValue(entity));
+            }
+            return new ListValue(entities);
+        }
+    }
+
+    public static class GetNearbyPlayersFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        private final DiscordSimulationContext context;
+
+        public GetNearbyPlayersFunction(DiscordSimulationContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() != 2) {
+                throw new QuillRuntimeError("get_nearby_players() requires 2 arguments, got " + args.size());
+            }
+
+            double[] at = position(args.get(0), "get_nearby_players");
+            double radius = args.get(1).asNumber();
+
+            List<QuillValue> players = new ArrayList<>();
+            for (MockPlayer player : worldOf(args.get(0), context).getNearbyPlayers(at[0], at[1], at[2], radius)) {
+                players.add(new PlayerValue(player));
+            }
+            return new ListValue(players);
+        }
+    }
+
+    public static class NearestPlayerFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        private final DiscordSimulationContext context;
+
+        public NearestPlayerFunction(DiscordSimulationContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() != 1) {
+                throw new QuillRuntimeError("nearest_player() requires 1 argument, got " + args.size());
+            }
+
+            double[] at = position(args.get(0), "nearest_player");
+            MockPlayer player = worldOf(args.get(0), context).getNearestPlayer(at[0], at[1], at[2]);
+            return player == null ? NullValue.INSTANCE : new PlayerValue(player);
+        }
+    }
+
+    public static class DamageInRegionFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        private final DiscordSimulationContext context;
+
+        public DamageInRegionFunction(DiscordSimulationContext context) {
+            this.context = context;
+        }
+
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            if (args.size() != 2 && args.size() != 7) {
+                throw new QuillRuntimeError("damage_in_region() requires 2 or 7 arguments, got " + args.size());
+            }
+
+            ScopeContext.Region region = scopeRegion(args.subList(0, args.size() - 1), "damage_in_region");
+            double amount = args.get(args.size() - 1).asNumber();
+
+            int[] hit = context.damageInRegion(region.getX1(), region.getY1(), region.getZ1(),
+                    region.getX2(), region.getY2(), region.getZ2(), amount);
+            context.log(LogTemplate.DAMAGE_REGION).integer(hit[0]).integer(hit[1]).num(amount)
+                    .num(region.getX1()).num(region.getY1()).num(region.getZ1())
+                    .num(region.getX2()).num(region.getY2()).num(region.getZ2());
+            if (hit[2] > 0) {
+                context.log(LogTemplate.ENTITIES_DIED).integer(hit[2]);
+            }
+
+            return new NumberValue(hit[0] + hit[1]);
+        }
+    }
+
+    // === Scope Lookups ===
+
+    /**
+     * Region from a scope, region or six numbers, keeping fractional bounds.
+     */
+    private static ScopeContext.Region scopeRegion(List<QuillValue> args, String function) {
+        if (args.size() == 1 && args.get(0).isScope()) {
+            return ((ScopeValue) args.get(0)).getScope().getRegion();
+        }
+        if (args.size() == 1 && args.get(0).isRegion()) {
+            RegionValue region = args.get(0).asRegion();
+            return new ScopeContext.Region(region.getX1(), region.getY1(), region.getZ1(),
+                    region.getX2(), region.getY2(), region.getZ2());
+        }
+        if (args.size() == 6) {
+            return new ScopeContext.Region(args.get(0).asNumber(), args.get(1).asNumber(), args.get(2).asNumber(),
+                    args.get(3).asNumber(), args.get(4).asNumber(), args.get(5).asNumber());
+        }
+        throw new QuillRuntimeError(function + "() expects a scope, a region or 6 coordinates");
+    }
+
+    /**
+     * Scopes as values, in creation order, leaving out {@code exclude}.
+     */
+    private static ListValue scopeList(List<ScopeContext> scopes, QuillValue exclude) {
+        Object skip = exclude != null && exclude.isScope() ? exclude.getValue() : null;
+        List<QuillValue> values = new ArrayList<>(scopes.size());
+        for (ScopeContext scope : scopes) {
+            if (scope != skip) {
+                values.add(new ScopeValue(scope));
+            }
+        }
+        return new ListValue(values);
+    }
+
+    public static class ScopesAtFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            double[] at;
+            if (args.size() == 3) {
+                at = new double[] { args.get(0).asNumber(), args.get(1).asNumber(), args.get(2).asNumber() };
+            } else if (args.size() == 1) {
+                at = position(args.get(0), "scopes_at");
+            } else {
+                throw new QuillRuntimeError("scopes_at() requires 1 or 3 arguments, got " + args.size());
+            }
+
+            return scopeList(interpreter.getScopeIndex().containing(at[0], at[1], at[2]), null);
+        }
+    }
+
+    public static class ScopesOverlappingFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            ScopeContext.Region region = scopeRegion(args, "scopes_overlapping");
+            return scopeList(interpreter.getScopeIndex().overlapping(region), args.get(0));
+        }
+    }
+
+    /**
+     * Scopes a region is nested inside, for checking that arenas or plots sit within their parent.
+     */
+    public static class ScopesEnclosingFunction implements DiscordQuillInterpreter.BuiltInFunction {
+        @Override
+        public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
+            ScopeContext.Region region = scopeRegion(args, "scopes_enclosing");
+            return scopeList(interpreter.getScopeIndex().enclosing(region), args.get(0));
         }
     }
 
@@ -297,11 +748,11 @@ public class DiscordBuiltInWorldFuncs {
         @Override
         public QuillValue call(List<QuillValue> args, ScopeContext scope, DiscordQuillInterpreter interpreter) {
             if (args.size() != 2) {
-                throw new RuntimeException("distance() requires 2 arguments, got " + args.size());
+                throw new QuillRuntimeError("distance() requires 2 arguments, got " + args.size());
             }
 
             if (!args.get(0).isPlayer() || !args.get(1).isPlayer()) {
-                throw new RuntimeException("distance() expects two players");
+                throw new QuillRuntimeError("distance() expects two players");
             }
 
             DiscordSimulationContext.MockPlayer p1 = (DiscordSimulationContext.MockPlayer) args.get(0).getValue();
@@ -4,7 +4,9 @@ import me.kmathers.sudobot.quill.parser.AST;
 import me.kmathers.sudobot.quill.parser.AST.*;
 import me.kmathers.sudobot.quill.interpreter.QuillValue.*;
 import me.kmathers.sudobot.quill.interpreter.ScopeContext.Region;
+import me.kmathers.sudobot.quill.simulation.ActorStore;
 import me.kmathers.sudobot.quill.simulation.DiscordSimulationContext;
+import me.kmathers.sudobot.quill.simulation.LogTemplate;
 
 import java.util.*;
 
@@ -17,32 +19,133 @@ public class DiscordQuillInterpreter {
     private ScopeContext globalScope;
     private ScopeContext currentScope;
     private Map<String, BuiltInFunction> builtIns;
-    private Map<String, List<EventHandler>> eventHandlers;
+    private EventRouter eventHandlers;
+    private RegionIndex<ScopeContext> scopeIndex;
     private DiscordSimulationContext simulationContext;
     private ThreadLocal<LoopDetector> loopDetector;
+    private Deque<CallFrame> callStack;
+    private int maxCallDepth;
+    private FunctionMemoizer memoizer;
+    private QuillJit jit;
+    private ParallelFor parallelLoop;
+    private List<ParallelFor.Contribution> contributions;
+    private CancellationToken cancellation;
+    private long memoryBudget = MemoryMeter.DEFAULT_BUDGET_BYTES;
+    private MemoryMeter memory;
+    private int tryDepth; // try blocks open in the current function
+    private List<CallFrame> overflowStack; // Quill stack where the JVM stack ran out
+    
+    public static final int DEFAULT_MAX_CALL_DEPTH = 1000;
+    
+    // JVM stack used per Quill call, measured with the JIT off and loops,
+    // ifs and trys nested 16 deep in the function body (under 10 KB), with margin
+    private static final long STACK_BYTES_PER_CALL = 16 * 1024;
+    private static final long BASE_STACK_BYTES = 512 * 1024;
 
+    // Control-flow signals are thrown on every return/break/continue, so they skip stack traces
     private static class ReturnSignal extends RuntimeException {
         final QuillValue value;
-        ReturnSignal(QuillValue value) { this.value = value; }
+        final FunctionValue tailCall;
+        final List<QuillValue> tailArgs;
+        final ScopeContext tailScope;
+        
+        ReturnSignal(QuillValue value) {
+            super(null, null, false, false);
+            this.value = value;
+            this.tailCall = null;
+            this.tailArgs = null;
+            this.tailScope = null;
+        }
+        
+        ReturnSignal(FunctionValue tailCall, List<QuillValue> tailArgs, ScopeContext tailScope) {
+            super(null, null, false, false);
+            this.value = null;
+            this.tailCall = tailCall;
+            this.tailArgs = tailArgs;
+            this.tailScope = tailScope;
+        }
     }
     
-    private static class BreakSignal extends RuntimeException {}
-    private static class ContinueSignal extends RuntimeException {}
+    private static class BreakSignal extends RuntimeException {
+        BreakSignal() { super(null, null, false, false); }
+    }
+    
+    private static class ContinueSignal extends RuntimeException {
+        ContinueSignal() { super(null, null, false, false); }
+    }
 
     public DiscordQuillInterpreter(DiscordSimulationContext simulationContext) {
+        this(simulationContext, DEFAULT_MAX_CALL_DEPTH);
+    }
+    
+    public DiscordQuillInterpreter(DiscordSimulationContext simulationContext, int maxCallDepth) {
         this.simulationContext = simulationContext;
+        this.callStack = new ArrayDeque<>();
+        this.maxCallDepth = maxCallDepth;
         this.globalScope = new ScopeContext("global", new Region(0, 0, 0, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE));
         this.currentScope = globalScope;
         this.builtIns = new HashMap<>();
-        this.eventHandlers = new HashMap<>();
+        this.memoizer = new FunctionMemoizer(simulationContext, builtIns.keySet(), FunctionMemoizer.DEFAULT_MAX_ENTRIES);
+        this.jit = new QuillJit(this, QuillJit.DEFAULT_THRESHOLD);
+        this.eventHandlers = new EventRouter();
+        this.scopeIndex = new RegionIndex<>();
         this.loopDetector = ThreadLocal.withInitial(() -> new LoopDetector(10000, 5000));
+        this.cancellation = new CancellationToken();
+        this.memory = newMemoryMeter();
         registerBuiltIns();
     }
     
+    /**
+     * Worker for one range of a parallel loop. Shares the parent's scopes and
+     * builtins (which the loop only reads) but has its own call stack, and
+     * doesn't memoize or compile since those caches aren't thread-safe.
+     */
+    private DiscordQuillInterpreter(DiscordQuillInterpreter parent, ParallelFor parallelLoop) {
+        this.simulationContext = parent.simulationContext;
+        this.callStack = new ArrayDeque<>();
+        this.maxCallDepth = Math.max(1, parent.maxCallDepth - parent.callStack.size());
+        this.globalScope = parent.globalScope;
+        this.currentScope = parent.currentScope;
+        this.builtIns = parent.builtIns;
+        this.memoizer = null;
+        this.jit = new QuillJit(this, 0);
+        this.eventHandlers = parent.eventHandlers;
+        this.scopeIndex = parent.scopeIndex;
+        this.loopDetector = ThreadLocal.withInitial(() -> new LoopDetector(10000, 5000));
+        this.parallelLoop = parallelLoop;
+        this.cancellation = parent.cancellation;
+        this.memory = parent.memory;
+    }
+    
+    /**
+     * Clear everything a script left behind (variables, event handlers, call
+     * stack, caches and its simulation context) so the interpreter can run
+     * another script. Builtins and allocated map capacity are kept.
+     */
+    public void reset() {
+        globalScope.clear();
+        currentScope = globalScope;
+        callStack.clear();
+        tryDepth = 0;
+        eventHandlers.clear();
+        scopeIndex.clear();
+        contributions = null;
+        memoizer.reset();
+        jit.reset();
+        cancellation = new CancellationToken();
+        simulationContext.reset();
+        memory = newMemoryMeter();
+    }
+    
     // === Main Evaluation ===
     
     public void execute(Program program) {
-        executeStatements(program.statements, 0);
+        MemoryMeter previous = bindMemory();
+        try {
+            executeStatements(program.statements, 0);
+        } finally {
+            MemoryMeter.unbind(previous);
+        }
     }
 
     private void executeStatements(List<ASTNode> statements, int startIndex) {
@@ -52,7 +155,7 @@ public class DiscordQuillInterpreter {
             } catch (RuntimeException e) {
                 if (e.getMessage() != null && e.getMessage().startsWith("QL-INTERNAL-CALL-WAIT:")) {
                     int ticks = Integer.parseInt(e.getMessage().substring("QL-INTERNAL-CALL-WAIT:".length()));
-                    simulationContext.log("[WAIT] " + ticks + " ticks");
+                    simulationContext.log(LogTemplate.WAIT).integer(ticks);
                     continue;
                 }
                 throw e;
@@ -65,6 +168,15 @@ public class DiscordQuillInterpreter {
             return NullValue.INSTANCE;
         }
         
+        try {
+            return dispatch(node);
+        } catch (QuillRuntimeError e) {
+            // The innermost node being evaluated claims the error's position
+            throw e.at(node);
+        }
+    }
+    
+    private QuillValue dispatch(ASTNode node) {
         // Literals
         if (node instanceof NumberLiteral) {
             return evaluateNumberLiteral((NumberLiteral) node);
@@ -127,7 +239,7 @@ public class DiscordQuillInterpreter {
             return evaluate(((ExpressionStatement) node).expression);
         }
         
-        throw new RuntimeException("Unknown AST node type: " + node.getClass().getName());
+        throw new QuillRuntimeError("Unknown AST node type: " + node.getClass().getName());
     }
     
     // === Literal Evaluation ===
@@ -180,7 +292,7 @@ public class DiscordQuillInterpreter {
             return mapValue.get(node.property);
         }
 
-        throw new RuntimeException("Cannot access property '" + node.property + "' on type " + object.getType());
+        throw new QuillRuntimeError("Cannot access property '" + node.property + "' on type " + object.getType());
     }
     
     private QuillValue evaluateIndexExpression(IndexExpression node) {
@@ -194,12 +306,12 @@ public class DiscordQuillInterpreter {
             int idx = (int) index.asNumber();
             List<QuillValue> list = object.asList();
             if (idx < 0 || idx >= list.size()) {
-                throw new RuntimeException("Index " + idx + " out of bounds for list of size " + list.size());
+                throw new QuillRuntimeError("Index " + idx + " out of bounds for list of size " + list.size());
             }
             return list.get(idx);
         }
         
-        throw new RuntimeException("Cannot index type " + object.getType());
+        throw new QuillRuntimeError("Cannot index type " + object.getType());
     }
 
     // === Binary Expressions ===
@@ -207,8 +319,11 @@ public class DiscordQuillInterpreter {
     private QuillValue evaluateBinaryExpression(BinaryExpression node) {
         QuillValue left = evaluate(node.left);
         QuillValue right = evaluate(node.right);
-        
-        switch (node.operator) {
+        return binaryOperation(node.operator, left, right);
+    }
+    
+    QuillValue binaryOperation(String operator, QuillValue left, QuillValue right) {
+        switch (operator) {
             case "+":
                 if (left.isNumber() && right.isNumber()) {
                     return new NumberValue(left.asNumber() + right.asNumber());
@@ -221,7 +336,7 @@ public class DiscordQuillInterpreter {
                 return new NumberValue(left.asNumber() * right.asNumber());
             case "/":
                 if (right.asNumber() == 0) {
-                    throw new RuntimeException("Division by zero");
+                    throw new QuillRuntimeError("Division by zero");
                 }
                 return new NumberValue(left.asNumber() / right.asNumber());
             case "%":
@@ -246,7 +361,7 @@ public class DiscordQuillInterpreter {
                 return new BooleanValue(left.isTruthy() || right.isTruthy());
                 
             default:
-                throw new RuntimeException("Unknown binary operator: " + node.operator);
+                throw new QuillRuntimeError("Unknown binary operator: " + operator);
         }
     }
     
@@ -273,12 +388,19 @@ public class DiscordQuillInterpreter {
             case "-":
                 return new NumberValue(-operand.asNumber());
             default:
-                throw new RuntimeException("Unknown unary operator: " + node.operator);
+                throw new QuillRuntimeError("Unknown unary operator: " + node.operator);
         }
     }
     
     // === Assignment ===
     private QuillValue evaluateAssignmentExpression(AssignmentExpression node) {
+        if (parallelLoop != null && parallelLoop.reductionTarget(node) != null) {
+            // Parallel loop workers record reduction steps; the loop applies them in order
+            QuillValue step = evaluate(((BinaryExpression) node.value).right);
+            contributions.add(new ParallelFor.Contribution(node, parallelLoop.reductionTarget(node), step));
+            return step;
+        }
+        
         QuillValue value = evaluate(node.value);
         
         if (node.target instanceof Identifier) {
@@ -301,7 +423,7 @@ public class DiscordQuillInterpreter {
                 return value;
             }
             
-            throw new RuntimeException("Cannot assign to member of type " + object.getType());
+            throw new QuillRuntimeError("Cannot assign to member of type " + object.getType());
         } else if (node.target instanceof IndexExpression) {
             IndexExpression indexExpr = (IndexExpression) node.target;
             QuillValue object = evaluate(indexExpr.object);
@@ -316,16 +438,16 @@ public class DiscordQuillInterpreter {
                 int idx = (int) index.asNumber();
                 List<QuillValue> list = object.asList();
                 if (idx < 0 || idx >= list.size()) {
-                    throw new RuntimeException("Index " + idx + " out of bounds");
+                    throw new QuillRuntimeError("Index " + idx + " out of bounds");
                 }
                 list.set(idx, value);
                 return value;
             }
             
-            throw new RuntimeException("Cannot index type " + object.getType());
+            throw new QuillRuntimeError("Cannot index type " + object.getType());
         }
                 
-        throw new RuntimeException("Invalid assignment target");
+        throw new QuillRuntimeError("Invalid assignment target");
     }
     
     // === Function Calls ===
@@ -334,53 +456,380 @@ public class DiscordQuillInterpreter {
         if (node.callee instanceof Identifier) {
             String name = ((Identifier) node.callee).name;
             if (builtIns.containsKey(name)) {
-                List<QuillValue> args = new ArrayList<>();
-                for (ASTNode arg : node.arguments) {
-                    args.add(evaluate(arg));
-                }
+                List<QuillValue> args = evaluateArguments(node.arguments);
                 return builtIns.get(name).call(args, currentScope, this);
             }
         }
         
         QuillValue callee = evaluate(node.callee);
-        List<QuillValue> args = new ArrayList<>();
-        for (ASTNode arg : node.arguments) {
+        List<QuillValue> args = evaluateArguments(node.arguments);
+        
+        if (callee.isFunction()) {
+            return invokeFunction((FunctionValue) callee, args, null, node);
+        }
+        
+        throw new QuillRuntimeError("Cannot call type " + callee.getType());
+    }
+    
+    private List<QuillValue> evaluateArguments(List<ASTNode> arguments) {
+        List<QuillValue> args = new ArrayList<>(arguments.size());
+        for (ASTNode arg : arguments) {
             args.add(evaluate(arg));
         }
+        return args;
+    }
+    
+    /**
+     * Call a user function, going through the memo cache if it is memoizable.
+     */
+    private QuillValue invokeFunction(FunctionValue func, List<QuillValue> args, ScopeContext frame, ASTNode callSite) {
+        if (memoizer == null || !memoizer.shouldMemoize(func)) {
+            return runFunction(func, args, frame, callSite);
+        }
         
-        if (callee.isFunction()) {
-            FunctionValue func = (FunctionValue) callee;
-            
-            ScopeContext funcScope = new ScopeContext("function_" + func.getName(), currentScope);
-            
-            if (args.size() != func.getParameters().size()) {
-                throw new RuntimeException("Function " + func.getName() + " expects " + 
-                    func.getParameters().size() + " arguments, got " + args.size());
+        FunctionMemoizer.Key key = memoizer.key(func, args, currentScope);
+        if (key == null) {
+            return runFunction(func, args, frame, callSite);
+        }
+        
+        QuillValue cached = memoizer.lookup(key);
+        if (cached != null) {
+            return cached;
+        }
+        
+        QuillValue result = runFunction(func, args, frame, callSite);
+        memoizer.store(key, result);
+        return result;
+    }
+    
+    /**
+     * Run a user function on the interpreter's call stack.
+     * Tail calls ({@code return f(...)}) arrive here as a ReturnSignal carrying
+     * the next function, and are run in the same loop iteration instead of
+     * nesting another JVM call, so tail recursion runs in constant stack.
+     * Scoping is dynamic, so the callee must still see the caller's variables:
+     * they are copied into one scope between the callee and this function's
+     * caller, which replaces the copy made by the previous tail call.
+     *
+     * @param frame a pre-allocated, empty scope to use for the first call, or null
+     */
+    private QuillValue runFunction(FunctionValue func, List<QuillValue> args, ScopeContext frame, ASTNode callSite) {
+        QuillValue compiled = jit.tryInvoke(func, args, frame != null ? frame : currentScope, callSite);
+        if (compiled != null) {
+            return compiled;
+        }
+        
+        if (callStack.size() >= maxCallDepth) {
+            throw new QuillRuntimeError("Maximum call depth of " + maxCallDepth + 
+                " exceeded in function " + func.getName());
+        }
+        
+        boolean outermost = callStack.isEmpty();
+        CallFrame callFrame = new CallFrame(func.getName(), callSite);
+        callStack.push(callFrame);
+        int callerTryDepth = tryDepth;
+        tryDepth = 0;
+        
+        ScopeContext carried = null;
+        try {
+            while (true) {
+                cancellation.check();
+                if (args.size() != func.getParameters().size()) {
+                    throw new QuillRuntimeError("Function " + func.getName() + " expects " + 
+                        func.getParameters().size() + " arguments, got " + args.size());
+                }
+                
+                ScopeContext funcScope = frame != null
+                    ? frame
+                    : new ScopeContext("function_" + func.getName(), carried != null ? carried : currentScope);
+                for (int i = 0; i < args.size(); i++) {
+                    funcScope.define(func.getParameters().get(i), args.get(i));
+                }
+                
+                ScopeContext previousScope = currentScope;
+                currentScope = funcScope;
+                
+                try {
+                    if (func.getBody() instanceof FunctionDeclaration) {
+                        FunctionDeclaration funcDecl = (FunctionDeclaration) func.getBody();
+                        for (ASTNode statement : funcDecl.body) {
+                            evaluate(statement);
+                        }
+                    }
+                    return NullValue.INSTANCE;
+                } catch (ReturnSignal ret) {
+                    if (ret.tailCall == null) {
+                        return ret.value;
+                    }
+                    // Reuse this frame for the tail-called function
+                    carried = new ScopeContext("tail_call", previousScope, ret.tailScope.getRegion());
+                    for (ScopeContext scope = ret.tailScope; scope != previousScope; scope = scope.getParent()) {
+                        scope.copyInto(carried);
+                    }
+                    func = ret.tailCall;
+                    args = ret.tailArgs;
+                    frame = null;
+                    callFrame.functionName = func.getName();
+                } finally {
+                    currentScope = previousScope;
+                }
             }
-            
-            for (int i = 0; i < args.size(); i++) {
-                funcScope.define(func.getParameters().get(i), args.get(i));
+        } catch (QuillRuntimeError e) {
+            // The innermost call still has every frame on the stack
+            throw e.withCallStack(getCallStack());
+        } catch (StackOverflowError e) {
+            // Non-tail recursion still nests JVM calls; if the thread's stack runs
+            // out before maxCallDepth, report it the same way as the depth limit.
+            // The deepest frame with room to copy the Quill stack keeps it for the error.
+            if (!outermost) {
+                if (overflowStack == null) {
+                    overflowStack = getCallStack();
+                }
+                throw e;
+            }
+            List<CallFrame> stack = overflowStack != null ? overflowStack : getCallStack();
+            overflowStack = null;
+            throw new QuillRuntimeError("Maximum call depth exceeded in function " + func.getName() + 
+                " (ran out of stack space)").at(callSite).withCallStack(stack);
+        } finally {
+            callStack.pop();
+            tryDepth = callerTryDepth;
+        }
+    }
+    
+    // === Parallel Loop Workers ===
+    
+    DiscordQuillInterpreter parallelWorker(ParallelFor loop) {
+        return new DiscordQuillInterpreter(this, loop);
+    }
+    
+    /**
+     * Threads for parallel loops, with the stack this interpreter's calls need.
+     */
+    ParallelPool parallelPool() {
+        return ParallelPool.forCallDepth(maxCallDepth);
+    }
+    
+    /**
+     * Run one iteration of a parallel loop body, recording reduction steps.
+     */
+    void runParallelIteration(ForStatement node, QuillValue item, List<ParallelFor.Contribution> contributions) {
+        this.contributions = contributions;
+        cancellation.check();
+        MemoryMeter previousMemory = memory.bind();
+        ScopeContext previousScope = currentScope;
+        currentScope = new ScopeContext("for_iteration", previousScope);
+        
+        try {
+            currentScope.define(node.variable, item);
+            for (ASTNode statement : node.body) {
+                evaluate(statement);
+            }
+        } catch (ContinueSignal c) {
+            // Next iteration
+        } finally {
+            currentScope = previousScope;
+            MemoryMeter.unbind(previousMemory);
+        }
+    }
+    
+    // === Memory Accounting ===
+    
+    private MemoryMeter newMemoryMeter() {
+        return new MemoryMeter(memoryBudget, cancellation, this::measureRetained);
+    }
+    
+    /**
+     * Send this thread's allocations to the run's meter, and measure on this thread.
+     */
+    private MemoryMeter bindMemory() {
+        memory.setOwner(Thread.currentThread());
+        return memory.bind();
+    }
+    
+    /**
+     * Approximate size of everything the run can still reach: its output,
+     * worlds (with their entities) and players, removed ones the script still
+     * holds, the global scope and the current scope chain, which with dynamic
+     * scoping includes every active caller's variables, and every scope it
+     * created (kept alive by the scope index). Shared values count once.
+     */
+    private long measureRetained() {
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Object> pending = new ArrayDeque<>();
+        pending.push(globalScope);
+        for (ScopeContext scope = currentScope; scope != null; scope = scope.getParent()) {
+            pending.push(scope);
+        }
+        scopeIndex.forEach(pending::push);
+        
+        long total = simulationContext.getOutputBytes() + simulationContext.getWorldBytes()
+            + simulationContext.getSchedulerBytes() + scopeIndex.getRetainedBytes();
+        while (!pending.isEmpty()) {
+            Object next = pending.pop();
+            if (!seen.add(next)) {
+                continue;
             }
             
-            ScopeContext previousScope = currentScope;
-            currentScope = funcScope;
+            if (next instanceof ScopeContext) {
+                Collection<QuillValue> values = ((ScopeContext) next).values();
+                total += MemoryMeter.MAP_BYTES + values.size() * MemoryMeter.ENTRY_BYTES;
+                values.forEach(pending::push);
+            } else if (next instanceof StringValue) {
+                total += MemoryMeter.VALUE_BYTES + MemoryMeter.sizeOfString(((StringValue) next).asString());
+            } else if (next instanceof ListValue) {
+                List<QuillValue> elements = ((ListValue) next).asList();
+                total += MemoryMeter.LIST_BYTES + elements.size() * MemoryMeter.REFERENCE_BYTES;
+                elements.forEach(pending::push);
+            } else if (next instanceof SetValue) {
+                Set<QuillValue> elements = ((SetValue) next).asSet();
+                total += MemoryMeter.MAP_BYTES + elements.size() * MemoryMeter.ENTRY_BYTES;
+                elements.forEach(pending::push);
+            } else if (next instanceof MapValue) {
+                Map<String, QuillValue> map = ((MapValue) next).getMap();
+                total += MemoryMeter.MAP_BYTES + map.size() * MemoryMeter.ENTRY_BYTES;
+                for (Map.Entry<String, QuillValue> entry : map.entrySet()) {
+                    total += MemoryMeter.sizeOfString(entry.getKey());
+                    pending.push(entry.getValue());
+                }
+            } else if (next instanceof ScopeValue) {
+                total += MemoryMeter.VALUE_BYTES;
+                pending.push(((ScopeValue) next).getScope());
+            } else if (next instanceof ClipboardValue) {
+                total += MemoryMeter.VALUE_BYTES + ((ClipboardValue) next).asClipboard().getRetainedBytes();
+            } else if (next instanceof PlayerValue || next instanceof EntityValue) {
+                total += MemoryMeter.VALUE_BYTES;
+                pending.push(((QuillValue) next).getValue());
+            } else if (next instanceof ActorStore.Actor) {
+                total += ((ActorStore.Actor) next).getRetainedBytes();
+            } else {
+                total += MemoryMeter.VALUE_BYTES;
+            }
+        }
+        return total;
+    }
+    
+    // === Hooks for JIT-compiled code ===
+    
+    ScopeContext currentScope() {
+        return currentScope;
+    }
+    
+    Map<String, BuiltInFunction> builtIns() {
+        return builtIns;
+    }
+    
+    LoopDetector loopDetector() {
+        return loopDetector.get();
+    }
+    
+    CancellationToken cancellation() {
+        return cancellation;
+    }
+    
+    int callDepth() {
+        return callStack.size();
+    }
+    
+    /**
+     * Push a frame for a call made from compiled code, with the same depth limit as runFunction.
+     */
+    void enterCall(String functionName, ASTNode callSite) {
+        if (callStack.size() >= maxCallDepth) {
+            throw new QuillRuntimeError("Maximum call depth of " + maxCallDepth + 
+                " exceeded in function " + functionName);
+        }
+        callStack.push(new CallFrame(functionName, callSite));
+    }
+    
+    void exitCall() {
+        callStack.pop();
+    }
+    
+    /**
+     * Pop frames left behind when an exception escapes compiled code.
+     */
+    void unwindCallStack(int depth) {
+        while (callStack.size() > depth) {
+            callStack.pop();
+        }
+    }
+    
+    /**
+     * Prepare a Quill function for repeated invocation from a builtin.
+     */
+    public Callback callback(QuillValue value, int arity, String caller) {
+        if (!value.isFunction()) {
+            throw new QuillRuntimeError(caller + "() expects function, got " + value.getType());
+        }
+        
+        FunctionValue func = (FunctionValue) value;
+        if (func.getParameters().size() != arity) {
+            throw new QuillRuntimeError(caller + "() expects a function of " + arity + 
+                " parameter(s), but " + func.getName() + " takes " + func.getParameters().size());
+        }
+        
+        return new Callback(func);
+    }
+    
+    /**
+     * Fast path for builtins that call back into Quill once per element.
+     * A single frame is cleared and reused between calls instead of building
+     * a new ScopeContext for every invocation. Like any other call, the frame's
+     * parent is the scope the call is made from, so it is only rebuilt when
+     * the pipeline is consumed from a different scope.
+     */
+    public class Callback {
+        private final FunctionValue func;
+        private ScopeContext frame;
+        private boolean active;
+        
+        private Callback(FunctionValue func) {
+            this.func = func;
+        }
+        
+        public QuillValue invoke(QuillValue... args) {
+            // Re-entrant calls (the callback consuming its own pipeline) get a fresh frame
+            if (active) {
+                return invokeFunction(func, Arrays.asList(args),
+                    new ScopeContext("function_" + func.getName(), currentScope), null);
+            }
             
+            if (frame == null || frame.getParent() != currentScope) {
+                frame = new ScopeContext("function_" + func.getName(), currentScope);
+            }
+            frame.clear();
+            active = true;
             try {
-                if (func.getBody() instanceof FunctionDeclaration) {
-                    FunctionDeclaration funcDecl = (FunctionDeclaration) func.getBody();
-                    for (ASTNode statement : funcDecl.body) {
-                        evaluate(statement);
-                    }
-                }
-                return NullValue.INSTANCE;
-            } catch (ReturnSignal ret) {
-                return ret.value;
+                return invokeFunction(func, Arrays.asList(args), frame, null);
             } finally {
-                currentScope = previousScope;
+                active = false;
             }
         }
+    }
+    
+    /**
+     * One entry on the interpreter-managed call stack.
+     */
+    public static class CallFrame {
+        private String functionName;
+        private final int line;
+        private final int column;
+        
+        CallFrame(String functionName, ASTNode callSite) {
+            this.functionName = functionName;
+            this.line = callSite != null ? callSite.line : 0;
+            this.column = callSite != null ? callSite.column : 0;
+        }
+        
+        public String getFunctionName() { return functionName; }
+        public int getLine() { return line; }
+        public int getColumn() { return column; }
         
-        throw new RuntimeException("Cannot call type " + callee.getType());
+        @Override
+        public String toString() {
+            return line > 0 ? functionName + " (line " + line + ", column " + column + ")" : functionName;
+        }
     }
     
     // === Statements ===
@@ -409,6 +858,22 @@ public class DiscordQuillInterpreter {
     }
     
     private QuillValue evaluateReturnStatement(ReturnStatement node) {
+        // A call inside a try block must stay covered by its catch, so it can't be a tail call
+        if (node.value instanceof CallExpression && !callStack.isEmpty() && tryDepth == 0) {
+            CallExpression call = (CallExpression) node.value;
+            boolean isBuiltIn = call.callee instanceof Identifier && 
+                builtIns.containsKey(((Identifier) call.callee).name);
+            
+            if (!isBuiltIn) {
+                QuillValue callee = evaluate(call.callee);
+                List<QuillValue> args = evaluateArguments(call.arguments);
+                if (!callee.isFunction()) {
+                    throw new QuillRuntimeError("Cannot call type " + callee.getType());
+                }
+                throw new ReturnSignal((FunctionValue) callee, args, currentScope);
+            }
+        }
+        
         QuillValue value = node.value != null ? evaluate(node.value) : NullValue.INSTANCE;
         throw new ReturnSignal(value);
     }
@@ -436,6 +901,7 @@ public class DiscordQuillInterpreter {
         try {
             while (evaluate(node.condition).isTruthy()) {
                 detector.checkIteration();
+                cancellation.check();
                 try {
                     for (ASTNode statement : node.body) {
                         evaluate(statement);
@@ -447,7 +913,7 @@ public class DiscordQuillInterpreter {
         } catch (BreakSignal b) {
             // Break out of loop
         } catch (LoopDetector.InfiniteLoopException e) {
-            throw new RuntimeException("Infinite loop detected: " + e.getMessage());
+            throw new QuillRuntimeError("Infinite loop detected: " + e.getMessage());
         } finally {
             detector.endLoop();
         }
@@ -459,16 +925,36 @@ public class DiscordQuillInterpreter {
         QuillValue iterable = evaluate(node.iterable);
         LoopDetector detector = loopDetector.get();
 
-        if (!iterable.isList()) {
-            throw new RuntimeException("For loop expects a list, got " + iterable.getType());
+        Iterable<QuillValue> items;
+        if (iterable instanceof LazyListValue) {
+            LazyListValue lazy = (LazyListValue) iterable;
+            items = lazy::iterator;
+        } else if (iterable.isList()) {
+            items = iterable.asList();
+        } else if (iterable.isSet()) {
+            items = iterable.asSet();
+        } else {
+            throw new QuillRuntimeError("For loop expects a list or set, got " + iterable.getType());
+        }
+        
+        // Inside a worker, nested parallel loops just run sequentially
+        if (node.parallel && parallelLoop == null) {
+            List<QuillValue> list = new ArrayList<>();
+            items.forEach(list::add);
+            memory.suspend();
+            try {
+                return new ParallelFor(this, node).run(list);
+            } finally {
+                memory.resume();
+            }
         }
         
-        List<QuillValue> items = iterable.asList();
         detector.startLoop();
 
         try {
             for (QuillValue item : items) {
                 detector.checkIteration();
+                cancellation.check();
                 ScopeContext iterationScope = new ScopeContext("for_iteration", currentScope);
                 
                 ScopeContext previousScope = currentScope;
@@ -491,7 +977,7 @@ public class DiscordQuillInterpreter {
         } catch (BreakSignal b) {
             // Break out of loop
         } catch (LoopDetector.InfiniteLoopException e) {
-            throw new RuntimeException("Infinite loop detected: " + e.getMessage());
+            throw new QuillRuntimeError("Infinite loop detected: " + e.getMessage());
         } finally {
             detector.endLoop();
         }
@@ -500,13 +986,23 @@ public class DiscordQuillInterpreter {
     }
 
     private QuillValue evaluateTryStatement(TryStatement node) {
+        RuntimeException error = null;
+        tryDepth++;
         try {
             for (ASTNode statement : node.tryBlock) {
                 evaluate(statement);
             }
-        } catch (Exception e) {
+        } catch (ReturnSignal | BreakSignal | ContinueSignal | CancellationToken.CancelledException signal) {
+            throw signal;
+        } catch (RuntimeException e) {
+            error = e;
+        } finally {
+            tryDepth--;
+        }
+        
+        if (error != null) {
             ScopeContext catchScope = new ScopeContext("try_catch", currentScope);
-            catchScope.define(node.errorVariable, new StringValue(e.getMessage()));
+            catchScope.define(node.errorVariable, new StringValue(error.getMessage()));
             
             ScopeContext previousScope = currentScope;
             currentScope = catchScope;
@@ -524,14 +1020,25 @@ public class DiscordQuillInterpreter {
     }
     
     private QuillValue evaluateEventHandler(EventHandler node) {
-        eventHandlers.computeIfAbsent(node.eventName, k -> new ArrayList<>()).add(node);
-        simulationContext.log("[EVENT] Registered handler for event: " + node.eventName);
+        ScopeContext.Region region = null;
+        if (node.region != null) {
+            QuillValue scope = evaluate(node.region);
+            if (!scope.isScope()) {
+                throw new QuillRuntimeError("OnEvent(" + node.eventName + ") in ... expects a scope, got " + scope.getType());
+            }
+            region = scope.asScope().getScope().getRegion();
+        } else if (currentScope.getRegion() != globalScope.getRegion()) {
+            region = currentScope.getRegion();
+        }
+        
+        eventHandlers.register(node, region);
+        simulationContext.log(LogTemplate.EVENT_REGISTERED).str(node.eventName);
         return NullValue.INSTANCE;
     }
     
     private QuillValue evaluateScopeCreation(ScopeCreation node) {
         if (node.arguments.size() != 6) {
-            throw new RuntimeException("Scope creation requires 6 boundary arguments (x1, y1, z1, x2, y2, z2)");
+            throw new QuillRuntimeError("Scope creation requires 6 boundary arguments (x1, y1, z1, x2, y2, z2)");
         }
         
         double x1 = evaluate(node.arguments.get(0)).asNumber();
@@ -543,17 +1050,31 @@ public class DiscordQuillInterpreter {
         
         ScopeContext.Region region = new ScopeContext.Region(x1, y1, z1, x2, y2, z2);
         ScopeContext newScope = new ScopeContext("subscope", currentScope, region);
+        scopeIndex.insert(newScope, region);
         
         return new ScopeValue(newScope);
     }
     
     // === Event Handling ===
     
+    /**
+     * Run the handlers for an event. If the event has a location, handlers
+     * limited to a scope only run when it happened inside that scope.
+     */
     public void triggerEvent(String eventName, Map<String, QuillValue> eventContext) {
-        List<EventHandler> handlers = eventHandlers.get(eventName);
+        List<EventHandler> handlers = eventHandlers.handlersFor(eventName, EventRouter.locationOf(eventContext));
         if (handlers == null || handlers.isEmpty()) return;
         
-        simulationContext.log("[TRIGGER] Event: " + eventName);
+        MemoryMeter previousMemory = bindMemory();
+        try {
+            runEventHandlers(eventName, handlers, eventContext);
+        } finally {
+            MemoryMeter.unbind(previousMemory);
+        }
+    }
+    
+    private void runEventHandlers(String eventName, List<EventHandler> handlers, Map<String, QuillValue> eventContext) {
+        simulationContext.log(LogTemplate.TRIGGER).str(eventName);
         
         for (EventHandler handler : handlers) {
             ScopeContext eventScope = new ScopeContext("event_" + eventName, globalScope);
@@ -568,8 +1089,12 @@ public class DiscordQuillInterpreter {
                 for (ASTNode statement : handler.body) {
                     evaluate(statement);
                 }
+            } catch (CancellationToken.CancelledException e) {
+                throw e;
+            } catch (QuillRuntimeError e) {
+                simulationContext.log(LogTemplate.EVENT_ERROR).str(eventName).str(e.getLocatedMessage());
             } catch (Exception e) {
-                simulationContext.log("[ERROR] Error in event handler " + eventName + ": " + e.getMessage());
+                simulationContext.log(LogTemplate.EVENT_ERROR).str(eventName).str(e.getMessage());
             } finally {
                 currentScope = previousScope;
             }
@@ -585,6 +1110,11 @@ public class DiscordQuillInterpreter {
         builtIns.put("append", new DiscordBuiltInUtilFuncs.AppendFunction());
         builtIns.put("remove", new DiscordBuiltInUtilFuncs.RemoveFunction());
         builtIns.put("contains", new DiscordBuiltInUtilFuncs.ContainsFunction());
+        builtIns.put("set", new DiscordBuiltInUtilFuncs.SetFunction());
+        builtIns.put("add", new DiscordBuiltInUtilFuncs.AddFunction());
+        builtIns.put("has", new DiscordBuiltInUtilFuncs.HasFunction());
+        builtIns.put("union", new DiscordBuiltInUtilFuncs.UnionFunction());
+        builtIns.put("intersect", new DiscordBuiltInUtilFuncs.IntersectFunction());
         builtIns.put("split", new DiscordBuiltInUtilFuncs.SplitFunction());
         builtIns.put("join", new DiscordBuiltInUtilFuncs.JoinFunction());
         builtIns.put("to_string", new DiscordBuiltInUtilFuncs.ToStringFunction());
@@ -606,6 +1136,15 @@ public class DiscordQuillInterpreter {
         builtIns.put("avg", new DiscordBuiltInUtilFuncs.AvgFunction());
         builtIns.put("get_player", new DiscordBuiltInUtilFuncs.GetPlayerFunction(simulationContext));
         builtIns.put("get_online_players", new DiscordBuiltInUtilFuncs.GetOnlinePlayersFunction(simulationContext));
+        builtIns.put("queue_event", new DiscordBuiltInUtilFuncs.QueueEventFunction(simulationContext));
+
+        // === Sequence Functions ===
+        builtIns.put("map", new DiscordBuiltInSequenceFuncs.MapFunction());
+        builtIns.put("filter", new DiscordBuiltInSequenceFuncs.FilterFunction());
+        builtIns.put("take", new DiscordBuiltInSequenceFuncs.TakeFunction());
+        builtIns.put("reduce", new DiscordBuiltInSequenceFuncs.ReduceFunction());
+        builtIns.put("any", new DiscordBuiltInSequenceFuncs.AnyFunction());
+        builtIns.put("all", new DiscordBuiltInSequenceFuncs.AllFunction());
 
         // === Player Functions ===
         builtIns.put("teleport", new DiscordBuiltInPlayerFuncs.TeleportFunction(simulationContext));
@@ -615,6 +1154,7 @@ public class DiscordQuillInterpreter {
         builtIns.put("set_hunger", new DiscordBuiltInPlayerFuncs.SetHungerFunction(simulationContext));
         builtIns.put("set_gamemode", new DiscordBuiltInPlayerFuncs.SetGamemodeFunction(simulationContext));
         builtIns.put("heal", new DiscordBuiltInPlayerFuncs.HealFunction(simulationContext));
+        builtIns.put("heal_all", new DiscordBuiltInPlayerFuncs.HealAllFunction(simulationContext));
         builtIns.put("kill", new DiscordBuiltInPlayerFuncs.KillFunction(simulationContext));
         builtIns.put("sendmessage", new DiscordBuiltInPlayerFuncs.SendMessageFunction(simulationContext));
         builtIns.put("get_health", new DiscordBuiltInPlayerFuncs.GetHealthFunction());
@@ -624,20 +1164,38 @@ public class DiscordQuillInterpreter {
         builtIns.put("get_gamemode", new DiscordBuiltInPlayerFuncs.GetGamemodeFunction());
         builtIns.put("set_flying", new DiscordBuiltInPlayerFuncs.SetFlyingFunction(simulationContext));
         builtIns.put("damage", new DiscordBuiltInPlayerFuncs.DamageFunction(simulationContext));
+        builtIns.put("add_potion_effect", new DiscordBuiltInPlayerFuncs.AddPotionEffectFunction(simulationContext));
+        builtIns.put("has_potion_effect", new DiscordBuiltInPlayerFuncs.HasPotionEffectFunction());
         
         // === World Functions ===
         builtIns.put("set_block", new DiscordBuiltInWorldFuncs.SetBlockFunction(simulationContext));
         builtIns.put("get_block", new DiscordBuiltInWorldFuncs.GetBlockFunction(simulationContext));
         builtIns.put("break_block", new DiscordBuiltInWorldFuncs.BreakBlockFunction(simulationContext));
+        builtIns.put("fill", new DiscordBuiltInWorldFuncs.FillFunction(simulationContext));
+        builtIns.put("replace", new DiscordBuiltInWorldFuncs.ReplaceFunction(simulationContext));
+        builtIns.put("copy_region", new DiscordBuiltInWorldFuncs.CopyRegionFunction(simulationContext));
+        builtIns.put("paste_region", new DiscordBuiltInWorldFuncs.PasteRegionFunction(simulationContext));
         builtIns.put("set_time", new DiscordBuiltInWorldFuncs.SetTimeFunction(simulationContext));
         builtIns.put("get_time", new DiscordBuiltInWorldFuncs.GetTimeFunction(simulationContext));
         builtIns.put("set_weather", new DiscordBuiltInWorldFuncs.SetWeatherFunction(simulationContext));
         builtIns.put("get_weather", new DiscordBuiltInWorldFuncs.GetWeatherFunction(simulationContext));
+        builtIns.put("tick", new DiscordBuiltInWorldFuncs.TickFunction(simulationContext));
+        builtIns.put("get_tick", new DiscordBuiltInWorldFuncs.GetTickFunction(simulationContext));
+        builtIns.put("schedule", new DiscordBuiltInWorldFuncs.ScheduleFunction(simulationContext));
+        builtIns.put("repeat", new DiscordBuiltInWorldFuncs.RepeatFunction(simulationContext));
+        builtIns.put("cancel_task", new DiscordBuiltInWorldFuncs.CancelTaskFunction(simulationContext));
         builtIns.put("broadcast", new DiscordBuiltInWorldFuncs.BroadcastFunction(simulationContext));
         builtIns.put("create_world", new DiscordBuiltInWorldFuncs.CreateWorldFunction(simulationContext));
         builtIns.put("get_world", new DiscordBuiltInWorldFuncs.GetWorldFunction(simulationContext));
         builtIns.put("spawn_entity", new DiscordBuiltInWorldFuncs.SpawnEntityFunction(simulationContext));
         builtIns.put("distance", new DiscordBuiltInWorldFuncs.DistanceFunction());
+        builtIns.put("get_nearby_entities", new DiscordBuiltInWorldFuncs.GetNearbyEntitiesFunction(simulationContext));
+        builtIns.put("get_nearby_players", new DiscordBuiltInWorldFuncs.GetNearbyPlayersFunction(simulationContext));
+        builtIns.put("nearest_player", new DiscordBuiltInWorldFuncs.NearestPlayerFunction(simulationContext));
+        builtIns.put("damage_in_region", new DiscordBuiltInWorldFuncs.DamageInRegionFunction(simulationContext));
+        builtIns.put("scopes_at", new DiscordBuiltInWorldFuncs.ScopesAtFunction());
+        builtIns.put("scopes_overlapping", new DiscordBuiltInWorldFuncs.ScopesOverlappingFunction());
+        builtIns.put("scopes_enclosing", new DiscordBuiltInWorldFuncs.ScopesEnclosingFunction());
     }
     
     public interface BuiltInFunction {
@@ -648,11 +1206,95 @@ public class DiscordQuillInterpreter {
         return globalScope.getName();
     }
 
+    /**
+     * Regions of every scope the script has created, for location lookups.
+     */
+    public RegionIndex<ScopeContext> getScopeIndex() {
+        return scopeIndex;
+    }
+    
     public ScopeContext getGlobalScope() {
         return globalScope;
     }
 
+    public int getMaxCallDepth() {
+        return maxCallDepth;
+    }
+
+    public void setMaxCallDepth(int maxCallDepth) {
+        this.maxCallDepth = maxCallDepth;
+    }
+
+    /**
+     * Memo cache and statistics for this run.
+     */
+    public FunctionMemoizer getMemoizer() {
+        return memoizer;
+    }
+
+    /**
+     * Tiered compilation state and statistics for this run.
+     */
+    public QuillJit getJit() {
+        return jit;
+    }
+
+    /**
+     * Flag checked at every loop iteration and function call; cancelling it
+     * stops the script, including any parallel loop workers.
+     */
+    public CancellationToken getCancellation() {
+        return cancellation;
+    }
+
+    /**
+     * Use a token owned by whoever scheduled this run, so it can be cancelled from outside.
+     */
+    public void setCancellation(CancellationToken cancellation) {
+        this.cancellation = cancellation;
+        this.memory = newMemoryMeter();
+    }
+
+    /**
+     * Approximate memory this run retains; a run that goes over its budget is cancelled.
+     */
+    public MemoryMeter getMemory() {
+        return memory;
+    }
+
+    public void setMemoryBudget(long bytes) {
+        this.memoryBudget = bytes;
+        this.memory = newMemoryMeter();
+    }
+
+    /**
+     * Memoize every function found to be pure, not just those marked {@code @memo}.
+     */
+    public void setAutoMemoize(boolean autoMemoize) {
+        memoizer.setAutomatic(autoMemoize);
+    }
+
+    /**
+     * Thread stack size needed to reach maxCallDepth nested (non-tail) calls.
+     * Scripts should run on a thread created with at least this much stack so
+     * the call depth limit, not the JVM default, decides how deep they can go.
+     */
+    public static long stackSizeFor(int maxCallDepth) {
+        return BASE_STACK_BYTES + maxCallDepth * STACK_BYTES_PER_CALL;
+    }
+
+    /**
+     * Snapshot of the Quill call stack, innermost call first.
+     */
+    public List<CallFrame> getCallStack() {
+        return new ArrayList<>(callStack);
+    }
+
+    public DiscordSimulationContext getSimulationContext() {
+        return simulationContext;
+    }
+
     public Set<String> getRegisteredEvents() {
-        return eventHandlers.keySet();
+        return eventHandlers.getEventNames();
     }
 }
\ No newline at end of file
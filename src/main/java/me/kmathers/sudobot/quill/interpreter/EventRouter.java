@@ -0,0 +1,133 @@
+package me.kmathers.sudobot.quill.interpreter;
+
+import me.kmathers.sudobot.quill.interpreter.QuillValue.MapValue;
+import me.kmathers.sudobot.quill.parser.AST.EventHandler;
+import me.kmathers.sudobot.quill.simulation.DiscordSimulationContext.MockPlayer;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Registered event handlers, grouped by event name. Handlers registered with a
+ * region (OnEvent(name) in scope { ... }) are kept in a {@link RegionIndex}, so
+ * an event that happens somewhere is only delivered to the handlers whose
+ * region contains that spot, without checking each one.
+ *
+ * Events without a location reach every handler, as before regions existed.
+ * Handlers always run in the order they were registered.
+ */
+public class EventRouter {
+    private final Map<String, Routes> routes = new HashMap<>();
+    private long nextOrder;
+
+    private static final class Registration {
+        final EventHandler handler;
+        final long order;
+
+        Registration(EventHandler handler, long order) {
+            this.handler = handler;
+            this.order = order;
+        }
+    }
+
+    private static final class Routes {
+        final List<Registration> everywhere = new ArrayList<>();
+        final RegionIndex<Registration> regional = new RegionIndex<>();
+        final List<Registration> all = new ArrayList<>();
+    }
+
+    /**
+     * Register a handler for an event, limited to {@code region} if it isn't null.
+     */
+    public void register(EventHandler handler, ScopeContext.Region region) {
+        Routes eventRoutes = routes.computeIfAbsent(handler.eventName, k -> new Routes());
+        Registration registration = new Registration(handler, nextOrder++);
+        eventRoutes.all.add(registration);
+        if (region == null) {
+            eventRoutes.everywhere.add(registration);
+        } else {
+            eventRoutes.regional.insert(registration, region);
+        }
+    }
+
+    /**
+     * Handlers for an event at a location, in registration order. A null
+     * location matches every handler.
+     */
+    public List<EventHandler> handlersFor(String eventName, double[] location) {
+        Routes eventRoutes = routes.get(eventName);
+        if (eventRoutes == null) {
+            return new ArrayList<>();
+        }
+        if (location == null) {
+            return handlers(eventRoutes.all);
+        }
+
+        List<Registration> everywhere = eventRoutes.everywhere;
+        List<Registration> regional = eventRoutes.regional.containing(location[0], location[1], location[2]);
+
+        // Both lists are already in registration order, so merge them
+        List<EventHandler> merged = new ArrayList<>(everywhere.size() + regional.size());
+        int i = 0, j = 0;
+        while (i < everywhere.size() || j < regional.size()) {
+            if (j == regional.size() || (i < everywhere.size() && everywhere.get(i).order < regional.get(j).order)) {
+                merged.add(everywhere.get(i++).handler);
+            } else {
+                merged.add(regional.get(j++).handler);
+            }
+        }
+        return merged;
+    }
+
+    private static List<EventHandler> handlers(List<Registration> registrations) {
+        List<EventHandler> handlers = new ArrayList<>(registrations.size());
+        for (Registration registration : registrations) {
+            handlers.add(registration.handler);
+        }
+        return handlers;
+    }
+
+    public Set<String> getEventNames() {
+        return routes.keySet();
+    }
+
+    public void clear() {
+        routes.clear();
+        nextOrder = 0;
+    }
+
+    /**
+     * Where an event happened, from its x/y/z values, a "location" value or
+     * a "player" value, checked in that order. Null if it has none.
+     */
+    public static double[] locationOf(Map<String, QuillValue> eventContext) {
+        QuillValue x = eventContext.get("x"), y = eventContext.get("y"), z = eventContext.get("z");
+        if (x != null && y != null && z != null && x.isNumber() && y.isNumber() && z.isNumber()) {
+            return new double[] { x.asNumber(), y.asNumber(), z.asNumber() };
+        }
+
+        QuillValue location = eventContext.get("location");
+        if (location != null) {
+            if (location.isLocation()) {
+                return new double[] { location.asLocation().getX(), location.asLocation().getY(), location.asLocation().getZ() };
+            }
+            if (location.isMap()) {
+                MapValue map = (MapValue) location;
+                if (map.has("x") && map.has("y") && map.has("z")
+                        && map.get("x").isNumber() && map.get("y").isNumber() && map.get("z").isNumber()) {
+                    return new double[] { map.get("x").asNumber(), map.get("y").asNumber(), map.get("z").asNumber() };
+                }
+            }
+        }
+
+        QuillValue player = eventContext.get("player");
+        if (player != null && player.isPlayer()) {
+            MockPlayer mockPlayer = (MockPlayer) player.getValue();
+            return new double[] { mockPlayer.getX(), mockPlayer.getY(), mockPlayer.getZ() };
+        }
+        return null;
+    }
+}
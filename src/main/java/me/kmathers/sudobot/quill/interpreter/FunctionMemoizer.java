@@ -0,0 +1,483 @@
+package me.kmathers.sudobot.quill.interpreter;
+
+import me.kmathers.sudobot.quill.interpreter.QuillValue.*;
+import me.kmathers.sudobot.quill.parser.AST.*;
+import me.kmathers.sudobot.quill.simulation.DiscordSimulationContext;
+import me.kmathers.sudobot.quill.simulation.LogTemplate;
+
+import java.util.*;
+
+/**
+ * Caches results of pure Quill functions for the duration of one run.
+ * A function is pure if it only reads its parameters, its own locals and
+ * constants holding primitive values, and only calls pure builtins or other
+ * pure functions. Functions opt in with {@code @memo}, or every pure function
+ * is memoized when automatic mode is on. Only calls whose arguments and
+ * result are numbers, strings, booleans or null are cached.
+ *
+ * Scoping is dynamic, so a name a function doesn't define itself resolves
+ * through the scope it is called from, not the one it was declared in. The
+ * values those names have at the call are part of the cache key, alongside
+ * the arguments.
+ */
+public class FunctionMemoizer {
+    public static final String ANNOTATION = "memo";
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private static final Set<String> PURE_BUILTINS = Set.of(
+        "len", "contains", "has", "split", "join", "to_string", "to_number",
+        "to_boolean", "type_of", "range", "round", "floor", "ceil", "abs",
+        "sqrt", "pow", "min", "max", "sum", "avg"
+    );
+
+    private final DiscordSimulationContext context;
+    private final Set<String> builtIns;
+    private final int maxEntries;
+    private final Map<FunctionDeclaration, Boolean> purity;
+    private final Map<FunctionDeclaration, Set<String>> freeNames;
+    private final Map<FunctionDeclaration, Set<FunctionDeclaration>> callees;
+    private final Map<FunctionDeclaration, Shape> shapes;
+    private final Map<Key, QuillValue> cache;
+    private boolean automatic;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public FunctionMemoizer(DiscordSimulationContext context, Set<String> builtIns, int maxEntries) {
+        this.context = context;
+        this.builtIns = builtIns;
+        this.maxEntries = maxEntries;
+        this.purity = new IdentityHashMap<>();
+        this.freeNames = new IdentityHashMap<>();
+        this.callees = new IdentityHashMap<>();
+        this.shapes = new IdentityHashMap<>();
+        this.automatic = false;
+        // Access-ordered so the least recently used entry is evicted first
+        this.cache = new LinkedHashMap<Key, QuillValue>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, QuillValue> eldest) {
+                if (size() > FunctionMemoizer.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // === Caching ===
+
+    /**
+     * Whether calls to this function should go through the cache.
+     */
+    public boolean shouldMemoize(FunctionValue func) {
+        if (!(func.getBody() instanceof FunctionDeclaration)) {
+            return false;
+        }
+
+        FunctionDeclaration decl = (FunctionDeclaration) func.getBody();
+        boolean annotated = decl.annotations.contains(ANNOTATION);
+        if (!annotated && !automatic) {
+            return false;
+        }
+
+        Boolean known = purity.get(decl);
+        if (known != null) {
+            return known;
+        }
+
+        boolean pure = analyze(func);
+        if (!pure && annotated) {
+            context.log(LogTemplate.NOT_MEMOIZED).str(decl.name);
+        }
+        return pure;
+    }
+
+    /**
+     * Cache key for a call to a memoizable function made from {@code scope},
+     * or null if the call can't be cached.
+     */
+    public Key key(FunctionValue func, List<QuillValue> args, ScopeContext scope) {
+        for (QuillValue arg : args) {
+            if (!isPrimitive(arg)) {
+                return null;
+            }
+        }
+
+        FunctionDeclaration decl = (FunctionDeclaration) func.getBody();
+        Shape shape = shapes.computeIfAbsent(decl, this::shapeOf);
+        Object[] names = new Object[shape.names.length];
+        for (int i = 0; i < names.length; i++) {
+            String name = shape.names[i];
+            if (!scope.has(name)) {
+                names[i] = UNDEFINED;
+                continue;
+            }
+
+            QuillValue value = scope.get(name);
+            if (isPrimitive(value)) {
+                names[i] = value;
+            } else if (value.isFunction() && shape.functions.contains(((FunctionValue) value).getBody())) {
+                // Functions that might run are covered by the names already in the key
+                names[i] = ((FunctionValue) value).getBody();
+            } else {
+                return null;
+            }
+        }
+        return new Key(decl, args, names);
+    }
+
+    /**
+     * Cached result for this call, or null if there is none.
+     */
+    public QuillValue lookup(Key key) {
+        QuillValue result = cache.get(key);
+        if (result != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return result;
+    }
+
+    public void store(Key key, QuillValue result) {
+        if (isPrimitive(result)) {
+            cache.put(key, result);
+        }
+    }
+
+    private static boolean isPrimitive(QuillValue value) {
+        return value.isNumber() || value.isString() || value.isBoolean() || value.isNull();
+    }
+
+    // === Purity Analysis ===
+
+    private boolean analyze(FunctionValue root) {
+        Set<FunctionDeclaration> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        boolean pure = isPure(root, visited);
+
+        if (!pure) {
+            // Anything judged pure during this pass may have relied on the root being pure
+            for (FunctionDeclaration decl : visited) {
+                if (Boolean.TRUE.equals(purity.get(decl))) {
+                    purity.remove(decl);
+                }
+            }
+            purity.put((FunctionDeclaration) root.getBody(), false);
+        }
+        return pure;
+    }
+
+    /**
+     * The free names of a function and of every function it can call.
+     */
+    private Shape shapeOf(FunctionDeclaration root) {
+        Set<String> names = new LinkedHashSet<>();
+        Set<FunctionDeclaration> functions = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<FunctionDeclaration> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            FunctionDeclaration decl = pending.pop();
+            if (functions.add(decl)) {
+                names.addAll(freeNames.getOrDefault(decl, Collections.emptySet()));
+                callees.getOrDefault(decl, Collections.emptySet()).forEach(pending::push);
+            }
+        }
+        return new Shape(names.toArray(new String[0]), functions);
+    }
+
+    private boolean isPure(FunctionValue func, Set<FunctionDeclaration> visited) {
+        if (!(func.getBody() instanceof FunctionDeclaration)) {
+            return false;
+        }
+
+        FunctionDeclaration decl = (FunctionDeclaration) func.getBody();
+        Boolean known = purity.get(decl);
+        if (known != null) {
+            return known;
+        }
+
+        // Assume pure while analyzing so recursive calls terminate
+        purity.put(decl, true);
+        visited.add(decl);
+
+        Set<String> locals = new HashSet<>(decl.parameters);
+        Analysis analysis = new Analysis(func.getClosure(), locals, visited);
+        boolean pure = analysis.block(decl.body);
+        purity.put(decl, pure);
+        freeNames.put(decl, analysis.free);
+        callees.put(decl, analysis.calls);
+        return pure;
+    }
+
+    private class Analysis {
+        private final ScopeContext scope;
+        private final Set<String> locals;
+        private final Set<FunctionDeclaration> visited;
+        private final Set<String> free = new LinkedHashSet<>();
+        private final Set<FunctionDeclaration> calls = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        Analysis(ScopeContext scope, Set<String> locals, Set<FunctionDeclaration> visited) {
+            this.scope = scope;
+            this.locals = locals;
+            this.visited = visited;
+        }
+
+        /**
+         * A nested block. Its declarations aren't locals once it ends, since
+         * they may never have run and a later read could reach the caller.
+         */
+        boolean nested(List<ASTNode> statements, String... declared) {
+            Set<String> outer = new HashSet<>(locals);
+            locals.addAll(Arrays.asList(declared));
+            try {
+                return block(statements);
+            } finally {
+                locals.retainAll(outer);
+            }
+        }
+
+        boolean block(List<ASTNode> statements) {
+            if (statements == null) {
+                return true;
+            }
+            for (ASTNode statement : statements) {
+                if (!node(statement)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean all(List<ASTNode> nodes) {
+            for (ASTNode node : nodes) {
+                if (!node(node)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean node(ASTNode node) {
+            if (node == null || node instanceof NumberLiteral || node instanceof StringLiteral
+                    || node instanceof BooleanLiteral || node instanceof NullLiteral
+                    || node instanceof BreakStatement || node instanceof ContinueStatement) {
+                return true;
+            } else if (node instanceof ListLiteral) {
+                return all(((ListLiteral) node).elements);
+            } else if (node instanceof MapLiteral) {
+                for (MapLiteral.MapEntry entry : ((MapLiteral) node).entries) {
+                    if (!node(entry.value)) {
+                        return false;
+                    }
+                }
+                return true;
+            } else if (node instanceof Identifier) {
+                return readable(((Identifier) node).name);
+            } else if (node instanceof MemberExpression) {
+                return node(((MemberExpression) node).object);
+            } else if (node instanceof IndexExpression) {
+                IndexExpression index = (IndexExpression) node;
+                return node(index.object) && node(index.index);
+            } else if (node instanceof BinaryExpression) {
+                BinaryExpression binary = (BinaryExpression) node;
+                return node(binary.left) && node(binary.right);
+            } else if (node instanceof UnaryExpression) {
+                return node(((UnaryExpression) node).operand);
+            } else if (node instanceof AssignmentExpression) {
+                AssignmentExpression assignment = (AssignmentExpression) node;
+                return writable(assignment.target) && node(assignment.value);
+            } else if (node instanceof CallExpression) {
+                return call((CallExpression) node);
+            } else if (node instanceof VariableDeclaration) {
+                VariableDeclaration declaration = (VariableDeclaration) node;
+                boolean pure = node(declaration.value);
+                locals.add(declaration.name);
+                return pure;
+            } else if (node instanceof ReturnStatement) {
+                return node(((ReturnStatement) node).value);
+            } else if (node instanceof IfStatement) {
+                IfStatement ifStatement = (IfStatement) node;
+                return node(ifStatement.condition) && nested(ifStatement.thenBranch) && nested(ifStatement.elseBranch);
+            } else if (node instanceof WhileStatement) {
+                WhileStatement whileStatement = (WhileStatement) node;
+                return node(whileStatement.condition) && nested(whileStatement.body);
+            } else if (node instanceof ForStatement) {
+                ForStatement forStatement = (ForStatement) node;
+                return node(forStatement.iterable) && nested(forStatement.body, forStatement.variable);
+            } else if (node instanceof TryStatement) {
+                TryStatement tryStatement = (TryStatement) node;
+                return nested(tryStatement.tryBlock) && nested(tryStatement.catchBlock, tryStatement.errorVariable);
+            } else if (node instanceof ExpressionStatement) {
+                return node(((ExpressionStatement) node).expression);
+            }
+
+            // Nested functions, event handlers and scopes are never pure
+            return false;
+        }
+
+        private boolean readable(String name) {
+            if (locals.contains(name)) {
+                return true;
+            }
+            free.add(name);
+            if (scope == null || !scope.has(name)) {
+                return false;
+            }
+
+            QuillValue value = scope.get(name);
+            if (value.isFunction()) {
+                FunctionValue func = (FunctionValue) value;
+                if (func.getBody() instanceof FunctionDeclaration) {
+                    calls.add((FunctionDeclaration) func.getBody());
+                }
+                return isPure(func, visited);
+            }
+            return scope.isConst(name) && isPrimitive(value);
+        }
+
+        private boolean writable(ASTNode target) {
+            if (target instanceof Identifier) {
+                return locals.contains(((Identifier) target).name);
+            } else if (target instanceof MemberExpression) {
+                return writable(((MemberExpression) target).object);
+            } else if (target instanceof IndexExpression) {
+                IndexExpression index = (IndexExpression) target;
+                return writable(index.object) && node(index.index);
+            }
+            return false;
+        }
+
+        private boolean call(CallExpression call) {
+            if (!(call.callee instanceof Identifier)) {
+                return false;
+            }
+
+            String name = ((Identifier) call.callee).name;
+            if (builtIns.contains(name)) {
+                return PURE_BUILTINS.contains(name) && all(call.arguments);
+            }
+            if (locals.contains(name)) {
+                // A local could hold any function; we can't tell which
+                return false;
+            }
+            return readable(name) && all(call.arguments);
+        }
+    }
+
+    // === Statistics ===
+
+    /**
+     * Forget cached results, purity verdicts and statistics, keeping the settings.
+     */
+    public void reset() {
+        cache.clear();
+        purity.clear();
+        freeNames.clear();
+        callees.clear();
+        shapes.clear();
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    public void setAutomatic(boolean automatic) {
+        this.automatic = automatic;
+    }
+
+    public boolean isAutomatic() {
+        return automatic;
+    }
+
+    public long getHits() { return hits; }
+    public long getMisses() { return misses; }
+    public long getEvictions() { return evictions; }
+    public int getSize() { return cache.size(); }
+
+    public long getLookups() {
+        return hits + misses;
+    }
+
+    public String getSummary() {
+        long lookups = getLookups();
+        double hitRate = lookups == 0 ? 0 : (100.0 * hits / lookups);
+        return String.format("%d hits, %d misses (%.1f%% hit rate), %d cached, %d evicted",
+            hits, misses, hitRate, cache.size(), evictions);
+    }
+
+    // === Cache Key ===
+
+    private static final Object UNDEFINED = new Object();
+
+    /**
+     * The free names a function's result can depend on, and the functions
+     * whose names those are.
+     */
+    private static class Shape {
+        final String[] names;
+        final Set<FunctionDeclaration> functions;
+
+        Shape(String[] names, Set<FunctionDeclaration> functions) {
+            this.names = names;
+            this.functions = functions;
+        }
+    }
+
+    /**
+     * A function, its arguments and the values its free names had at the call.
+     * Numbers are compared by their bits, so 0.0 and -0.0 are different keys.
+     */
+    public static class Key {
+        private final FunctionDeclaration function;
+        private final Object[] values;
+        private final int hash;
+
+        Key(FunctionDeclaration function, List<QuillValue> args, Object[] names) {
+            this.function = function;
+            this.values = new Object[args.size() + names.length];
+            int hash = System.identityHashCode(function);
+            for (int i = 0; i < values.length; i++) {
+                values[i] = i < args.size() ? args.get(i) : names[i - args.size()];
+                hash = 31 * hash + hashOf(values[i]);
+            }
+            this.hash = hash;
+        }
+
+        private static int hashOf(Object value) {
+            if (value instanceof NumberValue) {
+                return Long.hashCode(Double.doubleToLongBits(((NumberValue) value).asNumber()));
+            }
+            return value.hashCode();
+        }
+
+        private static boolean same(Object a, Object b) {
+            if (a instanceof NumberValue && b instanceof NumberValue) {
+                return Double.doubleToLongBits(((NumberValue) a).asNumber())
+                    == Double.doubleToLongBits(((NumberValue) b).asNumber());
+            }
+            return a.equals(b);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            if (function != other.function || hash != other.hash || values.length != other.values.length) {
+                return false;
+            }
+            for (int i = 0; i < values.length; i++) {
+                if (!same(values[i], other.values[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package me.kmathers.sudobot.quill.interpreter;
+
+import me.kmathers.sudobot.quill.simulation.DiscordSimulationContext;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of ready-built interpreters, each paired with its own simulation context.
+ * Building an interpreter registers every builtin and builds a fresh context
+ * with its collections and default world; pooled pairs are reset after each
+ * script instead, so small scripts allocate almost nothing up front.
+ */
+public class InterpreterPool {
+    private final BlockingQueue<DiscordQuillInterpreter> idle;
+    private final int maxCallDepth;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
+    public InterpreterPool(int capacity, int maxCallDepth) {
+        this.idle = new ArrayBlockingQueue<>(capacity);
+        this.maxCallDepth = maxCallDepth;
+    }
+
+    /**
+     * Take an idle interpreter, or build one if none are free.
+     * Its simulation context is available through {@link DiscordQuillInterpreter#getSimulationContext()}.
+     */
+    public DiscordQuillInterpreter acquire() {
+        DiscordQuillInterpreter interpreter = idle.poll();
+        if (interpreter != null) {
+            reused.incrementAndGet();
+            return interpreter;
+        }
+
+        created.incrementAndGet();
+        return new DiscordQuillInterpreter(new DiscordSimulationContext(), maxCallDepth);
+    }
+
+    /**
+     * Reset an interpreter and its context and make it available again.
+     * Extra interpreters beyond the pool's capacity are dropped.
+     */
+    public void release(DiscordQuillInterpreter interpreter) {
+        interpreter.reset();
+        idle.offer(interpreter);
+    }
+
+    public long getCreated() { return created.get(); }
+    public long getReused() { return reused.get(); }
+    public int getIdle() { return idle.size(); }
+}
@@ -0,0 +1,116 @@
+package me.kmathers.sudobot.quill.interpreter;
+
+import me.kmathers.sudobot.quill.interpreter.DiscordQuillInterpreter.BuiltInFunction;
+import me.kmathers.sudobot.quill.interpreter.QuillValue.*;
+import me.kmathers.sudobot.quill.parser.AST.ASTNode;
+
+import java.util.Arrays;
+
+/**
+ * Entry points that JIT-compiled Quill code calls back into.
+ * One instance per compiled function; call sites are numbered and refer
+ * back to their AST node (for error positions) and builtin (if any), so
+ * compiled code goes through exactly the same builtins, limits and
+ * cancellation checks as the interpreter.
+ */
+final class JitRuntime {
+    private final DiscordQuillInterpreter interpreter;
+    private final String functionName;
+    private final ASTNode[] sites;
+    private final BuiltInFunction[] builtIns;
+
+    // Loops entered but not yet left in the current compiled invocation
+    int openLoops;
+
+    JitRuntime(DiscordQuillInterpreter interpreter, String functionName, ASTNode[] sites, BuiltInFunction[] builtIns) {
+        this.interpreter = interpreter;
+        this.functionName = functionName;
+        this.sites = sites;
+        this.builtIns = builtIns;
+        this.openLoops = 0;
+    }
+
+    // === Boxing ===
+
+    QuillValue num(double value) {
+        return new NumberValue(value);
+    }
+
+    QuillValue bool(int value) {
+        return new BooleanValue(value != 0);
+    }
+
+    QuillValue str(String value) {
+        return new StringValue(value);
+    }
+
+    // === Calls ===
+
+    QuillValue call(QuillValue[] args, int site) {
+        try {
+            return builtIns[site].call(Arrays.asList(args), interpreter.currentScope(), interpreter);
+        } catch (QuillRuntimeError e) {
+            throw e.at(sites[site]);
+        }
+    }
+
+    /**
+     * Call a builtin that always returns a number.
+     */
+    double callNumber(QuillValue[] args, int site) {
+        return call(args, site).asNumber();
+    }
+
+    /**
+     * Push a call frame for a recursive call, enforcing the call depth limit.
+     */
+    void enter(int site) {
+        interpreter.cancellation().check();
+        try {
+            interpreter.enterCall(functionName, sites[site]);
+        } catch (QuillRuntimeError e) {
+            throw e.at(sites[site]);
+        }
+    }
+
+    void exit() {
+        interpreter.exitCall();
+    }
+
+    /**
+     * Checked before a self tail call jumps back to the start.
+     */
+    void checkCancelled() {
+        interpreter.cancellation().check();
+    }
+
+    // === Arithmetic ===
+
+    double divide(double left, double right, int site) {
+        if (right == 0) {
+            throw new QuillRuntimeError("Division by zero").at(sites[site]);
+        }
+        return left / right;
+    }
+
+    // === Loops ===
+
+    void loopStart() {
+        interpreter.loopDetector().startLoop();
+        openLoops++;
+    }
+
+    void loopCheck(int site) {
+        interpreter.cancellation().check();
+        try {
+            interpreter.loopDetector().checkIteration();
+        } catch (LoopDetector.InfiniteLoopException e) {
+            throw new QuillRuntimeError("Infinite loop detected: " + e.getMessage()).at(sites[site]);
+        }
+    }
+
+    void loopEnd() {
+        interpreter.loopDetector().endLoop();
+        openLoops--;
+    }
+}
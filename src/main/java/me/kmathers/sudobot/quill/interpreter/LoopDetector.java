@@ -58,7 +58,7 @@ public class LoopDetector {
         return currentIterations;
     }
 
-    public static class InfiniteLoopException extends RuntimeException {
+    public static class InfiniteLoopException extends QuillRuntimeError {
         public InfiniteLoopException(String message) {
             super(message);
         }
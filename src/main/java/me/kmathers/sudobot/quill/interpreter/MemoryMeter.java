@@ -0,0 +1,155 @@
+package me.kmathers.sudobot.quill.interpreter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Approximate memory accounting for one script run.
+ * Strings, lists, maps and chat messages charge an estimate of their size when
+ * they're created. Allocations alone overstate usage (most values are
+ * garbage soon after), so once enough has been charged the interpreter
+ * measures what its scopes and output actually retain, the way a GC decides
+ * when to collect. Measuring happens after at least as many bytes as were
+ * live last time have been charged, which keeps its cost proportional to
+ * allocation. If the retained size is over budget, the run is cancelled.
+ *
+ * Charges reach the meter bound to the current thread, so values built
+ * outside a run (or by the bot itself) aren't counted.
+ */
+public class MemoryMeter {
+    public static final long DEFAULT_BUDGET_BYTES = 32L * 1024 * 1024;
+    private static final long MIN_MEASURE_INTERVAL = 256 * 1024;
+
+    // Rough sizes on a 64-bit JVM with compressed pointers
+    public static final long VALUE_BYTES = 16;
+    public static final long STRING_BYTES = 56;
+    public static final long LIST_BYTES = 56;
+    public static final long MAP_BYTES = 80;
+    public static final long REFERENCE_BYTES = 8;
+    public static final long ENTRY_BYTES = 40;
+
+    private static final ThreadLocal<MemoryMeter> current = new ThreadLocal<>();
+
+    private final long budget;
+    private final CancellationToken token;
+    private final LongSupplier measure;
+    private final AtomicLong charged = new AtomicLong();
+    private volatile Thread owner;
+    private volatile int suspended;
+
+    private volatile long live;
+    private volatile long peak;
+    private volatile long nextMeasure;
+
+    /**
+     * @param measure walks everything the run retains and returns its size;
+     *                only called on the owner thread
+     */
+    public MemoryMeter(long budget, CancellationToken token, LongSupplier measure) {
+        this.budget = budget;
+        this.token = token;
+        this.measure = measure;
+        this.nextMeasure = Math.min(budget, MIN_MEASURE_INTERVAL);
+    }
+
+    // === Binding ===
+
+    /**
+     * Make this meter receive the current thread's charges, returning the
+     * previously bound meter so it can be restored with {@link #unbind}.
+     */
+    public MemoryMeter bind() {
+        MemoryMeter previous = current.get();
+        current.set(this);
+        return previous;
+    }
+
+    public static void unbind(MemoryMeter previous) {
+        if (previous == null) {
+            current.remove();
+        } else {
+            current.set(previous);
+        }
+    }
+
+    /**
+     * Only the owner thread measures; other threads (parallel loop workers) only charge.
+     */
+    public void setOwner(Thread owner) {
+        this.owner = owner;
+    }
+
+    /**
+     * Stop measuring while other threads may be changing the run's scopes.
+     */
+    public void suspend() {
+        suspended++;
+    }
+
+    public void resume() {
+        suspended--;
+    }
+
+    // === Charging ===
+
+    public static void charge(long bytes) {
+        MemoryMeter meter = current.get();
+        if (meter != null) {
+            meter.add(bytes);
+        }
+    }
+
+    public static long sizeOfString(String value) {
+        return STRING_BYTES + value.length();
+    }
+
+    private void add(long bytes) {
+        long total = charged.addAndGet(bytes);
+        if (total >= nextMeasure && suspended == 0 && Thread.currentThread() == owner) {
+            check(bytes);
+        }
+    }
+
+    /**
+     * Measure what the run retains now and cancel it if that's over budget.
+     */
+    public void check() {
+        check(0);
+    }
+
+    /**
+     * @param pending a value just charged, which usually isn't reachable from a scope yet
+     */
+    private void check(long pending) {
+        long retained = measure.getAsLong() + pending;
+        live = retained;
+        peak = Math.max(peak, retained);
+        charged.set(retained);
+
+        // Measure again once usage may have doubled, or could be over budget
+        nextMeasure = Math.min(retained + Math.max(retained, MIN_MEASURE_INTERVAL),
+                Math.max(budget, retained + MIN_MEASURE_INTERVAL));
+
+        if (retained > budget) {
+            token.cancel(String.format("Script needed more than its memory budget of %s (about %s)",
+                    format(budget), format(retained)));
+            token.check();
+        }
+    }
+
+    // === Stats ===
+
+    public long getBudget() { return budget; }
+    public long getLive() { return live; }
+    public long getPeak() { return peak; }
+
+    public static String format(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        }
+        if (bytes < 1024 * 1024) {
+            return String.format("%.1f KB", bytes / 1024.0);
+        }
+        return String.format("%.1f MB", bytes / (1024.0 * 1024));
+    }
+}
@@ -0,0 +1,385 @@
+package me.kmathers.sudobot.quill.interpreter;
+
+import me.kmathers.sudobot.quill.interpreter.QuillValue.*;
+import me.kmathers.sudobot.quill.parser.AST.*;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a {@code parallel for} loop.
+ * The body is checked before it runs: it may only assign to its own locals
+ * and to reduction targets (outer variables updated as
+ * {@code total = total + expr}, and not otherwise read), and may only call
+ * read-only builtins and functions that follow the same rules. Iterations
+ * then run on the interpreter's {@link ParallelPool}, each range on its own
+ * worker interpreter, and
+ * record their reduction steps instead of applying them. The steps are
+ * folded in iteration order afterwards, so the result is exactly what the
+ * sequential loop would produce.
+ */
+class ParallelFor {
+    static final Set<String> READ_ONLY_BUILTINS = Set.of(
+        "len", "contains", "has", "set", "union", "intersect", "split", "join",
+        "to_string", "to_number", "to_boolean", "type_of", "range", "round", "floor",
+        "ceil", "abs", "sqrt", "pow", "min", "max", "sum", "avg", "get_player",
+        "get_online_players", "get_health", "get_hunger", "get_name", "get_location",
+        "get_gamemode", "get_block", "get_time", "get_weather", "get_world", "distance",
+        "get_nearby_entities", "get_nearby_players", "nearest_player",
+        "scopes_at", "scopes_overlapping", "scopes_enclosing", "get_tick", "has_potion_effect"
+    );
+
+    // Iterations are handed out in chunks, about this many per thread
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * One {@code target = target op value} step recorded by an iteration.
+     */
+    static class Contribution {
+        final AssignmentExpression node;
+        final int target;
+        final QuillValue value;
+
+        Contribution(AssignmentExpression node, int target, QuillValue value) {
+            this.node = node;
+            this.target = target;
+            this.value = value;
+        }
+    }
+
+    private final DiscordQuillInterpreter interpreter;
+    private final ForStatement node;
+    private final List<String> targets = new ArrayList<>();
+    private final Map<AssignmentExpression, Integer> reductions = new IdentityHashMap<>();
+    private final Set<String> reads = new HashSet<>();
+    private final Set<FunctionDeclaration> checkedFunctions = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    ParallelFor(DiscordQuillInterpreter interpreter, ForStatement node) {
+        this.interpreter = interpreter;
+        this.node = node;
+    }
+
+    /**
+     * Reduction target index for an assignment in the loop body, or null.
+     */
+    Integer reductionTarget(AssignmentExpression assignment) {
+        return reductions.get(assignment);
+    }
+
+    QuillValue run(List<QuillValue> items) {
+        Set<String> visible = new HashSet<>();
+        visible.add(node.variable);
+        block(node.body, visible, true, 0);
+
+        for (String read : reads) {
+            if (targets.contains(read)) {
+                throw new QuillRuntimeError("parallel for: reduction target '" + read +
+                    "' can only be used as '" + read + " = " + read + " <op> value'");
+            }
+        }
+
+        ScopeContext scope = interpreter.currentScope();
+        QuillValue[] values = new QuillValue[targets.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = scope.get(targets.get(i));
+            // Fails the same way the first sequential update would for a constant
+            scope.set(targets.get(i), values[i]);
+        }
+
+        // Lazy lists materialize on first use, which must not happen on several threads at once
+        for (String read : reads) {
+            if (scope.has(read) && scope.get(read) instanceof LazyListValue) {
+                scope.get(read).getValue();
+            }
+        }
+
+        // Apply the loop detector's iteration limit up front, as the sequential loop would
+        int limit = items.size();
+        QuillRuntimeError loopError = null;
+        LoopDetector detector = interpreter.loopDetector();
+        detector.startLoop();
+        try {
+            for (int i = 0; i < items.size(); i++) {
+                detector.checkIteration();
+            }
+        } catch (LoopDetector.InfiniteLoopException e) {
+            limit = detector.getCurrentIterations() - 1;
+            loopError = new QuillRuntimeError("Infinite loop detected: " + e.getMessage());
+        } finally {
+            detector.endLoop();
+        }
+
+        List<List<Contribution>> results = new ArrayList<>(Collections.nCopies(limit, null));
+        RuntimeException[] errors = new RuntimeException[limit];
+        AtomicInteger firstFailure = new AtomicInteger(limit);
+
+        ParallelPool pool = interpreter.parallelPool();
+        int grain = Math.max(1, limit / (pool.getParallelism() * CHUNKS_PER_THREAD));
+        int chunks = (limit + grain - 1) / grain;
+        AtomicInteger nextChunk = new AtomicInteger();
+        List<Runner> runners = new ArrayList<>();
+        for (int i = 0; i < Math.min(pool.getParallelism(), chunks); i++) {
+            runners.add(new Runner(items, limit, grain, nextChunk, results, errors, firstFailure));
+        }
+        pool.invokeAll(runners, interpreter.cancellation());
+
+        // Fold contributions in iteration order, up to and including the iteration
+        // where the sequential loop would have failed
+        int failed = firstFailure.get();
+        int merged = failed < limit ? failed + 1 : limit;
+        try {
+            for (int i = 0; i < merged; i++) {
+                for (Contribution contribution : results.get(i)) {
+                    BinaryExpression step = (BinaryExpression) contribution.node.value;
+                    try {
+                        values[contribution.target] = interpreter.binaryOperation(
+                            step.operator, values[contribution.target], contribution.value);
+                    } catch (QuillRuntimeError e) {
+                        throw e.at(step);
+                    }
+                }
+            }
+        } finally {
+            for (int i = 0; i < values.length; i++) {
+                scope.set(targets.get(i), values[i]);
+            }
+        }
+
+        if (failed < limit) {
+            throw errors[failed];
+        }
+        if (loopError != null) {
+            throw loopError;
+        }
+        return NullValue.INSTANCE;
+    }
+
+    /**
+     * Claims chunks of iterations until none are left, running them on its
+     * own worker interpreter.
+     */
+    private class Runner implements Runnable {
+        private final List<QuillValue> items;
+        private final int limit;
+        private final int grain;
+        private final AtomicInteger nextChunk;
+        private final List<List<Contribution>> results;
+        private final RuntimeException[] errors;
+        private final AtomicInteger firstFailure;
+
+        Runner(List<QuillValue> items, int limit, int grain, AtomicInteger nextChunk,
+               List<List<Contribution>> results, RuntimeException[] errors, AtomicInteger firstFailure) {
+            this.items = items;
+            this.limit = limit;
+            this.grain = grain;
+            this.nextChunk = nextChunk;
+            this.results = results;
+            this.errors = errors;
+            this.firstFailure = firstFailure;
+        }
+
+        @Override
+        public void run() {
+            DiscordQuillInterpreter worker = interpreter.parallelWorker(ParallelFor.this);
+            while (true) {
+                int from = nextChunk.getAndIncrement() * grain;
+                if (from >= limit || from >= firstFailure.get()) {
+                    return;
+                }
+                int to = Math.min(from + grain, limit);
+                for (int i = from; i < to && i < firstFailure.get(); i++) {
+                    List<Contribution> contributions = new ArrayList<>();
+                    results.set(i, contributions);
+                    try {
+                        worker.runParallelIteration(node, items.get(i), contributions);
+                    } catch (RuntimeException e) {
+                        errors[i] = e;
+                        firstFailure.accumulateAndGet(i, Math::min);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    // === Body Check ===
+
+    private QuillRuntimeError reject(ASTNode at, String reason) {
+        return new QuillRuntimeError("parallel for: " + reason).at(at);
+    }
+
+    /**
+     * Check a block. Locals declared in it are only visible inside it, which is
+     * conservative for if-blocks but means a name is never assumed local on a
+     * path where it wasn't declared.
+     *
+     * @param loopBody whether this is the parallel body itself, where reductions are allowed
+     * @param loopDepth loops nested inside the parallel body (break is only allowed inside one)
+     */
+    private void block(List<ASTNode> statements, Set<String> outer, boolean loopBody, int loopDepth) {
+        if (statements == null) {
+            return;
+        }
+        Set<String> visible = new HashSet<>(outer);
+        for (ASTNode statement : statements) {
+            statement(statement, visible, loopBody, loopDepth);
+        }
+    }
+
+    private void statement(ASTNode statement, Set<String> visible, boolean loopBody, int loopDepth) {
+        if (statement instanceof VariableDeclaration) {
+            VariableDeclaration declaration = (VariableDeclaration) statement;
+            expression(declaration.value, visible);
+            visible.add(declaration.name);
+        } else if (statement instanceof ExpressionStatement) {
+            ASTNode expression = ((ExpressionStatement) statement).expression;
+            if (loopBody && isReduction(expression, visible)) {
+                AssignmentExpression assignment = (AssignmentExpression) expression;
+                String target = ((Identifier) assignment.target).name;
+                if (!targets.contains(target)) {
+                    targets.add(target);
+                }
+                reductions.put(assignment, targets.indexOf(target));
+                expression(((BinaryExpression) assignment.value).right, visible);
+            } else {
+                expression(expression, visible);
+            }
+        } else if (statement instanceof ReturnStatement) {
+            if (loopBody) {
+                throw reject(statement, "cannot return from inside the loop");
+            }
+            expression(((ReturnStatement) statement).value, visible);
+        } else if (statement instanceof IfStatement) {
+            IfStatement ifStatement = (IfStatement) statement;
+            expression(ifStatement.condition, visible);
+            block(ifStatement.thenBranch, visible, loopBody, loopDepth);
+            block(ifStatement.elseBranch, visible, loopBody, loopDepth);
+        } else if (statement instanceof WhileStatement) {
+            WhileStatement whileStatement = (WhileStatement) statement;
+            expression(whileStatement.condition, visible);
+            block(whileStatement.body, visible, loopBody, loopDepth + 1);
+        } else if (statement instanceof ForStatement) {
+            ForStatement forStatement = (ForStatement) statement;
+            expression(forStatement.iterable, visible);
+            Set<String> inner = new HashSet<>(visible);
+            inner.add(forStatement.variable);
+            block(forStatement.body, inner, loopBody, loopDepth + 1);
+        } else if (statement instanceof TryStatement) {
+            TryStatement tryStatement = (TryStatement) statement;
+            block(tryStatement.tryBlock, visible, loopBody, loopDepth);
+            Set<String> inner = new HashSet<>(visible);
+            inner.add(tryStatement.errorVariable);
+            block(tryStatement.catchBlock, inner, loopBody, loopDepth);
+        } else if (statement instanceof BreakStatement) {
+            if (loopBody && loopDepth == 0) {
+                throw reject(statement, "cannot break out of a parallel loop");
+            }
+        } else if (statement instanceof ContinueStatement) {
+            // Ends the iteration (or the inner loop's iteration)
+        } else {
+            throw reject(statement, statement.getClass().getSimpleName() + " is not allowed in a parallel loop");
+        }
+    }
+
+    /**
+     * {@code name = name op value} where name is not a local.
+     */
+    private boolean isReduction(ASTNode expression, Set<String> visible) {
+        if (!(expression instanceof AssignmentExpression)) {
+            return false;
+        }
+        AssignmentExpression assignment = (AssignmentExpression) expression;
+        if (!(assignment.target instanceof Identifier) || !(assignment.value instanceof BinaryExpression)) {
+            return false;
+        }
+
+        String name = ((Identifier) assignment.target).name;
+        ASTNode left = ((BinaryExpression) assignment.value).left;
+        return !visible.contains(name) && left instanceof Identifier && ((Identifier) left).name.equals(name);
+    }
+
+    private void expression(ASTNode expression, Set<String> visible) {
+        if (expression == null || expression instanceof NumberLiteral || expression instanceof StringLiteral
+                || expression instanceof BooleanLiteral || expression instanceof NullLiteral) {
+            return;
+        }
+
+        if (expression instanceof Identifier) {
+            String name = ((Identifier) expression).name;
+            if (!visible.contains(name)) {
+                reads.add(name);
+            }
+        } else if (expression instanceof ListLiteral) {
+            for (ASTNode element : ((ListLiteral) expression).elements) {
+                expression(element, visible);
+            }
+        } else if (expression instanceof MapLiteral) {
+            for (MapLiteral.MapEntry entry : ((MapLiteral) expression).entries) {
+                expression(entry.value, visible);
+            }
+        } else if (expression instanceof MemberExpression) {
+            expression(((MemberExpression) expression).object, visible);
+        } else if (expression instanceof IndexExpression) {
+            IndexExpression index = (IndexExpression) expression;
+            expression(index.object, visible);
+            expression(index.index, visible);
+        } else if (expression instanceof BinaryExpression) {
+            BinaryExpression binary = (BinaryExpression) expression;
+            expression(binary.left, visible);
+            expression(binary.right, visible);
+        } else if (expression instanceof UnaryExpression) {
+            expression(((UnaryExpression) expression).operand, visible);
+        } else if (expression instanceof AssignmentExpression) {
+            AssignmentExpression assignment = (AssignmentExpression) expression;
+            if (!(assignment.target instanceof Identifier)) {
+                throw reject(expression, "cannot modify lists or maps in a parallel loop");
+            }
+            String name = ((Identifier) assignment.target).name;
+            if (!visible.contains(name)) {
+                throw reject(expression, "cannot assign to outer variable '" + name +
+                    "' except as '" + name + " = " + name + " <op> value'");
+            }
+            expression(assignment.value, visible);
+        } else if (expression instanceof CallExpression) {
+            call((CallExpression) expression, visible);
+        } else {
+            throw reject(expression, expression.getClass().getSimpleName() + " is not allowed in a parallel loop");
+        }
+    }
+
+    private void call(CallExpression call, Set<String> visible) {
+        for (ASTNode argument : call.arguments) {
+            expression(argument, visible);
+        }
+
+        if (!(call.callee instanceof Identifier)) {
+            throw reject(call, "only named functions can be called in a parallel loop");
+        }
+
+        String name = ((Identifier) call.callee).name;
+        if (interpreter.builtIns().containsKey(name)) {
+            if (!READ_ONLY_BUILTINS.contains(name)) {
+                throw reject(call, name + "() has side effects and cannot be called in a parallel loop");
+            }
+            return;
+        }
+
+        ScopeContext scope = interpreter.currentScope();
+        if (visible.contains(name) || !scope.has(name) || !scope.get(name).isFunction()) {
+            throw reject(call, "cannot tell which function '" + name + "' refers to");
+        }
+        function((FunctionValue) scope.get(name));
+    }
+
+    private void function(FunctionValue func) {
+        if (!(func.getBody() instanceof FunctionDeclaration)) {
+            return;
+        }
+        FunctionDeclaration decl = (FunctionDeclaration) func.getBody();
+        // Recursive calls are assumed fine while the function is being checked
+        if (!checkedFunctions.add(decl)) {
+            return;
+        }
+        block(decl.body, new HashSet<>(decl.parameters), false, 0);
+    }
+}
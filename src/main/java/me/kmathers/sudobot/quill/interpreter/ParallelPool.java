@@ -0,0 +1,129 @@
+package me.kmathers.sudobot.quill.interpreter;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads for work a script splits up, such as parallel for loops.
+ * They run Quill code, so like the threads scripts run on they are created
+ * with {@link DiscordQuillInterpreter#stackSizeFor} stack, and the CPU time
+ * each task uses is added to the run's cancellation token so it counts
+ * toward the script's quota along with the submitting thread's own time.
+ */
+public class ParallelPool {
+    private static final Map<Long, ParallelPool> pools = new ConcurrentHashMap<>();
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private final int parallelism;
+    private final ThreadPoolExecutor executor;
+
+    private ParallelPool(long stackSize) {
+        this.parallelism = Runtime.getRuntime().availableProcessors();
+        AtomicInteger workerCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                parallelism,
+                parallelism,
+                30L,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Worker(runnable, "quill-parallel-" + workerCount.incrementAndGet(), stackSize);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * The pool for interpreters with the given call depth limit.
+     */
+    public static ParallelPool forCallDepth(int maxCallDepth) {
+        return pools.computeIfAbsent(DiscordQuillInterpreter.stackSizeFor(maxCallDepth), ParallelPool::new);
+    }
+
+    private static class Worker extends Thread {
+        Worker(Runnable runnable, String name, long stackSize) {
+            super(null, runnable, name, stackSize);
+        }
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Run every task and wait for all of them: the first on the calling
+     * thread, the rest on the pool. Called from one of the pool's own
+     * threads, everything runs there instead, so tasks never wait on each
+     * other. The first task to fail, in list order, has its exception rethrown.
+     */
+    public void invokeAll(List<? extends Runnable> tasks, CancellationToken token) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        if (Thread.currentThread() instanceof Worker) {
+            tasks.forEach(Runnable::run);
+            return;
+        }
+
+        List<Future<?>> futures = new ArrayList<>(tasks.size() - 1);
+        for (Runnable task : tasks.subList(1, tasks.size())) {
+            futures.add(executor.submit(() -> runCounted(task, token)));
+        }
+
+        Throwable failure = null;
+        try {
+            tasks.get(0).run();
+        } catch (RuntimeException | Error e) {
+            failure = e;
+        }
+
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    // The tasks share state with the caller, so they must finish first
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                    break;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+    }
+
+    private static void runCounted(Runnable task, CancellationToken token) {
+        long cpuStart = threads.getCurrentThreadCpuTime();
+        try {
+            task.run();
+        } finally {
+            if (cpuStart >= 0) {
+                token.addUsage(0, threads.getCurrentThreadCpuTime() - cpuStart);
+            }
+        }
+    }
+}
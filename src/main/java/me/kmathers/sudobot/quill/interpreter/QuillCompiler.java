@@ -0,0 +1,640 @@
+package me.kmathers.sudobot.quill.interpreter;
+
+import me.kmathers.sudobot.quill.interpreter.ClassFileWriter.Label;
+import me.kmathers.sudobot.quill.interpreter.ClassFileWriter.MethodWriter;
+import me.kmathers.sudobot.quill.interpreter.DiscordQuillInterpreter.BuiltInFunction;
+import me.kmathers.sudobot.quill.parser.AST.*;
+
+import java.util.*;
+
+import static me.kmathers.sudobot.quill.interpreter.ClassFileWriter.*;
+
+/**
+ * Compiles a Quill function to JVM bytecode for the JIT tier.
+ * Handles the numeric subset of Quill: parameters are numbers (checked by a
+ * guard on entry), locals are numbers or booleans, and the body may use
+ * arithmetic, comparisons, if/while, recursive calls to itself and calls to
+ * builtins. Anything else is rejected with {@link Unsupported} and the
+ * function stays interpreted.
+ */
+class QuillCompiler {
+    static final String CLASS_NAME = "me/kmathers/sudobot/quill/interpreter/QuillCompiled";
+    private static final String RUNTIME = "me/kmathers/sudobot/quill/interpreter/JitRuntime";
+    private static final String VALUE = "me/kmathers/sudobot/quill/interpreter/QuillValue";
+    private static final String COMPILED = "me/kmathers/sudobot/quill/interpreter/QuillJit$CompiledFunction";
+
+    // Builtins that always return a number, so they can be used inside expressions
+    private static final Set<String> NUMERIC_BUILTINS = Set.of(
+        "abs", "sqrt", "floor", "ceil", "round", "pow", "min", "max", "random"
+    );
+
+    /**
+     * Thrown when a function uses something the compiler doesn't handle.
+     */
+    static class Unsupported extends Exception {
+        Unsupported(String reason) {
+            super(reason, null, false, false);
+        }
+    }
+
+    private enum Type { NUMBER, BOOLEAN }
+
+    private static class Local {
+        final int slot;
+        final Type type;
+        final boolean isConst;
+
+        Local(int slot, Type type, boolean isConst) {
+            this.slot = slot;
+            this.type = type;
+            this.isConst = isConst;
+        }
+    }
+
+    private static class Loop {
+        final Label next;
+        final Label exit;
+
+        Loop(Label next, Label exit) {
+            this.next = next;
+            this.exit = exit;
+        }
+    }
+
+    /**
+     * Output of a successful compilation.
+     */
+    static class Result {
+        final byte[] classBytes;
+        final ASTNode[] sites;
+        final BuiltInFunction[] builtIns;
+        final boolean recursive;
+
+        Result(byte[] classBytes, ASTNode[] sites, BuiltInFunction[] builtIns, boolean recursive) {
+            this.classBytes = classBytes;
+            this.sites = sites;
+            this.builtIns = builtIns;
+            this.recursive = recursive;
+        }
+    }
+
+    private final FunctionDeclaration function;
+    private final Map<String, BuiltInFunction> availableBuiltIns;
+    private final Type returnType;
+    private final String runDescriptor;
+
+    private MethodWriter code;
+    private Label start;
+    private final Map<String, Local> locals = new HashMap<>();
+    private Set<String> visible = new HashSet<>();
+    private final Deque<Loop> loops = new ArrayDeque<>();
+    private final List<ASTNode> sites = new ArrayList<>();
+    private final List<BuiltInFunction> siteBuiltIns = new ArrayList<>();
+    private int nextSlot;
+    private boolean recursive;
+
+    private QuillCompiler(FunctionDeclaration function, Map<String, BuiltInFunction> builtIns, Type returnType) {
+        this.function = function;
+        this.availableBuiltIns = builtIns;
+        this.returnType = returnType;
+
+        StringBuilder descriptor = new StringBuilder("(L" + RUNTIME + ";");
+        for (int i = 0; i < function.parameters.size(); i++) {
+            descriptor.append('D');
+        }
+        descriptor.append(')').append(returnType == Type.NUMBER ? 'D' : 'I');
+        this.runDescriptor = descriptor.toString();
+    }
+
+    /**
+     * Compile a function, trying a numeric return type first and then boolean.
+     */
+    static Result compile(FunctionDeclaration function, Map<String, BuiltInFunction> builtIns) throws Unsupported {
+        try {
+            return new QuillCompiler(function, builtIns, Type.NUMBER).generate();
+        } catch (ReturnTypeMismatch e) {
+            try {
+                return new QuillCompiler(function, builtIns, Type.BOOLEAN).generate();
+            } catch (ReturnTypeMismatch again) {
+                throw new Unsupported("returns values of different types");
+            }
+        }
+    }
+
+    private static class ReturnTypeMismatch extends Unsupported {
+        ReturnTypeMismatch() {
+            super("return type mismatch");
+        }
+    }
+
+    private Result generate() throws Unsupported {
+        ClassFileWriter writer = new ClassFileWriter(CLASS_NAME, "java/lang/Object", COMPILED);
+
+        MethodWriter init = writer.method(ACC_PUBLIC, "<init>", "()V");
+        init.local(ALOAD, 0);
+        init.invoke(INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+        init.op(RETURN, 0);
+
+        generateBridge(writer.method(ACC_PUBLIC, "invoke", "(L" + RUNTIME + ";[D)L" + VALUE + ";"));
+
+        code = writer.method(ACC_STATIC, "run", runDescriptor);
+        nextSlot = 1;
+        Set<String> parameters = new HashSet<>();
+        for (String parameter : function.parameters) {
+            if (!parameters.add(parameter) || parameter.equals(function.name)) {
+                throw new Unsupported("parameter '" + parameter + "' shadows another name");
+            }
+            locals.put(parameter, new Local(nextSlot, Type.NUMBER, false));
+            visible.add(parameter);
+            nextSlot += 2;
+        }
+
+        start = code.newLabel();
+        code.mark(start);
+        if (!block(function.body)) {
+            throw new Unsupported("not every path returns a value");
+        }
+
+        try {
+            return new Result(writer.toByteArray(), sites.toArray(new ASTNode[0]),
+                siteBuiltIns.toArray(new BuiltInFunction[0]), recursive);
+        } catch (IllegalStateException e) {
+            throw new Unsupported(e.getMessage());
+        }
+    }
+
+    /**
+     * invoke(runtime, args): unpack the argument array, call run, box the result.
+     */
+    private void generateBridge(MethodWriter bridge) {
+        bridge.local(ALOAD, 1);
+        bridge.local(ALOAD, 1);
+        for (int i = 0; i < function.parameters.size(); i++) {
+            bridge.local(ALOAD, 2);
+            bridge.intConst(i);
+            bridge.op(DALOAD, 0);
+        }
+        bridge.invoke(INVOKESTATIC, CLASS_NAME, "run", runDescriptor);
+        if (returnType == Type.NUMBER) {
+            bridge.invoke(INVOKEVIRTUAL, RUNTIME, "num", "(D)L" + VALUE + ";");
+        } else {
+            bridge.invoke(INVOKEVIRTUAL, RUNTIME, "bool", "(I)L" + VALUE + ";");
+        }
+        bridge.op(ARETURN, -1);
+    }
+
+    private int site(ASTNode node, BuiltInFunction builtIn) {
+        sites.add(node);
+        siteBuiltIns.add(builtIn);
+        return sites.size() - 1;
+    }
+
+    // === Statements ===
+
+    /**
+     * Compile a block in its own visibility scope.
+     * Returns true if control never falls off the end of it.
+     */
+    private boolean block(List<ASTNode> statements) throws Unsupported {
+        Set<String> outer = visible;
+        visible = new HashSet<>(outer);
+        try {
+            for (ASTNode statement : statements) {
+                if (statement(statement)) {
+                    // Whatever follows is unreachable
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            visible = outer;
+        }
+    }
+
+    private boolean statement(ASTNode node) throws Unsupported {
+        if (node instanceof VariableDeclaration) {
+            declare((VariableDeclaration) node);
+            return false;
+        } else if (node instanceof ExpressionStatement) {
+            expressionStatement(((ExpressionStatement) node).expression);
+            return false;
+        } else if (node instanceof ReturnStatement) {
+            returnStatement((ReturnStatement) node);
+            return true;
+        } else if (node instanceof IfStatement) {
+            return ifStatement((IfStatement) node);
+        } else if (node instanceof WhileStatement) {
+            whileStatement((WhileStatement) node);
+            return false;
+        } else if (node instanceof BreakStatement || node instanceof ContinueStatement) {
+            Loop loop = loops.peek();
+            if (loop == null) {
+                throw new Unsupported("break or continue outside a loop");
+            }
+            code.jump(GOTO, node instanceof BreakStatement ? loop.exit : loop.next, 0);
+            return true;
+        }
+
+        throw new Unsupported(node.getClass().getSimpleName() + " is not supported");
+    }
+
+    private void declare(VariableDeclaration node) throws Unsupported {
+        // Redeclaring a name in the same scope is an error in the interpreter,
+        // and loops don't get their own scope, so keep to one declaration per name
+        if (!loops.isEmpty()) {
+            throw new Unsupported("variable declared inside a loop");
+        }
+        if (locals.containsKey(node.name) || node.name.equals(function.name)) {
+            throw new Unsupported("variable '" + node.name + "' declared twice");
+        }
+
+        Type type = expression(node.value);
+        Local local = new Local(nextSlot, type, node.isConst);
+        nextSlot += type == Type.NUMBER ? 2 : 1;
+        locals.put(node.name, local);
+        store(local);
+        visible.add(node.name);
+    }
+
+    private void expressionStatement(ASTNode expression) throws Unsupported {
+        if (expression instanceof AssignmentExpression) {
+            AssignmentExpression assignment = (AssignmentExpression) expression;
+            if (!(assignment.target instanceof Identifier)) {
+                throw new Unsupported("assignment to a member or index");
+            }
+
+            Local local = visibleLocal(((Identifier) assignment.target).name);
+            if (local.isConst) {
+                throw new Unsupported("assignment to a constant");
+            }
+            if (expression(assignment.value) != local.type) {
+                throw new Unsupported("assignment changes a variable's type");
+            }
+            store(local);
+            return;
+        }
+
+        if (expression instanceof CallExpression && isBuiltInCall((CallExpression) expression)) {
+            builtInCall((CallExpression) expression, false);
+            code.op(POP, -1);
+            return;
+        }
+
+        Type type = expression(expression);
+        code.op(type == Type.NUMBER ? POP2 : POP, type == Type.NUMBER ? -2 : -1);
+    }
+
+    private void returnStatement(ReturnStatement node) throws Unsupported {
+        if (node.value == null) {
+            throw new Unsupported("return without a value");
+        }
+
+        if (node.value instanceof CallExpression && isSelfCall((CallExpression) node.value)) {
+            // Tail call: rebind the parameters and jump back to the start
+            CallExpression call = (CallExpression) node.value;
+            checkArity(call);
+            for (ASTNode argument : call.arguments) {
+                requireNumber(expression(argument));
+            }
+            for (int i = function.parameters.size() - 1; i >= 0; i--) {
+                code.local(DSTORE, locals.get(function.parameters.get(i)).slot);
+            }
+            closeLoops();
+            code.local(ALOAD, 0);
+            code.invoke(INVOKEVIRTUAL, RUNTIME, "checkCancelled", "()V");
+            code.jump(GOTO, start, 0);
+            return;
+        }
+
+        if (expression(node.value) != returnType) {
+            throw new ReturnTypeMismatch();
+        }
+        closeLoops();
+        if (returnType == Type.NUMBER) {
+            code.op(DRETURN, -2);
+        } else {
+            code.op(IRETURN, -1);
+        }
+    }
+
+    /**
+     * Leaving a function from inside loops ends each of them, as the
+     * interpreter's finally blocks do.
+     */
+    private void closeLoops() {
+        for (int i = 0; i < loops.size(); i++) {
+            code.local(ALOAD, 0);
+            code.invoke(INVOKEVIRTUAL, RUNTIME, "loopEnd", "()V");
+        }
+    }
+
+    private boolean ifStatement(IfStatement node) throws Unsupported {
+        Label otherwise = code.newLabel();
+        Label end = code.newLabel();
+
+        truthy(expression(node.condition));
+        code.jump(IFEQ, otherwise, -1);
+
+        boolean thenReturns = block(node.thenBranch);
+        if (!thenReturns) {
+            code.jump(GOTO, end, 0);
+        }
+
+        code.mark(otherwise);
+        boolean elseReturns = node.elseBranch != null && block(node.elseBranch);
+        code.mark(end);
+        return thenReturns && elseReturns;
+    }
+
+    private void whileStatement(WhileStatement node) throws Unsupported {
+        int site = site(node, null);
+        Label next = code.newLabel();
+        Label exit = code.newLabel();
+
+        code.local(ALOAD, 0);
+        code.invoke(INVOKEVIRTUAL, RUNTIME, "loopStart", "()V");
+
+        code.mark(next);
+        truthy(expression(node.condition));
+        code.jump(IFEQ, exit, -1);
+
+        code.local(ALOAD, 0);
+        code.intConst(site);
+        code.invoke(INVOKEVIRTUAL, RUNTIME, "loopCheck", "(I)V");
+
+        loops.push(new Loop(next, exit));
+        try {
+            if (!block(node.body)) {
+                code.jump(GOTO, next, 0);
+            }
+        } finally {
+            loops.pop();
+        }
+
+        code.mark(exit);
+        code.local(ALOAD, 0);
+        code.invoke(INVOKEVIRTUAL, RUNTIME, "loopEnd", "()V");
+    }
+
+    // === Expressions ===
+
+    private Type expression(ASTNode node) throws Unsupported {
+        if (node instanceof NumberLiteral) {
+            code.doubleConst(((NumberLiteral) node).value);
+            return Type.NUMBER;
+        } else if (node instanceof BooleanLiteral) {
+            code.intConst(((BooleanLiteral) node).value ? 1 : 0);
+            return Type.BOOLEAN;
+        } else if (node instanceof Identifier) {
+            Local local = visibleLocal(((Identifier) node).name);
+            code.local(local.type == Type.NUMBER ? DLOAD : ILOAD, local.slot);
+            return local.type;
+        } else if (node instanceof UnaryExpression) {
+            return unary((UnaryExpression) node);
+        } else if (node instanceof BinaryExpression) {
+            return binary((BinaryExpression) node);
+        } else if (node instanceof CallExpression) {
+            CallExpression call = (CallExpression) node;
+            if (isBuiltInCall(call)) {
+                builtInCall(call, true);
+                return Type.NUMBER;
+            }
+            if (isSelfCall(call)) {
+                selfCall(call);
+                return returnType;
+            }
+            throw new Unsupported("call to another user function");
+        }
+
+        throw new Unsupported(node.getClass().getSimpleName() + " is not supported");
+    }
+
+    private Type unary(UnaryExpression node) throws Unsupported {
+        Type operand = expression(node.operand);
+        switch (node.operator) {
+            case "-":
+                requireNumber(operand);
+                code.op(DNEG, 0);
+                return Type.NUMBER;
+            case "!":
+                truthy(operand);
+                code.intConst(1);
+                code.op(IXOR, -1);
+                return Type.BOOLEAN;
+            default:
+                throw new Unsupported("operator " + node.operator);
+        }
+    }
+
+    private Type binary(BinaryExpression node) throws Unsupported {
+        switch (node.operator) {
+            case "+":
+                return arithmetic(node, DADD);
+            case "-":
+                return arithmetic(node, DSUB);
+            case "*":
+                return arithmetic(node, DMUL);
+            case "%":
+                return arithmetic(node, DREM);
+            case "/": {
+                int site = site(node, null);
+                code.local(ALOAD, 0);
+                requireNumber(expression(node.left));
+                requireNumber(expression(node.right));
+                code.intConst(site);
+                code.invoke(INVOKEVIRTUAL, RUNTIME, "divide", "(DDI)D");
+                return Type.NUMBER;
+            }
+            // dcmpg/dcmpl are chosen so NaN compares false, matching Java's operators
+            case "<":
+                return comparison(node, DCMPG, IFGE);
+            case "<=":
+                return comparison(node, DCMPG, IFGT);
+            case ">":
+                return comparison(node, DCMPL, IFLE);
+            case ">=":
+                return comparison(node, DCMPL, IFLT);
+            case "==":
+                return equality(node, true);
+            case "!=":
+                return equality(node, false);
+            case "&&":
+            case "||": {
+                // Both sides are always evaluated, as in the interpreter
+                truthy(expression(node.left));
+                truthy(expression(node.right));
+                code.op(node.operator.equals("&&") ? IAND : IOR, -1);
+                return Type.BOOLEAN;
+            }
+            default:
+                throw new Unsupported("operator " + node.operator);
+        }
+    }
+
+    private Type arithmetic(BinaryExpression node, int opcode) throws Unsupported {
+        requireNumber(expression(node.left));
+        requireNumber(expression(node.right));
+        code.op(opcode, -2);
+        return Type.NUMBER;
+    }
+
+    private Type comparison(BinaryExpression node, int compare, int jumpIfFalse) throws Unsupported {
+        requireNumber(expression(node.left));
+        requireNumber(expression(node.right));
+        code.op(compare, -3);
+        toBoolean(jumpIfFalse);
+        return Type.BOOLEAN;
+    }
+
+    private Type equality(BinaryExpression node, boolean equal) throws Unsupported {
+        Type left = expression(node.left);
+        Type right = expression(node.right);
+
+        if (left != right) {
+            // Values of different types are never equal
+            code.op(right == Type.NUMBER ? POP2 : POP, right == Type.NUMBER ? -2 : -1);
+            code.op(left == Type.NUMBER ? POP2 : POP, left == Type.NUMBER ? -2 : -1);
+            code.intConst(equal ? 0 : 1);
+            return Type.BOOLEAN;
+        }
+
+        if (left == Type.NUMBER) {
+            code.op(DCMPL, -3);
+            toBoolean(equal ? IFNE : IFEQ);
+        } else {
+            Label differs = code.newLabel();
+            Label end = code.newLabel();
+            code.jump(IF_ICMPNE, differs, -2);
+            code.intConst(equal ? 1 : 0);
+            code.jump(GOTO, end, 0);
+            code.mark(differs);
+            code.setStack(code.getStack() - 1);
+            code.intConst(equal ? 0 : 1);
+            code.mark(end);
+        }
+        return Type.BOOLEAN;
+    }
+
+    /**
+     * Turn the int on the stack into 1 or 0 using the given branch for false.
+     */
+    private void toBoolean(int jumpIfFalse) {
+        Label isFalse = code.newLabel();
+        Label end = code.newLabel();
+        code.jump(jumpIfFalse, isFalse, -1);
+        code.intConst(1);
+        code.jump(GOTO, end, 0);
+        code.mark(isFalse);
+        code.setStack(code.getStack() - 1);
+        code.intConst(0);
+        code.mark(end);
+    }
+
+    /**
+     * Convert the value on the stack to Quill truthiness as 1 or 0.
+     */
+    private void truthy(Type type) {
+        if (type == Type.NUMBER) {
+            // NaN is truthy, like asNumber() != 0
+            code.doubleConst(0);
+            code.op(DCMPL, -3);
+            toBoolean(IFEQ);
+        }
+    }
+
+    // === Calls ===
+
+    private boolean isBuiltInCall(CallExpression call) {
+        return call.callee instanceof Identifier
+            && availableBuiltIns.containsKey(((Identifier) call.callee).name);
+    }
+
+    private boolean isSelfCall(CallExpression call) {
+        return call.callee instanceof Identifier
+            && ((Identifier) call.callee).name.equals(function.name)
+            && !availableBuiltIns.containsKey(function.name);
+    }
+
+    private void checkArity(CallExpression call) throws Unsupported {
+        if (call.arguments.size() != function.parameters.size()) {
+            throw new Unsupported("recursive call with the wrong number of arguments");
+        }
+    }
+
+    /**
+     * Box the arguments into a QuillValue[] and call the builtin through the runtime.
+     * In an expression, only builtins that always return numbers are allowed.
+     */
+    private void builtInCall(CallExpression call, boolean numeric) throws Unsupported {
+        String name = ((Identifier) call.callee).name;
+        if (numeric && !NUMERIC_BUILTINS.contains(name)) {
+            throw new Unsupported("builtin " + name + "() used as a value");
+        }
+
+        int site = site(call, availableBuiltIns.get(name));
+        code.local(ALOAD, 0);
+        code.intConst(call.arguments.size());
+        code.newArray(VALUE);
+
+        for (int i = 0; i < call.arguments.size(); i++) {
+            ASTNode argument = call.arguments.get(i);
+            code.op(DUP, 1);
+            code.intConst(i);
+            code.local(ALOAD, 0);
+            if (argument instanceof StringLiteral) {
+                code.stringConst(((StringLiteral) argument).value);
+                code.invoke(INVOKEVIRTUAL, RUNTIME, "str", "(Ljava/lang/String;)L" + VALUE + ";");
+            } else if (expression(argument) == Type.NUMBER) {
+                code.invoke(INVOKEVIRTUAL, RUNTIME, "num", "(D)L" + VALUE + ";");
+            } else {
+                code.invoke(INVOKEVIRTUAL, RUNTIME, "bool", "(I)L" + VALUE + ";");
+            }
+            code.op(AASTORE, -3);
+        }
+
+        code.intConst(site);
+        if (numeric) {
+            code.invoke(INVOKEVIRTUAL, RUNTIME, "callNumber", "([L" + VALUE + ";I)D");
+        } else {
+            code.invoke(INVOKEVIRTUAL, RUNTIME, "call", "([L" + VALUE + ";I)L" + VALUE + ";");
+        }
+    }
+
+    private void selfCall(CallExpression call) throws Unsupported {
+        checkArity(call);
+        recursive = true;
+        int site = site(call, null);
+
+        code.local(ALOAD, 0);
+        for (ASTNode argument : call.arguments) {
+            requireNumber(expression(argument));
+        }
+
+        code.local(ALOAD, 0);
+        code.intConst(site);
+        code.invoke(INVOKEVIRTUAL, RUNTIME, "enter", "(I)V");
+        code.invoke(INVOKESTATIC, CLASS_NAME, "run", runDescriptor);
+        code.local(ALOAD, 0);
+        code.invoke(INVOKEVIRTUAL, RUNTIME, "exit", "()V");
+    }
+
+    // === Helpers ===
+
+    private Local visibleLocal(String name) throws Unsupported {
+        // Anything not declared on every path here would be looked up in the caller's scope
+        if (!visible.contains(name)) {
+            throw new Unsupported("'" + name + "' is not a parameter or local");
+        }
+        return locals.get(name);
+    }
+
+    private void store(Local local) {
+        code.local(local.type == Type.NUMBER ? DSTORE : ISTORE, local.slot);
+    }
+
+    private static void requireNumber(Type type) throws Unsupported {
+        if (type != Type.NUMBER) {
+            throw new Unsupported("boolean used as a number");
+        }
+    }
+}
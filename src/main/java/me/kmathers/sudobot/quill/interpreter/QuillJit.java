@@ -0,0 +1,197 @@
+package me.kmathers.sudobot.quill.interpreter;
+
+import me.kmathers.sudobot.quill.interpreter.QuillValue.*;
+import me.kmathers.sudobot.quill.parser.AST.*;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.*;
+
+/**
+ * Second execution tier for hot Quill functions.
+ * Each function declaration counts its calls; once it crosses the threshold
+ * it is compiled by {@link QuillCompiler} and loaded as a hidden class, after
+ * which the JVM's own JIT takes over. Every call first checks guards (all
+ * arguments are numbers and the function's name still refers to it); if a
+ * guard fails that call simply runs in the interpreter.
+ */
+public class QuillJit {
+    public static final int DEFAULT_THRESHOLD = 100;
+
+    /**
+     * Implemented by the generated hidden class.
+     */
+    interface CompiledFunction {
+        QuillValue invoke(JitRuntime runtime, double[] args);
+    }
+
+    private static class Entry {
+        int calls;
+        boolean failed;
+        CompiledFunction code;
+        JitRuntime runtime;
+        boolean recursive;
+    }
+
+    private final DiscordQuillInterpreter interpreter;
+    private final Map<FunctionDeclaration, Entry> entries;
+    private final Map<String, String> rejected;
+    private int threshold;
+
+    private int compiledFunctions;
+    private long compiledCalls;
+    private long guardFailures;
+
+    public QuillJit(DiscordQuillInterpreter interpreter, int threshold) {
+        this.interpreter = interpreter;
+        this.entries = new IdentityHashMap<>();
+        this.rejected = new LinkedHashMap<>();
+        this.threshold = threshold;
+    }
+
+    /**
+     * Run a call in compiled code if possible.
+     *
+     * @param lookup the scope the function's own name resolves from
+     * @return the result, or null if the call must be interpreted
+     */
+    QuillValue tryInvoke(FunctionValue func, List<QuillValue> args, ScopeContext lookup, ASTNode callSite) {
+        if (threshold <= 0 || !(func.getBody() instanceof FunctionDeclaration)) {
+            return null;
+        }
+
+        FunctionDeclaration decl = (FunctionDeclaration) func.getBody();
+        Entry entry = entries.computeIfAbsent(decl, d -> new Entry());
+        if (entry.code == null) {
+            if (entry.failed || ++entry.calls < threshold) {
+                return null;
+            }
+            compile(func, entry);
+            if (entry.code == null) {
+                return null;
+            }
+        }
+
+        double[] numbers = guard(decl, entry, args, lookup);
+        if (numbers == null) {
+            guardFailures++;
+            return null;
+        }
+
+        compiledCalls++;
+        JitRuntime runtime = entry.runtime;
+        int depth = interpreter.callDepth();
+        int openLoops = runtime.openLoops;
+        runtime.openLoops = 0;
+
+        interpreter.enterCall(func.getName(), callSite);
+        try {
+            return entry.code.invoke(runtime, numbers);
+        } catch (QuillRuntimeError e) {
+            throw e.withCallStack(interpreter.getCallStack());
+        } finally {
+            if (runtime.openLoops > 0) {
+                // An exception left loops open; the interpreter's finally blocks would have ended them
+                interpreter.loopDetector().endLoop();
+            }
+            runtime.openLoops = openLoops;
+            interpreter.unwindCallStack(depth);
+        }
+    }
+
+    private double[] guard(FunctionDeclaration decl, Entry entry, List<QuillValue> args, ScopeContext lookup) {
+        if (args.size() != decl.parameters.size()) {
+            return null;
+        }
+
+        double[] numbers = new double[args.size()];
+        for (int i = 0; i < numbers.length; i++) {
+            QuillValue arg = args.get(i);
+            if (!arg.isNumber()) {
+                return null;
+            }
+            numbers[i] = arg.asNumber();
+        }
+
+        if (entry.recursive) {
+            // Recursive calls are linked directly, so the name must still mean this function
+            if (!lookup.has(decl.name)) {
+                return null;
+            }
+            QuillValue self = lookup.get(decl.name);
+            if (!self.isFunction() || ((FunctionValue) self).getBody() != decl) {
+                return null;
+            }
+        }
+        return numbers;
+    }
+
+    private void compile(FunctionValue func, Entry entry) {
+        FunctionDeclaration decl = (FunctionDeclaration) func.getBody();
+        if (interpreter.getMemoizer().shouldMemoize(func)) {
+            // Memoized calls must keep going through the cache
+            reject(decl, entry, "memoized");
+            return;
+        }
+
+        try {
+            QuillCompiler.Result result = QuillCompiler.compile(decl, interpreter.builtIns());
+            MethodHandles.Lookup hidden = MethodHandles.lookup().defineHiddenClass(result.classBytes, true);
+            entry.code = (CompiledFunction) hidden
+                .findConstructor(hidden.lookupClass(), MethodType.methodType(void.class))
+                .invoke();
+            entry.runtime = new JitRuntime(interpreter, decl.name, result.sites, result.builtIns);
+            entry.recursive = result.recursive;
+            compiledFunctions++;
+        } catch (QuillCompiler.Unsupported e) {
+            reject(decl, entry, e.getMessage());
+        } catch (Throwable e) {
+            reject(decl, entry, "failed to load: " + e);
+        }
+    }
+
+    private void reject(FunctionDeclaration decl, Entry entry, String reason) {
+        entry.failed = true;
+        rejected.put(decl.name, reason);
+    }
+
+    // === Configuration and Statistics ===
+
+    /**
+     * Drop compiled code and statistics from a previous script, keeping the threshold.
+     */
+    public void reset() {
+        entries.clear();
+        rejected.clear();
+        compiledFunctions = 0;
+        compiledCalls = 0;
+        guardFailures = 0;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Calls before a function is compiled; 0 disables the JIT.
+     */
+    public void setThreshold(int threshold) {
+        this.threshold = threshold;
+    }
+
+    public int getCompiledFunctions() { return compiledFunctions; }
+    public long getCompiledCalls() { return compiledCalls; }
+    public long getGuardFailures() { return guardFailures; }
+
+    /**
+     * Functions that reached the threshold but could not be compiled, with the reason.
+     */
+    public Map<String, String> getRejected() {
+        return Collections.unmodifiableMap(rejected);
+    }
+
+    public String getSummary() {
+        return String.format("%d functions compiled, %d compiled calls, %d guard failures, %d not compilable",
+            compiledFunctions, compiledCalls, guardFailures, rejected.size());
+    }
+}
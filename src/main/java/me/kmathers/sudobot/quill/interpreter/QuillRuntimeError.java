@@ -0,0 +1,77 @@
+package me.kmathers.sudobot.quill.interpreter;
+
+import me.kmathers.sudobot.quill.interpreter.DiscordQuillInterpreter.CallFrame;
+import me.kmathers.sudobot.quill.parser.AST.ASTNode;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Error raised by a running Quill script.
+ * Does not capture a JVM stack trace, so throwing and catching it (e.g. from
+ * a Quill try/catch) is cheap. Instead it records where in the script it
+ * happened: the line and column of the innermost AST node being evaluated,
+ * and the Quill call stack at that point.
+ */
+public class QuillRuntimeError extends RuntimeException {
+    private int line;
+    private int column;
+    private List<CallFrame> callStack;
+
+    public QuillRuntimeError(String message) {
+        super(message, null, false, false);
+        this.line = 0;
+        this.column = 0;
+        this.callStack = null;
+    }
+
+    /**
+     * Record the source position, unless a more specific one is already set.
+     */
+    public QuillRuntimeError at(ASTNode node) {
+        if (line == 0 && node != null && node.line > 0) {
+            this.line = node.line;
+            this.column = node.column;
+        }
+        return this;
+    }
+
+    /**
+     * Record the Quill call stack, unless it was captured deeper already.
+     */
+    public QuillRuntimeError withCallStack(List<CallFrame> callStack) {
+        if (this.callStack == null) {
+            this.callStack = callStack;
+        }
+        return this;
+    }
+
+    public boolean hasLocation() {
+        return line > 0;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * Quill call stack at the point of failure, innermost call first.
+     */
+    public List<CallFrame> getCallStack() {
+        return callStack != null ? callStack : Collections.emptyList();
+    }
+
+    /**
+     * The message with its source position appended, if known.
+     */
+    public String getLocatedMessage() {
+        if (!hasLocation()) {
+            return getMessage();
+        }
+        return getMessage() + " (line " + line + ", column " + column + ")";
+    }
+}
@@ -3,6 +3,7 @@ package me.kmathers.sudobot.quill.interpreter;
 import me.kmathers.sudobot.quill.mocks.MockLocation;
 import me.kmathers.sudobot.quill.mocks.MockEntity;
 import me.kmathers.sudobot.quill.mocks.MockEvent;
+import me.kmathers.sudobot.quill.simulation.BlockClipboard;
 import me.kmathers.sudobot.quill.simulation.DiscordSimulationContext.MockPlayer;
 import me.kmathers.sudobot.quill.mocks.MockItemStack;
 
@@ -10,8 +11,12 @@ import me.kmathers.sudobot.quill.mocks.MockWorld;
 import me.kmathers.sudobot.quill.parser.AST.ASTNode;
 
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.IntStream;
 
 public abstract class QuillValue {    
@@ -32,6 +37,8 @@ public abstract class QuillValue {
         MAP,
         EVENT,
         INVENTORY,
+        SET,
+        CLIPBOARD,
     }
     
     public abstract ValueType getType();
@@ -52,57 +59,59 @@ public abstract class QuillValue {
     public boolean isFunction() { return getType() == ValueType.FUNCTION; }
     public boolean isWorld() { return getType() == ValueType.WORLD; }
     public boolean isRegion() {return getType() == ValueType.REGION; }
+    public boolean isClipboard() { return getType() == ValueType.CLIPBOARD; }
     public boolean isMap() { return getType() == ValueType.MAP; }
     public boolean isEvent() { return getType() == ValueType.EVENT; }
     public boolean isInventory() { return getType() == ValueType.INVENTORY; }
+    public boolean isSet() { return getType() == ValueType.SET; }
 
     // === Type Conversion (with runtime checks) ===
     
     public double asNumber() {
         if (!isNumber()) {
-            throw new RuntimeException("Expected number but got " + getType());
+            throw new QuillRuntimeError("Expected number but got " + getType());
         }
         return (double) getValue();
     }
     
     public String asString() {
         if (!isString()) {
-            throw new RuntimeException("Expected string but got " + getType());
+            throw new QuillRuntimeError("Expected string but got " + getType());
         }
         return (String) getValue();
     }
     
     public boolean asBoolean() {
         if (!isBoolean()) {
-            throw new RuntimeException("Expected boolean but got " + getType());
+            throw new QuillRuntimeError("Expected boolean but got " + getType());
         }
         return (boolean) getValue();
     }
     
     public MockPlayer asPlayer() {
         if (!isPlayer()) {
-            throw new RuntimeException("Expected player but got " + getType());
+            throw new QuillRuntimeError("Expected player but got " + getType());
         }
         return (MockPlayer) getValue();
     }
     
     public MockLocation asLocation() {
         if (!isLocation()) {
-            throw new RuntimeException("Expected location but got " + getType());
+            throw new QuillRuntimeError("Expected location but got " + getType());
         }
         return (MockLocation) getValue();
     }
     
     public MockItemStack asItem() {
         if (!isItem()) {
-            throw new RuntimeException("Expected item but got " + getType());
+            throw new QuillRuntimeError("Expected item but got " + getType());
         }
         return (MockItemStack) getValue();
     }
     
     public ScopeValue asScope() {
         if (!isScope()) {
-            throw new RuntimeException("Expected sock but got " + getType());
+            throw new QuillRuntimeError("Expected sock but got " + getType());
         }
         return (ScopeValue) this;
     }
@@ -110,54 +119,69 @@ public abstract class QuillValue {
     @SuppressWarnings("unchecked")
     public List<QuillValue> asList() {
         if (!isList()) {
-            throw new RuntimeException("Expected list but got " + getType());
+            throw new QuillRuntimeError("Expected list but got " + getType());
         }
         return (List<QuillValue>) getValue();
     }
     
     public MockEntity asEntity() {
         if (!isEntity()) {
-            throw new RuntimeException("Expected entity but got " + getType());
+            throw new QuillRuntimeError("Expected entity but got " + getType());
         }
         return (MockEntity) getValue();
     }
     
     public MockWorld asWorld() {
         if (!isWorld()) {
-            throw new RuntimeException("Expected world but got " + getType());
+            throw new QuillRuntimeError("Expected world but got " + getType());
         }
         return (MockWorld) getValue();
     }
     
     public RegionValue asRegion() {
         if (!isRegion()) {
-            throw new RuntimeException("Expected region but got " + getType());
+            throw new QuillRuntimeError("Expected region but got " + getType());
         }
         return (RegionValue) getValue();
     }
 
+    public BlockClipboard asClipboard() {
+        if (!isClipboard()) {
+            throw new QuillRuntimeError("Expected clipboard but got " + getType());
+        }
+        return (BlockClipboard) getValue();
+    }
+
     @SuppressWarnings("unchecked")
     public Map<String, QuillValue> asMap() {
         if (!isMap()) {
-            throw new RuntimeException("Expected map but got " + getType());
+            throw new QuillRuntimeError("Expected map but got " + getType());
         }
         return (Map<String, QuillValue>) getValue();
     }
     
     public MockEvent asEvent() {
         if (!isEvent()) {
-            throw new RuntimeException("Expected event but got " + getType());
+            throw new QuillRuntimeError("Expected event but got " + getType());
         }
         return (MockEvent) getValue();
     }
 
     public InventoryValue asInventory() {
         if (!isInventory()) {
-            throw new RuntimeException("Expected inventory but got " + getType());
+            throw new QuillRuntimeError("Expected inventory but got " + getType());
         }
         return (InventoryValue) getValue();
     }
 
+    @SuppressWarnings("unchecked")
+    public Set<QuillValue> asSet() {
+        if (!isSet()) {
+            throw new QuillRuntimeError("Expected set but got " + getType());
+        }
+        return (Set<QuillValue>) getValue();
+    }
+
     // === Truthiness ===
     
     public boolean isTruthy() {
@@ -166,9 +190,31 @@ public abstract class QuillValue {
         if (isNumber()) return asNumber() != 0;
         if (isString()) return !asString().isEmpty();
         if (isList()) return !asList().isEmpty();
+        if (isSet()) return !asSet().isEmpty();
         return true;
     }
     
+    // === Equality and Hashing ===
+    
+    /**
+     * Values of different types are never equal. Numbers, strings and booleans
+     * compare by value; everything else compares by the identity of the
+     * underlying object, matching the interpreter's == operator.
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof QuillValue)) return false;
+        QuillValue other = (QuillValue) o;
+        if (getType() != other.getType()) return false;
+        return getValue() == other.getValue();
+    }
+    
+    @Override
+    public int hashCode() {
+        return 31 * getType().hashCode() + System.identityHashCode(getValue());
+    }
+    
     // === String Representation ===
     
     @Override
@@ -193,6 +239,17 @@ public abstract class QuillValue {
         @Override
         public Object getValue() { return value; }
         
+        @Override
+        public boolean equals(Object o) {
+            return this == o || (o instanceof NumberValue && ((NumberValue) o).value == value);
+        }
+        
+        @Override
+        public int hashCode() {
+            // 0.0 and -0.0 compare equal, so they must hash the same
+            return value == 0 ? 0 : Double.hashCode(value);
+        }
+        
         @Override
         public String toString() { 
             if (value == Math.floor(value)) {
@@ -207,6 +264,7 @@ public abstract class QuillValue {
         
         public StringValue(String value) {
             this.value = value;
+            MemoryMeter.charge(MemoryMeter.sizeOfString(value));
         }
         
         @Override
@@ -214,6 +272,14 @@ public abstract class QuillValue {
         
         @Override
         public Object getValue() { return value; }
+        
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof StringValue && ((StringValue) o).value.equals(value);
+        }
+        
+        @Override
+        public int hashCode() { return value.hashCode(); }
     }
     
     public static class BooleanValue extends QuillValue {
@@ -229,6 +295,14 @@ public abstract class QuillValue {
         @Override
         public Object getValue() { return value; }
         
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof BooleanValue && ((BooleanValue) o).value == value;
+        }
+        
+        @Override
+        public int hashCode() { return Boolean.hashCode(value); }
+        
         @Override
         public String toString() { return String.valueOf(value); }
     }
@@ -328,6 +402,7 @@ public abstract class QuillValue {
         
         public ListValue(List<QuillValue> elements) {
             this.elements = elements;
+            MemoryMeter.charge(MemoryMeter.LIST_BYTES + elements.size() * MemoryMeter.REFERENCE_BYTES);
         }
         
         @Override
@@ -348,6 +423,78 @@ public abstract class QuillValue {
         }
     }
     
+    /**
+     * A list whose elements are produced on demand by a pipeline of
+     * map/filter/take stages. Streaming consumers (for loops, reduce, any, all)
+     * pull elements straight through the pipeline; anything that needs the
+     * list itself materializes it once and keeps the result.
+     */
+    public static class LazyListValue extends QuillValue {
+        private final Supplier<Iterator<QuillValue>> source;
+        private List<QuillValue> elements;
+        
+        public LazyListValue(Supplier<Iterator<QuillValue>> source) {
+            this.source = source;
+        }
+        
+        @Override
+        public ValueType getType() { return ValueType.LIST; }
+        
+        @Override
+        public Object getValue() {
+            if (elements == null) {
+                iterator().forEachRemaining(item -> { });
+            }
+            return elements;
+        }
+        
+        /**
+         * Iterate over the list. The first pass that runs to the end keeps
+         * what it produced, so later passes neither call the pipeline's
+         * callbacks again nor see later changes to its source.
+         */
+        public Iterator<QuillValue> iterator() {
+            if (elements != null) {
+                return elements.iterator();
+            }
+            
+            Iterator<QuillValue> it = source.get();
+            List<QuillValue> produced = new ArrayList<>();
+            return new Iterator<QuillValue>() {
+                @Override
+                public boolean hasNext() {
+                    if (it.hasNext()) {
+                        return true;
+                    }
+                    if (elements == null) {
+                        elements = produced;
+                    }
+                    return false;
+                }
+                
+                @Override
+                public QuillValue next() {
+                    QuillValue item = it.next();
+                    produced.add(item);
+                    return item;
+                }
+            };
+        }
+        
+        /**
+         * Pull from the pipeline without keeping its elements, for a later
+         * stage that fuses it into its own pass.
+         */
+        public Iterator<QuillValue> pipeline() {
+            return elements != null ? elements.iterator() : source.get();
+        }
+        
+        @Override
+        public String toString() {
+            return new ListValue(asList()).toString();
+        }
+    }
+    
     public static class EntityValue extends QuillValue {
         private final MockEntity entity;
         
@@ -446,6 +593,23 @@ public abstract class QuillValue {
         }
     }
 
+    public static class ClipboardValue extends QuillValue {
+        private final BlockClipboard clipboard;
+        
+        public ClipboardValue(BlockClipboard clipboard) {
+            this.clipboard = clipboard;
+        }
+        
+        @Override
+        public ValueType getType() { return ValueType.CLIPBOARD; }
+        
+        @Override
+        public Object getValue() { return clipboard; }
+        
+        @Override
+        public String toString() { return clipboard.toString(); }
+    }
+
     public static class InventoryValue extends QuillValue {
         private List<MockItemStack> inventory = new ArrayList<>();
         private boolean large;
@@ -473,11 +637,11 @@ public abstract class QuillValue {
         public MockItemStack getSlot(int slot) {
             if (large) {
                 if (slot > LARGE_SIZE || slot < 0) {
-                    throw new RuntimeException("Invalid index " + slot + " in " + name);
+                    throw new QuillRuntimeError("Invalid index " + slot + " in " + name);
                 }
             } else {
                 if (slot > SMALL_SIZE || slot < 0) {
-                    throw new RuntimeException("Invalid index " + slot + " in " + name);
+                    throw new QuillRuntimeError("Invalid index " + slot + " in " + name);
                 }
             }
             return (inventory.get(slot)); 
@@ -486,11 +650,11 @@ public abstract class QuillValue {
         public void setSlot(int slot, MockItemStack item) {
             if (large) {
                 if (slot > LARGE_SIZE || slot < 0) {
-                    throw new RuntimeException("Invalid index " + slot + " in " + name);
+                    throw new QuillRuntimeError("Invalid index " + slot + " in " + name);
                 }
             } else {
                 if (slot > SMALL_SIZE || slot < 0) {
-                    throw new RuntimeException("Invalid index " + slot + " in " + name);
+                    throw new QuillRuntimeError("Invalid index " + slot + " in " + name);
                 }
             }
             inventory.set(slot, item);
@@ -518,11 +682,11 @@ public abstract class QuillValue {
         public void clearSlot(int slot) {
             if (large) {
                 if (slot > LARGE_SIZE || slot < 0) {
-                    throw new RuntimeException("Invalid index " + slot + " in " + name);
+                    throw new QuillRuntimeError("Invalid index " + slot + " in " + name);
                 }
             } else {
                 if (slot > SMALL_SIZE || slot < 0) {
-                    throw new RuntimeException("Invalid index " + slot + " in " + name);
+                    throw new QuillRuntimeError("Invalid index " + slot + " in " + name);
                 }
             }
             inventory.set(slot, new MockItemStack("air"));
@@ -591,11 +755,11 @@ public abstract class QuillValue {
             int size = items.size();
             if (large) {
                 if (size > LARGE_SIZE || size < 0) {
-                    throw new RuntimeException("Invalid inventory size " + size + " for " + name);
+                    throw new QuillRuntimeError("Invalid inventory size " + size + " for " + name);
                 }
             } else {
                 if (size > SMALL_SIZE || size < 0) {
-                    throw new RuntimeException("Invalid inventory size " + size + " for " + name);
+                    throw new QuillRuntimeError("Invalid inventory size " + size + " for " + name);
                 }
             }
             inventory = items;
@@ -644,6 +808,7 @@ public abstract class QuillValue {
         
         public MapValue(Map<String, QuillValue> map) {
             this.map = map;
+            MemoryMeter.charge(MemoryMeter.MAP_BYTES + map.size() * MemoryMeter.ENTRY_BYTES);
         }
         
         @Override
@@ -657,7 +822,9 @@ public abstract class QuillValue {
         }
         
         public void put(String key, QuillValue value) {
-            map.put(key, value);
+            if (map.put(key, value) == null) {
+                MemoryMeter.charge(MemoryMeter.ENTRY_BYTES);
+            }
         }
         
         public boolean has(String key) {
@@ -682,6 +849,38 @@ public abstract class QuillValue {
         }
     }
     
+    public static class SetValue extends QuillValue {
+        private final Set<QuillValue> elements;
+        
+        public SetValue() {
+            this(new LinkedHashSet<>());
+        }
+        
+        public SetValue(Set<QuillValue> elements) {
+            this.elements = elements;
+            MemoryMeter.charge(MemoryMeter.MAP_BYTES + elements.size() * MemoryMeter.ENTRY_BYTES);
+        }
+        
+        @Override
+        public ValueType getType() { return ValueType.SET; }
+        
+        @Override
+        public Object getValue() { return elements; }
+        
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("{");
+            int i = 0;
+            for (QuillValue element : elements) {
+                if (i > 0) sb.append(", ");
+                sb.append(element.toString());
+                i++;
+            }
+            sb.append("}");
+            return sb.toString();
+        }
+    }
+    
     public static class EventValue extends QuillValue {
         private final MockEvent event;
         
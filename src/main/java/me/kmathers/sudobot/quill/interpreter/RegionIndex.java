@@ -0,0 +1,336 @@
+package me.kmathers.sudobot.quill.interpreter;
+
+import me.kmathers.sudobot.quill.interpreter.ScopeContext.Region;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Bounding volume hierarchy over the regions of a script's scopes.
+ * Each region is a leaf, and each inner node holds the box around its two
+ * children, so a lookup only descends into boxes that could match and
+ * touches O(log n) nodes for a typical layout of arenas or plots.
+ *
+ * Regions are inserted where they grow the tree's boxes the least and the
+ * tree is rebalanced with rotations as it grows, so regions added in a row
+ * (plot 1, plot 2, ...) don't degrade it into a list.
+ *
+ * Results come back in the order regions were added.
+ */
+public class RegionIndex<T> {
+    // Two nodes per region: the leaf and the inner node that joins it in
+    static final long ENTRY_BYTES = 2 * (MemoryMeter.VALUE_BYTES + 6 * 8 + 5 * MemoryMeter.REFERENCE_BYTES + 12)
+            + MemoryMeter.ENTRY_BYTES;
+
+    private final Map<T, Node<T>> leaves = new IdentityHashMap<>();
+    private Node<T> root;
+    private long nextSequence;
+
+    private static final class Node<T> {
+        double x1, y1, z1, x2, y2, z2;
+        Node<T> parent, left, right;
+        int height;
+
+        // Leaves only
+        T item;
+        long sequence;
+
+        boolean isLeaf() {
+            return left == null;
+        }
+
+        void setBounds(Region region) {
+            x1 = region.getX1(); y1 = region.getY1(); z1 = region.getZ1();
+            x2 = region.getX2(); y2 = region.getY2(); z2 = region.getZ2();
+        }
+
+        void fit(Node<?> a, Node<?> b) {
+            x1 = Math.min(a.x1, b.x1); y1 = Math.min(a.y1, b.y1); z1 = Math.min(a.z1, b.z1);
+            x2 = Math.max(a.x2, b.x2); y2 = Math.max(a.y2, b.y2); z2 = Math.max(a.z2, b.z2);
+            height = 1 + Math.max(a.height, b.height);
+        }
+
+        boolean contains(double x, double y, double z) {
+            return x >= x1 && x <= x2 && y >= y1 && y <= y2 && z >= z1 && z <= z2;
+        }
+
+        boolean overlaps(Region r) {
+            return x1 <= r.getX2() && x2 >= r.getX1()
+                && y1 <= r.getY2() && y2 >= r.getY1()
+                && z1 <= r.getZ2() && z2 >= r.getZ1();
+        }
+
+        boolean encloses(Region r) {
+            return x1 <= r.getX1() && x2 >= r.getX2()
+                && y1 <= r.getY1() && y2 >= r.getY2()
+                && z1 <= r.getZ1() && z2 >= r.getZ2();
+        }
+    }
+
+    // === Updates ===
+
+    /**
+     * Add an item's region, or replace it if the item is already indexed.
+     */
+    public void insert(T item, Region region) {
+        remove(item);
+
+        Node<T> leaf = new Node<>();
+        leaf.item = item;
+        leaf.sequence = nextSequence++;
+        leaf.setBounds(region);
+        leaves.put(item, leaf);
+        MemoryMeter.charge(ENTRY_BYTES);
+
+        if (root == null) {
+            root = leaf;
+            return;
+        }
+
+        Node<T> sibling = chooseSibling(leaf);
+        Node<T> oldParent = sibling.parent;
+        Node<T> parent = new Node<>();
+        parent.parent = oldParent;
+        parent.left = sibling;
+        parent.right = leaf;
+        parent.fit(sibling, leaf);
+        sibling.parent = parent;
+        leaf.parent = parent;
+        replaceChild(oldParent, sibling, parent);
+
+        refit(parent);
+    }
+
+    public boolean remove(T item) {
+        Node<T> leaf = leaves.remove(item);
+        if (leaf == null) {
+            return false;
+        }
+        if (leaf == root) {
+            root = null;
+            return true;
+        }
+
+        Node<T> parent = leaf.parent;
+        Node<T> sibling = parent.left == leaf ? parent.right : parent.left;
+        Node<T> grandparent = parent.parent;
+        sibling.parent = grandparent;
+        replaceChild(grandparent, parent, sibling);
+        refit(grandparent);
+        return true;
+    }
+
+    public void clear() {
+        leaves.clear();
+        root = null;
+        nextSequence = 0;
+    }
+
+    public int size() {
+        return leaves.size();
+    }
+
+    public void forEach(Consumer<T> action) {
+        leaves.keySet().forEach(action);
+    }
+
+    /**
+     * Walk down to the node whose box grows the least (by surface area) when
+     * the new leaf is added beside it.
+     */
+    private Node<T> chooseSibling(Node<T> leaf) {
+        Node<T> node = root;
+        while (!node.isLeaf()) {
+            double area = area(node);
+            double combined = combinedArea(node, leaf);
+
+            // Pairing with this node costs a new parent of the combined size;
+            // going deeper also makes every box on the way grow
+            double cost = 2 * combined;
+            double inheritance = 2 * (combined - area);
+            double leftCost = descendCost(node.left, leaf) + inheritance;
+            double rightCost = descendCost(node.right, leaf) + inheritance;
+
+            if (cost < leftCost && cost < rightCost) {
+                break;
+            }
+            node = leftCost < rightCost ? node.left : node.right;
+        }
+        return node;
+    }
+
+    private static double descendCost(Node<?> child, Node<?> leaf) {
+        double combined = combinedArea(child, leaf);
+        return child.isLeaf() ? combined : combined - area(child);
+    }
+
+    private void replaceChild(Node<T> parent, Node<T> oldChild, Node<T> newChild) {
+        if (parent == null) {
+            root = newChild;
+        } else if (parent.left == oldChild) {
+            parent.left = newChild;
+        } else {
+            parent.right = newChild;
+        }
+    }
+
+    /**
+     * Rebalance and recompute boxes from a node up to the root.
+     */
+    private void refit(Node<T> node) {
+        while (node != null) {
+            node = balance(node);
+            node.fit(node.left, node.right);
+            node = node.parent;
+        }
+    }
+
+    /**
+     * If one child of {@code a} is more than one level taller than the other,
+     * rotate the taller child up into {@code a}'s place. Returns the node now there.
+     */
+    private Node<T> balance(Node<T> a) {
+        if (a.isLeaf()) {
+            return a;
+        }
+        int skew = a.right.height - a.left.height;
+        if (skew > 1) {
+            return rotateUp(a, a.right, a.left, false);
+        }
+        if (skew < -1) {
+            return rotateUp(a, a.left, a.right, true);
+        }
+        return a;
+    }
+
+    /**
+     * Put {@code up} (a child of {@code a}) in a's place. a keeps {@code other}
+     * and takes up's shorter child; up keeps its taller child and takes a.
+     */
+    private Node<T> rotateUp(Node<T> a, Node<T> up, Node<T> other, boolean upWasLeft) {
+        Node<T> tall = up.left.height > up.right.height ? up.left : up.right;
+        Node<T> shortChild = tall == up.left ? up.right : up.left;
+
+        up.parent = a.parent;
+        replaceChild(a.parent, a, up);
+        a.parent = up;
+        up.left = a;
+        up.right = tall;
+
+        if (upWasLeft) {
+            a.left = shortChild;
+        } else {
+            a.right = shortChild;
+        }
+        shortChild.parent = a;
+
+        a.fit(other, shortChild);
+        up.fit(a, tall);
+        return up;
+    }
+
+    // === Queries ===
+
+    /**
+     * Items whose region contains the point.
+     */
+    public List<T> containing(double x, double y, double z) {
+        List<Node<T>> found = new ArrayList<>();
+        if (root != null && root.contains(x, y, z)) {
+            Deque<Node<T>> pending = new ArrayDeque<>();
+            pending.push(root);
+            while (!pending.isEmpty()) {
+                Node<T> node = pending.pop();
+                if (node.isLeaf()) {
+                    found.add(node);
+                    continue;
+                }
+                if (node.left.contains(x, y, z)) pending.push(node.left);
+                if (node.right.contains(x, y, z)) pending.push(node.right);
+            }
+        }
+        return items(found);
+    }
+
+    /**
+     * Items whose region shares at least one point with {@code region}.
+     */
+    public List<T> overlapping(Region region) {
+        List<Node<T>> found = new ArrayList<>();
+        if (root != null && root.overlaps(region)) {
+            Deque<Node<T>> pending = new ArrayDeque<>();
+            pending.push(root);
+            while (!pending.isEmpty()) {
+                Node<T> node = pending.pop();
+                if (node.isLeaf()) {
+                    found.add(node);
+                    continue;
+                }
+                if (node.left.overlaps(region)) pending.push(node.left);
+                if (node.right.overlaps(region)) pending.push(node.right);
+            }
+        }
+        return items(found);
+    }
+
+    /**
+     * Items whose region fully contains {@code region}, i.e. the regions it
+     * is nested in. A box that doesn't enclose the region can't have a child
+     * that does, so this prunes like the other lookups.
+     */
+    public List<T> enclosing(Region region) {
+        List<Node<T>> found = new ArrayList<>();
+        if (root != null && root.encloses(region)) {
+            Deque<Node<T>> pending = new ArrayDeque<>();
+            pending.push(root);
+            while (!pending.isEmpty()) {
+                Node<T> node = pending.pop();
+                if (node.isLeaf()) {
+                    found.add(node);
+                    continue;
+                }
+                if (node.left.encloses(region)) pending.push(node.left);
+                if (node.right.encloses(region)) pending.push(node.right);
+            }
+        }
+        return items(found);
+    }
+
+    private static <T> List<T> items(List<Node<T>> found) {
+        found.sort(Comparator.comparingLong(node -> node.sequence));
+        List<T> items = new ArrayList<>(found.size());
+        for (Node<T> node : found) {
+            items.add(node.item);
+        }
+        return items;
+    }
+
+    /**
+     * Height of the tree, for checking that it stays balanced.
+     */
+    int height() {
+        return root == null ? 0 : root.height;
+    }
+
+    public long getRetainedBytes() {
+        return leaves.size() * ENTRY_BYTES;
+    }
+
+    private static double area(Node<?> node) {
+        double dx = node.x2 - node.x1, dy = node.y2 - node.y1, dz = node.z2 - node.z1;
+        return dx * dy + dy * dz + dz * dx;
+    }
+
+    private static double combinedArea(Node<?> a, Node<?> b) {
+        double dx = Math.max(a.x2, b.x2) - Math.min(a.x1, b.x1);
+        double dy = Math.max(a.y2, b.y2) - Math.min(a.y1, b.y1);
+        double dz = Math.max(a.z2, b.z2) - Math.min(a.z1, b.z1);
+        return dx * dy + dy * dz + dz * dx;
+    }
+}
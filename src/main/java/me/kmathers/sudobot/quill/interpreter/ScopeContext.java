@@ -53,7 +53,7 @@ public class ScopeContext {
      */
     public void define(String name, QuillValue value) {
         if (variables.containsKey(name)) {
-            throw new RuntimeException("Variable '" + name + "' already defined in this scope");
+            throw new QuillRuntimeError("Variable '" + name + "' already defined in this scope");
         }
         variables.put(name, value);
     }
@@ -64,7 +64,7 @@ public class ScopeContext {
      */
     public void defineConst(String name, QuillValue value) {
         if (variables.containsKey(name)) {
-            throw new RuntimeException("Variable '" + name + "' already defined in this scope");
+            throw new QuillRuntimeError("Variable '" + name + "' already defined in this scope");
         }
         variables.put(name, value);
         consts.add(name);
@@ -73,7 +73,7 @@ public class ScopeContext {
     /**
      * Check if a variable is a constant.
      */
-    private boolean isConst(String name) {
+    public boolean isConst(String name) {
         if (consts.contains(name)) {
             return true;
         }
@@ -90,7 +90,7 @@ public class ScopeContext {
      */
     public void set(String name, QuillValue value) {
         if (consts.contains(name)) {
-            throw new RuntimeException("Cannot reassign constant variable '" + name + "'");
+            throw new QuillRuntimeError("Cannot reassign constant variable '" + name + "'");
         }
 
         if (variables.containsKey(name)) {
@@ -98,23 +98,15 @@ public class ScopeContext {
             return;
         }
         
-        if (parent != null) {
-            try {
-                parent.get(name);
-                if (parent.isConst(name)) {
-                    throw new RuntimeException("Cannot reassign constant variable '" + name + "'");
-                }
-                parent.set(name, value);
-                return;
-            } catch (RuntimeException e) {
-                // If a const error, re-throw
-                if (e.getMessage().contains("Cannot reassign constant")) {
-                    throw e;
-                }
-                // Variable doesn't exist in parent chain, define it here
+        if (parent != null && parent.has(name)) {
+            if (parent.isConst(name)) {
+                throw new QuillRuntimeError("Cannot reassign constant variable '" + name + "'");
             }
+            parent.set(name, value);
+            return;
         }
         
+        // Variable doesn't exist in parent chain, define it here
         variables.put(name, value);
     }
     
@@ -131,7 +123,7 @@ public class ScopeContext {
             return parent.get(name);
         }
         
-        throw new RuntimeException("Undefined variable: '" + name + "'");
+        throw new QuillRuntimeError("Undefined variable: '" + name + "'");
     }
     
     /**
@@ -147,6 +139,33 @@ public class ScopeContext {
         return false;
     }
     
+    /**
+     * Drop every variable, constant and subscope defined directly in this scope.
+     * Used to recycle a call frame or pooled global scope without reallocating its maps.
+     */
+    public void clear() {
+        variables.clear();
+        consts.clear();
+        subscopes.clear();
+    }
+    
+    /**
+     * Copy the variables defined directly in this scope into {@code target},
+     * keeping constants constant. Names the target already defines are skipped,
+     * so copying a chain innermost first keeps the bindings a lookup would find.
+     */
+    void copyInto(ScopeContext target) {
+        for (Map.Entry<String, QuillValue> entry : variables.entrySet()) {
+            String name = entry.getKey();
+            if (!target.variables.containsKey(name)) {
+                target.variables.put(name, entry.getValue());
+                if (consts.contains(name)) {
+                    target.consts.add(name);
+                }
+            }
+        }
+    }
+    
     // === Subscope Management ===
     
     /**
@@ -223,6 +242,13 @@ public class ScopeContext {
         return new HashMap<>(variables);
     }
     
+    /**
+     * Live view of this scope's values, for memory accounting.
+     */
+    Collection<QuillValue> values() {
+        return variables.values();
+    }
+    
     // === Debugging ===
     
     @Override
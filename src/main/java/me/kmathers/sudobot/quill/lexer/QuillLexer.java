@@ -90,6 +90,7 @@ public class QuillLexer {
         Dot,            // .
         Semicolon,      // ;
         Colon,          // :
+        At,             // @
         
         // Special
         EOF
@@ -292,6 +293,10 @@ public class QuillLexer {
                     tokens.add(createToken(":", TokenType.Colon));
                     advance();
                     break;
+                case '@':
+                    tokens.add(createToken("@", TokenType.At));
+                    advance();
+                    break;
                 case '=':
                     if (peek(1) == '=') {
                         tokens.add(createToken("==", TokenType.EqualsEquals));
@@ -1,30 +1,36 @@
 package me.kmathers.sudobot.quill.mocks;
 
+import me.kmathers.sudobot.quill.simulation.DiscordSimulationContext;
+
 import java.util.UUID;
 
+/**
+ * A simulation entity seen through the mocks API. Position, health and the
+ * rest live in the {@link DiscordSimulationContext.MockEntity} it wraps, so
+ * the entity's world indexes it once for both APIs.
+ */
 public class MockEntity {
-    private final UUID uniqueId;
+    private final DiscordSimulationContext.MockEntity state;
     private final String type;
-    private MockLocation location;
-    private boolean isDead;
-    private String customName;
-    private boolean customNameVisible;
-    private double health;
-    private double maxHealth;
     
     public MockEntity(String type, MockLocation location) {
-        this.uniqueId = UUID.randomUUID();
-        this.type = type.toLowerCase();
-        this.location = location;
-        this.isDead = false;
-        this.customName = null;
-        this.customNameVisible = false;
-        this.health = getDefaultHealth(type);
-        this.maxHealth = this.health;
+        this(new DiscordSimulationContext.MockEntity(type.toLowerCase(),
+                location.getX(), location.getY(), location.getZ()));
+        state.teleport(location.getWorld() == null ? null : location.getWorld().getState(),
+                location.getX(), location.getY(), location.getZ(), location.getYaw(), location.getPitch());
+    }
+    
+    public MockEntity(DiscordSimulationContext.MockEntity state) {
+        this.state = state;
+        this.type = state.getType().toLowerCase();
+    }
+    
+    public DiscordSimulationContext.MockEntity getState() {
+        return state;
     }
     
     public UUID getUniqueId() {
-        return uniqueId;
+        return state.getUniqueId();
     }
     
     public String getType() {
@@ -32,73 +38,83 @@ public class MockEntity {
     }
     
     public MockLocation getLocation() {
-        return location;
+        MockWorld world = state.getWorld() == null ? null : state.getWorld().getView();
+        return new MockLocation(world, state.getX(), state.getY(), state.getZ(), state.getYaw(), state.getPitch());
     }
     
     public boolean isDead() {
-        return isDead;
+        return state.isDead();
     }
     
     public String getCustomName() {
-        return customName;
+        return state.getCustomName();
     }
     
     public boolean isCustomNameVisible() {
-        return customNameVisible;
+        return state.isCustomNameVisible();
     }
     
     public double getHealth() {
-        return health;
+        return state.getHealth();
     }
     
     public double getMaxHealth() {
-        return maxHealth;
+        return state.getMaxHealth();
     }
     
     public void setLocation(MockLocation location) {
-        this.location = location;
+        MockWorld world = location.getWorld();
+        state.teleport(world == null ? null : world.getState(),
+                location.getX(), location.getY(), location.getZ(), location.getYaw(), location.getPitch());
     }
     
     public void teleport(MockLocation location) {
-        this.location = location;
+        setLocation(location);
     }
     
+    /**
+     * Marking an entity dead removes it from its world.
+     */
     public void setDead(boolean dead) {
-        this.isDead = dead;
+        if (dead) {
+            state.remove();
+        } else {
+            state.setDead(false);
+        }
     }
     
     public void remove() {
-        this.isDead = true;
+        state.remove();
     }
     
     public void setCustomName(String customName) {
-        this.customName = customName;
+        state.setCustomName(customName);
     }
     
     public void setCustomNameVisible(boolean visible) {
-        this.customNameVisible = visible;
+        state.setCustomNameVisible(visible);
     }
     
     public void setHealth(double health) {
-        this.health = Math.max(0, Math.min(health, maxHealth));
-        if (this.health == 0) {
-            this.isDead = true;
+        state.setHealth(health);
+        if (state.getHealth() == 0) {
+            state.remove();
         }
     }
     
     public void setMaxHealth(double maxHealth) {
-        this.maxHealth = maxHealth;
-        if (this.health > maxHealth) {
-            this.health = maxHealth;
+        state.setMaxHealth(maxHealth);
+        if (state.getHealth() > maxHealth) {
+            state.setHealth(maxHealth);
         }
     }
     
     public void damage(double amount) {
-        setHealth(health - amount);
+        setHealth(getHealth() - amount);
     }
     
     public void heal(double amount) {
-        setHealth(health + amount);
+        setHealth(getHealth() + amount);
     }
     
     public boolean isPlayer() {
@@ -130,63 +146,42 @@ public class MockEntity {
                type.equals("horse") || type.equals("villager");
     }
     
-    private double getDefaultHealth(String type) {
-        switch (type.toLowerCase()) {
-            case "zombie":
-            case "skeleton":
-                return 20.0;
-            case "creeper":
-                return 20.0;
-            case "spider":
-                return 16.0;
-            case "enderman":
-                return 40.0;
-            case "cow":
-            case "pig":
-            case "sheep":
-                return 10.0;
-            case "chicken":
-                return 4.0;
-            case "horse":
-                return 30.0;
-            case "villager":
-                return 20.0;
-            case "wolf":
-                return 8.0;
-            case "cat":
-                return 10.0;
-            case "iron_golem":
-                return 100.0;
-            default:
-                return 20.0;
-        }
-    }
-    
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
         
-        if (customName != null && customNameVisible) {
+        String customName = getCustomName();
+        if (customName != null && isCustomNameVisible()) {
             sb.append(customName).append(" (");
         }
         
         sb.append(formatType(type));
         
-        if (customName != null && customNameVisible) {
+        if (customName != null && isCustomNameVisible()) {
             sb.append(")");
         }
         
-        if (isDead) {
+        if (isDead()) {
             sb.append(" [DEAD]");
         } else {
-            sb.append(" [").append(String.format("%.1f/%.1f HP", health, maxHealth)).append("]");
+            sb.append(" [").append(String.format("%.1f/%.1f HP", getHealth(), getMaxHealth())).append("]");
         }
         
-        sb.append(" at ").append(location);
+        sb.append(" at ").append(getLocation());
         
         return sb.toString();
     }
     
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof MockEntity && ((MockEntity) o).state == state;
+    }
+    
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(state);
+    }
+    
     private String formatType(String type) {
         StringBuilder sb = new StringBuilder();
         String[] parts = type.split("_");
@@ -1,5 +1,7 @@
 package me.kmathers.sudobot.quill.mocks;
 
+import me.kmathers.sudobot.quill.simulation.DiscordSimulationContext;
+
 import java.util.Objects;
 
 public class MockLocation {
@@ -52,16 +54,21 @@ public class MockLocation {
         return pitch;
     }
     
+    /**
+     * Block coordinates are floored, as in Bukkit, by the simulation's rule
+     * (see {@link DiscordSimulationContext.MockWorld#blockCoord}), so a
+     * location names the same block here as in scripts.
+     */
     public int getBlockX() {
-        return (int) Math.floor(x);
+        return DiscordSimulationContext.MockWorld.blockCoord(x);
     }
     
     public int getBlockY() {
-        return (int) Math.floor(y);
+        return DiscordSimulationContext.MockWorld.blockCoord(y);
     }
     
     public int getBlockZ() {
-        return (int) Math.floor(z);
+        return DiscordSimulationContext.MockWorld.blockCoord(z);
     }
     
     public void setWorld(MockWorld world) {
@@ -1,100 +1,79 @@
 package me.kmathers.sudobot.quill.mocks;
 
-import java.util.ArrayList;
+import me.kmathers.sudobot.quill.simulation.DiscordSimulationContext;
+
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
+/**
+ * A simulation player seen through the mocks API. All state lives in the
+ * {@link DiscordSimulationContext.MockPlayer} it wraps, which is also what
+ * scripts and the context's name, UUID and spatial indexes see.
+ */
 public class MockPlayer {
-    private final String name;
-    private final UUID uniqueId;
-    private MockLocation location;
-    private double health;
-    private double maxHealth;
-    private int foodLevel;
-    private String gameMode;
-    private boolean isFlying;
-    private boolean allowFlight;
-    private boolean isOp;
-    private final List<MockItemStack> inventory;
-    private final Map<String, MockPotionEffect> activeEffects;
-    private MockWorld world;
+    private final DiscordSimulationContext.MockPlayer state;
     
     public MockPlayer(String name) {
-        this.name = name;
-        this.uniqueId = UUID.randomUUID();
-        this.health = 20.0;
-        this.maxHealth = 20.0;
-        this.foodLevel = 20;
-        this.gameMode = "survival";
-        this.isFlying = false;
-        this.allowFlight = false;
-        this.isOp = false;
-        this.inventory = new ArrayList<>();
-        this.activeEffects = new HashMap<>();
-        this.world = new MockWorld("world");
-        this.location = new MockLocation(world, 0, 64, 0);
+        this(name, new MockWorld("world"), 0, 64, 0);
     }
     
     public MockPlayer(String name, MockWorld world, double x, double y, double z) {
-        this.name = name;
-        this.uniqueId = UUID.randomUUID();
-        this.health = 20.0;
-        this.maxHealth = 20.0;
-        this.foodLevel = 20;
-        this.gameMode = "survival";
-        this.isFlying = false;
-        this.allowFlight = false;
-        this.isOp = false;
-        this.inventory = new ArrayList<>();
-        this.activeEffects = new HashMap<>();
-        this.world = world;
-        this.location = new MockLocation(world, x, y, z);
+        this(new DiscordSimulationContext.MockPlayer(name, x, y, z));
+        state.setWorld(world == null ? null : world.getState());
+    }
+    
+    public MockPlayer(DiscordSimulationContext.MockPlayer state) {
+        this.state = state;
+    }
+    
+    public DiscordSimulationContext.MockPlayer getState() {
+        return state;
     }
     
     public String getName() {
-        return name;
+        return state.getName();
     }
     
     public UUID getUniqueId() {
-        return uniqueId;
+        return state.getUniqueId();
     }
     
     public MockLocation getLocation() {
-        return location;
+        return new MockLocation(getWorld(), state.getX(), state.getY(), state.getZ(), state.getYaw(), state.getPitch());
     }
     
     public MockWorld getWorld() {
-        return world;
+        return state.getWorld() == null ? null : state.getWorld().getView();
     }
     
     public double getHealth() {
-        return health;
+        return state.getHealth();
     }
     
     public double getMaxHealth() {
-        return maxHealth;
+        return state.getMaxHealth();
     }
     
     public int getFoodLevel() {
-        return foodLevel;
+        return state.getHunger();
     }
     
     public String getGameMode() {
-        return gameMode;
+        return state.getGamemode();
     }
     
     public boolean isFlying() {
-        return isFlying;
+        return state.isFlying();
     }
     
     public boolean getAllowFlight() {
-        return allowFlight;
+        return state.getAllowFlight();
     }
     
     public boolean isOp() {
-        return isOp;
+        return state.isOp();
     }
     
     public boolean isOnline() {
@@ -102,162 +81,140 @@ public class MockPlayer {
     }
     
     public void setLocation(MockLocation location) {
-        this.location = location;
-        this.world = location.getWorld();
+        MockWorld world = location.getWorld();
+        state.teleport(world == null ? null : world.getState(),
+                location.getX(), location.getY(), location.getZ(), location.getYaw(), location.getPitch());
     }
     
     public void teleport(MockLocation location) {
-        this.location = location;
-        this.world = location.getWorld();
+        setLocation(location);
     }
     
     public void setHealth(double health) {
-        this.health = Math.max(0, Math.min(health, maxHealth));
+        state.setHealth(health);
     }
     
     public void setMaxHealth(double maxHealth) {
-        this.maxHealth = maxHealth;
-        if (this.health > maxHealth) {
-            this.health = maxHealth;
+        state.setMaxHealth(maxHealth);
+        if (state.getHealth() > maxHealth) {
+            state.setHealth(maxHealth);
         }
     }
     
     public void heal(double amount) {
-        this.health = Math.min(maxHealth, health + amount);
+        state.heal(amount);
     }
     
     public void damage(double amount) {
-        this.health = Math.max(0, health - amount);
+        state.damage(amount);
     }
     
     public void setFoodLevel(int foodLevel) {
-        this.foodLevel = Math.max(0, Math.min(20, foodLevel));
+        state.setHunger(foodLevel);
     }
     
     public void setGameMode(String gameMode) {
-        this.gameMode = gameMode.toLowerCase();
+        state.setGamemode(gameMode.toLowerCase());
     }
     
     public void setFlying(boolean flying) {
-        this.isFlying = flying;
+        state.setFlying(flying);
     }
     
     public void setAllowFlight(boolean allowFlight) {
-        this.allowFlight = allowFlight;
-        if (!allowFlight) {
-            this.isFlying = false;
-        }
+        state.setAllowFlight(allowFlight);
     }
     
     public void setOp(boolean op) {
-        this.isOp = op;
+        state.setOp(op);
     }
     
     public List<MockItemStack> getInventory() {
-        return inventory;
+        return state.getInventory();
     }
     
     public void giveItem(MockItemStack item) {
-        for (MockItemStack existing : inventory) {
-            if (existing.getType().equals(item.getType())) {
-                existing.setAmount(existing.getAmount() + item.getAmount());
-                return;
-            }
-        }
-        inventory.add(item.clone());
+        state.giveItem(item);
     }
     
     public boolean hasItem(String materialType, int amount) {
-        int count = 0;
-        for (MockItemStack item : inventory) {
-            if (item.getType().equalsIgnoreCase(materialType)) {
-                count += item.getAmount();
-            }
-        }
-        return count >= amount;
+        return state.countItem(materialType) >= amount;
     }
     
     public boolean removeItem(String materialType, int amount) {
         if (!hasItem(materialType, amount)) {
             return false;
         }
-        
-        int remaining = amount;
-        List<MockItemStack> toRemove = new ArrayList<>();
-        
-        for (MockItemStack item : inventory) {
-            if (item.getType().equalsIgnoreCase(materialType)) {
-                if (item.getAmount() <= remaining) {
-                    remaining -= item.getAmount();
-                    toRemove.add(item);
-                } else {
-                    item.setAmount(item.getAmount() - remaining);
-                    remaining = 0;
-                }
-                
-                if (remaining == 0) {
-                    break;
-                }
-            }
-        }
-        
-        inventory.removeAll(toRemove);
+        state.removeItem(materialType, amount);
         return true;
     }
     
     public void clearInventory() {
-        inventory.clear();
+        state.clearInventory();
     }
     
     public void addPotionEffect(MockPotionEffect effect) {
-        activeEffects.put(effect.getType(), effect);
+        state.addPotionEffect(effect);
     }
     
     public void removePotionEffect(String effectType) {
-        activeEffects.remove(effectType.toLowerCase());
+        state.removePotionEffect(effectType);
     }
     
     public void clearPotionEffects() {
-        activeEffects.clear();
+        state.clearPotionEffects();
     }
     
     public boolean hasPotionEffect(String effectType) {
-        return activeEffects.containsKey(effectType.toLowerCase());
+        return state.hasPotionEffect(effectType);
     }
     
     public Map<String, MockPotionEffect> getActivePotionEffects() {
-        return new HashMap<>(activeEffects);
+        Map<String, MockPotionEffect> effects = new HashMap<>();
+        for (MockPotionEffect effect : state.getPotionEffects()) {
+            effects.put(effect.getType(), effect);
+        }
+        return effects;
     }
     
-    private final List<String> messageHistory = new ArrayList<>();
-    
     public void sendMessage(String message) {
-        messageHistory.add(message);
+        state.sendMessage(message);
     }
     
     public List<String> getMessageHistory() {
-        return new ArrayList<>(messageHistory);
+        return state.getReceivedMessages();
     }
     
     public void clearMessageHistory() {
-        messageHistory.clear();
+        state.clearReceivedMessages();
+    }
+    
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof MockPlayer && ((MockPlayer) o).state == state;
+    }
+    
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(state);
     }
     
     @Override
     public String toString() {
         return String.format("MockPlayer{name='%s', health=%.1f/%.1f, hunger=%d, gamemode=%s, location=%s}",
-                name, health, maxHealth, foodLevel, gameMode, location);
+                getName(), getHealth(), getMaxHealth(), getFoodLevel(), getGameMode(), getLocation());
     }
     
     public String getDetailedState() {
         StringBuilder sb = new StringBuilder();
-        sb.append("Player: ").append(name).append("\n");
-        sb.append("  Health: ").append(String.format("%.1f/%.1f", health, maxHealth)).append("\n");
-        sb.append("  Hunger: ").append(foodLevel).append("/20\n");
-        sb.append("  Gamemode: ").append(gameMode).append("\n");
-        sb.append("  Location: ").append(location).append("\n");
-        sb.append("  Flying: ").append(isFlying).append("\n");
+        sb.append("Player: ").append(getName()).append("\n");
+        sb.append("  Health: ").append(String.format("%.1f/%.1f", getHealth(), getMaxHealth())).append("\n");
+        sb.append("  Hunger: ").append(getFoodLevel()).append("/20\n");
+        sb.append("  Gamemode: ").append(getGameMode()).append("\n");
+        sb.append("  Location: ").append(getLocation()).append("\n");
+        sb.append("  Flying: ").append(isFlying()).append("\n");
         
+        List<MockItemStack> inventory = getInventory();
         if (!inventory.isEmpty()) {
             sb.append("  Inventory:\n");
             for (MockItemStack item : inventory) {
@@ -265,6 +222,7 @@ public class MockPlayer {
             }
         }
         
+        Map<String, MockPotionEffect> activeEffects = getActivePotionEffects();
         if (!activeEffects.isEmpty()) {
             sb.append("  Effects:\n");
             for (MockPotionEffect effect : activeEffects.values()) {
@@ -272,6 +230,7 @@ public class MockPlayer {
             }
         }
         
+        List<String> messageHistory = getMessageHistory();
         if (!messageHistory.isEmpty()) {
             sb.append("  Messages Received:\n");
             for (String msg : messageHistory) {
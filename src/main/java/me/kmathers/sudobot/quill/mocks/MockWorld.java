@@ -1,75 +1,83 @@
 package me.kmathers.sudobot.quill.mocks;
 
+import me.kmathers.sudobot.quill.simulation.BlockRegistry;
+import me.kmathers.sudobot.quill.simulation.BlockStore;
+import me.kmathers.sudobot.quill.simulation.DiscordSimulationContext;
+
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+/**
+ * A simulation world seen through the mocks API. It holds no state of its
+ * own: blocks, time, weather, entities and dropped items all live in the
+ * {@link DiscordSimulationContext.MockWorld} it wraps, so changes made
+ * through either API show up in both.
+ */
 public class MockWorld {
-    private final String name;
-    private long time;
-    private boolean isThundering;
-    private boolean hasStorm;
-    private int weatherDuration;
-    private final Map<MockLocation, String> blocks;
-    private final List<MockEntity> entities;
+    private final DiscordSimulationContext.MockWorld state;
     
     public MockWorld(String name) {
-        this.name = name;
-        this.time = 0;
-        this.isThundering = false;
-        this.hasStorm = false;
-        this.weatherDuration = 0;
-        this.blocks = new HashMap<>();
-        this.entities = new ArrayList<>();
+        this(new DiscordSimulationContext.MockWorld(name));
+    }
+    
+    public MockWorld(DiscordSimulationContext.MockWorld state) {
+        this.state = state;
+    }
+    
+    public DiscordSimulationContext.MockWorld getState() {
+        return state;
     }
     
     public String getName() {
-        return name;
+        return state.getName();
     }
     
     public long getTime() {
-        return time;
+        return state.getTime();
     }
     
     public boolean isThundering() {
-        return isThundering;
+        return state.getWeather().equals("thunder");
     }
     
     public boolean hasStorm() {
-        return hasStorm;
+        return isThundering() || state.getWeather().equals("rain");
     }
     
     public int getWeatherDuration() {
-        return weatherDuration;
+        return (int) Math.min(state.getWeatherRemaining(), Integer.MAX_VALUE);
     }
     
     public void setTime(long time) {
-        this.time = time % 24000;
+        state.setTime(time);
     }
     
     public void setThundering(boolean thundering) {
-        this.isThundering = thundering;
         if (thundering) {
-            this.hasStorm = true;
+            state.setWeather("thunder", state.getWeatherRemaining());
+        } else if (isThundering()) {
+            state.setWeather("rain", state.getWeatherRemaining());
         }
     }
     
     public void setStorm(boolean storm) {
-        this.hasStorm = storm;
         if (!storm) {
-            this.isThundering = false;
+            state.setWeather("clear", 0);
+        } else if (!hasStorm()) {
+            state.setWeather("rain", state.getWeatherRemaining());
         }
     }
     
     public void setWeatherDuration(int duration) {
-        this.weatherDuration = duration;
+        state.setWeather(state.getWeather(), duration);
     }
     
     public String getWeatherState() {
-        if (isThundering) {
+        if (isThundering()) {
             return "thunder";
-        } else if (hasStorm) {
+        } else if (hasStorm()) {
             return "rain";
         } else {
             return "clear";
@@ -77,56 +85,72 @@ public class MockWorld {
     }
     
     public void setWeather(String weather, int duration) {
-        this.weatherDuration = duration;
         switch (weather.toLowerCase()) {
             case "clear":
-                this.hasStorm = false;
-                this.isThundering = false;
-                break;
             case "rain":
-                this.hasStorm = true;
-                this.isThundering = false;
-                break;
             case "thunder":
-                this.hasStorm = true;
-                this.isThundering = true;
+                state.setWeather(weather.toLowerCase(), duration);
                 break;
+            default:
+                setWeatherDuration(duration);
         }
     }
     
     public String getBlockAt(MockLocation location) {
-        return blocks.getOrDefault(location, "air");
+        return state.getBlockTypes().nameOf(getBlockIdAt(location));
+    }
+    
+    public short getBlockIdAt(MockLocation location) {
+        return state.getBlock(location.getX(), location.getY(), location.getZ());
     }
     
     public void setBlockAt(MockLocation location, String blockType) {
-        if ("air".equalsIgnoreCase(blockType)) {
-            blocks.remove(location);
-        } else {
-            blocks.put(location, blockType.toLowerCase());
-        }
+        setBlockIdAt(location, state.getBlockTypes().idOf(blockType));
+    }
+    
+    public void setBlockIdAt(MockLocation location, short blockType) {
+        state.setBlock(location.getX(), location.getY(), location.getZ(), blockType);
     }
     
     public void breakBlock(MockLocation location) {
-        blocks.remove(location);
+        setBlockIdAt(location, BlockRegistry.AIR);
     }
     
     public Map<MockLocation, String> getAllBlocks() {
-        return new HashMap<>(blocks);
+        Map<MockLocation, String> all = new HashMap<>();
+        state.getBlocks().forEach((x, y, z, type) -> all.put(new MockLocation(this, x, y, z), state.getBlockTypes().nameOf(type)));
+        return all;
     }
     
     public MockEntity spawnEntity(MockLocation location, String entityType) {
-        MockEntity entity = new MockEntity(entityType, location);
-        entities.add(entity);
-        return entity;
+        DiscordSimulationContext.MockEntity entity =
+            state.spawnEntity(entityType.toLowerCase(), location.getX(), location.getY(), location.getZ());
+        entity.teleport(state, location.getX(), location.getY(), location.getZ(), location.getYaw(), location.getPitch());
+        return entity.getView();
     }
     
     public void removeEntity(MockEntity entity) {
-        entities.remove(entity);
+        state.removeEntity(entity.getState());
         entity.setDead(true);
     }
     
+    /**
+     * Living entities within {@code radius} blocks of a location, nearest first.
+     */
+    public List<MockEntity> getNearbyEntities(MockLocation location, double radius) {
+        return views(state.getNearbyEntities(location.getX(), location.getY(), location.getZ(), radius));
+    }
+    
     public List<MockEntity> getEntities() {
-        return new ArrayList<>(entities);
+        return views(state.getEntities());
+    }
+    
+    private static List<MockEntity> views(List<DiscordSimulationContext.MockEntity> entities) {
+        List<MockEntity> views = new ArrayList<>(entities.size());
+        for (DiscordSimulationContext.MockEntity entity : entities) {
+            views.add(entity.getView());
+        }
+        return views;
     }
     
     public void strikeLightning(MockLocation location) {
@@ -137,14 +161,12 @@ public class MockWorld {
         // In simulation, just log the explosion
     }
     
-    private final List<DroppedItem> droppedItems = new ArrayList<>();
-    
     public void dropItem(MockLocation location, MockItemStack item) {
-        droppedItems.add(new DroppedItem(location, item));
+        state.dropItem(new DroppedItem(location, item));
     }
     
     public List<DroppedItem> getDroppedItems() {
-        return new ArrayList<>(droppedItems);
+        return state.getDroppedItems();
     }
     
     public static class DroppedItem {
@@ -170,45 +192,57 @@ public class MockWorld {
         }
     }
     
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof MockWorld && ((MockWorld) o).state == state;
+    }
+    
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(state);
+    }
+    
     @Override
     public String toString() {
-        return String.format("MockWorld{name='%s', time=%d, weather=%s}", 
-                name, time, getWeatherState());
+        return String.format("MockWorld{name='%s', time=%d, weather=%s}",
+                getName(), getTime(), getWeatherState());
     }
     
     public String getDetailedState() {
+        long time = getTime();
+        BlockStore blocks = state.getBlocks();
         StringBuilder sb = new StringBuilder();
-        sb.append("World: ").append(name).append("\n");
-        sb.append("  Time: ").append(time).append(" (").append(getTimeOfDay()).append(")\n");
+        sb.append("World: ").append(getName()).append("\n");
+        sb.append("  Time: ").append(time).append(" (").append(getTimeOfDay(time)).append(")\n");
         sb.append("  Weather: ").append(getWeatherState());
-        if (weatherDuration > 0) {
-            sb.append(" (").append(weatherDuration).append(" ticks remaining)");
+        if (getWeatherDuration() > 0) {
+            sb.append(" (").append(getWeatherDuration()).append(" ticks remaining)");
         }
         sb.append("\n");
         
         if (!blocks.isEmpty()) {
             sb.append("  Blocks:\n");
-            int count = 0;
-            for (Map.Entry<MockLocation, String> entry : blocks.entrySet()) {
-                if (count++ < 10) {
-                    sb.append("    ").append(entry.getValue())
-                      .append(" at ").append(entry.getKey()).append("\n");
+            int[] count = {0};
+            blocks.forEach((x, y, z, type) -> {
+                if (count[0]++ < 10) {
+                    sb.append("    ").append(state.getBlockTypes().nameOf(type))
+                      .append(" at ").append(new MockLocation(this, x, y, z)).append("\n");
                 }
-            }
+            });
             if (blocks.size() > 10) {
                 sb.append("    ... and ").append(blocks.size() - 10).append(" more\n");
             }
         }
         
+        List<MockEntity> entities = getEntities();
         if (!entities.isEmpty()) {
             sb.append("  Entities: ").append(entities.size()).append("\n");
             for (MockEntity entity : entities) {
-                if (!entity.isDead()) {
-                    sb.append("    - ").append(entity).append("\n");
-                }
+                sb.append("    - ").append(entity).append("\n");
             }
         }
         
+        List<DroppedItem> droppedItems = getDroppedItems();
         if (!droppedItems.isEmpty()) {
             sb.append("  Dropped Items:\n");
             for (DroppedItem item : droppedItems) {
@@ -219,7 +253,7 @@ public class MockWorld {
         return sb.toString();
     }
     
-    private String getTimeOfDay() {
+    private static String getTimeOfDay(long time) {
         if (time >= 0 && time < 6000) {
             return "Day";
         } else if (time >= 6000 && time < 12000) {
@@ -1,5 +1,6 @@
 package me.kmathers.sudobot.quill.parser;
 
+import java.util.Collections;
 import java.util.List;
 
 public class AST {
@@ -187,6 +188,7 @@ public class AST {
         public String name;
         public List<String> parameters;
         public List<ASTNode> body;
+        public List<String> annotations = Collections.emptyList(); // e.g. @memo
         
         public FunctionDeclaration(String name, List<String> parameters, List<ASTNode> body, int line, int column) {
             super(line, column);
@@ -233,6 +235,7 @@ public class AST {
         public String variable;
         public ASTNode iterable;
         public List<ASTNode> body;
+        public boolean parallel = false; // parallel for x in list { }
         
         public ForStatement(String variable, ASTNode iterable, List<ASTNode> body, int line, int column) {
             super(line, column);
@@ -271,11 +274,17 @@ public class AST {
     
     public static class EventHandler extends ASTNode {
         public String eventName;
+        public ASTNode region; // scope the handler is limited to, or null for everywhere
         public List<ASTNode> body;
         
         public EventHandler(String eventName, List<ASTNode> body, int line, int column) {
+            this(eventName, null, body, line, column);
+        }
+        
+        public EventHandler(String eventName, ASTNode region, List<ASTNode> body, int line, int column) {
             super(line, column);
             this.eventName = eventName;
+            this.region = region;
             this.body = body;
         }
     }
@@ -76,6 +76,8 @@ public class QuillParser {
             return parseVariableDeclaration();
         } else if (check(TokenType.Func) || check(TokenType.Function)) {
             return parseFunctionDeclaration();
+        } else if (check(TokenType.At)) {
+            return parseAnnotatedFunction();
         } else if (check(TokenType.Return)) {
             return parseReturnStatement();
         } else if (check(TokenType.If)) {
@@ -84,6 +86,8 @@ public class QuillParser {
             return parseWhileStatement();
         } else if (check(TokenType.For)) {
             return parseForStatement();
+        } else if (isParallelFor()) {
+            return parseParallelForStatement();
         } else if (check(TokenType.Break)) {
             Token token = consume(TokenType.Break);
             consumeOptionalSemicolon();
@@ -147,6 +151,22 @@ public class QuillParser {
         return new FunctionDeclaration(name.value, parameters, body, funcToken.line, funcToken.column);
     }
     
+    private FunctionDeclaration parseAnnotatedFunction() throws ParseException {
+        List<String> annotations = new ArrayList<>();
+        while (check(TokenType.At)) {
+            position++; // consume '@'
+            annotations.add(consume(TokenType.Identifier).value);
+        }
+        
+        if (!check(TokenType.Func) && !check(TokenType.Function)) {
+            throw new ParseException("Annotations must be followed by a function declaration, but found " + current().kind + " on line " + current().line);
+        }
+        
+        FunctionDeclaration declaration = parseFunctionDeclaration();
+        declaration.annotations = annotations;
+        return declaration;
+    }
+    
     private ReturnStatement parseReturnStatement() throws ParseException {
         Token returnToken = consume(TokenType.Return);
         
@@ -197,6 +217,23 @@ public class QuillParser {
         return new ForStatement(variable.value, iterable, body, forToken.line, forToken.column);
     }
     
+    /**
+     * 'parallel' is only special directly before 'for', so it stays usable as a name.
+     */
+    private boolean isParallelFor() {
+        return check(TokenType.Identifier) && current().value.equals("parallel") 
+            && peek(1).kind == TokenType.For;
+    }
+    
+    private ForStatement parseParallelForStatement() throws ParseException {
+        Token parallelToken = consume(TokenType.Identifier);
+        ForStatement statement = parseForStatement();
+        statement.parallel = true;
+        statement.line = parallelToken.line;
+        statement.column = parallelToken.column;
+        return statement;
+    }
+    
     private TryStatement parseTryStatement() throws ParseException {
         Token tryToken = consume(TokenType.Try);
         List<ASTNode> tryBlock = parseBlock();
@@ -213,9 +250,16 @@ public class QuillParser {
         consume(TokenType.OpenParen);
         Token eventName = consume(TokenType.Identifier);
         consume(TokenType.CloseParen);
+        
+        // OnEvent(name) in scope { ... } only receives events inside the scope's region
+        ASTNode region = null;
+        if (check(TokenType.In)) {
+            consume(TokenType.In);
+            region = parseExpression();
+        }
         List<ASTNode> body = parseBlock();
         
-        return new EventHandler(eventName.value, body, onEventToken.line, onEventToken.column);
+        return new EventHandler(eventName.value, region, body, onEventToken.line, onEventToken.column);
     }
     
     private List<ASTNode> parseBlock() throws ParseException {
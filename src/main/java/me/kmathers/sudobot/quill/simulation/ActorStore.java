@@ -0,0 +1,341 @@
+package me.kmathers.sudobot.quill.simulation;
+
+import me.kmathers.sudobot.quill.interpreter.MemoryMeter;
+import me.kmathers.sudobot.quill.interpreter.QuillRuntimeError;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+
+/**
+ * Column storage for the players or entities of a simulation: one primitive
+ * array per field, indexed by row, instead of one object per actor. Bulk
+ * operations such as {@link #healAll} and {@link #damageInBox} are then plain
+ * loops over a few double[] arrays, which the JIT can unroll and vectorize,
+ * rather than a walk over scattered objects.
+ *
+ * Each actor is an {@link Actor} handle that only knows its store and row.
+ * Rows are kept dense: removing one moves the last row into its place and
+ * updates that actor's handle. Actors released from a store (dead or removed
+ * entities, say) move to that store's spare store, so their handles keep
+ * working without a store of their own each. Only an actor created outside
+ * any simulation gets a private one-row store. The spare store only holds
+ * its handles weakly: once half its actors have been collected, or it runs
+ * out of room, it drops their rows and shrinks to fit the rest.
+ */
+public class ActorStore {
+    public static final String[] GAMEMODES = { "survival", "creative", "adventure", "spectator" };
+    public static final byte SURVIVAL = 0;
+
+    // One row across every column, including the handle reference
+    public static final long ROW_BYTES = 5 * 8 + 1 + 4 + MemoryMeter.REFERENCE_BYTES;
+    // The weak reference a spare store keeps instead of the handle itself
+    private static final long WEAK_HANDLE_BYTES = 32;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    double[] x, y, z;
+    double[] health, maxHealth;
+    byte[] gamemode;
+    int[] world;
+    private Object[] handles; // each row's Actor, or in a spare store a WeakReference to it
+    private final boolean weak;
+    private final ReferenceQueue<Actor> collected; // a spare store's collected actors
+    private int collectedRows; // seen on the queue since the last sweep
+    private int size;
+    private ActorStore spare; // actors released from this store, created when first needed
+
+    public ActorStore() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public ActorStore(int capacity) {
+        this(capacity, false);
+    }
+
+    private ActorStore(int capacity, boolean weak) {
+        this.weak = weak;
+        this.collected = weak ? new ReferenceQueue<>() : null;
+        int rows = Math.max(1, capacity);
+        x = new double[rows];
+        y = new double[rows];
+        z = new double[rows];
+        health = new double[rows];
+        maxHealth = new double[rows];
+        gamemode = new byte[rows];
+        world = new int[rows];
+        handles = new Object[rows];
+    }
+
+    /**
+     * A player or entity: a view of one row of its store.
+     */
+    public abstract static class Actor {
+        ActorStore store;
+        int row;
+
+        /**
+         * An actor whose row starts out in {@code store}; a one-row store of
+         * its own for one created outside any simulation.
+         */
+        protected Actor(ActorStore store, double x, double y, double z, double health, int world) {
+            store.add(this, x, y, z, health, health, SURVIVAL, world);
+        }
+
+        public double getX() { return store.x[row]; }
+        public double getY() { return store.y[row]; }
+        public double getZ() { return store.z[row]; }
+        public double getHealth() { return store.health[row]; }
+        public double getMaxHealth() { return store.maxHealth[row]; }
+        public int getWorldId() { return store.world[row]; }
+
+        /**
+         * Memory a released actor's row keeps alive through this handle; 0
+         * while the actor is in a live store, which counts its own rows.
+         */
+        public long getRetainedBytes() {
+            return store.weak ? ROW_BYTES + WEAK_HANDLE_BYTES : 0;
+        }
+
+        public void setHealth(double health) {
+            store.health[row] = Math.max(0, Math.min(health, store.maxHealth[row]));
+        }
+
+        public void setMaxHealth(double maxHealth) {
+            store.maxHealth[row] = maxHealth;
+        }
+
+        public void setWorldId(int world) {
+            store.world[row] = world;
+        }
+
+        public void damage(double amount) {
+            setHealth(getHealth() - amount);
+        }
+
+        public void heal(double amount) {
+            setHealth(getHealth() + amount);
+        }
+
+        void place(double x, double y, double z) {
+            store.x[row] = x;
+            store.y[row] = y;
+            store.z[row] = z;
+        }
+    }
+
+    // === Rows ===
+
+    private void add(Actor actor, double x, double y, double z, double health, double maxHealth, byte gamemode, int world) {
+        if (weak) {
+            sweep();
+        }
+        if (size == handles.length) {
+            resize(handles.length * 2);
+        }
+        int row = size++;
+        this.x[row] = x;
+        this.y[row] = y;
+        this.z[row] = z;
+        this.health[row] = health;
+        this.maxHealth[row] = maxHealth;
+        this.gamemode[row] = gamemode;
+        this.world[row] = world;
+        handles[row] = weak ? new WeakReference<>(actor, collected) : actor;
+        actor.store = this;
+        actor.row = row;
+    }
+
+    /**
+     * The actor in a row, or null if it was released and nothing else refers to it.
+     */
+    @SuppressWarnings("unchecked")
+    private Actor handle(int row) {
+        Object handle = handles[row];
+        return weak ? ((WeakReference<Actor>) handle).get() : (Actor) handle;
+    }
+
+    /**
+     * In a spare store, drop the rows of collected actors and shrink the
+     * columns to fit, once half the rows are collected or the columns are full.
+     */
+    private void sweep() {
+        while (collected.poll() != null) {
+            collectedRows++;
+        }
+        if (collectedRows <= size / 2 && size < handles.length) {
+            return;
+        }
+        collectedRows = 0;
+
+        // Backwards, so the row drop() moves into a gap has already been checked
+        for (int row = size - 1; row >= 0; row--) {
+            if (handle(row) == null) {
+                drop(row);
+            }
+        }
+        int capacity = handles.length;
+        while (capacity > INITIAL_CAPACITY && size < capacity / 4) {
+            capacity /= 2;
+        }
+        if (capacity != handles.length) {
+            resize(capacity);
+        }
+    }
+
+    private void resize(int capacity) {
+        x = Arrays.copyOf(x, capacity);
+        y = Arrays.copyOf(y, capacity);
+        z = Arrays.copyOf(z, capacity);
+        health = Arrays.copyOf(health, capacity);
+        maxHealth = Arrays.copyOf(maxHealth, capacity);
+        gamemode = Arrays.copyOf(gamemode, capacity);
+        world = Arrays.copyOf(world, capacity);
+        handles = Arrays.copyOf(handles, capacity);
+    }
+
+    /**
+     * Move an actor's row into this store, out of whichever store it was in.
+     */
+    public void adopt(Actor actor) {
+        ActorStore from = actor.store;
+        if (from == this) {
+            return;
+        }
+        int row = actor.row;
+        add(actor, from.x[row], from.y[row], from.z[row], from.health[row], from.maxHealth[row],
+                from.gamemode[row], from.world[row]);
+        from.drop(row);
+    }
+
+    /**
+     * Take an actor out of this store, into its spare store.
+     */
+    public void release(Actor actor) {
+        if (actor.store == this) {
+            if (spare == null) {
+                spare = new ActorStore(INITIAL_CAPACITY, true);
+            }
+            spare.adopt(actor);
+            MemoryMeter.charge(ROW_BYTES + WEAK_HANDLE_BYTES);
+        }
+    }
+
+    public boolean holds(Actor actor) {
+        return actor.store == this;
+    }
+
+    /**
+     * Fill a row's gap with the last row.
+     */
+    private void drop(int row) {
+        int last = --size;
+        if (row != last) {
+            x[row] = x[last];
+            y[row] = y[last];
+            z[row] = z[last];
+            health[row] = health[last];
+            maxHealth[row] = maxHealth[last];
+            gamemode[row] = gamemode[last];
+            world[row] = world[last];
+            handles[row] = handles[last];
+            Actor moved = handle(row);
+            if (moved != null) {
+                moved.row = row;
+            }
+        }
+        handles[last] = null;
+    }
+
+    /**
+     * Empty the store and its spare store. Their actors all move to one
+     * store that only their handles still refer to; released rows whose
+     * actors are gone are just dropped.
+     */
+    public void clear() {
+        int spareSize = spare == null ? 0 : spare.size;
+        if (size + spareSize == 0) {
+            return;
+        }
+        ActorStore retired = new ActorStore(size + spareSize);
+        while (size > 0) {
+            retired.adopt(handle(size - 1));
+        }
+        while (spare != null && spare.size > 0) {
+            Actor actor = spare.handle(spare.size - 1);
+            if (actor != null) {
+                retired.adopt(actor);
+            } else {
+                spare.drop(spare.size - 1);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Approximate memory held by the columns, which grow but never shrink.
+     * Released rows are left out: they are only retained through handles a
+     * script still holds, which count them (see {@link Actor#getRetainedBytes}).
+     */
+    public long getRetainedBytes() {
+        return handles.length * ROW_BYTES;
+    }
+
+    // === Bulk Operations ===
+
+    /**
+     * Restore every actor to full health. Returns how many there are.
+     */
+    public int healAll() {
+        System.arraycopy(maxHealth, 0, health, 0, size);
+        return size;
+    }
+
+    /**
+     * Heal every actor by {@code amount}, up to its maximum.
+     */
+    public int healAll(double amount) {
+        double[] health = this.health, maxHealth = this.maxHealth;
+        for (int i = 0; i < size; i++) {
+            health[i] = Math.max(0, Math.min(health[i] + amount, maxHealth[i]));
+        }
+        return size;
+    }
+
+    /**
+     * Take {@code amount} health from every actor in world {@code worldId}
+     * inside the box (bounds inclusive). Returns how many were hit.
+     */
+    public int damageInBox(int worldId, double x1, double y1, double z1, double x2, double y2, double z2, double amount) {
+        double[] x = this.x, y = this.y, z = this.z, health = this.health, maxHealth = this.maxHealth;
+        int[] world = this.world;
+        int hit = 0;
+
+        // No early exits, so the loop body is the same for every row
+        for (int i = 0; i < size; i++) {
+            boolean inside = world[i] == worldId
+                & x[i] >= x1 & x[i] <= x2
+                & y[i] >= y1 & y[i] <= y2
+                & z[i] >= z1 & z[i] <= z2;
+            double current = health[i];
+            double damaged = Math.max(0, Math.min(current - amount, maxHealth[i]));
+            health[i] = inside ? damaged : current;
+            hit += inside ? 1 : 0;
+        }
+        return hit;
+    }
+
+    // === Gamemodes ===
+
+    public static byte gamemodeCode(String name) {
+        for (int i = 0; i < GAMEMODES.length; i++) {
+            if (GAMEMODES[i].equals(name)) {
+                return (byte) i;
+            }
+        }
+        throw new QuillRuntimeError("Unknown gamemode '" + name + "'");
+    }
+}
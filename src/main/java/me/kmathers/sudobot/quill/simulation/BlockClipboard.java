@@ -0,0 +1,41 @@
+package me.kmathers.sudobot.quill.simulation;
+
+/**
+ * Blocks copied out of a world by copy_region(), positioned relative to the
+ * copied region's minimum corner. Air inside the region is part of the copy.
+ */
+public class BlockClipboard {
+    private final BlockStore blocks;
+    private final int sizeX;
+    private final int sizeY;
+    private final int sizeZ;
+
+    BlockClipboard(BlockStore blocks, int sizeX, int sizeY, int sizeZ) {
+        this.blocks = blocks;
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeZ = sizeZ;
+    }
+
+    BlockStore getBlocks() { return blocks; }
+
+    public int getSizeX() { return sizeX; }
+    public int getSizeY() { return sizeY; }
+    public int getSizeZ() { return sizeZ; }
+
+    /**
+     * Number of non-air blocks in the copy.
+     */
+    public int getBlockCount() {
+        return blocks.size();
+    }
+
+    public long getRetainedBytes() {
+        return blocks.getRetainedBytes();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Clipboard(%dx%dx%d, %d blocks)", sizeX, sizeY, sizeZ, getBlockCount());
+    }
+}
@@ -0,0 +1,75 @@
+package me.kmathers.sudobot.quill.simulation;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Global table of the block types every run knows: air and the common
+ * vanilla blocks, with IDs fixed when the class loads. Builtins turn a
+ * script's block name into a short ID once, and worlds store and compare
+ * those IDs; the name is only looked up again when something is shown to
+ * the user.
+ *
+ * Names a script makes up, and the spellings it uses, are kept in the run's
+ * own {@link BlockTypes}, which takes IDs after these. Scripts never add to
+ * this table, so it stays the same size however many runs there are.
+ */
+public final class BlockRegistry {
+    public static final short AIR = 0;
+    public static final int MAX_TYPES = Short.MAX_VALUE + 1;
+
+    private static final String[] NAMES = {
+        "air", "stone", "granite", "diorite", "andesite", "deepslate", "bedrock", "dirt",
+        "grass_block", "coarse_dirt", "podzol", "mud", "clay", "gravel", "sand", "red_sand",
+        "sandstone", "red_sandstone", "cobblestone", "mossy_cobblestone", "stone_bricks",
+        "bricks", "obsidian", "netherrack", "soul_sand", "glowstone", "end_stone", "ice",
+        "packed_ice", "snow", "snow_block", "water", "lava", "oak_log", "spruce_log",
+        "birch_log", "jungle_log", "acacia_log", "dark_oak_log", "oak_planks", "spruce_planks",
+        "birch_planks", "jungle_planks", "acacia_planks", "dark_oak_planks", "oak_leaves",
+        "spruce_leaves", "birch_leaves", "glass", "white_wool", "red_wool", "blue_wool",
+        "green_wool", "yellow_wool", "black_wool", "white_concrete", "terracotta",
+        "coal_ore", "iron_ore", "gold_ore", "diamond_ore", "emerald_ore", "redstone_ore",
+        "lapis_ore", "coal_block", "iron_block", "gold_block", "diamond_block",
+        "emerald_block", "redstone_block", "lapis_block", "quartz_block", "tnt", "bookshelf",
+        "crafting_table", "furnace", "chest", "torch", "ladder", "oak_door", "oak_fence",
+        "oak_stairs", "stone_slab", "rail", "lever", "redstone_wire", "redstone_torch",
+        "glass_pane", "iron_bars", "cactus", "pumpkin", "melon", "hay_block", "sponge",
+        "beacon", "barrier"
+    };
+
+    private static final Map<String, Short> ids = new HashMap<>();
+
+    static {
+        for (short id = 0; id < NAMES.length; id++) {
+            ids.put(NAMES[id], id);
+        }
+    }
+
+    private BlockRegistry() {}
+
+    /**
+     * ID of a known block's lowercase name, or -1 if it isn't one.
+     */
+    public static short lookup(String canonical) {
+        Short id = ids.get(canonical);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Name of a known block's ID; IDs from {@code size()} on belong to a run's {@link BlockTypes}.
+     */
+    public static String nameOf(short id) {
+        return NAMES[id];
+    }
+
+    public static boolean isAir(short id) {
+        return id == AIR;
+    }
+
+    /**
+     * Number of known block types, including air.
+     */
+    public static int size() {
+        return NAMES.length;
+    }
+}
@@ -0,0 +1,651 @@
+package me.kmathers.sudobot.quill.simulation;
+
+import me.kmathers.sudobot.quill.interpreter.MemoryMeter;
+import me.kmathers.sudobot.quill.interpreter.QuillRuntimeError;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Block storage for a simulated world, laid out the way Minecraft stores chunks.
+ * The world is split into 16x16x16 sections, created on the first non-air
+ * write. Each section keeps a palette of the {@link BlockRegistry} IDs it
+ * contains and a packed long[] of palette indices, so a section of one or two
+ * materials costs a few bytes per block and writes never build keys or box
+ * coordinates. Unset blocks read as {@link BlockRegistry#AIR}.
+ *
+ * Bulk operations work a section at a time: a section the region covers
+ * completely is replaced (or cloned) whole instead of written block by block.
+ */
+public class BlockStore {
+    private static final int SECTION_BITS = 4;
+    private static final int SECTION_MASK = 15;
+    private static final int SECTION_VOLUME = 16 * 16 * 16;
+    private static final long SECTION_BYTES = 64; // object, palette and array headers
+
+    // Section coordinates are packed into one long: 22 bits each for x and z, 20 for y
+    private static final int XZ_BITS = 22;
+    private static final int Y_BITS = 20;
+    private static final long XZ_MASK = (1L << XZ_BITS) - 1;
+    private static final long Y_MASK = (1L << Y_BITS) - 1;
+    public static final int MAX_XZ = (1 << (XZ_BITS - 1 + SECTION_BITS)) - 1;
+    public static final int MAX_Y = (1 << (Y_BITS - 1 + SECTION_BITS)) - 1;
+
+    /** Largest region a single bulk operation may touch (256x256x256). */
+    public static final long MAX_BULK_VOLUME = 1L << 24;
+
+    /**
+     * Receives every non-air block from {@link #forEach}.
+     */
+    public interface BlockVisitor {
+        void visit(int x, int y, int z, short type);
+    }
+
+    private final Map<Long, Section> sections = new HashMap<>();
+    private int blockCount;
+
+    // Scripts usually write neighbouring blocks, so the last section is kept to skip the map lookup.
+    // Key and section are published together since parallel loops may read concurrently.
+    private volatile CachedSection last;
+
+    private static class CachedSection {
+        final long key;
+        final Section section;
+
+        CachedSection(long key, Section section) {
+            this.key = key;
+            this.section = section;
+        }
+    }
+
+    // === Access ===
+
+    public short get(int x, int y, int z) {
+        if (!inRange(x, y, z)) {
+            return BlockRegistry.AIR;
+        }
+        Section section = section(x, y, z, false);
+        return section == null ? BlockRegistry.AIR : section.get(index(x, y, z));
+    }
+
+    /**
+     * Set a block; setting {@link BlockRegistry#AIR} clears it.
+     */
+    public void set(int x, int y, int z, short type) {
+        checkRange(x, y, z);
+
+        Section section = section(x, y, z, !BlockRegistry.isAir(type));
+        if (section == null) {
+            return;
+        }
+
+        int before = section.nonAir;
+        section.set(index(x, y, z), type);
+        blockCount += section.nonAir - before;
+
+        if (section.nonAir == 0) {
+            removeSection(key(x, y, z));
+        }
+    }
+
+    /**
+     * Number of non-air blocks.
+     */
+    public int size() {
+        return blockCount;
+    }
+
+    public boolean isEmpty() {
+        return blockCount == 0;
+    }
+
+    public void clear() {
+        sections.clear();
+        blockCount = 0;
+        last = null;
+    }
+
+    /**
+     * Visit every non-air block, section by section.
+     */
+    public void forEach(BlockVisitor visitor) {
+        for (Map.Entry<Long, Section> entry : sections.entrySet()) {
+            long key = entry.getKey();
+            int baseX = unpack(key >> (XZ_BITS + Y_BITS), XZ_BITS) << SECTION_BITS;
+            int baseY = unpack((key >> XZ_BITS) & Y_MASK, Y_BITS) << SECTION_BITS;
+            int baseZ = unpack(key & XZ_MASK, XZ_BITS) << SECTION_BITS;
+
+            Section section = entry.getValue();
+            for (int i = 0; i < SECTION_VOLUME; i++) {
+                short type = section.get(i);
+                if (!BlockRegistry.isAir(type)) {
+                    visitor.visit(baseX + (i & SECTION_MASK), baseY + (i >> 8), baseZ + ((i >> 4) & SECTION_MASK), type);
+                }
+            }
+        }
+    }
+
+    /**
+     * Approximate memory held by the sections.
+     */
+    public long getRetainedBytes() {
+        long total = MemoryMeter.MAP_BYTES;
+        for (Section section : sections.values()) {
+            total += MemoryMeter.ENTRY_BYTES + section.bytes();
+        }
+        return total;
+    }
+
+    // === Bulk operations ===
+
+    /**
+     * Set every block in the box (corners inclusive, in any order) to one type.
+     *
+     * @return the number of blocks in the box
+     */
+    public long fill(int x1, int y1, int z1, int x2, int y2, int z2, short type) {
+        Box box = new Box(x1, y1, z1, x2, y2, z2);
+        last = null;
+
+        for (int sx = box.minX >> SECTION_BITS; sx <= box.maxX >> SECTION_BITS; sx++) {
+            for (int sy = box.minY >> SECTION_BITS; sy <= box.maxY >> SECTION_BITS; sy++) {
+                for (int sz = box.minZ >> SECTION_BITS; sz <= box.maxZ >> SECTION_BITS; sz++) {
+                    fillSection(box, sx, sy, sz, type);
+                }
+            }
+        }
+        return box.volume();
+    }
+
+    /**
+     * Change every block of one type in the box to another.
+     *
+     * @return the number of blocks changed
+     */
+    public long replace(int x1, int y1, int z1, int x2, int y2, int z2, short from, short to) {
+        Box box = new Box(x1, y1, z1, x2, y2, z2);
+        if (from == to) {
+            return 0;
+        }
+        last = null;
+
+        long replaced = 0;
+        for (int sx = box.minX >> SECTION_BITS; sx <= box.maxX >> SECTION_BITS; sx++) {
+            for (int sy = box.minY >> SECTION_BITS; sy <= box.maxY >> SECTION_BITS; sy++) {
+                for (int sz = box.minZ >> SECTION_BITS; sz <= box.maxZ >> SECTION_BITS; sz++) {
+                    long key = sectionKey(sx, sy, sz);
+                    Section section = sections.get(key);
+
+                    if (section == null) {
+                        // An empty section is all air, so only air can be replaced in it
+                        if (BlockRegistry.isAir(from)) {
+                            replaced += box.volumeIn(sx, sy, sz);
+                            fillSection(box, sx, sy, sz, to);
+                        }
+                        continue;
+                    }
+
+                    int before = section.nonAir;
+                    replaced += section.replace(box.local(sx, sy, sz), box.covers(sx, sy, sz), from, to);
+                    blockCount += section.nonAir - before;
+                    if (section.nonAir == 0) {
+                        removeSection(key);
+                    }
+                }
+            }
+        }
+        return replaced;
+    }
+
+    /**
+     * Copy the box into a clipboard, with its minimum corner at (0, 0, 0).
+     */
+    public BlockClipboard copy(int x1, int y1, int z1, int x2, int y2, int z2) {
+        Box box = new Box(x1, y1, z1, x2, y2, z2);
+        BlockStore copy = new BlockStore();
+        boolean aligned = box.aligned();
+
+        for (int sx = box.minX >> SECTION_BITS; sx <= box.maxX >> SECTION_BITS; sx++) {
+            for (int sy = box.minY >> SECTION_BITS; sy <= box.maxY >> SECTION_BITS; sy++) {
+                for (int sz = box.minZ >> SECTION_BITS; sz <= box.maxZ >> SECTION_BITS; sz++) {
+                    Section section = sections.get(sectionKey(sx, sy, sz));
+                    if (section == null) {
+                        continue;
+                    }
+
+                    if (aligned && box.covers(sx, sy, sz)) {
+                        copy.putSection(sectionKey(sx - (box.minX >> SECTION_BITS),
+                                sy - (box.minY >> SECTION_BITS), sz - (box.minZ >> SECTION_BITS)), section.copy());
+                        continue;
+                    }
+
+                    int[] local = box.local(sx, sy, sz);
+                    int baseX = sx << SECTION_BITS, baseY = sy << SECTION_BITS, baseZ = sz << SECTION_BITS;
+                    for (int ly = local[2]; ly <= local[3]; ly++) {
+                        for (int lz = local[4]; lz <= local[5]; lz++) {
+                            for (int lx = local[0]; lx <= local[1]; lx++) {
+                                short type = section.get((ly << 8) | (lz << 4) | lx);
+                                if (!BlockRegistry.isAir(type)) {
+                                    copy.set(baseX + lx - box.minX, baseY + ly - box.minY, baseZ + lz - box.minZ, type);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return new BlockClipboard(copy, box.sizeX(), box.sizeY(), box.sizeZ());
+    }
+
+    /**
+     * Write a clipboard with its minimum corner at (x, y, z), including its air.
+     *
+     * @return the number of blocks written
+     */
+    public long paste(BlockClipboard clipboard, int x, int y, int z) {
+        Box box = new Box(x, y, z,
+                x + clipboard.getSizeX() - 1, y + clipboard.getSizeY() - 1, z + clipboard.getSizeZ() - 1);
+        BlockStore source = clipboard.getBlocks();
+        boolean aligned = box.aligned();
+        last = null;
+
+        for (int sx = box.minX >> SECTION_BITS; sx <= box.maxX >> SECTION_BITS; sx++) {
+            for (int sy = box.minY >> SECTION_BITS; sy <= box.maxY >> SECTION_BITS; sy++) {
+                for (int sz = box.minZ >> SECTION_BITS; sz <= box.maxZ >> SECTION_BITS; sz++) {
+                    if (aligned && box.covers(sx, sy, sz)) {
+                        Section from = source.sections.get(sectionKey(sx - (box.minX >> SECTION_BITS),
+                                sy - (box.minY >> SECTION_BITS), sz - (box.minZ >> SECTION_BITS)));
+                        long key = sectionKey(sx, sy, sz);
+                        removeSection(key);
+                        if (from != null) {
+                            putSection(key, from.copy());
+                        }
+                        continue;
+                    }
+
+                    int[] local = box.local(sx, sy, sz);
+                    int baseX = sx << SECTION_BITS, baseY = sy << SECTION_BITS, baseZ = sz << SECTION_BITS;
+                    for (int ly = local[2]; ly <= local[3]; ly++) {
+                        for (int lz = local[4]; lz <= local[5]; lz++) {
+                            for (int lx = local[0]; lx <= local[1]; lx++) {
+                                int tx = baseX + lx, ty = baseY + ly, tz = baseZ + lz;
+                                set(tx, ty, tz, source.get(tx - box.minX, ty - box.minY, tz - box.minZ));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return box.volume();
+    }
+
+    private void fillSection(Box box, int sx, int sy, int sz, short type) {
+        long key = sectionKey(sx, sy, sz);
+        boolean air = BlockRegistry.isAir(type);
+
+        if (box.covers(sx, sy, sz)) {
+            removeSection(key);
+            if (!air) {
+                putSection(key, Section.uniform(type));
+            }
+            return;
+        }
+
+        Section section = sections.get(key);
+        if (section == null) {
+            if (air) {
+                return;
+            }
+            section = new Section();
+            putSection(key, section);
+        }
+
+        int before = section.nonAir;
+        section.fill(box.local(sx, sy, sz), type);
+        blockCount += section.nonAir - before;
+        if (section.nonAir == 0) {
+            removeSection(key);
+        }
+    }
+
+    /**
+     * Inclusive block box, normalised and checked against the world's limits.
+     */
+    private static class Box {
+        final int minX, minY, minZ, maxX, maxY, maxZ;
+
+        Box(int x1, int y1, int z1, int x2, int y2, int z2) {
+            minX = Math.min(x1, x2);
+            minY = Math.min(y1, y2);
+            minZ = Math.min(z1, z2);
+            maxX = Math.max(x1, x2);
+            maxY = Math.max(y1, y2);
+            maxZ = Math.max(z1, z2);
+
+            checkRange(minX, minY, minZ);
+            checkRange(maxX, maxY, maxZ);
+            if (volume() > MAX_BULK_VOLUME) {
+                throw new QuillRuntimeError(String.format(
+                        "Region of %d blocks is too large (at most %d at once)", volume(), MAX_BULK_VOLUME));
+            }
+        }
+
+        int sizeX() { return maxX - minX + 1; }
+        int sizeY() { return maxY - minY + 1; }
+        int sizeZ() { return maxZ - minZ + 1; }
+
+        long volume() {
+            return (long) sizeX() * sizeY() * sizeZ();
+        }
+
+        /**
+         * Whether the minimum corner sits on a section boundary, so sections line up with a copy.
+         */
+        boolean aligned() {
+            return (minX & SECTION_MASK) == 0 && (minY & SECTION_MASK) == 0 && (minZ & SECTION_MASK) == 0;
+        }
+
+        /**
+         * The part of a section inside the box, as local {x0, x1, y0, y1, z0, z1}.
+         */
+        int[] local(int sx, int sy, int sz) {
+            int baseX = sx << SECTION_BITS, baseY = sy << SECTION_BITS, baseZ = sz << SECTION_BITS;
+            return new int[] {
+                Math.max(minX, baseX) - baseX, Math.min(maxX, baseX + SECTION_MASK) - baseX,
+                Math.max(minY, baseY) - baseY, Math.min(maxY, baseY + SECTION_MASK) - baseY,
+                Math.max(minZ, baseZ) - baseZ, Math.min(maxZ, baseZ + SECTION_MASK) - baseZ
+            };
+        }
+
+        boolean covers(int sx, int sy, int sz) {
+            return volumeIn(sx, sy, sz) == SECTION_VOLUME;
+        }
+
+        long volumeIn(int sx, int sy, int sz) {
+            int[] l = local(sx, sy, sz);
+            return (long) (l[1] - l[0] + 1) * (l[3] - l[2] + 1) * (l[5] - l[4] + 1);
+        }
+    }
+
+    // === Sections ===
+
+    private static boolean inRange(int x, int y, int z) {
+        return x >= -MAX_XZ - 1 && x <= MAX_XZ
+            && z >= -MAX_XZ - 1 && z <= MAX_XZ
+            && y >= -MAX_Y - 1 && y <= MAX_Y;
+    }
+
+    private static void checkRange(int x, int y, int z) {
+        if (!inRange(x, y, z)) {
+            throw new QuillRuntimeError(String.format(
+                    "Block coordinates (%d, %d, %d) are outside the world (x and z up to %d, y up to %d either way)",
+                    x, y, z, MAX_XZ, MAX_Y));
+        }
+    }
+
+    private static int index(int x, int y, int z) {
+        return ((y & SECTION_MASK) << 8) | ((z & SECTION_MASK) << 4) | (x & SECTION_MASK);
+    }
+
+    private static long key(int x, int y, int z) {
+        return sectionKey(x >> SECTION_BITS, y >> SECTION_BITS, z >> SECTION_BITS);
+    }
+
+    private static long sectionKey(int sx, int sy, int sz) {
+        return ((sx & XZ_MASK) << (XZ_BITS + Y_BITS)) | ((sy & Y_MASK) << XZ_BITS) | (sz & XZ_MASK);
+    }
+
+    /**
+     * Sign-extend a packed section coordinate.
+     */
+    private static int unpack(long bits, int width) {
+        return (int) (bits << (64 - width) >> (64 - width));
+    }
+
+    private Section section(int x, int y, int z, boolean create) {
+        long key = key(x, y, z);
+        CachedSection cached = last;
+        if (cached != null && cached.key == key) {
+            return cached.section;
+        }
+
+        Section section = sections.get(key);
+        if (section == null) {
+            if (!create) {
+                return null;
+            }
+            section = new Section();
+            putSection(key, section);
+        }
+        last = new CachedSection(key, section);
+        return section;
+    }
+
+    /**
+     * Add a section, counting its blocks and charging its memory to the running script.
+     */
+    private void putSection(long key, Section section) {
+        sections.put(key, section);
+        blockCount += section.nonAir;
+        MemoryMeter.charge(MemoryMeter.ENTRY_BYTES + section.bytes());
+    }
+
+    private void removeSection(long key) {
+        Section removed = sections.remove(key);
+        if (removed != null) {
+            blockCount -= removed.nonAir;
+        }
+        CachedSection cached = last;
+        if (cached != null && cached.key == key) {
+            last = null;
+        }
+    }
+
+    /**
+     * One 16x16x16 section. Index 0 of the palette is always air, so a fresh
+     * (all-zero) array is an empty section. Entries never straddle two longs.
+     */
+    private static class Section {
+        private static final int MIN_BITS = 4;
+
+        private short[] palette = new short[16];
+        private int paletteSize = 1; // palette[0] is air
+        private int bits = MIN_BITS;
+        private int perLong = 64 / MIN_BITS;
+        private long mask = (1L << MIN_BITS) - 1;
+        private long[] data = new long[SECTION_VOLUME / perLong];
+        int nonAir;
+
+        /**
+         * A section filled with one non-air type.
+         */
+        static Section uniform(short type) {
+            Section section = new Section();
+            section.palette[1] = type;
+            section.paletteSize = 2;
+            Arrays.fill(section.data, 0x1111111111111111L); // index 1 in every 4-bit entry
+            section.nonAir = SECTION_VOLUME;
+            return section;
+        }
+
+        Section copy() {
+            Section copy = new Section();
+            copy.palette = palette.clone();
+            copy.paletteSize = paletteSize;
+            copy.bits = bits;
+            copy.perLong = perLong;
+            copy.mask = mask;
+            copy.data = data.clone();
+            copy.nonAir = nonAir;
+            return copy;
+        }
+
+        long bytes() {
+            return SECTION_BYTES + data.length * 8L + palette.length * 2L;
+        }
+
+        short get(int index) {
+            return palette[read(index)];
+        }
+
+        void set(int index, short type) {
+            int id = idFor(type); // may repack, so read the old entry after
+            write(index, id, read(index));
+        }
+
+        /**
+         * Set every block in local bounds {x0, x1, y0, y1, z0, z1} to one type.
+         */
+        void fill(int[] local, short type) {
+            int id = idFor(type);
+            for (int y = local[2]; y <= local[3]; y++) {
+                for (int z = local[4]; z <= local[5]; z++) {
+                    for (int x = local[0]; x <= local[1]; x++) {
+                        int index = (y << 8) | (z << 4) | x;
+                        write(index, id, read(index));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Replace one type with another within local bounds, returning how many blocks changed.
+         */
+        long replace(int[] local, boolean whole, short from, short to) {
+            if (indexOf(from) < 0) {
+                return 0;
+            }
+
+            // Covering the whole section with a type it doesn't hold yet: rename the palette entry
+            if (whole && !BlockRegistry.isAir(from) && !BlockRegistry.isAir(to) && indexOf(to) < 0) {
+                int fromId = indexOf(from);
+                long count = 0;
+                for (int i = 0; i < SECTION_VOLUME; i++) {
+                    if (read(i) == fromId) {
+                        count++;
+                    }
+                }
+                palette[fromId] = to;
+                return count;
+            }
+
+            int toId = idFor(to);
+            int fromId = indexOf(from); // idFor may have compacted the palette
+            if (fromId < 0) {
+                return 0;
+            }
+
+            long count = 0;
+            for (int y = local[2]; y <= local[3]; y++) {
+                for (int z = local[4]; z <= local[5]; z++) {
+                    for (int x = local[0]; x <= local[1]; x++) {
+                        int index = (y << 8) | (z << 4) | x;
+                        if (read(index) == fromId) {
+                            write(index, toId, fromId);
+                            count++;
+                        }
+                    }
+                }
+            }
+            return count;
+        }
+
+        private int read(int index) {
+            int shift = (index % perLong) * bits;
+            return (int) ((data[index / perLong] >>> shift) & mask);
+        }
+
+        /**
+         * Write a palette index over {@code previous}, keeping the non-air count.
+         */
+        private void write(int index, int id, int previous) {
+            if (id == previous) {
+                return;
+            }
+            write(index, id);
+            if (previous == 0) {
+                nonAir++;
+            } else if (id == 0) {
+                nonAir--;
+            }
+        }
+
+        private void write(int index, int id) {
+            int slot = index / perLong;
+            int shift = (index % perLong) * bits;
+            data[slot] = (data[slot] & ~(mask << shift)) | ((long) id << shift);
+        }
+
+        private int indexOf(short type) {
+            for (int i = 0; i < paletteSize; i++) {
+                if (palette[i] == type) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private int idFor(short type) {
+            int existing = indexOf(type);
+            if (existing >= 0) {
+                return existing;
+            }
+
+            if (paletteSize > mask) {
+                // Full: drop types that are no longer placed, then widen if that wasn't enough
+                repack(true);
+                if (paletteSize > mask) {
+                    long before = bytes();
+                    repack(false);
+                    MemoryMeter.charge(bytes() - before);
+                }
+            }
+            if (paletteSize == palette.length) {
+                palette = Arrays.copyOf(palette, palette.length * 2);
+            }
+            palette[paletteSize] = type;
+            return paletteSize++;
+        }
+
+        /**
+         * Rebuild the packed array, either dropping unused palette entries at the
+         * current width or keeping the palette and widening each entry by one bit.
+         */
+        private void repack(boolean compact) {
+            int[] ids = new int[SECTION_VOLUME];
+            for (int i = 0; i < SECTION_VOLUME; i++) {
+                ids[i] = read(i);
+            }
+
+            if (compact) {
+                int[] remap = new int[paletteSize];
+                boolean[] used = new boolean[paletteSize];
+                used[0] = true;
+                for (int id : ids) {
+                    used[id] = true;
+                }
+                int kept = 0;
+                for (int i = 0; i < paletteSize; i++) {
+                    if (used[i]) {
+                        remap[i] = kept;
+                        palette[kept++] = palette[i];
+                    }
+                }
+                paletteSize = kept;
+                for (int i = 0; i < SECTION_VOLUME; i++) {
+                    ids[i] = remap[ids[i]];
+                }
+            } else {
+                bits++;
+                perLong = 64 / bits;
+                mask = (1L << bits) - 1;
+            }
+
+            data = new long[(SECTION_VOLUME + perLong - 1) / perLong];
+            for (int i = 0; i < SECTION_VOLUME; i++) {
+                write(i, ids[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package me.kmathers.sudobot.quill.simulation;
+
+import me.kmathers.sudobot.quill.interpreter.MemoryMeter;
+import me.kmathers.sudobot.quill.interpreter.QuillRuntimeError;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A run's block names: the {@link BlockRegistry} ones, plus any the script
+ * makes up, which get IDs after the known ones. Owned by the simulation
+ * context and cleared with it, so each run starts from the known blocks
+ * and can use up to {@link BlockRegistry#MAX_TYPES} types of its own.
+ *
+ * Names are case-insensitive and stored lowercase, like Minecraft's block IDs.
+ * The spelling a script used is remembered as an alias so repeat calls with
+ * "STONE" don't lowercase it again. New names and aliases are charged to the
+ * run's memory meter.
+ */
+public class BlockTypes {
+    private final Map<String, Short> ids = new HashMap<>();
+    private String[] names = new String[16];
+    private int count;
+    private long retainedBytes;
+
+    /**
+     * ID for a block name, registering it the first time it's seen.
+     */
+    public short idOf(String name) {
+        Short id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+
+        String canonical = name.toLowerCase(Locale.ROOT);
+        short known = BlockRegistry.lookup(canonical);
+        if (known >= 0) {
+            id = known;
+        } else {
+            id = ids.get(canonical);
+            if (id == null) {
+                id = register(canonical);
+            }
+        }
+        if (!name.equals(canonical) || known >= 0) {
+            ids.put(name, id);
+            charge(MemoryMeter.sizeOfString(name) + MemoryMeter.ENTRY_BYTES);
+        }
+        return id;
+    }
+
+    public String nameOf(short id) {
+        int index = id - BlockRegistry.size();
+        return index < 0 ? BlockRegistry.nameOf(id) : names[index];
+    }
+
+    /**
+     * Number of block types usable so far, including the known ones.
+     */
+    public int size() {
+        return BlockRegistry.size() + count;
+    }
+
+    /**
+     * Approximate memory held by the script's names and aliases.
+     */
+    public long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    /**
+     * Forget every name the script added.
+     */
+    public void clear() {
+        ids.clear();
+        Arrays.fill(names, 0, count, null);
+        count = 0;
+        retainedBytes = 0;
+    }
+
+    private short register(String canonical) {
+        if (size() == BlockRegistry.MAX_TYPES) {
+            throw new QuillRuntimeError("Too many different block types have been used (at most " +
+                BlockRegistry.MAX_TYPES + ")");
+        }
+        if (count == names.length) {
+            names = Arrays.copyOf(names, names.length * 2);
+        }
+        names[count] = canonical;
+        short id = (short) (BlockRegistry.size() + count++);
+        ids.put(canonical, id);
+        charge(MemoryMeter.sizeOfString(canonical) + MemoryMeter.ENTRY_BYTES + MemoryMeter.REFERENCE_BYTES);
+        return id;
+    }
+
+    private void charge(long bytes) {
+        retainedBytes += bytes;
+        MemoryMeter.charge(bytes);
+    }
+}
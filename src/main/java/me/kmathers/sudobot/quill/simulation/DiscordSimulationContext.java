@@ -1,8 +1,14 @@
 package me.kmathers.sudobot.quill.simulation;
 
+import me.kmathers.sudobot.quill.interpreter.MemoryMeter;
+import me.kmathers.sudobot.quill.interpreter.QuillRuntimeError;
 import me.kmathers.sudobot.quill.interpreter.QuillValue;
+import me.kmathers.sudobot.quill.mocks.MockItemStack;
+import me.kmathers.sudobot.quill.mocks.MockPotionEffect;
+import me.kmathers.sudobot.quill.mocks.MockWorld.DroppedItem;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * Manages simulation state for Quill script execution in Discord context.
@@ -10,30 +16,130 @@ import java.util.*;
  */
 public class DiscordSimulationContext {
     private Map<String, MockPlayer> players;
+    private Map<UUID, MockPlayer> playersById;
+    private ActorStore playerStore; // shared by all worlds, which index their own players
+    private ActorStore entityStore; // shared by all worlds, which index their own entities
     private Map<String, MockWorld> worlds;
-    private List<String> outputLogs;
+    private int nextWorldId;
+    private BlockTypes blockTypes; // shared by all worlds
+    private LogSink outputLogs;
     private List<String> messageHistory;
     private Queue<SimulatedEvent> eventQueue;
     private Map<String, Object> globalState;
+    private long messageBytes;
+    private TimerWheel timers;
+    private Map<Long, TimerWheel.Task> scheduledTasks;
+    private long nextTaskId;
+    private boolean ticking;
+    
+    // Rough size of a scheduled task and the callback it holds
+    private static final long TASK_BYTES = 4 * MemoryMeter.VALUE_BYTES + 4 * MemoryMeter.REFERENCE_BYTES;
+    
+    // Rough size of an entity or player object and its slot in its world's list
+    // or the context's name and UUID maps, apart from its store row and grid entry
+    private static final long ENTITY_BYTES = 4 * MemoryMeter.VALUE_BYTES + MemoryMeter.REFERENCE_BYTES;
+    private static final long PLAYER_BYTES = 4 * MemoryMeter.VALUE_BYTES + 2 * MemoryMeter.LIST_BYTES
+        + 2 * MemoryMeter.MAP_BYTES + 2 * MemoryMeter.ENTRY_BYTES;
     
     public DiscordSimulationContext() {
         this.players = new HashMap<>();
-        this.worlds = new HashMap<>();
-        this.outputLogs = new ArrayList<>();
+        this.playersById = new HashMap<>();
+        this.playerStore = new ActorStore();
+        this.entityStore = new ActorStore();
+        this.worlds = new LinkedHashMap<>();
+        this.blockTypes = new BlockTypes();
+        this.outputLogs = new LogSink(blockTypes);
         this.messageHistory = new ArrayList<>();
-        this.eventQueue = new LinkedList<>();
+        this.eventQueue = new ArrayDeque<>();
         this.globalState = new HashMap<>();
+        this.timers = new TimerWheel();
+        this.scheduledTasks = new HashMap<>();
         
         createWorld("world");
     }
     
+    /**
+     * Return to the state of a freshly created context, reusing the
+     * default world and the existing collections' capacity.
+     */
+    public void reset() {
+        MockWorld defaultWorld = worlds.get("world");
+        
+        for (MockPlayer player : players.values()) {
+            player.indexed = false;
+        }
+        players.clear();
+        playersById.clear();
+        playerStore.clear();
+        entityStore.clear();
+        worlds.clear();
+        nextWorldId = 1;
+        blockTypes.clear();
+        outputLogs.clear();
+        messageHistory.clear();
+        eventQueue.clear();
+        globalState.clear();
+        messageBytes = 0;
+        timers.clear();
+        scheduledTasks.clear();
+        nextTaskId = 0;
+        
+        defaultWorld.reset();
+        worlds.put("world", defaultWorld);
+        log(LogTemplate.WORLD_CREATED).str("world");
+    }
+    
     // === Logging ===
     
     /**
      * Log a message to the output logs.
      */
     public void log(String message) {
-        outputLogs.add(message);
+        outputLogs.begin(LogTemplate.TEXT).str(message);
+    }
+    
+    /**
+     * Start a log entry whose arguments are added to the returned sink,
+     * e.g. {@code log(LogTemplate.HEAL).str(name)}. Nothing is formatted until the logs are read.
+     */
+    public LogSink log(LogTemplate template) {
+        return outputLogs.begin(template);
+    }
+    
+    private long chargeOutput(String line) {
+        long bytes = MemoryMeter.sizeOfString(line) + MemoryMeter.REFERENCE_BYTES;
+        MemoryMeter.charge(bytes);
+        return bytes;
+    }
+    
+    /**
+     * Approximate memory held by the log buffer and message history.
+     */
+    public long getOutputBytes() {
+        return outputLogs.getRetainedBytes() + messageBytes;
+    }
+    
+    /**
+     * The run's block names, which block IDs in every world refer to.
+     */
+    public BlockTypes getBlockTypes() {
+        return blockTypes;
+    }
+    
+    /**
+     * Approximate memory held by the worlds' blocks and entities, the names the
+     * script gave blocks, and the players.
+     */
+    public long getWorldBytes() {
+        long total = blockTypes.getRetainedBytes()
+            + players.size() * PLAYER_BYTES + playerStore.getRetainedBytes()
+            + entityStore.getRetainedBytes();
+        for (MockWorld world : worlds.values()) {
+            total += world.getBlocks().getRetainedBytes()
+                + world.entities.size() * ENTITY_BYTES + world.entityIndex.getRetainedBytes()
+                + world.playerIndex.getRetainedBytes();
+        }
+        return total;
     }
     
     /**
@@ -44,17 +150,50 @@ public class DiscordSimulationContext {
     }
     
     /**
-     * Get all output logs.
+     * Get the output logs that were kept: the first and last lines of the run.
      */
     public List<String> getLogs() {
-        return new ArrayList<>(outputLogs);
+        return outputLogs.renderAll();
+    }
+    
+    /**
+     * Get the first lines logged.
+     */
+    public List<String> getLogHead() {
+        return outputLogs.renderHead();
+    }
+    
+    /**
+     * Get the last lines logged, after the head.
+     */
+    public List<String> getLogTail() {
+        return outputLogs.renderTail();
+    }
+    
+    /**
+     * Get the number of lines logged, including those that weren't kept.
+     */
+    public long getLogCount() {
+        return outputLogs.getCount();
     }
     
     /**
      * Get output logs as a single formatted string.
      */
     public String getFormattedOutput() {
-        return String.join("\n", outputLogs);
+        return String.join("\n", formatLogs());
+    }
+    
+    /**
+     * Kept log lines with a marker where lines were dropped.
+     */
+    private List<String> formatLogs() {
+        List<String> lines = outputLogs.renderHead();
+        if (outputLogs.getDropped() > 0) {
+            lines.add("... (" + outputLogs.getDropped() + " more lines)");
+        }
+        lines.addAll(outputLogs.renderTail());
+        return lines;
     }
     
     /**
@@ -71,12 +210,16 @@ public class DiscordSimulationContext {
      */
     public MockPlayer spawnPlayer(String name, double x, double y, double z) {
         if (players.containsKey(name)) {
-            throw new RuntimeException("Player '" + name + "' already exists");
+            throw new QuillRuntimeError("Player '" + name + "' already exists");
         }
         
-        MockPlayer player = new MockPlayer(name, x, y, z);
+        MemoryMeter.charge(PLAYER_BYTES + ActorStore.ROW_BYTES + SpatialGrid.ENTRY_BYTES);
+        MockPlayer player = new MockPlayer(name, playerStore, x, y, z);
+        player.setWorld(getDefaultWorld());
+        player.setIndexed(true);
         players.put(name, player);
-        log("[SPAWN] Player '" + name + "' spawned at (" + x + ", " + y + ", " + z + ")");
+        playersById.put(player.getUniqueId(), player);
+        log(LogTemplate.SPAWN).str(name).num(x).num(y).num(z);
         return player;
     }
     
@@ -86,11 +229,18 @@ public class DiscordSimulationContext {
     public MockPlayer getPlayer(String name) {
         MockPlayer player = players.get(name);
         if (player == null) {
-            throw new RuntimeException("Player '" + name + "' not found");
+            throw new QuillRuntimeError("Player '" + name + "' not found");
         }
         return player;
     }
     
+    /**
+     * Get a player by UUID, or null if there is no such player.
+     */
+    public MockPlayer getPlayer(UUID uniqueId) {
+        return playersById.get(uniqueId);
+    }
+    
     /**
      * Check if a player exists.
      */
@@ -111,8 +261,93 @@ public class DiscordSimulationContext {
     public void removePlayer(String name) {
         MockPlayer player = players.remove(name);
         if (player != null) {
-            log("[REMOVE] Player '" + name + "' removed");
+            playersById.remove(player.getUniqueId());
+            player.setIndexed(false);
+            playerStore.release(player);
+            player.clearPotionEffects();
+            log(LogTemplate.REMOVE).str(name);
+        }
+    }
+    
+    /**
+     * Players within {@code radius} blocks of a point in the default world, nearest first.
+     */
+    public List<MockPlayer> getNearbyPlayers(double x, double y, double z, double radius) {
+        return getDefaultWorld().getNearbyPlayers(x, y, z, radius);
+    }
+    
+    /**
+     * The player closest to a point in the default world, or null if there are none.
+     */
+    public MockPlayer getNearestPlayer(double x, double y, double z) {
+        return getDefaultWorld().getNearestPlayer(x, y, z);
+    }
+    
+    // === Entity Management ===
+    
+    /**
+     * Spawn a mock entity in the default world.
+     */
+    public MockEntity spawnEntity(String type, double x, double y, double z) {
+        MockEntity entity = getDefaultWorld().spawnEntity(type, x, y, z);
+        log(LogTemplate.ENTITY).str(type).num(x).num(y).num(z);
+        return entity;
+    }
+    
+    /**
+     * Remove an entity.
+     */
+    public void removeEntity(MockEntity entity) {
+        if (entity.getWorld() != null) {
+            entity.getWorld().removeEntity(entity);
+        }
+    }
+    
+    /**
+     * Entities of every world, world by world.
+     */
+    public List<MockEntity> getAllEntities() {
+        List<MockEntity> all = new ArrayList<>();
+        for (MockWorld world : worlds.values()) {
+            all.addAll(world.entities);
         }
+        return all;
+    }
+    
+    /**
+     * Entities of the default world within {@code radius} blocks of a point, nearest first.
+     */
+    public List<MockEntity> getNearbyEntities(double x, double y, double z, double radius) {
+        return getDefaultWorld().getNearbyEntities(x, y, z, radius);
+    }
+    
+    // === Bulk Operations ===
+    
+    /**
+     * Heal every player to full health. Returns how many were healed.
+     */
+    public int healAll() {
+        return playerStore.healAll();
+    }
+    
+    /**
+     * Heal every player by {@code amount}, up to full health.
+     */
+    public int healAll(double amount) {
+        return playerStore.healAll(amount);
+    }
+    
+    /**
+     * Damage every player and entity of the default world inside a box.
+     * Entities left without health die and are removed.
+     * Returns {players hit, entities hit, entities killed}.
+     */
+    public int[] damageInRegion(double x1, double y1, double z1, double x2, double y2, double z2, double amount) {
+        MockWorld world = getDefaultWorld();
+        int playersHit = playerStore.damageInBox(world.getId(), x1, y1, z1, x2, y2, z2, amount);
+        int entitiesHit = entityStore.damageInBox(world.getId(), x1, y1, z1, x2, y2, z2, amount);
+        int killed = entitiesHit > 0 ? world.removeDeadEntities() : 0;
+        return new int[] { playersHit, entitiesHit, killed };
     }
     
     // === World Management ===
@@ -122,12 +357,12 @@ public class DiscordSimulationContext {
      */
     public MockWorld createWorld(String name) {
         if (worlds.containsKey(name)) {
-            throw new RuntimeException("World '" + name + "' already exists");
+            throw new QuillRuntimeError("World '" + name + "' already exists");
         }
         
-        MockWorld world = new MockWorld(name);
+        MockWorld world = new MockWorld(name, timers.getCurrentTick(), nextWorldId++, entityStore, blockTypes);
         worlds.put(name, world);
-        log("[WORLD] Created world '" + name + "'");
+        log(LogTemplate.WORLD_CREATED).str(name);
         return world;
     }
     
@@ -137,7 +372,7 @@ public class DiscordSimulationContext {
     public MockWorld getWorld(String name) {
         MockWorld world = worlds.get(name);
         if (world == null) {
-            throw new RuntimeException("World '" + name + "' not found");
+            throw new QuillRuntimeError("World '" + name + "' not found");
         }
         return world;
     }
@@ -163,6 +398,147 @@ public class DiscordSimulationContext {
         return new ArrayList<>(worlds.values());
     }
     
+    // === Ticks ===
+    
+    /**
+     * Advance the simulation by {@code ticks}. World time moves on, weather
+     * and potion effects wear off, and scheduled tasks run on the tick they
+     * were due, in order. Returns the new current tick.
+     *
+     * Time moves in steps that end on the next tick where anything is due.
+     * On that tick every world first runs its own events, then the context's
+     * tasks run, since those may call back into the script. A task can't
+     * advance time itself: the tick it runs on isn't finished yet.
+     */
+    public long tick(long ticks) {
+        if (ticking) {
+            throw new QuillRuntimeError("Cannot call tick() from a scheduled task");
+        }
+        long before = timers.getCurrentTick();
+        long target = before + Math.max(0, Math.min(ticks, TimerWheel.MAX_TICK - before));
+        
+        ticking = true;
+        try {
+            while (true) {
+                long next = Math.min(timers.nextOccupiedTick(), target);
+                for (MockWorld world : worlds.values()) {
+                    next = Math.min(next, world.events.nextOccupiedTick());
+                }
+                stepWorlds(next);
+                timers.advance(next - timers.getCurrentTick());
+                if (next >= target) {
+                    break;
+                }
+            }
+        } finally {
+            ticking = false;
+        }
+        
+        log(LogTemplate.TICK).integer(target - before).integer(target);
+        return target;
+    }
+    
+    /**
+     * Bring every world's own events up to {@code tick}, one world at a time
+     * in creation order. Anything a step does outside its world (logging, for
+     * one) is deferred and applied once every world has stepped.
+     */
+    private void stepWorlds(long tick) {
+        List<MockWorld> due = new ArrayList<>();
+        for (MockWorld world : worlds.values()) {
+            if (world.events.nextOccupiedTick() <= tick) {
+                due.add(world);
+            } else {
+                world.step(tick); // nothing to run, just moves the clock
+            }
+        }
+        
+        for (MockWorld world : due) {
+            world.step(tick);
+        }
+        
+        for (MockWorld world : due) {
+            for (Consumer<DiscordSimulationContext> action : world.deferred) {
+                action.accept(this);
+            }
+            world.deferred.clear();
+        }
+    }
+    
+    public long getCurrentTick() {
+        return timers.getCurrentTick();
+    }
+    
+    /**
+     * Run {@code action} once, {@code delay} ticks from now. Returns an ID for {@link #cancelTask}.
+     */
+    public long schedule(long delay, Runnable action) {
+        MemoryMeter.charge(TASK_BYTES);
+        long id = nextTaskId++;
+        scheduledTasks.put(id, timers.schedule(delay, () -> {
+            scheduledTasks.remove(id);
+            action.run();
+        }));
+        return id;
+    }
+    
+    /**
+     * Run {@code action} every {@code period} ticks until cancelled. Returns an ID for {@link #cancelTask}.
+     */
+    public long repeat(long period, Runnable action) {
+        MemoryMeter.charge(TASK_BYTES);
+        long id = nextTaskId++;
+        scheduledTasks.put(id, timers.repeat(period, action));
+        return id;
+    }
+    
+    /**
+     * Stop a scheduled task. Returns false if it already ran or doesn't exist.
+     */
+    public boolean cancelTask(long id) {
+        TimerWheel.Task task = scheduledTasks.remove(id);
+        if (task == null) {
+            return false;
+        }
+        task.cancel();
+        return true;
+    }
+    
+    /**
+     * Approximate memory held by scheduled tasks.
+     */
+    public long getSchedulerBytes() {
+        return timers.size() * TASK_BYTES;
+    }
+    
+    /**
+     * Set a world's weather, returning to clear after {@code duration} ticks
+     * (0 to keep it until changed).
+     */
+    public void setWeather(MockWorld world, String weather, long duration) {
+        world.setWeather(weather, duration);
+        log(LogTemplate.WEATHER).str(weather);
+    }
+    
+    /**
+     * Give a player a potion effect that wears off after {@code duration} ticks,
+     * replacing any effect of the same type.
+     */
+    public void addPotionEffect(MockPlayer player, String type, int duration, int amplifier) {
+        MockPotionEffect effect = new MockPotionEffect(type, duration, amplifier);
+        player.removePotionEffect(effect.getType());
+        
+        TimerWheel.Task expiry = timers.schedule(duration, () -> {
+            if (player.potionEffects.remove(effect.getType()) != null) {
+                player.potionExpiry.remove(effect.getType());
+                log(LogTemplate.POTION_EXPIRED).str(player.getName()).str(effect.getDisplayName());
+            }
+        });
+        player.potionEffects.put(effect.getType(), effect);
+        player.potionExpiry.put(effect.getType(), expiry);
+        log(LogTemplate.POTION).str(player.getName()).str(effect.getDisplayName()).integer(amplifier + 1).integer(duration);
+    }
+    
     // === Event Management ===
     
     /**
@@ -170,7 +546,7 @@ public class DiscordSimulationContext {
      */
     public void queueEvent(String eventName, Map<String, QuillValue> context) {
         eventQueue.offer(new SimulatedEvent(eventName, context));
-        log("[QUEUE] Event queued: " + eventName);
+        log(LogTemplate.QUEUE).str(eventName);
     }
     
     /**
@@ -207,8 +583,14 @@ public class DiscordSimulationContext {
      * Add a message to history (e.g., from sendmessage()).
      */
     public void addMessage(String playerName, String message) {
-        messageHistory.add(playerName + ": " + message);
-        log("[MSG] " + playerName + ": " + message);
+        String line = playerName + ": " + message;
+        messageHistory.add(line);
+        messageBytes += chargeOutput(line);
+        MockPlayer player = players.get(playerName);
+        if (player != null) {
+            player.sendMessage(message);
+        }
+        log(LogTemplate.MSG).str(playerName).str(message);
     }
     
     /**
@@ -223,6 +605,7 @@ public class DiscordSimulationContext {
      */
     public void clearMessageHistory() {
         messageHistory.clear();
+        messageBytes = 0;
     }
     
     // === Global State ===
@@ -287,7 +670,7 @@ public class DiscordSimulationContext {
         
         sb.append("Pending Events: ").append(eventQueue.size()).append("\n");
         sb.append("Messages: ").append(messageHistory.size()).append("\n");
-        sb.append("Output Logs: ").append(outputLogs.size()).append("\n");
+        sb.append("Output Logs: ").append(outputLogs.getCount()).append("\n");
         
         return sb.toString();
     }
@@ -300,9 +683,9 @@ public class DiscordSimulationContext {
         
         sb.append("```\n");
         
-        if (!outputLogs.isEmpty()) {
+        if (outputLogs.getCount() > 0) {
             sb.append("=== Execution Logs ===\n");
-            for (String log : outputLogs) {
+            for (String log : formatLogs()) {
                 sb.append(log).append("\n");
             }
             sb.append("\n");
@@ -363,122 +746,578 @@ public class DiscordSimulationContext {
     // === Mock Classes ===
     
     /**
-     * Mock player for simulation.
+     * Mock player for simulation. This is the one copy of a player's state;
+     * {@link #getView()} gives the same player through the mocks API.
      */
-    public static class MockPlayer {
+    public static class MockPlayer extends ActorStore.Actor {
         private String name;
-        private double x, y, z;
-        private double health;
-        private double maxHealth;
+        private final UUID uniqueId;
+        private MockWorld world;
+        private float yaw, pitch;
         private int hunger;
-        private Map<String, Object> inventory;
+        private final List<MockItemStack> inventory;
         private boolean flying;
-        private String gamemode;
+        private boolean allowFlight;
+        private boolean op;
+        private final List<String> receivedMessages = new ArrayList<>();
+        private boolean indexed; // set while the player is in a context, whose worlds index it
+        private final Map<String, MockPotionEffect> potionEffects = new HashMap<>();
+        private final Map<String, TimerWheel.Task> potionExpiry = new HashMap<>();
+        private me.kmathers.sudobot.quill.mocks.MockPlayer view;
         
         public MockPlayer(String name, double x, double y, double z) {
+            this(name, new ActorStore(1), x, y, z);
+        }
+        
+        MockPlayer(String name, ActorStore store, double x, double y, double z) {
+            super(store, x, y, z, 20.0, 0);
             this.name = name;
-            this.x = x;
-            this.y = y;
-            this.z = z;
-            this.health = 20.0;
-            this.maxHealth = 20.0;
+            this.uniqueId = offlineId(name);
             this.hunger = 20;
-            this.inventory = new HashMap<>();
+            this.inventory = new ArrayList<>();
             this.flying = false;
-            this.gamemode = "survival";
+        }
+        
+        /**
+         * The UUID a server in offline mode gives a player name, so the same
+         * name gets the same ID every run.
+         */
+        private static UUID offlineId(String name) {
+            return UUID.nameUUIDFromBytes(("OfflinePlayer:" + name).getBytes(java.nio.charset.StandardCharsets.UTF_8));
         }
         
         public String getName() { return name; }
-        public double getX() { return x; }
-        public double getY() { return y; }
-        public double getZ() { return z; }
-        public double getHealth() { return health; }
-        public double getMaxHealth() { return maxHealth; }
+        public UUID getUniqueId() { return uniqueId; }
+        public MockWorld getWorld() { return world; }
+        public float getYaw() { return yaw; }
+        public float getPitch() { return pitch; }
         public int getHunger() { return hunger; }
         public boolean isFlying() { return flying; }
-        public String getGamemode() { return gamemode; }
-        public Map<String, Object> getInventory() { return inventory; }
-        
-        public void setX(double x) { this.x = x; }
-        public void setY(double y) { this.y = y; }
-        public void setZ(double z) { this.z = z; }
-        public void setHealth(double health) { this.health = Math.max(0, Math.min(health, maxHealth)); }
-        public void setMaxHealth(double maxHealth) { this.maxHealth = maxHealth; }
+        public boolean getAllowFlight() { return allowFlight; }
+        public boolean isOp() { return op; }
+        public String getGamemode() { return ActorStore.GAMEMODES[store.gamemode[row]]; }
+        public List<MockItemStack> getInventory() { return inventory; }
+        
+        public void setX(double x) { place(x, getY(), getZ()); moved(); }
+        public void setY(double y) { place(getX(), y, getZ()); moved(); }
+        public void setZ(double z) { place(getX(), getY(), z); moved(); }
         public void setHunger(int hunger) { this.hunger = Math.max(0, Math.min(hunger, 20)); }
         public void setFlying(boolean flying) { this.flying = flying; }
-        public void setGamemode(String gamemode) { this.gamemode = gamemode; }
+        public void setOp(boolean op) { this.op = op; }
+        public void setGamemode(String gamemode) { store.gamemode[row] = ActorStore.gamemodeCode(gamemode); }
+        
+        public void setAllowFlight(boolean allowFlight) {
+            this.allowFlight = allowFlight;
+            if (!allowFlight) {
+                this.flying = false;
+            }
+        }
+        
+        public void setWorld(MockWorld world) {
+            if (indexed && this.world != null && this.world != world) {
+                this.world.playerIndex.remove(this);
+            }
+            this.world = world;
+            setWorldId(world == null ? -1 : world.getId());
+            moved();
+        }
+        
+        /**
+         * Put the player in its world's index, or take it out, as it joins or leaves a context.
+         */
+        void setIndexed(boolean indexed) {
+            if (!indexed && world != null) {
+                world.playerIndex.remove(this);
+            }
+            this.indexed = indexed;
+            moved();
+        }
         
         public void teleport(double x, double y, double z) {
-            this.x = x;
-            this.y = y;
-            this.z = z;
+            place(x, y, z);
+            moved();
         }
         
-        public void damage(double amount) {
-            setHealth(health - amount);
+        /**
+         * Move to a point in another world, facing the given way.
+         */
+        public void teleport(MockWorld world, double x, double y, double z, float yaw, float pitch) {
+            setWorld(world);
+            this.yaw = yaw;
+            this.pitch = pitch;
+            teleport(x, y, z);
         }
         
-        public void heal(double amount) {
-            setHealth(health + amount);
+        private void moved() {
+            if (indexed && world != null) {
+                world.playerIndex.put(this, getX(), getY(), getZ());
+            }
+        }
+        
+        public boolean hasPotionEffect(String type) {
+            return potionEffects.containsKey(type.toLowerCase());
+        }
+        
+        public Collection<MockPotionEffect> getPotionEffects() {
+            return new ArrayList<>(potionEffects.values());
+        }
+        
+        /**
+         * Add an effect that lasts until removed, replacing any of the same type.
+         * {@link DiscordSimulationContext#addPotionEffect} adds one that wears off.
+         */
+        public void addPotionEffect(MockPotionEffect effect) {
+            removePotionEffect(effect.getType());
+            potionEffects.put(effect.getType(), effect);
+        }
+        
+        public void removePotionEffect(String type) {
+            String key = type.toLowerCase();
+            potionEffects.remove(key);
+            TimerWheel.Task expiry = potionExpiry.remove(key);
+            if (expiry != null) {
+                expiry.cancel();
+            }
+        }
+        
+        public void clearPotionEffects() {
+            potionEffects.clear();
+            potionExpiry.values().forEach(TimerWheel.Task::cancel);
+            potionExpiry.clear();
         }
         
         public void giveItem(String itemId, int amount) {
-            inventory.put(itemId, (Integer) inventory.getOrDefault(itemId, 0) + amount);
+            giveItem(new MockItemStack(itemId, amount));
+        }
+        
+        /**
+         * Add a copy of a stack, merged into an existing stack of the same type.
+         */
+        public void giveItem(MockItemStack item) {
+            for (MockItemStack existing : inventory) {
+                if (existing.getType().equals(item.getType())) {
+                    existing.setAmount(existing.getAmount() + item.getAmount());
+                    return;
+                }
+            }
+            inventory.add(item.clone());
+        }
+        
+        public int countItem(String itemId) {
+            int count = 0;
+            for (MockItemStack item : inventory) {
+                if (item.getType().equalsIgnoreCase(itemId)) {
+                    count += item.getAmount();
+                }
+            }
+            return count;
         }
         
+        /**
+         * Take up to {@code amount} of an item, emptying its stacks in order.
+         */
         public void removeItem(String itemId, int amount) {
-            int current = (Integer) inventory.getOrDefault(itemId, 0);
-            if (current > amount) {
-                inventory.put(itemId, current - amount);
-            } else {
-                inventory.remove(itemId);
+            int remaining = amount;
+            Iterator<MockItemStack> stacks = inventory.iterator();
+            while (remaining > 0 && stacks.hasNext()) {
+                MockItemStack item = stacks.next();
+                if (!item.getType().equalsIgnoreCase(itemId)) {
+                    continue;
+                }
+                if (item.getAmount() <= remaining) {
+                    remaining -= item.getAmount();
+                    stacks.remove();
+                } else {
+                    item.setAmount(item.getAmount() - remaining);
+                    remaining = 0;
+                }
+            }
+        }
+        
+        public void clearInventory() {
+            inventory.clear();
+        }
+        
+        public void sendMessage(String message) {
+            receivedMessages.add(message);
+        }
+        
+        public List<String> getReceivedMessages() {
+            return new ArrayList<>(receivedMessages);
+        }
+        
+        public void clearReceivedMessages() {
+            receivedMessages.clear();
+        }
+        
+        /**
+         * This player through the mocks API, backed by the same state.
+         */
+        public me.kmathers.sudobot.quill.mocks.MockPlayer getView() {
+            if (view == null) {
+                view = new me.kmathers.sudobot.quill.mocks.MockPlayer(this);
             }
+            return view;
         }
         
         @Override
         public String toString() {
             return String.format("Player(%s | Health: %.1f | Pos: %.1f, %.1f, %.1f)",
-                name, health, x, y, z);
+                name, getHealth(), getX(), getY(), getZ());
+        }
+    }
+    
+    /**
+     * Mock entity for simulation. {@link #getView()} gives it through the mocks API.
+     */
+    public static class MockEntity extends ActorStore.Actor {
+        private final String type;
+        private final UUID uniqueId;
+        private MockWorld world;
+        private float yaw, pitch;
+        private boolean dead;
+        private String customName;
+        private boolean customNameVisible;
+        private me.kmathers.sudobot.quill.mocks.MockEntity view;
+        
+        public MockEntity(String type, double x, double y, double z) {
+            this(type, new ActorStore(1), x, y, z);
+        }
+        
+        MockEntity(String type, ActorStore store, double x, double y, double z) {
+            super(store, x, y, z, getDefaultHealth(type), 0);
+            this.type = type;
+            this.uniqueId = UUID.randomUUID();
+        }
+        
+        public String getType() { return type; }
+        public UUID getUniqueId() { return uniqueId; }
+        public MockWorld getWorld() { return world; }
+        public float getYaw() { return yaw; }
+        public float getPitch() { return pitch; }
+        public boolean isDead() { return dead; }
+        public String getCustomName() { return customName; }
+        public boolean isCustomNameVisible() { return customNameVisible; }
+        
+        public void setDead(boolean dead) { this.dead = dead; }
+        public void setCustomName(String customName) { this.customName = customName; }
+        public void setCustomNameVisible(boolean visible) { this.customNameVisible = visible; }
+        
+        /**
+         * Move to a point, possibly in another world, keeping the worlds' indexes in step.
+         * An entity that was never spawned only changes position.
+         */
+        public void teleport(MockWorld world, double x, double y, double z, float yaw, float pitch) {
+            MockWorld from = this.world;
+            boolean spawned = from != null && from.entityIndex.contains(this);
+            if (spawned && from != world) {
+                from.unlink(this);
+            }
+            
+            place(x, y, z);
+            this.world = world;
+            this.yaw = yaw;
+            this.pitch = pitch;
+            
+            if (spawned && world != null) {
+                if (from == world) {
+                    world.entityIndex.put(this, x, y, z);
+                } else {
+                    world.link(this);
+                }
+            }
+        }
+        
+        /**
+         * Remove the entity from its world, as when it dies.
+         */
+        public void remove() {
+            if (world != null) {
+                world.removeEntity(this);
+            }
+            dead = true;
+        }
+        
+        public me.kmathers.sudobot.quill.mocks.MockEntity getView() {
+            if (view == null) {
+                view = new me.kmathers.sudobot.quill.mocks.MockEntity(this);
+            }
+            return view;
+        }
+        
+        public static double getDefaultHealth(String type) {
+            switch (type.toLowerCase()) {
+                case "spider":
+                    return 16.0;
+                case "enderman":
+                    return 40.0;
+                case "cow":
+                case "pig":
+                case "sheep":
+                case "cat":
+                    return 10.0;
+                case "chicken":
+                    return 4.0;
+                case "horse":
+                    return 30.0;
+                case "wolf":
+                    return 8.0;
+                case "iron_golem":
+                    return 100.0;
+                default:
+                    return 20.0;
+            }
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("Entity(%s | Pos: %.1f, %.1f, %.1f)", type, getX(), getY(), getZ());
         }
     }
     
     /**
-     * Mock world for simulation.
+     * Mock world for simulation: its blocks, time, weather and entities.
+     * {@link #getView()} gives it through the mocks API.
      */
     public static class MockWorld {
         private String name;
+        private final int id; // assigned by the context, in creation order
         private long time;
+        private long timeSetAt; // tick on which time was last set
         private String weather;
-        private Map<String, Object> blocks;
+        private final BlockStore blocks;
+        private final BlockTypes blockTypes;
+        private final ActorStore entityStore;
+        private final List<MockEntity> entities = new ArrayList<>();
+        private final SpatialGrid<MockEntity> entityIndex = new SpatialGrid<>();
+        private final SpatialGrid<MockPlayer> playerIndex = new SpatialGrid<>(); // the context's players here
+        private final List<DroppedItem> droppedItems = new ArrayList<>();
+        private final TimerWheel events; // this world's own scheduled changes
+        private final List<Consumer<DiscordSimulationContext>> deferred = new ArrayList<>();
+        private TimerWheel.Task weatherExpiry;
+        private me.kmathers.sudobot.quill.mocks.MockWorld view;
         
         public MockWorld(String name) {
+            this(name, 0);
+        }
+        
+        public MockWorld(String name, long startTick) {
+            this(name, startTick, 0, new ActorStore(), new BlockTypes());
+        }
+        
+        private MockWorld(String name, long startTick, int id, ActorStore entityStore, BlockTypes blockTypes) {
             this.name = name;
+            this.id = id;
             this.time = 0;
+            this.timeSetAt = startTick;
             this.weather = "clear";
-            this.blocks = new HashMap<>();
+            this.blocks = new BlockStore();
+            this.blockTypes = blockTypes;
+            this.entityStore = entityStore;
+            this.events = new TimerWheel(startTick);
         }
         
         public String getName() { return name; }
-        public long getTime() { return time; }
+        public int getId() { return id; }
         public String getWeather() { return weather; }
         
-        public void setTime(long time) { this.time = time % 24000; }
-        public void setWeather(String weather) { this.weather = weather; }
+        public void setWeather(String weather) {
+            setWeather(weather, 0);
+        }
+        
+        /**
+         * Set the weather, returning to clear after {@code duration} ticks
+         * (0 to keep it until changed).
+         */
+        public void setWeather(String weather, long duration) {
+            if (weatherExpiry != null) {
+                weatherExpiry.cancel();
+                weatherExpiry = null;
+            }
+            this.weather = weather;
+            
+            if (duration > 0 && !weather.equals("clear")) {
+                weatherExpiry = events.schedule(duration, () -> {
+                    weatherExpiry = null;
+                    this.weather = "clear";
+                    defer(context -> context.log(LogTemplate.WEATHER).str("clear"));
+                });
+            }
+        }
+        
+        /**
+         * Ticks until the weather clears by itself, or 0 if it won't.
+         */
+        public long getWeatherRemaining() {
+            return weatherExpiry == null ? 0 : weatherExpiry.getDeadline() - events.getCurrentTick();
+        }
+        
+        /**
+         * Time of day, moved on by however many ticks have passed since it was set.
+         */
+        public long getTime() {
+            return (time + (events.getCurrentTick() - timeSetAt) % 24000) % 24000;
+        }
         
-        public void setBlock(double x, double y, double z, String blockType) {
-            String key = String.format("%.0f,%.0f,%.0f", x, y, z);
-            blocks.put(key, blockType);
+        public void setTime(long time) {
+            this.time = time % 24000;
+            this.timeSetAt = events.getCurrentTick();
         }
         
-        public String getBlock(double x, double y, double z) {
-            String key = String.format("%.0f,%.0f,%.0f", x, y, z);
-            return (String) blocks.getOrDefault(key, "air");
+        /**
+         * Run this world's events up to {@code tick}. Only touches this world;
+         * effects on anything else go through {@link #defer}.
+         */
+        void step(long tick) {
+            events.advance(tick - events.getCurrentTick());
+        }
+        
+        /**
+         * Queue an action on the rest of the simulation for after this world's step.
+         */
+        void defer(Consumer<DiscordSimulationContext> action) {
+            deferred.add(action);
+        }
+        
+        void reset() {
+            time = 0;
+            timeSetAt = 0;
+            weather = "clear";
+            weatherExpiry = null;
+            events.clear();
+            deferred.clear();
+            blocks.clear();
+            for (MockEntity entity : entities) {
+                entityStore.release(entity);
+                entity.dead = true;
+            }
+            entities.clear();
+            entityIndex.clear();
+            playerIndex.clear();
+            droppedItems.clear();
+        }
+        
+        public void setBlock(double x, double y, double z, short blockType) {
+            blocks.set(blockCoord(x), blockCoord(y), blockCoord(z), blockType);
+        }
+        
+        public short getBlock(double x, double y, double z) {
+            return blocks.get(blockCoord(x), blockCoord(y), blockCoord(z));
+        }
+        
+        public BlockStore getBlocks() {
+            return blocks;
+        }
+        
+        /**
+         * Names for the IDs in {@link #getBlocks()}; its context's table, for a world made by a context.
+         */
+        public BlockTypes getBlockTypes() {
+            return blockTypes;
+        }
+        
+        /**
+         * The block a coordinate falls in: its floor, as in Bukkit, so -0.5 is
+         * in block -1 and 0.7 in block 0. The one rule for turning a position
+         * into a block coordinate, used by the builtins and the mocks API alike.
+         */
+        public static int blockCoord(double value) {
+            return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, Math.floor(value)));
+        }
+        
+        // Entities
+        
+        public MockEntity spawnEntity(String type, double x, double y, double z) {
+            MemoryMeter.charge(ENTITY_BYTES + ActorStore.ROW_BYTES + SpatialGrid.ENTRY_BYTES);
+            MockEntity entity = new MockEntity(type, entityStore, x, y, z);
+            entity.world = this;
+            link(entity);
+            return entity;
+        }
+        
+        public boolean removeEntity(MockEntity entity) {
+            if (entity.world != this || !entityIndex.contains(entity)) {
+                return false;
+            }
+            unlink(entity);
+            entity.dead = true;
+            return true;
+        }
+        
+        public List<MockEntity> getEntities() {
+            return new ArrayList<>(entities);
+        }
+        
+        /**
+         * Entities within {@code radius} blocks of a point, nearest first.
+         */
+        public List<MockEntity> getNearbyEntities(double x, double y, double z, double radius) {
+            return entityIndex.within(x, y, z, radius);
+        }
+        
+        /**
+         * The context's players in this world within {@code radius} blocks of a point, nearest first.
+         */
+        public List<MockPlayer> getNearbyPlayers(double x, double y, double z, double radius) {
+            return playerIndex.within(x, y, z, radius);
+        }
+        
+        /**
+         * The context's player in this world closest to a point, or null if there are none.
+         */
+        public MockPlayer getNearestPlayer(double x, double y, double z) {
+            return playerIndex.nearest(x, y, z);
+        }
+        
+        /**
+         * Remove the entities whose health has run out. Returns how many died.
+         */
+        int removeDeadEntities() {
+            int before = entities.size();
+            entities.removeIf(entity -> {
+                if (entity.getHealth() > 0) {
+                    return false;
+                }
+                entityIndex.remove(entity);
+                entityStore.release(entity);
+                entity.dead = true;
+                return true;
+            });
+            return before - entities.size();
+        }
+        
+        private void link(MockEntity entity) {
+            entityStore.adopt(entity);
+            entity.setWorldId(id);
+            entities.add(entity);
+            entityIndex.put(entity, entity.getX(), entity.getY(), entity.getZ());
+        }
+        
+        private void unlink(MockEntity entity) {
+            entityIndex.remove(entity);
+            entities.remove(entity);
+            entityStore.release(entity);
+        }
+        
+        public void dropItem(DroppedItem item) {
+            droppedItems.add(item);
+        }
+        
+        public List<DroppedItem> getDroppedItems() {
+            return new ArrayList<>(droppedItems);
+        }
+        
+        public me.kmathers.sudobot.quill.mocks.MockWorld getView() {
+            if (view == null) {
+                view = new me.kmathers.sudobot.quill.mocks.MockWorld(this);
+            }
+            return view;
         }
         
         @Override
         public String toString() {
             return String.format("World(%s | Time: %d | Weather: %s)",
-                name, time, weather);
+                name, getTime(), weather);
         }
     }
 }
\ No newline at end of file
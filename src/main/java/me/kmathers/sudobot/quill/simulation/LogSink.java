@@ -0,0 +1,237 @@
+package me.kmathers.sudobot.quill.simulation;
+
+import me.kmathers.sudobot.quill.interpreter.MemoryMeter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed-size log that keeps the first {@code head} entries and the last
+ * {@code tail} entries of a run, plus a count of everything logged.
+ * Entries are a {@link LogTemplate} and its arguments, stored as primitives
+ * (or string references) in preallocated slots; text is built only when the
+ * log is rendered, so a script that logs in a loop allocates nothing per line.
+ *
+ * Usage: {@code sink.begin(LogTemplate.BLOCK).num(x).num(y).num(z).block(type);}
+ */
+public class LogSink {
+    public static final int DEFAULT_HEAD = 15;
+    public static final int DEFAULT_TAIL = 5;
+
+    private static final int MAX_ARGS = 9; // the most any template takes
+
+    private static final byte STRING = 0;
+    private static final byte DOUBLE = 1;
+    private static final byte LONG = 2;
+    private static final byte BOOLEAN = 3;
+    private static final byte BLOCK = 4;
+
+    private final int head;
+    private final int tail;
+    private final BlockTypes blockTypes;
+
+    private final LogTemplate[] templates;
+    private final int[] argCounts;
+    private final byte[] kinds;
+    private final long[] values;
+    private final String[] strings;
+
+    private long count;
+    private int slot = -1; // entry that arguments are being added to
+    private long stringBytes;
+
+    public LogSink(BlockTypes blockTypes) {
+        this(DEFAULT_HEAD, DEFAULT_TAIL, blockTypes);
+    }
+
+    /**
+     * @param blockTypes names for the block IDs passed to {@link #block}
+     */
+    public LogSink(int head, int tail, BlockTypes blockTypes) {
+        this.head = head;
+        this.blockTypes = blockTypes;
+        this.tail = Math.max(1, tail);
+        int slots = head + this.tail;
+        this.templates = new LogTemplate[slots];
+        this.argCounts = new int[slots];
+        this.kinds = new byte[slots * MAX_ARGS];
+        this.values = new long[slots * MAX_ARGS];
+        this.strings = new String[slots * MAX_ARGS];
+    }
+
+    // === Writing ===
+
+    /**
+     * Start a new entry. Its arguments follow with {@link #str}, {@link #num},
+     * {@link #integer}, {@link #bool} and {@link #block}, in placeholder order.
+     */
+    public LogSink begin(LogTemplate template) {
+        slot = slotFor(count++);
+        for (int i = slot * MAX_ARGS; i < (slot + 1) * MAX_ARGS; i++) {
+            if (strings[i] != null) {
+                stringBytes -= MemoryMeter.sizeOfString(strings[i]);
+                strings[i] = null;
+            }
+        }
+        templates[slot] = template;
+        argCounts[slot] = 0;
+        return this;
+    }
+
+    public LogSink str(String value) {
+        int index = nextArg(STRING);
+        if (index >= 0) {
+            strings[index] = value;
+            if (value != null) {
+                stringBytes += MemoryMeter.sizeOfString(value);
+            }
+        }
+        return this;
+    }
+
+    public LogSink num(double value) {
+        int index = nextArg(DOUBLE);
+        if (index >= 0) {
+            values[index] = Double.doubleToRawLongBits(value);
+        }
+        return this;
+    }
+
+    public LogSink integer(long value) {
+        int index = nextArg(LONG);
+        if (index >= 0) {
+            values[index] = value;
+        }
+        return this;
+    }
+
+    public LogSink bool(boolean value) {
+        int index = nextArg(BOOLEAN);
+        if (index >= 0) {
+            values[index] = value ? 1 : 0;
+        }
+        return this;
+    }
+
+    /**
+     * A block ID from the sink's {@link BlockTypes}, shown as the block's name.
+     */
+    public LogSink block(short type) {
+        int index = nextArg(BLOCK);
+        if (index >= 0) {
+            values[index] = type;
+        }
+        return this;
+    }
+
+    private int nextArg(byte kind) {
+        if (slot < 0 || argCounts[slot] >= MAX_ARGS) {
+            return -1;
+        }
+        int index = slot * MAX_ARGS + argCounts[slot]++;
+        kinds[index] = kind;
+        return index;
+    }
+
+    /**
+     * The first entries fill the head slots; after that the tail slots are reused in a ring.
+     */
+    private int slotFor(long entry) {
+        if (entry < head) {
+            return (int) entry;
+        }
+        return head + (int) ((entry - head) % tail);
+    }
+
+    public void clear() {
+        count = 0;
+        slot = -1;
+        stringBytes = 0;
+        java.util.Arrays.fill(templates, null);
+        java.util.Arrays.fill(strings, null);
+    }
+
+    // === Reading ===
+
+    /**
+     * Total number of entries logged, including those no longer kept.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Number of entries logged between the head and the tail that were dropped.
+     */
+    public long getDropped() {
+        return Math.max(0, count - head - tail);
+    }
+
+    public List<String> renderHead() {
+        return render(0, Math.min(count, head));
+    }
+
+    public List<String> renderTail() {
+        return render(Math.max(head, count - tail), count);
+    }
+
+    /**
+     * Every entry still kept, in order, without a marker for the dropped ones.
+     */
+    public List<String> renderAll() {
+        List<String> lines = renderHead();
+        lines.addAll(renderTail());
+        return lines;
+    }
+
+    private List<String> render(long from, long to) {
+        List<String> lines = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        for (long entry = from; entry < to; entry++) {
+            sb.setLength(0);
+            format(slotFor(entry), sb);
+            lines.add(sb.toString());
+        }
+        return lines;
+    }
+
+    private void format(int slot, StringBuilder sb) {
+        String[] parts = templates[slot].parts();
+        sb.append(parts[0]);
+        for (int i = 1; i < parts.length; i++) {
+            int arg = i - 1;
+            if (arg < argCounts[slot]) {
+                appendArg(slot * MAX_ARGS + arg, sb);
+            }
+            sb.append(parts[i]);
+        }
+    }
+
+    private void appendArg(int index, StringBuilder sb) {
+        switch (kinds[index]) {
+            case STRING:
+                sb.append(strings[index]);
+                break;
+            case DOUBLE:
+                sb.append(Double.longBitsToDouble(values[index]));
+                break;
+            case LONG:
+                sb.append(values[index]);
+                break;
+            case BLOCK:
+                sb.append(blockTypes.nameOf((short) values[index]));
+                break;
+            default:
+                sb.append(values[index] != 0);
+                break;
+        }
+    }
+
+    /**
+     * Approximate memory held by the buffer, which stays the same however much is logged.
+     */
+    public long getRetainedBytes() {
+        int slots = templates.length;
+        return slots * (MemoryMeter.REFERENCE_BYTES + 4 + MAX_ARGS * (1 + 8 + MemoryMeter.REFERENCE_BYTES)) + stringBytes;
+    }
+}
@@ -0,0 +1,73 @@
+package me.kmathers.sudobot.quill.simulation;
+
+/**
+ * Message shapes for the simulation log. Each {} is filled, in order, by an
+ * argument recorded with the entry; the text is only built when the log is shown.
+ */
+public enum LogTemplate {
+    TEXT("{}"),
+    LOG("[LOG] {}"),
+
+    // === Simulation ===
+    WORLD_CREATED("[WORLD] Created world '{}'"),
+    SPAWN("[SPAWN] Player '{}' spawned at ({}, {}, {})"),
+    REMOVE("[REMOVE] Player '{}' removed"),
+    QUEUE("[QUEUE] Event queued: {}"),
+    MSG("[MSG] {}: {}"),
+
+    // === Interpreter ===
+    WAIT("[WAIT] {} ticks"),
+    TICK("[TICK] Advanced {} ticks to tick {}"),
+    TASK_ERROR("[ERROR] Error in scheduled task: {}"),
+    EVENT_REGISTERED("[EVENT] Registered handler for event: {}"),
+    TRIGGER("[TRIGGER] Event: {}"),
+    EVENT_ERROR("[ERROR] Error in event handler {}: {}"),
+    EVENT_LIMIT("[WARNING] Event processing stopped after {} iterations"),
+    NOT_MEMOIZED("[MEMO] Function '{}' is not pure and will not be memoized"),
+
+    // === Players ===
+    TELEPORT("[TELEPORT] {} teleported to ({}, {}, {})"),
+    GIVE("[GIVE] {} received {}x {}"),
+    REMOVE_ITEM("[REMOVE_ITEM] {} lost {}x {}"),
+    HEALTH("[HEALTH] {} health set to {}"),
+    HUNGER("[HUNGER] {} hunger set to {}"),
+    GAMEMODE("[GAMEMODE] {} gamemode set to {}"),
+    HEAL("[HEAL] {} healed to full health"),
+    HEAL_ALL("[HEAL] Healed {} players"),
+    KILL("[KILL] {} was killed"),
+    FLYING("[FLYING] {} flying set to {}"),
+    DAMAGE("[DAMAGE] {} took {} damage"),
+    DAMAGE_REGION("[DAMAGE] {} players and {} entities took {} damage in ({}, {}, {}) to ({}, {}, {})"),
+    ENTITIES_DIED("[DEATH] {} entities died"),
+    POTION("[POTION] {} received {} {} for {} ticks"),
+    POTION_EXPIRED("[POTION] {} no longer has {}"),
+
+    // === World ===
+    BLOCK("[BLOCK] Set block at ({}, {}, {}) to {}"),
+    BREAK("[BREAK] Broke block at ({}, {}, {})"),
+    TIME("[TIME] World time set to {}"),
+    WEATHER("[WEATHER] Weather set to {}"),
+    BROADCAST("[BROADCAST] {}"),
+    ENTITY("[ENTITY] Spawned {} at ({}, {}, {})"),
+    FILL("[FILL] Filled ({}, {}, {}) to ({}, {}, {}) with {} ({} blocks)"),
+    REPLACE("[REPLACE] Replaced {} {} with {} in ({}, {}, {}) to ({}, {}, {})"),
+    COPY("[COPY] Copied ({}, {}, {}) to ({}, {}, {}) ({} blocks)"),
+    PASTE("[PASTE] Pasted {}x{}x{} region at ({}, {}, {})");
+
+    private final String[] parts;
+
+    LogTemplate(String pattern) {
+        this.parts = pattern.split("\\{}", -1);
+    }
+
+    /**
+     * Text around the placeholders: one more part than there are arguments.
+     */
+    String[] parts() {
+        return parts;
+    }
+
+    public int getArity() {
+        return parts.length - 1;
+    }
+}
@@ -0,0 +1,249 @@
+package me.kmathers.sudobot.quill.simulation;
+
+import me.kmathers.sudobot.quill.interpreter.MemoryMeter;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Uniform spatial hash over positioned objects (players, entities), kept up
+ * to date as they move. Space is cut into cubes of {@link #CELL_SIZE} blocks
+ * and each occupied cube lists its objects, so a radius query only looks at
+ * the cubes it overlaps instead of every object. When a query would touch
+ * more cubes than are occupied, it walks the occupied ones instead.
+ *
+ * Results come back nearest first, with ties in the order objects were added,
+ * so scripts see the same answer every run.
+ */
+public class SpatialGrid<T> {
+    public static final double CELL_SIZE = 16;
+
+    // Rough size of one object's entry: its Entry, the map entry and the cell list slot
+    public static final long ENTRY_BYTES = MemoryMeter.VALUE_BYTES + 5 * 8 + MemoryMeter.ENTRY_BYTES + MemoryMeter.REFERENCE_BYTES;
+
+    private static final int CELL_BITS = 21;
+    private static final long CELL_MASK = (1L << CELL_BITS) - 1;
+
+    private final Map<Long, List<Entry<T>>> cells = new HashMap<>();
+    private final Map<T, Entry<T>> entries = new IdentityHashMap<>();
+    private long nextSequence;
+
+    private static final class Entry<T> {
+        final T item;
+        final long sequence;
+        double x, y, z;
+        long cell;
+
+        Entry(T item, long sequence) {
+            this.item = item;
+            this.sequence = sequence;
+        }
+    }
+
+    // === Updates ===
+
+    /**
+     * Add an object, or move it if it's already in the grid.
+     */
+    public void put(T item, double x, double y, double z) {
+        Entry<T> entry = entries.get(item);
+        long cell = cellKey(cellOf(x), cellOf(y), cellOf(z));
+
+        if (entry == null) {
+            entry = new Entry<>(item, nextSequence++);
+            entries.put(item, entry);
+        } else if (entry.cell != cell) {
+            unlink(entry);
+        } else {
+            entry.x = x;
+            entry.y = y;
+            entry.z = z;
+            return;
+        }
+
+        entry.x = x;
+        entry.y = y;
+        entry.z = z;
+        entry.cell = cell;
+        cells.computeIfAbsent(cell, key -> new ArrayList<>(4)).add(entry);
+    }
+
+    public boolean remove(T item) {
+        Entry<T> entry = entries.remove(item);
+        if (entry == null) {
+            return false;
+        }
+        unlink(entry);
+        return true;
+    }
+
+    public void clear() {
+        cells.clear();
+        entries.clear();
+        nextSequence = 0;
+    }
+
+    public boolean contains(T item) {
+        return entries.containsKey(item);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Approximate memory held by the grid's cells and entries.
+     */
+    public long getRetainedBytes() {
+        return cells.size() * (MemoryMeter.ENTRY_BYTES + MemoryMeter.LIST_BYTES) + entries.size() * ENTRY_BYTES;
+    }
+
+    private void unlink(Entry<T> entry) {
+        List<Entry<T>> list = cells.get(entry.cell);
+        int index = list.indexOf(entry);
+        int lastIndex = list.size() - 1;
+        list.set(index, list.get(lastIndex));
+        list.remove(lastIndex);
+        if (list.isEmpty()) {
+            cells.remove(entry.cell);
+        }
+    }
+
+    // === Queries ===
+
+    /**
+     * Objects within {@code radius} blocks of a point, nearest first.
+     */
+    public List<T> within(double x, double y, double z, double radius) {
+        if (!(radius >= 0) || entries.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Entry<T>> found = new ArrayList<>();
+        double limit = radius * radius;
+
+        long minX = cellOf(x - radius), maxX = cellOf(x + radius);
+        long minY = cellOf(y - radius), maxY = cellOf(y + radius);
+        long minZ = cellOf(z - radius), maxZ = cellOf(z + radius);
+        double span = ((double) maxX - minX + 1) * ((double) maxY - minY + 1) * ((double) maxZ - minZ + 1);
+
+        if (span > cells.size()) {
+            for (List<Entry<T>> list : cells.values()) {
+                collect(list, x, y, z, limit, found);
+            }
+        } else {
+            for (long cx = minX; cx <= maxX; cx++) {
+                for (long cy = minY; cy <= maxY; cy++) {
+                    for (long cz = minZ; cz <= maxZ; cz++) {
+                        List<Entry<T>> list = cells.get(cellKey(cx, cy, cz));
+                        if (list != null) {
+                            collect(list, x, y, z, limit, found);
+                        }
+                    }
+                }
+            }
+        }
+
+        found.sort(Comparator.<Entry<T>>comparingDouble(e -> distanceSquared(e, x, y, z))
+                .thenComparingLong(e -> e.sequence));
+        List<T> items = new ArrayList<>(found.size());
+        for (Entry<T> entry : found) {
+            items.add(entry.item);
+        }
+        return items;
+    }
+
+    /**
+     * The object closest to a point, or null if the grid is empty.
+     * Searches outward one shell of cells at a time and stops once no
+     * further shell could hold anything closer.
+     */
+    public T nearest(double x, double y, double z) {
+        if (entries.isEmpty()) {
+            return null;
+        }
+
+        long cx = cellOf(x), cy = cellOf(y), cz = cellOf(z);
+        Entry<T> best = null;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        long visited = 0;
+
+        for (long ring = 0; ; ring++) {
+            for (long dx = -ring; dx <= ring; dx++) {
+                for (long dy = -ring; dy <= ring; dy++) {
+                    boolean xyEdge = Math.abs(dx) == ring || Math.abs(dy) == ring;
+                    for (long dz = -ring; dz <= ring; dz += xyEdge ? 1 : Math.max(1, 2 * ring)) {
+                        visited++;
+                        List<Entry<T>> list = cells.get(cellKey(cx + dx, cy + dy, cz + dz));
+                        if (list == null) {
+                            continue;
+                        }
+                        for (Entry<T> entry : list) {
+                            double distance = distanceSquared(entry, x, y, z);
+                            if (closer(entry, distance, best, bestDistance)) {
+                                best = entry;
+                                bestDistance = distance;
+                            }
+                        }
+                    }
+                }
+            }
+
+            // Anything in a further shell is at least ring * CELL_SIZE away
+            double reach = ring * CELL_SIZE;
+            if (best != null && bestDistance <= reach * reach) {
+                return best.item;
+            }
+            if (visited > cells.size()) {
+                // Everything is far away; scanning all of it is cheaper than more shells
+                return nearestByScan(x, y, z);
+            }
+        }
+    }
+
+    private T nearestByScan(double x, double y, double z) {
+        Entry<T> best = null;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (Entry<T> entry : entries.values()) {
+            double distance = distanceSquared(entry, x, y, z);
+            if (closer(entry, distance, best, bestDistance)) {
+                best = entry;
+                bestDistance = distance;
+            }
+        }
+        return best == null ? null : best.item;
+    }
+
+    private static boolean closer(Entry<?> entry, double distance, Entry<?> best, double bestDistance) {
+        return best == null || distance < bestDistance
+            || (distance == bestDistance && entry.sequence < best.sequence);
+    }
+
+    private static <T> void collect(List<Entry<T>> list, double x, double y, double z, double limit, List<Entry<T>> found) {
+        for (Entry<T> entry : list) {
+            if (distanceSquared(entry, x, y, z) <= limit) {
+                found.add(entry);
+            }
+        }
+    }
+
+    private static double distanceSquared(Entry<?> entry, double x, double y, double z) {
+        double dx = entry.x - x, dy = entry.y - y, dz = entry.z - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    private static long cellOf(double coordinate) {
+        return (long) Math.floor(coordinate / CELL_SIZE);
+    }
+
+    /**
+     * Far-apart cells can share a key once coordinates wrap; that only costs
+     * extra distance checks, never a wrong answer.
+     */
+    private static long cellKey(long cx, long cy, long cz) {
+        return ((cx & CELL_MASK) << (2 * CELL_BITS)) | ((cy & CELL_MASK) << CELL_BITS) | (cz & CELL_MASK);
+    }
+}
@@ -0,0 +1,238 @@
+package me.kmathers.sudobot.quill.simulation;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Hierarchical timer wheel keyed by simulation tick. Level 0 has a slot for
+ * each of the next 64 ticks, level 1 a slot for each of the next 64 blocks of
+ * 64 ticks, and so on. A task sits at the level of the highest 6-bit group in
+ * which its deadline differs from the current tick, and moves down a level
+ * ("cascades") when the current tick reaches its slot.
+ *
+ * {@link #advance} jumps straight to the next occupied slot using a bitmap
+ * per level, so skipping a million empty ticks costs a handful of bit
+ * operations; the work done is proportional to the tasks that come due.
+ * Tasks due on the same tick run in the order they were scheduled.
+ */
+public class TimerWheel {
+    public static final long MAX_TICK = (1L << 60) - 1;
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int LEVELS = 10; // 10 levels of 6 bits cover MAX_TICK
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private final List<Task>[][] wheel = new List[LEVELS][SLOTS];
+    private final long[] occupied = new long[LEVELS];
+    private long now;
+    private long nextSequence;
+    private int size;
+
+    public TimerWheel() {
+        this(0);
+    }
+
+    /**
+     * A wheel whose clock starts at {@code startTick}, for joining a simulation already under way.
+     */
+    public TimerWheel(long startTick) {
+        this.now = Math.max(0, Math.min(startTick, MAX_TICK));
+    }
+
+    /**
+     * A scheduled action. Cancelling it stops it (and any repeats) from running.
+     */
+    public static final class Task {
+        private final Runnable action;
+        private final long period; // 0 for one-shot tasks
+        private long deadline;
+        private long sequence;
+        private boolean cancelled;
+
+        private Task(Runnable action, long period) {
+            this.action = action;
+            this.period = period;
+        }
+
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+    }
+
+    // === Scheduling ===
+
+    /**
+     * Run {@code action} once, {@code delay} ticks from now (at least one).
+     */
+    public Task schedule(long delay, Runnable action) {
+        Task task = new Task(action, 0);
+        add(task, now + clampDelay(delay));
+        return task;
+    }
+
+    /**
+     * Run {@code action} every {@code period} ticks, starting one period from now.
+     */
+    public Task repeat(long period, Runnable action) {
+        long ticks = clampDelay(period);
+        Task task = new Task(action, ticks);
+        add(task, now + ticks);
+        return task;
+    }
+
+    private long clampDelay(long delay) {
+        return Math.max(1, Math.min(delay, MAX_TICK - now));
+    }
+
+    private void add(Task task, long deadline) {
+        task.deadline = deadline;
+        task.sequence = nextSequence++;
+        size++;
+        place(task);
+    }
+
+    /**
+     * File a task under the level where its deadline first differs from now.
+     */
+    private void place(Task task) {
+        long differing = task.deadline ^ now;
+        int level = (63 - Long.numberOfLeadingZeros(differing)) / BITS;
+        int slot = (int) (task.deadline >>> (level * BITS)) & (SLOTS - 1);
+
+        List<Task> bucket = wheel[level][slot];
+        if (bucket == null) {
+            bucket = new ArrayList<>(4);
+            wheel[level][slot] = bucket;
+        }
+        bucket.add(task);
+        occupied[level] |= 1L << slot;
+    }
+
+    // === Advancing ===
+
+    /**
+     * Move time forward by {@code ticks}, running every task that comes due
+     * on the way, in deadline order. Tasks may schedule more tasks; those run
+     * too if they fall within the advanced range.
+     */
+    public void advance(long ticks) {
+        long target = now + Math.max(0, Math.min(ticks, MAX_TICK - now));
+
+        while (true) {
+            long next = nextOccupiedTick();
+            if (next > target) {
+                now = target;
+                return;
+            }
+            now = next;
+
+            // Higher levels whose slot starts now move down, possibly straight into this tick
+            List<Task> due = new ArrayList<>();
+            for (int level = LEVELS - 1; level > 0; level--) {
+                List<Task> bucket = take(level, groupOf(now, level));
+                if (bucket == null) {
+                    continue;
+                }
+                for (Task task : bucket) {
+                    if (task.cancelled) {
+                        size--;
+                    } else if (task.deadline == now) {
+                        due.add(task);
+                    } else {
+                        place(task);
+                    }
+                }
+            }
+            List<Task> current = take(0, groupOf(now, 0));
+            if (current != null) {
+                due.addAll(current);
+            }
+
+            due.sort(Comparator.comparingLong(task -> task.sequence));
+            for (Task task : due) {
+                size--;
+                if (task.cancelled) {
+                    continue;
+                }
+                if (task.period > 0 && task.period <= MAX_TICK - now) {
+                    add(task, now + task.period);
+                }
+                task.action.run();
+            }
+        }
+    }
+
+    /**
+     * Earliest tick at which some slot needs attention: the exact deadline for
+     * level 0, or the start of the slot's block for higher levels. Nothing
+     * runs before it, so other clocks can be stepped up to it independently.
+     * Long.MAX_VALUE if nothing is scheduled.
+     */
+    public long nextOccupiedTick() {
+        long best = Long.MAX_VALUE;
+        for (int level = 0; level < LEVELS; level++) {
+            long slots = occupied[level];
+            if (slots == 0) {
+                continue;
+            }
+            int current = groupOf(now, level);
+            long later = current == SLOTS - 1 ? 0 : slots & (-1L << (current + 1));
+            if (later == 0) {
+                continue;
+            }
+            int slot = Long.numberOfTrailingZeros(later);
+            int shift = level * BITS;
+            long blockMask = (1L << (shift + BITS)) - 1;
+            long start = (now & ~blockMask) | ((long) slot << shift);
+            best = Math.min(best, start);
+        }
+        return best;
+    }
+
+    private List<Task> take(int level, int slot) {
+        if ((occupied[level] & (1L << slot)) == 0) {
+            return null;
+        }
+        List<Task> bucket = wheel[level][slot];
+        wheel[level][slot] = null;
+        occupied[level] &= ~(1L << slot);
+        return bucket;
+    }
+
+    private static int groupOf(long tick, int level) {
+        return (int) (tick >>> (level * BITS)) & (SLOTS - 1);
+    }
+
+    // === State ===
+
+    public long getCurrentTick() {
+        return now;
+    }
+
+    /**
+     * Tasks waiting to run, including cancelled ones not yet swept out.
+     */
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        for (List<Task>[] level : wheel) {
+            java.util.Arrays.fill(level, null);
+        }
+        java.util.Arrays.fill(occupied, 0);
+        now = 0;
+        nextSequence = 0;
+        size = 0;
+    }
+}
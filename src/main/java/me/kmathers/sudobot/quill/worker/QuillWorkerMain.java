@@ -0,0 +1,160 @@
+package me.kmathers.sudobot.quill.worker;
+
+import me.kmathers.sudobot.quill.interpreter.CancellationToken;
+import me.kmathers.sudobot.quill.interpreter.DiscordQuillInterpreter;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Entry point of an out-of-process Quill worker.
+ * Connects back to the bot over a Unix domain socket, then runs one script at
+ * a time and answers each RUN frame with a RESULT frame. A WARMUP frame runs
+ * {@link ScriptWarmup} on the same thread scripts run on, then answers with
+ * READY; the bot sends it before any jobs. Exits when the bot
+ * closes the connection. Deliberately doesn't touch Config, so a worker never
+ * loads the bot's tokens.
+ *
+ * Usage: QuillWorkerMain <socket path> <max call depth>
+ */
+public class QuillWorkerMain {
+
+    private final SocketChannel channel;
+    private final ScriptRunner runner;
+    private final BlockingQueue<Job> pending = new LinkedBlockingQueue<>();
+    private final Map<Long, Job> jobs = new ConcurrentHashMap<>();
+
+    // Job IDs from the bot start at 1
+    private static final long WARMUP_JOB = -1;
+
+    private static class Job {
+        final long id;
+        final ScriptRequest request;
+        final int warmupIterations;
+        final CancellationToken token = new CancellationToken();
+
+        Job(long id, ScriptRequest request) {
+            this(id, request, 0);
+        }
+
+        Job(long id, ScriptRequest request, int warmupIterations) {
+            this.id = id;
+            this.request = request;
+            this.warmupIterations = warmupIterations;
+        }
+    }
+
+    private QuillWorkerMain(SocketChannel channel, int maxCallDepth) {
+        this.channel = channel;
+        this.runner = new ScriptRunner(1, maxCallDepth);
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: QuillWorkerMain <socket path> <max call depth>");
+            System.exit(2);
+        }
+
+        int maxCallDepth = Integer.parseInt(args[1]);
+        SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(args[0]));
+        QuillWorkerMain worker = new QuillWorkerMain(channel, maxCallDepth);
+
+        Thread scripts = new Thread(null, worker::runScripts, "quill-script", DiscordQuillInterpreter.stackSizeFor(maxCallDepth));
+        scripts.setDaemon(true);
+        scripts.start();
+
+        try {
+            worker.readFrames();
+        } catch (EOFException e) {
+            // The bot closed the connection
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Reader loop: queue RUN and WARMUP frames and apply CANCEL frames to queued or running jobs.
+     */
+    private void readFrames() throws IOException {
+        while (true) {
+            WorkerProtocol.Frame frame = WorkerProtocol.readFrame(channel);
+            DataInputStream in = frame.getPayload();
+
+            switch (frame.getType()) {
+                case WorkerProtocol.RUN:
+                    Job run = new Job(in.readLong(), ScriptRequest.read(in));
+                    jobs.put(run.id, run);
+                    pending.add(run);
+                    break;
+                case WorkerProtocol.CANCEL:
+                    Job cancel = jobs.get(in.readLong());
+                    String reason = WorkerProtocol.readString(in);
+                    if (cancel != null) {
+                        cancel.token.cancel(reason);
+                    }
+                    break;
+                case WorkerProtocol.WARMUP:
+                    int iterations = in.readInt();
+                    pending.add(new Job(WARMUP_JOB, ScriptRequest.read(in), iterations));
+                    break;
+                default:
+                    throw new IOException("Unexpected frame type " + frame.getType());
+            }
+        }
+    }
+
+    /**
+     * Script loop: run queued jobs one at a time and send back their results.
+     */
+    private void runScripts() {
+        try {
+            while (true) {
+                Job job = pending.take();
+
+                if (job.id == WARMUP_JOB) {
+                    ScriptWarmup.run(runner, job.request, job.warmupIterations);
+                    WorkerProtocol.writeFrame(channel, WorkerProtocol.READY, out -> {});
+                    continue;
+                }
+
+                ScriptResult result;
+                try {
+                    result = runner.run(job.request, job.token);
+                } catch (Throwable e) {
+                    result = ScriptResult.error(ScriptResult.Status.UNKNOWN_ERROR, String.valueOf(e));
+                } finally {
+                    jobs.remove(job.id);
+                }
+
+                try {
+                    sendResult(job.id, result);
+                } catch (WorkerProtocol.FrameTooLargeException e) {
+                    // Nothing was sent, so report the failure in its place
+                    ScriptResult tooLarge = ScriptResult.error(ScriptResult.Status.RUNTIME_ERROR,
+                            "Script result is too large to send back (over " +
+                            WorkerProtocol.MAX_FRAME_BYTES / (1024 * 1024) + " MB)");
+                    tooLarge.setUsage(result.getFuel(), result.getCpuNanos(), result.getPeakMemory());
+                    sendResult(job.id, tooLarge);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            System.err.println("Quill worker lost its connection: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private void sendResult(long jobId, ScriptResult result) throws IOException {
+        WorkerProtocol.writeFrame(channel, WorkerProtocol.RESULT, out -> {
+            out.writeLong(jobId);
+            result.write(out);
+        });
+    }
+}
@@ -0,0 +1,48 @@
+package me.kmathers.sudobot.quill.worker;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * A Quill script to run, with its PLAYER instructions and interpreter settings.
+ */
+public class ScriptRequest {
+    private final String instructions;
+    private final String code;
+    private final boolean autoMemoize;
+    private final int jitThreshold;
+    private final long memoryBudget;
+
+    public ScriptRequest(String instructions, String code, boolean autoMemoize, int jitThreshold, long memoryBudget) {
+        this.instructions = instructions;
+        this.code = code;
+        this.autoMemoize = autoMemoize;
+        this.jitThreshold = jitThreshold;
+        this.memoryBudget = memoryBudget;
+    }
+
+    public String getInstructions() { return instructions; }
+    public String getCode() { return code; }
+    public boolean isAutoMemoize() { return autoMemoize; }
+    public int getJitThreshold() { return jitThreshold; }
+    public long getMemoryBudget() { return memoryBudget; }
+
+    public void write(DataOutputStream out) throws IOException {
+        WorkerProtocol.writeString(out, instructions);
+        WorkerProtocol.writeString(out, code);
+        out.writeBoolean(autoMemoize);
+        out.writeInt(jitThreshold);
+        out.writeLong(memoryBudget);
+    }
+
+    public static ScriptRequest read(DataInputStream in) throws IOException {
+        return new ScriptRequest(
+            WorkerProtocol.readString(in),
+            WorkerProtocol.readString(in),
+            in.readBoolean(),
+            in.readInt(),
+            in.readLong()
+        );
+    }
+}
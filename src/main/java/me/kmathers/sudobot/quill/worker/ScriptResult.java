@@ -0,0 +1,235 @@
+package me.kmathers.sudobot.quill.worker;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything the &&quill reply needs from a finished script, detached from
+ * the interpreter so it can be built in a worker process and sent back.
+ */
+public class ScriptResult {
+
+    public enum Status {
+        SUCCESS,
+        LEXER_ERROR,
+        PARSE_ERROR,
+        RUNTIME_ERROR,
+        CANCELLED,
+        UNKNOWN_ERROR
+    }
+
+    private final Status status;
+    private String message;
+    private int line;
+    private int column;
+    private List<String> callStack = new ArrayList<>();
+
+    private List<String> logs = new ArrayList<>();
+    private List<String> logTail = new ArrayList<>();
+    private long logCount;
+    private List<String> messages = new ArrayList<>();
+    private List<PlayerState> players = new ArrayList<>();
+    private List<WorldState> worlds = new ArrayList<>();
+    private String memoSummary;
+    private String jitSummary;
+
+    private long fuel;
+    private long cpuNanos;
+    private long peakMemory;
+
+    public ScriptResult(Status status) {
+        this.status = status;
+    }
+
+    public static ScriptResult error(Status status, String message) {
+        ScriptResult result = new ScriptResult(status);
+        result.message = message;
+        return result;
+    }
+
+    // === Accessors ===
+
+    public Status getStatus() { return status; }
+    public String getMessage() { return message; }
+    public boolean hasLocation() { return line > 0; }
+    public int getLine() { return line; }
+    public int getColumn() { return column; }
+    public List<String> getCallStack() { return Collections.unmodifiableList(callStack); }
+    public List<String> getLogs() { return Collections.unmodifiableList(logs); }
+    public List<String> getLogTail() { return Collections.unmodifiableList(logTail); }
+    public long getLogCount() { return logCount; }
+    public List<String> getMessages() { return Collections.unmodifiableList(messages); }
+    public List<PlayerState> getPlayers() { return Collections.unmodifiableList(players); }
+    public List<WorldState> getWorlds() { return Collections.unmodifiableList(worlds); }
+    public String getMemoSummary() { return memoSummary; }
+    public String getJitSummary() { return jitSummary; }
+    public long getFuel() { return fuel; }
+    public long getCpuNanos() { return cpuNanos; }
+    public long getPeakMemory() { return peakMemory; }
+
+    public void setMessage(String message) { this.message = message; }
+    public void setMemoSummary(String memoSummary) { this.memoSummary = memoSummary; }
+    public void setJitSummary(String jitSummary) { this.jitSummary = jitSummary; }
+
+    public void setLocation(int line, int column) {
+        this.line = line;
+        this.column = column;
+    }
+
+    public void addCallFrame(String frame) {
+        callStack.add(frame);
+    }
+
+    /**
+     * @param head  the first lines logged
+     * @param tail  the last lines logged, after the head
+     * @param count every line logged, including the ones between head and tail
+     */
+    public void setLogs(List<String> head, List<String> tail, long count) {
+        this.logs = new ArrayList<>(head);
+        this.logTail = new ArrayList<>(tail);
+        this.logCount = count;
+    }
+
+    public void setMessages(List<String> messages) {
+        this.messages = new ArrayList<>(messages);
+    }
+
+    public void addPlayer(PlayerState player) {
+        players.add(player);
+    }
+
+    public void addWorld(WorldState world) {
+        worlds.add(world);
+    }
+
+    public void setUsage(long fuel, long cpuNanos, long peakMemory) {
+        this.fuel = fuel;
+        this.cpuNanos = cpuNanos;
+        this.peakMemory = peakMemory;
+    }
+
+    // === States ===
+
+    public static class PlayerState {
+        private final String name;
+        private final double health;
+        private final double x, y, z;
+        private final String gamemode;
+
+        public PlayerState(String name, double health, double x, double y, double z, String gamemode) {
+            this.name = name;
+            this.health = health;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+            this.gamemode = gamemode;
+        }
+
+        public String getName() { return name; }
+        public double getHealth() { return health; }
+        public double getX() { return x; }
+        public double getY() { return y; }
+        public double getZ() { return z; }
+        public String getGamemode() { return gamemode; }
+    }
+
+    public static class WorldState {
+        private final String name;
+        private final long time;
+        private final String weather;
+
+        public WorldState(String name, long time, String weather) {
+            this.name = name;
+            this.time = time;
+            this.weather = weather;
+        }
+
+        public String getName() { return name; }
+        public long getTime() { return time; }
+        public String getWeather() { return weather; }
+    }
+
+    // === Wire format ===
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeByte(status.ordinal());
+        WorkerProtocol.writeString(out, message);
+        out.writeInt(line);
+        out.writeInt(column);
+        WorkerProtocol.writeStrings(out, callStack);
+
+        WorkerProtocol.writeStrings(out, logs);
+        WorkerProtocol.writeStrings(out, logTail);
+        out.writeLong(logCount);
+        WorkerProtocol.writeStrings(out, messages);
+
+        out.writeInt(players.size());
+        for (PlayerState player : players) {
+            WorkerProtocol.writeString(out, player.name);
+            out.writeDouble(player.health);
+            out.writeDouble(player.x);
+            out.writeDouble(player.y);
+            out.writeDouble(player.z);
+            WorkerProtocol.writeString(out, player.gamemode);
+        }
+
+        out.writeInt(worlds.size());
+        for (WorldState world : worlds) {
+            WorkerProtocol.writeString(out, world.name);
+            out.writeLong(world.time);
+            WorkerProtocol.writeString(out, world.weather);
+        }
+
+        WorkerProtocol.writeString(out, memoSummary);
+        WorkerProtocol.writeString(out, jitSummary);
+        out.writeLong(fuel);
+        out.writeLong(cpuNanos);
+        out.writeLong(peakMemory);
+    }
+
+    public static ScriptResult read(DataInputStream in) throws IOException {
+        ScriptResult result = new ScriptResult(Status.values()[in.readByte()]);
+        result.message = WorkerProtocol.readString(in);
+        result.line = in.readInt();
+        result.column = in.readInt();
+        result.callStack = WorkerProtocol.readStrings(in);
+
+        result.logs = WorkerProtocol.readStrings(in);
+        result.logTail = WorkerProtocol.readStrings(in);
+        result.logCount = in.readLong();
+        result.messages = WorkerProtocol.readStrings(in);
+
+        int playerCount = in.readInt();
+        for (int i = 0; i < playerCount; i++) {
+            result.players.add(new PlayerState(
+                WorkerProtocol.readString(in),
+                in.readDouble(),
+                in.readDouble(),
+                in.readDouble(),
+                in.readDouble(),
+                WorkerProtocol.readString(in)
+            ));
+        }
+
+        int worldCount = in.readInt();
+        for (int i = 0; i < worldCount; i++) {
+            result.worlds.add(new WorldState(
+                WorkerProtocol.readString(in),
+                in.readLong(),
+                WorkerProtocol.readString(in)
+            ));
+        }
+
+        result.memoSummary = WorkerProtocol.readString(in);
+        result.jitSummary = WorkerProtocol.readString(in);
+        result.fuel = in.readLong();
+        result.cpuNanos = in.readLong();
+        result.peakMemory = in.readLong();
+        return result;
+    }
+}
@@ -0,0 +1,188 @@
+package me.kmathers.sudobot.quill.worker;
+
+import me.kmathers.sudobot.quill.interpreter.CancellationToken;
+import me.kmathers.sudobot.quill.interpreter.DiscordQuillInterpreter;
+import me.kmathers.sudobot.quill.interpreter.FunctionMemoizer;
+import me.kmathers.sudobot.quill.interpreter.InterpreterPool;
+import me.kmathers.sudobot.quill.interpreter.MemoryMeter;
+import me.kmathers.sudobot.quill.interpreter.QuillJit;
+import me.kmathers.sudobot.quill.interpreter.QuillRuntimeError;
+import me.kmathers.sudobot.quill.lexer.QuillLexer;
+import me.kmathers.sudobot.quill.parser.AST;
+import me.kmathers.sudobot.quill.parser.QuillParser;
+import me.kmathers.sudobot.quill.simulation.DiscordSimulationContext;
+import me.kmathers.sudobot.quill.simulation.LogTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Runs a {@link ScriptRequest} on a pooled interpreter and captures the outcome
+ * as a {@link ScriptResult}. Used both in the bot process and in worker processes.
+ */
+public class ScriptRunner {
+
+    private static final Pattern PLAYER_INSTRUCTION_PATTERN = Pattern.compile("PLAYER\\s+(\\w+)\\s+AT\\s+([\\d.]+)\\s+([\\d.]+)\\s+([\\d.]+)", Pattern.CASE_INSENSITIVE);
+    private static final int MAX_EVENT_ITERATIONS = 100;
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private final InterpreterPool interpreters;
+
+    public ScriptRunner(int poolSize, int maxCallDepth) {
+        this.interpreters = new InterpreterPool(poolSize, maxCallDepth);
+    }
+
+    public InterpreterPool getInterpreters() {
+        return interpreters;
+    }
+
+    /**
+     * Lex, parse and run a script. Never throws; every failure becomes a result status.
+     */
+    public ScriptResult run(ScriptRequest request, CancellationToken token) {
+        DiscordQuillInterpreter interpreter = interpreters.acquire();
+        DiscordSimulationContext context = interpreter.getSimulationContext();
+        long cpuStart = threads.getCurrentThreadCpuTime();
+        long reportedStart = token.getCpuNanos();
+        ScriptResult result;
+
+        interpreter.setAutoMemoize(request.isAutoMemoize());
+        interpreter.getJit().setThreshold(request.getJitThreshold());
+        interpreter.setMemoryBudget(request.getMemoryBudget());
+        interpreter.setCancellation(token);
+        MemoryMeter memory = interpreter.getMemory();
+
+        try {
+            processPlayerInstructions(request.getInstructions(), context);
+
+            List<QuillLexer.Token> tokens = new QuillLexer(request.getCode()).tokenize();
+            AST.Program program = new QuillParser(tokens).parse();
+
+            interpreter.execute(program);
+
+            processQueuedEvents(interpreter, context);
+
+            // Also records the peak for scripts too small to have been measured yet
+            memory.check();
+
+            result = captureSuccess(interpreter, context);
+
+        } catch (QuillLexer.LexerException e) {
+            result = ScriptResult.error(ScriptResult.Status.LEXER_ERROR, e.getMessage());
+        } catch (QuillParser.ParseException e) {
+            result = ScriptResult.error(ScriptResult.Status.PARSE_ERROR, e.getMessage());
+        } catch (CancellationToken.CancelledException e) {
+            result = ScriptResult.error(ScriptResult.Status.CANCELLED, e.getMessage());
+        } catch (RuntimeException e) {
+            result = captureRuntimeError(e);
+        } catch (Exception e) {
+            result = ScriptResult.error(ScriptResult.Status.UNKNOWN_ERROR, e.getMessage());
+        } catch (OutOfMemoryError e) {
+            // The script's garbage is unreachable once we're here, so the runner can carry on
+            result = ScriptResult.error(ScriptResult.Status.CANCELLED, "Script ran out of memory");
+        } catch (StackOverflowError e) {
+            // Deep recursion outside a function call, e.g. in the parser or a deeply nested value
+            result = ScriptResult.error(ScriptResult.Status.RUNTIME_ERROR, "Script ran out of stack space");
+        } finally {
+            interpreters.release(interpreter);
+        }
+
+        // Parallel loop threads report their CPU time through the token
+        long cpuNanos = cpuStart < 0 ? 0 : threads.getCurrentThreadCpuTime() - cpuStart;
+        cpuNanos += token.getCpuNanos() - reportedStart;
+        result.setUsage(token.getFuel(), cpuNanos, memory.getPeak());
+        return result;
+    }
+
+    /**
+     * Process PLAYER instructions to spawn mock players
+     */
+    private void processPlayerInstructions(String instructions, DiscordSimulationContext context) {
+        Matcher matcher = PLAYER_INSTRUCTION_PATTERN.matcher(instructions);
+
+        while (matcher.find()) {
+            String playerName = matcher.group(1);
+            double x = Double.parseDouble(matcher.group(2));
+            double y = Double.parseDouble(matcher.group(3));
+            double z = Double.parseDouble(matcher.group(4));
+
+            context.spawnPlayer(playerName, x, y, z);
+        }
+    }
+
+    /**
+     * Process any events that were queued during script execution
+     */
+    private void processQueuedEvents(DiscordQuillInterpreter interpreter, DiscordSimulationContext context) {
+        int iterations = 0;
+
+        while (context.hasPendingEvents() && iterations < MAX_EVENT_ITERATIONS) {
+            DiscordSimulationContext.SimulatedEvent event = context.getNextEvent();
+            if (event != null) {
+                interpreter.triggerEvent(event.getEventName(), event.getContext());
+            }
+            iterations++;
+        }
+
+        if (iterations >= MAX_EVENT_ITERATIONS) {
+            context.log(LogTemplate.EVENT_LIMIT).integer(MAX_EVENT_ITERATIONS);
+        }
+    }
+
+    private ScriptResult captureSuccess(DiscordQuillInterpreter interpreter, DiscordSimulationContext context) {
+        ScriptResult result = new ScriptResult(ScriptResult.Status.SUCCESS);
+        result.setLogs(context.getLogHead(), context.getLogTail(), context.getLogCount());
+        result.setMessages(context.getMessageHistory());
+
+        for (DiscordSimulationContext.MockPlayer player : context.getAllPlayers()) {
+            result.addPlayer(new ScriptResult.PlayerState(
+                player.getName(),
+                player.getHealth(),
+                player.getX(),
+                player.getY(),
+                player.getZ(),
+                player.getGamemode()
+            ));
+        }
+
+        // Worlds are only worth showing once the script has changed something
+        if (context.getAllWorlds().size() > 1 || context.getDefaultWorld().getTime() != 0) {
+            for (DiscordSimulationContext.MockWorld world : context.getAllWorlds()) {
+                result.addWorld(new ScriptResult.WorldState(world.getName(), world.getTime(), world.getWeather()));
+            }
+        }
+
+        FunctionMemoizer memoizer = interpreter.getMemoizer();
+        if (memoizer.getLookups() > 0) {
+            result.setMemoSummary(memoizer.getSummary());
+        }
+
+        QuillJit jit = interpreter.getJit();
+        if (jit.getCompiledFunctions() > 0) {
+            result.setJitSummary(jit.getSummary());
+        }
+
+        return result;
+    }
+
+    private ScriptResult captureRuntimeError(RuntimeException e) {
+        String message = e.getMessage() != null ? e.getMessage() : "Unknown runtime error occurred";
+        ScriptResult result = ScriptResult.error(ScriptResult.Status.RUNTIME_ERROR, message);
+
+        if (e instanceof QuillRuntimeError) {
+            QuillRuntimeError error = (QuillRuntimeError) e;
+            if (error.hasLocation()) {
+                result.setLocation(error.getLine(), error.getColumn());
+            }
+            for (DiscordQuillInterpreter.CallFrame frame : error.getCallStack()) {
+                result.addCallFrame(frame.toString());
+            }
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,103 @@
+package me.kmathers.sudobot.quill.worker;
+
+import me.kmathers.sudobot.quill.interpreter.CancellationToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a bundled corpus of Quill scripts through a {@link ScriptRunner} so
+ * the JVM has compiled the lexer, parser and interpreter paths before the
+ * first real script. Repeats until the time per iteration settles:
+ * iterations are grouped into windows, and warm-up ends once the fastest
+ * iteration in a window is no longer clearly faster than in the last one.
+ * Used both in the bot's own JVM and by each worker process, so it doesn't
+ * touch Config.
+ */
+public class ScriptWarmup {
+
+    private static final String CORPUS_PATH = "/quill/warmup/";
+    private static final String[] CORPUS = {
+            "arithmetic.ql",
+            "collections.ql",
+            "simulation.ql",
+            "errors.ql"
+    };
+
+    private static final int WINDOW = 5;
+    private static final double MIN_IMPROVEMENT = 0.10;
+
+    private ScriptWarmup() {}
+
+    /**
+     * Warm up a runner. Each corpus script runs with the instructions and
+     * interpreter settings of {@code settings}, whose code is ignored.
+     */
+    public static void run(ScriptRunner runner, ScriptRequest settings, int maxIterations) {
+        try {
+            List<String> scripts = loadCorpus();
+            if (scripts.isEmpty()) {
+                System.err.println("Quill warm-up skipped: no corpus scripts found");
+                return;
+            }
+
+            double previousBest = -1;
+            double windowBest = Double.MAX_VALUE;
+
+            for (int iteration = 1; iteration <= maxIterations; iteration++) {
+                long start = System.nanoTime();
+                for (String script : scripts) {
+                    runScript(runner, settings, script, iteration == 1);
+                }
+                double elapsedMs = (System.nanoTime() - start) / 1_000_000.0;
+
+                System.out.println(String.format("Quill warm-up iteration %d: %.1f ms", iteration, elapsedMs));
+
+                windowBest = Math.min(windowBest, elapsedMs);
+                if (iteration % WINDOW != 0) {
+                    continue;
+                }
+
+                if (previousBest > 0 && windowBest > previousBest * (1 - MIN_IMPROVEMENT)) {
+                    System.out.println(String.format("Quill warm-up stable after %d iterations (best %.1f ms)", iteration, windowBest));
+                    return;
+                }
+                previousBest = windowBest;
+                windowBest = Double.MAX_VALUE;
+            }
+
+            System.out.println("Quill warm-up stopped after " + maxIterations + " iterations without settling");
+
+        } catch (Exception e) {
+            System.err.println("Error in Quill warm-up: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
+    private static List<String> loadCorpus() throws IOException {
+        List<String> scripts = new ArrayList<>();
+        for (String name : CORPUS) {
+            try (InputStream in = ScriptWarmup.class.getResourceAsStream(CORPUS_PATH + name)) {
+                if (in == null) {
+                    System.err.println("Quill warm-up script not found: " + name);
+                    continue;
+                }
+                scripts.add(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+        }
+        return scripts;
+    }
+
+    private static void runScript(ScriptRunner runner, ScriptRequest settings, String source, boolean reportErrors) {
+        ScriptRequest request = new ScriptRequest(settings.getInstructions(), source, settings.isAutoMemoize(),
+                settings.getJitThreshold(), settings.getMemoryBudget());
+        ScriptResult result = runner.run(request, new CancellationToken());
+
+        if (reportErrors && result.getStatus() != ScriptResult.Status.SUCCESS) {
+            System.err.println("Quill warm-up script failed: " + result.getMessage());
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package me.kmathers.sudobot.quill.worker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary protocol between the bot and out-of-process Quill workers.
+ * Every message is a frame: a 4-byte length, a 1-byte type and a payload
+ * written with DataOutputStream. Frames are read and written with plain
+ * channel reads and writes (not channel streams) so one thread can block
+ * reading while another writes a cancel.
+ *
+ * RUN     (bot to worker): job ID, {@link ScriptRequest}
+ * CANCEL  (bot to worker): job ID, reason
+ * RESULT  (worker to bot): job ID, {@link ScriptResult}
+ * WARMUP  (bot to worker): max iterations, settings {@link ScriptRequest} (see {@link ScriptWarmup})
+ * READY   (worker to bot): sent once warm-up is done
+ */
+public final class WorkerProtocol {
+    public static final byte RUN = 1;
+    public static final byte CANCEL = 2;
+    public static final byte RESULT = 3;
+    public static final byte WARMUP = 4;
+    public static final byte READY = 5;
+
+    public static final int MAX_FRAME_BYTES = 16 * 1024 * 1024;
+
+    private WorkerProtocol() {}
+
+    /**
+     * Thrown by writeFrame, before anything is sent, for a frame the other
+     * side would refuse. The connection is still usable.
+     */
+    public static class FrameTooLargeException extends IOException {
+        public FrameTooLargeException(int length) {
+            super("Frame of " + length + " bytes is over the " + MAX_FRAME_BYTES + " byte limit");
+        }
+    }
+
+    /**
+     * A received frame; the payload is positioned just after the type byte.
+     */
+    public static class Frame {
+        private final byte type;
+        private final DataInputStream payload;
+
+        private Frame(byte type, DataInputStream payload) {
+            this.type = type;
+            this.payload = payload;
+        }
+
+        public byte getType() { return type; }
+        public DataInputStream getPayload() { return payload; }
+    }
+
+    /**
+     * Something that writes a frame's payload.
+     */
+    public interface PayloadWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    // === Frames ===
+
+    /**
+     * Write a frame.
+     *
+     * @throws FrameTooLargeException if the frame is over MAX_FRAME_BYTES
+     */
+    public static void writeFrame(SocketChannel channel, byte type, PayloadWriter writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0); // length, filled in below
+        out.writeByte(type);
+        writer.write(out);
+        out.flush();
+
+        int length = bytes.size() - 4;
+        if (length > MAX_FRAME_BYTES) {
+            throw new FrameTooLargeException(length);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        buffer.putInt(0, length);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Read the next frame, blocking until it has fully arrived.
+     *
+     * @throws EOFException if the other side closed the connection
+     */
+    public static Frame readFrame(SocketChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        readFully(channel, header);
+        int length = header.getInt(0);
+        if (length < 1 || length > MAX_FRAME_BYTES) {
+            throw new IOException("Invalid frame length " + length);
+        }
+
+        ByteBuffer body = ByteBuffer.allocate(length);
+        readFully(channel, body);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body.array()));
+        return new Frame(in.readByte(), in);
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Connection closed");
+            }
+        }
+    }
+
+    // === Values ===
+
+    /**
+     * Strings are length-prefixed UTF-8, without writeUTF's 64KB limit. Null is length -1.
+     */
+    public static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    public static List<String> readStrings(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+}
@@ -0,0 +1,336 @@
+package me.kmathers.sudobot.services;
+
+import me.kmathers.sudobot.config.Config;
+import me.kmathers.sudobot.quill.interpreter.CancellationToken;
+import me.kmathers.sudobot.quill.interpreter.DiscordQuillInterpreter;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Runs Quill scripts off the JDA event thread.
+ * Jobs wait in a fair queue that takes one job per user in turn, so a user
+ * with several scripts queued can't starve everyone else, and a fixed pool
+ * of workers (each with enough stack for the call depth limit) runs them.
+ * Users or channels that have used up their {@link QuillQuotas} are held
+ * back until their buckets refill, or refused if that would take too long.
+ * Every job gets a cancellation token that a watchdog trips once the job
+ * has been running for the configured timeout, and is listed in a job
+ * table by the message that started it so it can be cancelled from Discord.
+ */
+public class QuillExecutionService {
+
+    private static final AtomicInteger workerCount = new AtomicInteger();
+
+    // The fair queue bounds how many jobs are waiting, so the pool's own queue only holds turns
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            Config.QUILL_WORKER_THREADS,
+            Config.QUILL_WORKER_THREADS,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(null, runnable,
+                        "quill-worker-" + workerCount.incrementAndGet(),
+                        DiscordQuillInterpreter.stackSizeFor(Config.QUILL_MAX_CALL_DEPTH));
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private static final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "quill-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    private static final FairQueue queue = new FairQueue();
+    private static final Map<Long, Job> jobs = new ConcurrentHashMap<>();
+
+    private static final AtomicLong accepted = new AtomicLong();
+    private static final AtomicLong delayed = new AtomicLong();
+    private static final AtomicLong rejected = new AtomicLong();
+    private static final AtomicLong overQuota = new AtomicLong();
+    private static final AtomicLong completed = new AtomicLong();
+    private static final AtomicLong timedOut = new AtomicLong();
+    private static final AtomicLong cancelled = new AtomicLong();
+    private static final AtomicLong totalQueueWaitMs = new AtomicLong();
+    private static final AtomicInteger peakQueueDepth = new AtomicInteger();
+
+    /**
+     * Outcome of submitting a job.
+     */
+    public static class Submission {
+        public enum Status {
+            QUEUED,
+            DELAYED,
+            BUSY,
+            OVER_QUOTA
+        }
+
+        private final Status status;
+        private final long waitMillis;
+
+        private Submission(Status status, long waitMillis) {
+            this.status = status;
+            this.waitMillis = waitMillis;
+        }
+
+        public Status getStatus() { return status; }
+
+        /**
+         * For DELAYED, how long until the job starts; for OVER_QUOTA, how long until it would be accepted.
+         */
+        public long getWaitMillis() { return waitMillis; }
+    }
+
+    private static class Job {
+        final long messageId;
+        final long userId;
+        final long channelId;
+        final Consumer<CancellationToken> body;
+        final CancellationToken token = new CancellationToken();
+        final long queuedAt = System.currentTimeMillis();
+        final long notBefore; // System.nanoTime()
+
+        Job(long messageId, long userId, long channelId, Consumer<CancellationToken> body, long notBefore) {
+            this.messageId = messageId;
+            this.userId = userId;
+            this.channelId = channelId;
+            this.body = body;
+            this.notBefore = notBefore;
+        }
+    }
+
+    /**
+     * Queue a script for execution on behalf of a user in a channel.
+     *
+     * @param messageId the message that started the job, used to cancel it
+     * @param body runs on a worker thread and should stop once the token is cancelled
+     */
+    public static Submission submit(long messageId, long userId, long channelId, Consumer<CancellationToken> body) {
+        long waitMillis = QuillQuotas.waitMillis(userId, channelId);
+        if (waitMillis > TimeUnit.SECONDS.toMillis(Config.QUILL_QUOTA_MAX_DELAY_SECONDS)) {
+            overQuota.incrementAndGet();
+            return new Submission(Submission.Status.OVER_QUOTA, waitMillis);
+        }
+
+        Job job = new Job(messageId, userId, channelId, body, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis));
+        if (!queue.offer(job)) {
+            rejected.incrementAndGet();
+            System.err.println("Quill queue full, rejected job (" + getSummary() + ")");
+            return new Submission(Submission.Status.BUSY, 0);
+        }
+
+        jobs.put(messageId, job);
+        accepted.incrementAndGet();
+        peakQueueDepth.accumulateAndGet(queue.size(), Math::max);
+
+        // Each job adds one turn once it may start; a turn runs whichever job is next in fair order
+        if (waitMillis > 0) {
+            delayed.incrementAndGet();
+            watchdog.schedule(() -> executor.execute(QuillExecutionService::takeTurn), waitMillis, TimeUnit.MILLISECONDS);
+            return new Submission(Submission.Status.DELAYED, waitMillis);
+        }
+        executor.execute(QuillExecutionService::takeTurn);
+        return new Submission(Submission.Status.QUEUED, 0);
+    }
+
+    private static void takeTurn() {
+        Job job = queue.poll(System.nanoTime());
+        if (job != null) {
+            run(job);
+        }
+    }
+
+    /**
+     * Cancel the job started by a message, whether it is queued or running.
+     *
+     * @return false if no such job is waiting or running
+     */
+    public static boolean cancel(long messageId, String reason) {
+        Job job = jobs.remove(messageId);
+        if (job == null) {
+            return false;
+        }
+
+        cancelled.incrementAndGet();
+        job.token.cancel(reason);
+        queue.remove(job);
+        return true;
+    }
+
+    /**
+     * Cancel the job started by a message only if it belongs to the given user.
+     */
+    public static boolean cancel(long messageId, long userId, String reason) {
+        Job job = jobs.get(messageId);
+        if (job == null || job.userId != userId) {
+            return false;
+        }
+        return cancel(messageId, reason);
+    }
+
+    private static void run(Job job) {
+        totalQueueWaitMs.addAndGet(System.currentTimeMillis() - job.queuedAt);
+        CancellationToken token = job.token;
+
+        ScheduledFuture<?> timeout = watchdog.schedule(() -> {
+            timedOut.incrementAndGet();
+            token.cancel("Script timed out after " + Config.QUILL_TIMEOUT_SECONDS + " seconds");
+        }, Config.QUILL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        long cpuStart = threads.getCurrentThreadCpuTime();
+        try {
+            job.body.accept(token);
+        } catch (Exception e) {
+            System.err.println("Error in Quill job: " + e.getMessage());
+            e.printStackTrace();
+        } finally {
+            timeout.cancel(false);
+            jobs.remove(job.messageId, job);
+            completed.incrementAndGet();
+
+            // Parallel loop threads and worker processes report their CPU time
+            // through the token.
+            long cpuNanos = cpuStart < 0 ? 0 : threads.getCurrentThreadCpuTime() - cpuStart;
+            cpuNanos += token.getCpuNanos();
+            QuillQuotas.charge(job.userId, job.channelId, cpuNanos / 1_000_000.0, token.getFuel());
+        }
+    }
+
+    /**
+     * Per-user queues served round robin, oldest ready job first within a user.
+     */
+    private static class FairQueue {
+        private final Map<Long, ArrayDeque<Job>> pending = new HashMap<>();
+        private final ArrayDeque<Long> turns = new ArrayDeque<>();
+        private int size;
+
+        synchronized boolean offer(Job job) {
+            ArrayDeque<Job> jobs = pending.get(job.userId);
+            if (size >= Config.QUILL_QUEUE_CAPACITY || (jobs != null && jobs.size() >= Config.QUILL_QUEUE_PER_USER)) {
+                return false;
+            }
+
+            if (jobs == null) {
+                jobs = new ArrayDeque<>();
+                pending.put(job.userId, jobs);
+                turns.addLast(job.userId);
+            }
+            jobs.addLast(job);
+            size++;
+            return true;
+        }
+
+        /**
+         * Next ready job, taking users in turn; null if none is ready yet.
+         */
+        synchronized Job poll(long now) {
+            for (int i = turns.size(); i > 0; i--) {
+                Long userId = turns.pollFirst();
+                ArrayDeque<Job> jobs = pending.get(userId);
+
+                Job job = null;
+                for (Job candidate : jobs) {
+                    if (candidate.notBefore - now <= 0) {
+                        job = candidate;
+                        break;
+                    }
+                }
+                if (job == null) {
+                    turns.addLast(userId);
+                    continue;
+                }
+
+                jobs.remove(job);
+                size--;
+                if (jobs.isEmpty()) {
+                    pending.remove(userId);
+                } else {
+                    turns.addLast(userId);
+                }
+                return job;
+            }
+            return null;
+        }
+
+        /**
+         * Drop a job that was cancelled before it started; its turn will find nothing to run.
+         */
+        synchronized void remove(Job job) {
+            ArrayDeque<Job> waiting = pending.get(job.userId);
+            if (waiting == null || !waiting.remove(job)) {
+                return;
+            }
+
+            size--;
+            if (waiting.isEmpty()) {
+                pending.remove(job.userId);
+                turns.remove(job.userId);
+            }
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized int size(long userId) {
+            ArrayDeque<Job> jobs = pending.get(userId);
+            return jobs == null ? 0 : jobs.size();
+        }
+    }
+
+    // === Metrics ===
+
+    public static int getQueueDepth() {
+        return queue.size();
+    }
+
+    public static int getQueueDepth(long userId) {
+        return queue.size(userId);
+    }
+
+    public static int getPeakQueueDepth() {
+        return peakQueueDepth.get();
+    }
+
+    public static int getActiveJobs() {
+        return executor.getActiveCount();
+    }
+
+    public static long getAccepted() { return accepted.get(); }
+    public static long getDelayed() { return delayed.get(); }
+    public static long getRejected() { return rejected.get(); }
+    public static long getOverQuota() { return overQuota.get(); }
+    public static long getCompleted() { return completed.get(); }
+    public static long getTimedOut() { return timedOut.get(); }
+    public static long getCancelled() { return cancelled.get(); }
+
+    public static long getAverageQueueWaitMs() {
+        long started = completed.get() + executor.getActiveCount();
+        return started == 0 ? 0 : totalQueueWaitMs.get() / started;
+    }
+
+    public static String getSummary() {
+        return String.format("%d/%d workers busy, %d queued (peak %d), %d accepted (%d delayed), %d rejected, " +
+                        "%d over quota, %d completed, %d timed out, %d cancelled, avg wait %dms",
+                getActiveJobs(), Config.QUILL_WORKER_THREADS, getQueueDepth(), getPeakQueueDepth(),
+                getAccepted(), getDelayed(), getRejected(), getOverQuota(), getCompleted(), getTimedOut(),
+                getCancelled(), getAverageQueueWaitMs());
+    }
+}
@@ -0,0 +1,134 @@
+package me.kmathers.sudobot.services;
+
+import me.kmathers.sudobot.config.Config;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-user and per-channel compute quotas for Quill scripts.
+ * Each user and channel has a CPU time bucket and a fuel bucket; finished
+ * jobs are charged what they actually used, and new jobs wait until every
+ * bucket they draw from has tokens again.
+ */
+public class QuillQuotas {
+
+    private static final int PRUNE_THRESHOLD = 256;
+
+    private static final Map<Long, Quota> users = new ConcurrentHashMap<>();
+    private static final Map<Long, Quota> channels = new ConcurrentHashMap<>();
+
+    public static class Quota {
+        private final long id;
+        private final TokenBucket cpu;
+        private final TokenBucket fuel;
+
+        private Quota(long id, double cpuBurst, double cpuRefill, double fuelBurst, double fuelRefill) {
+            this.id = id;
+            this.cpu = new TokenBucket(cpuBurst, cpuRefill);
+            this.fuel = new TokenBucket(fuelBurst, fuelRefill);
+        }
+
+        public long getId() { return id; }
+        public TokenBucket getCpu() { return cpu; }
+        public TokenBucket getFuel() { return fuel; }
+
+        public long waitNanos() {
+            return Math.max(cpu.waitNanos(), fuel.waitNanos());
+        }
+
+        /**
+         * Fraction of the more depleted bucket still available; negative when in debt.
+         */
+        public double getRemaining() {
+            return Math.min(cpu.getAvailable() / cpu.getCapacity(), fuel.getAvailable() / fuel.getCapacity());
+        }
+
+        public boolean isIdle() {
+            return cpu.isFull() && fuel.isFull();
+        }
+
+        public void reset() {
+            cpu.reset();
+            fuel.reset();
+        }
+    }
+
+    public static Quota forUser(long userId) {
+        return users.computeIfAbsent(userId, id -> new Quota(id,
+                Config.QUILL_USER_CPU_BURST_MS, Config.QUILL_USER_CPU_REFILL_MS,
+                Config.QUILL_USER_FUEL_BURST, Config.QUILL_USER_FUEL_REFILL));
+    }
+
+    public static Quota forChannel(long channelId) {
+        return channels.computeIfAbsent(channelId, id -> new Quota(id,
+                Config.QUILL_CHANNEL_CPU_BURST_MS, Config.QUILL_CHANNEL_CPU_REFILL_MS,
+                Config.QUILL_CHANNEL_FUEL_BURST, Config.QUILL_CHANNEL_FUEL_REFILL));
+    }
+
+    /**
+     * Milliseconds until both the user and the channel have quota left; 0 if they do now.
+     */
+    public static long waitMillis(long userId, long channelId) {
+        long nanos = Math.max(forUser(userId).waitNanos(), forChannel(channelId).waitNanos());
+        return TimeUnit.NANOSECONDS.toMillis(nanos + 999_999);
+    }
+
+    /**
+     * Charge a finished job's usage to its user and channel.
+     */
+    public static void charge(long userId, long channelId, double cpuMillis, long fuel) {
+        Quota user = forUser(userId);
+        user.cpu.consume(cpuMillis);
+        user.fuel.consume(fuel);
+
+        Quota channel = forChannel(channelId);
+        channel.cpu.consume(cpuMillis);
+        channel.fuel.consume(fuel);
+
+        prune(users);
+        prune(channels);
+    }
+
+    public static boolean resetUser(long userId) {
+        Quota quota = users.get(userId);
+        if (quota == null) {
+            return false;
+        }
+        quota.reset();
+        return true;
+    }
+
+    /**
+     * Users and channels that have used part of their quota, most depleted first.
+     */
+    public static List<Quota> getActiveUsers() {
+        return active(users);
+    }
+
+    public static List<Quota> getActiveChannels() {
+        return active(channels);
+    }
+
+    private static List<Quota> active(Map<Long, Quota> quotas) {
+        List<Quota> result = new ArrayList<>();
+        for (Quota quota : quotas.values()) {
+            if (!quota.isIdle()) {
+                result.add(quota);
+            }
+        }
+        result.sort(Comparator.comparingDouble(Quota::getRemaining));
+        return result;
+    }
+
+    // Buckets that have refilled carry no state worth keeping
+    private static void prune(Map<Long, Quota> quotas) {
+        if (quotas.size() > PRUNE_THRESHOLD) {
+            quotas.values().removeIf(Quota::isIdle);
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package me.kmathers.sudobot.services;
+
+import me.kmathers.sudobot.config.Config;
+import me.kmathers.sudobot.quill.interpreter.CancellationToken;
+import me.kmathers.sudobot.quill.worker.QuillWorkerMain;
+import me.kmathers.sudobot.quill.worker.ScriptRequest;
+import me.kmathers.sudobot.quill.worker.ScriptResult;
+import me.kmathers.sudobot.quill.worker.WorkerProtocol;
+import me.kmathers.sudobot.tasks.QuillWarmupTask;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs Quill scripts in separate worker JVMs instead of on the bot's own threads.
+ * A script that exhausts its heap or wedges the JVM only takes down its worker,
+ * which is replaced, and the workers spread scripts across cores without
+ * sharing the bot's heap or GC. Each worker connects back over a Unix domain
+ * socket and speaks {@link WorkerProtocol}. Cancelling a job's token sends a
+ * CANCEL frame; a worker that doesn't answer within the grace period is killed.
+ * With Config.QUILL_WARMUP, every worker, including replacements, is warmed
+ * up before it takes its first job.
+ */
+public class QuillWorkerPool {
+
+    private static final long CONNECT_TIMEOUT_SECONDS = 10;
+    private static final long WARMUP_TIMEOUT_SECONDS = 120;
+    private static final long CANCEL_GRACE_MILLIS = 2000;
+    private static final long RESTART_DELAY_SECONDS = 5;
+
+    private static final BlockingQueue<Worker> idle = new LinkedBlockingQueue<>();
+    private static final List<Worker> workers = new CopyOnWriteArrayList<>();
+
+    // Spawning blocks until the worker connects, so it gets its own thread apart from the timers
+    private static final ExecutorService launcher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "quill-worker-launcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "quill-worker-pool");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final AtomicInteger workerCount = new AtomicInteger();
+    private static final AtomicLong nextJobId = new AtomicLong();
+    private static final AtomicLong started = new AtomicLong();
+    private static final AtomicLong crashed = new AtomicLong();
+    private static final AtomicLong killed = new AtomicLong();
+
+    private static Path socketDir;
+    private static volatile boolean running;
+
+    /**
+     * One worker process and its connection.
+     */
+    private static class Worker {
+        final int number;
+        final Process process;
+        final SocketChannel channel;
+        final Object writeLock = new Object();
+        volatile long currentJob = -1;
+
+        Worker(int number, Process process, SocketChannel channel) {
+            this.number = number;
+            this.process = process;
+            this.channel = channel;
+        }
+
+        void send(byte type, WorkerProtocol.PayloadWriter writer) throws IOException {
+            synchronized (writeLock) {
+                WorkerProtocol.writeFrame(channel, type, writer);
+            }
+        }
+
+        void destroy() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            process.destroyForcibly();
+        }
+    }
+
+    // === Lifecycle ===
+
+    /**
+     * Start launching the worker processes. Called lazily by the first script.
+     */
+    public static synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+
+        try {
+            socketDir = Files.createTempDirectory("quill-workers");
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not create a directory for Quill worker sockets", e);
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(QuillWorkerPool::shutdown, "quill-worker-shutdown"));
+
+        for (int i = 0; i < Config.QUILL_PROCESS_WORKERS; i++) {
+            launcher.execute(QuillWorkerPool::startWorker);
+        }
+    }
+
+    public static synchronized void shutdown() {
+        running = false;
+        for (Worker worker : workers) {
+            worker.destroy();
+        }
+        workers.clear();
+        idle.clear();
+
+        if (socketDir != null) {
+            try {
+                Files.deleteIfExists(socketDir);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Spawn a worker, warm it up and add it to the idle set, retrying later if it won't start.
+     * Workers warm up one at a time on the launcher thread, so they don't compete
+     * for cores with each other, while those already warm take jobs.
+     */
+    private static void startWorker() {
+        if (!running) {
+            return;
+        }
+        try {
+            Worker worker = spawn();
+            if (Config.QUILL_WARMUP) {
+                try {
+                    warmUp(worker);
+                } catch (IOException e) {
+                    worker.destroy();
+                    throw e;
+                }
+            }
+            if (!running) {
+                worker.destroy();
+                return;
+            }
+            workers.add(worker);
+            idle.add(worker);
+            started.incrementAndGet();
+            // A worker can also die while idle; don't leave it for the next job
+            worker.process.onExit().thenRun(() -> {
+                idle.remove(worker);
+                replace(worker);
+            });
+        } catch (IOException e) {
+            System.err.println("Could not start Quill worker: " + e.getMessage());
+            scheduler.schedule(() -> launcher.execute(QuillWorkerPool::startWorker), RESTART_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private static Worker spawn() throws IOException {
+        int number = workerCount.incrementAndGet();
+        Path socket = socketDir.resolve("worker-" + number + ".sock");
+        Files.deleteIfExists(socket);
+
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(socket));
+
+            Process process = new ProcessBuilder(
+                    Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                    "-Xmx" + Config.QUILL_WORKER_HEAP_MB + "m",
+                    "-XX:+ExitOnOutOfMemoryError",
+                    "-cp", System.getProperty("java.class.path"),
+                    QuillWorkerMain.class.getName(),
+                    socket.toString(),
+                    String.valueOf(Config.QUILL_MAX_CALL_DEPTH))
+                    .inheritIO()
+                    .start();
+
+            // accept() has no timeout, so close the server if the worker never connects
+            ScheduledFuture<?> timeout = scheduler.schedule(() -> {
+                try {
+                    server.close();
+                } catch (IOException ignored) {
+                }
+            }, CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+            try {
+                SocketChannel channel = server.accept();
+                return new Worker(number, process, channel);
+            } catch (IOException e) {
+                process.destroyForcibly();
+                throw new IOException("worker " + number + " didn't connect", e);
+            } finally {
+                timeout.cancel(false);
+            }
+        } finally {
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    /**
+     * Have a new worker run the warm-up corpus and wait until it's done.
+     */
+    private static void warmUp(Worker worker) throws IOException {
+        worker.send(WorkerProtocol.WARMUP, out -> {
+            out.writeInt(Config.QUILL_WARMUP_MAX_ITERATIONS);
+            QuillWarmupTask.settings().write(out);
+        });
+
+        // Reads have no timeout, so close the connection if the worker never finishes
+        ScheduledFuture<?> timeout = scheduler.schedule(() -> {
+            try {
+                worker.channel.close();
+            } catch (IOException ignored) {
+            }
+        }, WARMUP_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        try {
+            WorkerProtocol.Frame frame = WorkerProtocol.readFrame(worker.channel);
+            if (frame.getType() != WorkerProtocol.READY) {
+                throw new IOException("Unexpected frame type " + frame.getType());
+            }
+        } catch (IOException e) {
+            throw new IOException("worker " + worker.number + " didn't finish warming up", e);
+        } finally {
+            timeout.cancel(false);
+        }
+    }
+
+    /**
+     * Throw a broken worker away and start another in its place. Safe to call
+     * more than once for the same worker.
+     */
+    private static void replace(Worker worker) {
+        worker.destroy();
+        if (workers.remove(worker)) {
+            launcher.execute(QuillWorkerPool::startWorker);
+        }
+    }
+
+    // === Execution ===
+
+    /**
+     * Run a script on the next free worker, blocking until it finishes.
+     * The script's fuel and CPU time are added to the token's usage. If the
+     * worker turns out to be dead before the job reaches it, the job goes to
+     * another worker instead.
+     */
+    public static ScriptResult execute(ScriptRequest request, CancellationToken token) {
+        start();
+
+        long jobId = nextJobId.incrementAndGet();
+        Worker worker;
+        while (true) {
+            try {
+                worker = takeIdle(token);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return ScriptResult.error(ScriptResult.Status.CANCELLED, "Interrupted");
+            }
+            if (worker == null) {
+                return ScriptResult.error(ScriptResult.Status.CANCELLED, token.getReason());
+            }
+
+            worker.currentJob = jobId;
+            try {
+                worker.send(WorkerProtocol.RUN, out -> {
+                    out.writeLong(jobId);
+                    request.write(out);
+                });
+                break;
+            } catch (IOException e) {
+                crashed.incrementAndGet();
+                System.err.println("Quill worker " + worker.number + " was dead before its job started: " + e.getMessage());
+                worker.currentJob = -1;
+                replace(worker);
+            }
+        }
+
+        Worker chosen = worker;
+        ScheduledFuture<?>[] kill = new ScheduledFuture<?>[1];
+
+        Runnable onCancel = () -> {
+            try {
+                chosen.send(WorkerProtocol.CANCEL, out -> {
+                    out.writeLong(jobId);
+                    WorkerProtocol.writeString(out, token.getReason());
+                });
+            } catch (IOException ignored) {
+                // The reader will see the broken connection
+            }
+            kill[0] = scheduler.schedule(() -> {
+                if (chosen.currentJob == jobId) {
+                    killed.incrementAndGet();
+                    chosen.destroy();
+                }
+            }, CANCEL_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+        };
+
+        boolean healthy = false;
+        try {
+            token.onCancel(onCancel);
+
+            ScriptResult result = awaitResult(chosen, jobId);
+            token.addUsage(result.getFuel(), result.getCpuNanos());
+            healthy = true;
+            return result;
+
+        } catch (IOException e) {
+            if (token.isCancelled()) {
+                return ScriptResult.error(ScriptResult.Status.CANCELLED, token.getReason());
+            }
+            crashed.incrementAndGet();
+            System.err.println("Quill worker " + chosen.number + " crashed: " + e.getMessage());
+            return ScriptResult.error(ScriptResult.Status.UNKNOWN_ERROR,
+                    "The Quill worker running this script crashed (it may have run out of memory)");
+
+        } finally {
+            token.removeOnCancel(onCancel);
+            chosen.currentJob = -1;
+            if (kill[0] != null) {
+                kill[0].cancel(false);
+            }
+
+            if (healthy) {
+                idle.add(chosen);
+            } else {
+                replace(chosen);
+            }
+        }
+    }
+
+    /**
+     * Wait for a live idle worker, or return null once the token is cancelled.
+     */
+    private static Worker takeIdle(CancellationToken token) throws InterruptedException {
+        while (true) {
+            Worker worker = idle.poll(100, TimeUnit.MILLISECONDS);
+            if (worker == null) {
+                if (token.isCancelled()) {
+                    return null;
+                }
+            } else if (worker.process.isAlive()) {
+                return worker;
+            } else {
+                replace(worker);
+            }
+        }
+    }
+
+    private static ScriptResult awaitResult(Worker worker, long jobId) throws IOException {
+        while (true) {
+            WorkerProtocol.Frame frame = WorkerProtocol.readFrame(worker.channel);
+            if (frame.getType() != WorkerProtocol.RESULT) {
+                throw new IOException("Unexpected frame type " + frame.getType());
+            }
+
+            DataInputStream in = frame.getPayload();
+            if (in.readLong() == jobId) {
+                return ScriptResult.read(in);
+            }
+        }
+    }
+
+    // === Metrics ===
+
+    public static int getLiveWorkers() { return workers.size(); }
+    public static int getIdleWorkers() { return idle.size(); }
+    public static long getStarted() { return started.get(); }
+    public static long getCrashed() { return crashed.get(); }
+    public static long getKilled() { return killed.get(); }
+
+    public static String getSummary() {
+        return String.format("%d workers (%d idle), %d started, %d crashed, %d killed",
+                getLiveWorkers(), getIdleWorkers(), getStarted(), getCrashed(), getKilled());
+    }
+}
@@ -0,0 +1,66 @@
+package me.kmathers.sudobot.services;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket.
+ * The whole state is the instant the bucket will be full again, kept in a
+ * single AtomicLong and updated with compare-and-set, so any number of
+ * threads can charge and inspect it without locking. Charges are allowed to
+ * overdraw the bucket; the debt simply pushes back when it next has tokens.
+ */
+public class TokenBucket {
+    private final double capacity;
+    private final double refillPerSecond;
+    private final long windowNanos;
+    private final AtomicLong fullAt;
+
+    public TokenBucket(double capacity, double refillPerSecond) {
+        this.capacity = capacity;
+        this.refillPerSecond = refillPerSecond;
+        this.windowNanos = toNanos(capacity);
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Take tokens, going into debt if there aren't enough.
+     */
+    public void consume(double amount) {
+        long cost = toNanos(amount);
+        long now = System.nanoTime();
+        long current;
+        long next;
+        do {
+            current = fullAt.get();
+            next = Math.max(current, now) + cost;
+        } while (!fullAt.compareAndSet(current, next));
+    }
+
+    /**
+     * Nanoseconds until the bucket has any tokens; 0 if it has some now.
+     */
+    public long waitNanos() {
+        return Math.max(0, fullAt.get() - windowNanos - System.nanoTime());
+    }
+
+    public double getAvailable() {
+        long missing = Math.max(0, fullAt.get() - System.nanoTime());
+        return capacity - missing * refillPerSecond / 1_000_000_000.0;
+    }
+
+    public double getCapacity() {
+        return capacity;
+    }
+
+    public boolean isFull() {
+        return fullAt.get() <= System.nanoTime();
+    }
+
+    public void reset() {
+        fullAt.set(System.nanoTime());
+    }
+
+    private long toNanos(double tokens) {
+        return (long) (tokens / refillPerSecond * 1_000_000_000.0);
+    }
+}
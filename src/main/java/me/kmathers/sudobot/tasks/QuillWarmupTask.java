@@ -0,0 +1,29 @@
+package me.kmathers.sudobot.tasks;
+
+import me.kmathers.sudobot.config.Config;
+import me.kmathers.sudobot.quill.worker.ScriptRequest;
+import me.kmathers.sudobot.quill.worker.ScriptRunner;
+import me.kmathers.sudobot.quill.worker.ScriptWarmup;
+
+/**
+ * Warms up the bot's own Quill pipeline at startup, so the first real
+ * &&quill command runs compiled code. Only useful when scripts run in this
+ * JVM; worker processes warm themselves up before taking jobs.
+ */
+public class QuillWarmupTask implements Runnable {
+
+    private static final String PLAYERS = "PLAYER Steve AT 0 64 0\nPLAYER Alex AT 10 64 10";
+
+    /**
+     * The players and interpreter settings warm-up scripts run with, the same as QuillCommand's.
+     */
+    public static ScriptRequest settings() {
+        return new ScriptRequest(PLAYERS, null, Config.QUILL_AUTO_MEMOIZE, Config.QUILL_JIT_THRESHOLD,
+                Config.QUILL_MEMORY_BUDGET_MB * 1024L * 1024);
+    }
+
+    @Override
+    public void run() {
+        ScriptWarmup.run(new ScriptRunner(1, Config.QUILL_MAX_CALL_DEPTH), settings(), Config.QUILL_WARMUP_MAX_ITERATIONS);
+    }
+}